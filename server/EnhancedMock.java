@@ -6,32 +6,74 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
- * Enhanced mock server with better CORS handling and connection capabilities
+ * Enhanced mock server with better CORS handling and connection capabilities.
+ *
+ * Configuration (system properties):
+ *   -Dmock.port=8081
+ *   -Dmock.faults="/api/inventory/products=300:100:0.05;*=20:5:0"
+ *       route=latencyMs:jitterMs:errorRate, "*" applies to every route
+ *       (also read from the MOCK_FAULTS environment variable)
+ * Faults can be changed at runtime through /api/mock/faults and request
+ * counters are served on /api/mock/stats.
+ *   -Dmock.sessions.max=10000, -Dmock.sessions.ttl-minutes=1440,
+ *   -Dmock.sessions.idle-minutes=30, -Dmock.sessions.sweep-seconds=30
+ *       session store bounds; live counts on /api/mock/sessions
  */
 public class EnhancedMock {
     // Store for user data
     private static final Map<String, User> users = new ConcurrentHashMap<>();
-    // Store for active tokens
-    private static final Map<String, String> activeTokens = new ConcurrentHashMap<>();
-    // Store for active sessions
-    private static final Map<String, Session> activeSessions = new ConcurrentHashMap<>();
+    // Active sessions keyed by token, bounded and expiring
+    private static final SessionStore sessions = new SessionStore(
+            Integer.getInteger("mock.sessions.max", 10000),
+            Long.getLong("mock.sessions.ttl-minutes", 24 * 60) * 60 * 1000,
+            Long.getLong("mock.sessions.idle-minutes", 30) * 60 * 1000);
     // Permissions for each role
     private static final Map<String, List<String>> rolePermissions = new ConcurrentHashMap<>();
+    // Responses of POST /api/sales per Idempotency-Key
+    private static final IdempotencyCache saleSubmissions = new IdempotencyCache(
+            Integer.getInteger("mock.idempotency.max", 10000),
+            Long.getLong("mock.idempotency.ttl-minutes", 24 * 60) * 60 * 1000);
+    // Injected latency/errors per route ("*" is the default for every route)
+    private static final Map<String, FaultProfile> faultProfiles = new ConcurrentHashMap<>();
+    // Request counters per route
+    private static final Map<String, RouteStats> routeStats = new ConcurrentHashMap<>();
+    
+    private static final byte[] UNAUTHORIZED_BODY = utf8("{\n" +
+            "  \"error\": \"Unauthorized\",\n" +
+            "  \"message\": \"Valid authentication token is required\"\n" +
+            "}");
+    private static final byte[] INJECTED_ERROR_BODY = utf8("{\n" +
+            "  \"error\": \"Service Unavailable\",\n" +
+            "  \"message\": \"Error injected by mock fault profile\"\n" +
+            "}");
     
     // Initialize with some test users and permissions
     static {
@@ -73,59 +115,117 @@ public class EnhancedMock {
     }
     
     public static void main(String[] args) throws Exception {
-        HttpServer server = HttpServer.create(new InetSocketAddress(8081), 0);
-        server.setExecutor(Executors.newFixedThreadPool(10)); // Use a real thread pool
+        int port = Integer.getInteger("mock.port", 8081);
+        loadFaultProfiles(System.getProperty("mock.faults", System.getenv("MOCK_FAULTS")));
+        
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Unbounded executor: a slow route must not block the others
+        server.setExecutor(createExecutor());
         
         // Basic endpoints
-        server.createContext("/api", new DefaultHandler());
-        server.createContext("/api/test/echo", new EchoHandler());
-        server.createContext("/api/health", new HealthHandler());
+        route(server, "/api", new DefaultHandler());
+        route(server, "/api/test/echo", new EchoHandler());
+        route(server, "/api/health", new HealthHandler());
         
         // Auth endpoints
-        server.createContext("/api/auth/test", new AuthTestHandler());
-        server.createContext("/api/auth/login", new LoginHandler());
-        server.createContext("/api/auth/register", new RegisterHandler());
-        server.createContext("/api/auth/validate", new ValidateTokenHandler());
-        server.createContext("/api/auth/logout", new LogoutHandler());
-        server.createContext("/api/auth/session", new SessionInfoHandler());
+        route(server, "/api/auth/test", new AuthTestHandler());
+        route(server, "/api/auth/login", new LoginHandler());
+        route(server, "/api/auth/register", new RegisterHandler());
+        route(server, "/api/auth/validate", new ValidateTokenHandler());
+        route(server, "/api/auth/logout", new LogoutHandler());
+        route(server, "/api/auth/session", new SessionInfoHandler());
         
         // Role-specific endpoints
-        server.createContext("/api/admin/dashboard", new RoleRestrictedHandler(new AdminDashboardHandler(), "ROLE_ADMIN"));
-        server.createContext("/api/pharmacist/dashboard", new RoleRestrictedHandler(new PharmacistDashboardHandler(), "ROLE_PHARMACIST"));
-        server.createContext("/api/technician/dashboard", new RoleRestrictedHandler(new TechnicianDashboardHandler(), "ROLE_TECHNICIAN"));
+        route(server, "/api/admin/dashboard", new RoleRestrictedHandler(new AdminDashboardHandler(), "ROLE_ADMIN"));
+        route(server, "/api/pharmacist/dashboard", new RoleRestrictedHandler(new PharmacistDashboardHandler(), "ROLE_PHARMACIST"));
+        route(server, "/api/technician/dashboard", new RoleRestrictedHandler(new TechnicianDashboardHandler(), "ROLE_TECHNICIAN"));
         
         // Permission-based endpoints
-        server.createContext("/api/inventory/products", new PermissionRestrictedHandler(new ProductsHandler(), "VIEW_INVENTORY"));
-        server.createContext("/api/inventory/update", new PermissionRestrictedHandler(new InventoryUpdateHandler(), "EDIT_INVENTORY"));
-        server.createContext("/api/clients", new ClientsHandler());
-        server.createContext("/api/clients/update", new PermissionRestrictedHandler(new ClientUpdateHandler(), "EDIT_CLIENTS"));
-        server.createContext("/api/permissions/all", new PermissionRestrictedHandler(new PermissionsHandler(), "VIEW_INVENTORY"));
-        server.createContext("/api/system/users", new PermissionRestrictedHandler(new UsersHandler(), "MANAGE_USERS"));
+        route(server, "/api/inventory/products", new PermissionRestrictedHandler(new ProductsHandler(), "VIEW_INVENTORY"));
+        route(server, "/api/inventory/update", new PermissionRestrictedHandler(new InventoryUpdateHandler(), "EDIT_INVENTORY"));
+        route(server, "/api/clients", new ClientsHandler());
+        route(server, "/api/clients/update", new PermissionRestrictedHandler(new ClientUpdateHandler(), "EDIT_CLIENTS"));
+        route(server, "/api/permissions/all", new PermissionRestrictedHandler(new PermissionsHandler(), "VIEW_INVENTORY"));
+        route(server, "/api/system/users", new PermissionRestrictedHandler(new UsersHandler(), "MANAGE_USERS"));
         
         // Add orders endpoint
-        server.createContext("/api/test/orders", new OrdersHandler());
+        route(server, "/api/test/orders", new OrdersHandler());
         
         // Add data viewer endpoint
-        server.createContext("/api/data-viewer", new DataViewerHandler());
+        route(server, "/api/data-viewer", new DataViewerHandler());
         
         // Add sales endpoint
-        server.createContext("/api/sales", new SalesHandler());
-        server.createContext("/api/sales/stats", new SalesStatsHandler());
+        route(server, "/api/sales", new SalesHandler());
+        route(server, "/api/sales/stats", new SalesStatsHandler());
         
         // Add data initialization endpoint
-        server.createContext("/api/data/init-sample-data", new DataInitHandler());
+        route(server, "/api/data/init-sample-data", new DataInitHandler());
         
         // Add dashboard data endpoint
-        server.createContext("/api/dashboard/data", new DashboardDataHandler());
+        route(server, "/api/dashboard/data", new DashboardDataHandler());
+        
+        // Mock control endpoints (not instrumented, never delayed)
+        server.createContext("/api/mock/stats", new MockStatsHandler());
+        server.createContext("/api/mock/sessions", new MockSessionsHandler());
+        server.createContext("/api/mock/faults", new MockFaultsHandler());
         
         // Start server
         server.start();
+        sessions.startSweeper(Long.getLong("mock.sessions.sweep-seconds", 30));
         
         System.out.println("=======================================================");
         System.out.println("         Enhanced Mock Backend Server Started");
-        System.out.println("         API available at: http://localhost:8081/api");
-        System.out.println("         Test API: http://localhost:8081/api/test/echo");
+        System.out.println("         API available at: http://localhost:" + port + "/api");
+        System.out.println("         Test API: http://localhost:" + port + "/api/test/echo");
+        System.out.println("         Request counters: http://localhost:" + port + "/api/mock/stats");
         System.out.println("=======================================================");
+        System.out.println("Session store: " + sessions);
+        for (Map.Entry<String, FaultProfile> entry : faultProfiles.entrySet()) {
+            System.out.println("Fault profile " + entry.getKey() + " -> " + entry.getValue());
+        }
+    }
+    
+    // Virtual threads when the JVM has them (JDK 21+), otherwise a cached pool.
+    // Either way there is no fixed cap on concurrent requests.
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            System.out.println("Using virtual threads for request handling");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "mock-http-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    // Register a handler wrapped with request counting and fault injection
+    private static void route(HttpServer server, String path, HttpHandler handler) {
+        RouteStats stats = new RouteStats();
+        routeStats.put(path, stats);
+        server.createContext(path, new InstrumentedHandler(path, handler, stats));
+    }
+    
+    // Parse "route=latencyMs:jitterMs:errorRate;route2=..." ("*" applies to every route)
+    private static void loadFaultProfiles(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return;
+        }
+        for (String entry : spec.split(";")) {
+            int eq = entry.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String route = entry.substring(0, eq).trim();
+            String[] parts = entry.substring(eq + 1).split(":");
+            long latency = parts.length > 0 ? Long.parseLong(parts[0].trim()) : 0;
+            long jitter = parts.length > 1 ? Long.parseLong(parts[1].trim()) : 0;
+            double errorRate = parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0;
+            faultProfiles.put(route, new FaultProfile(latency, jitter, errorRate));
+        }
     }
     
     // Session class to store session information
@@ -136,17 +236,18 @@ public class EnhancedMock {
         Date createdAt;
         Date expiresAt;
         String ipAddress;
-        boolean active;
+        volatile boolean active;
+        volatile long lastAccessedAt;
         
-        Session(String sessionId, String userId, String role, String ipAddress) {
+        Session(String sessionId, String userId, String role, String ipAddress, long ttlMillis) {
             this.sessionId = sessionId;
             this.userId = userId;
             this.role = role;
             this.createdAt = new Date();
-            // Sessions expire after 24 hours
-            this.expiresAt = new Date(System.currentTimeMillis() + 24 * 60 * 60 * 1000);
+            this.expiresAt = new Date(createdAt.getTime() + ttlMillis);
             this.ipAddress = ipAddress;
             this.active = true;
+            this.lastAccessedAt = createdAt.getTime();
         }
         
         Map<String, Object> toJson() {
@@ -158,6 +259,7 @@ public class EnhancedMock {
             json.put("expiresAt", expiresAt.getTime());
             json.put("ipAddress", ipAddress);
             json.put("active", active);
+            json.put("lastAccessedAt", lastAccessedAt);
             return json;
         }
         
@@ -166,6 +268,141 @@ public class EnhancedMock {
         }
     }
     
+    /**
+     * Sessions keyed by token. Entries expire after an absolute TTL or after an idle
+     * period, checked lazily on lookup and by a periodic sweep; past the size cap the
+     * least recently used session is evicted, so repeated logins cannot exhaust memory.
+     */
+    static class SessionStore {
+        private final int maxSessions;
+        private final long absoluteTtlMillis;
+        private final long idleTtlMillis;
+        // Access-ordered: iteration starts at the least recently used session
+        private final LinkedHashMap<String, Session> entries = new LinkedHashMap<>(16, 0.75f, true);
+        
+        private final LongAdder created = new LongAdder();
+        private final LongAdder evicted = new LongAdder();
+        private final LongAdder expiredAbsolute = new LongAdder();
+        private final LongAdder expiredIdle = new LongAdder();
+        private final LongAdder loggedOut = new LongAdder();
+        private final LongAdder sweeps = new LongAdder();
+        
+        SessionStore(int maxSessions, long absoluteTtlMillis, long idleTtlMillis) {
+            this.maxSessions = Math.max(1, maxSessions);
+            this.absoluteTtlMillis = absoluteTtlMillis;
+            this.idleTtlMillis = idleTtlMillis;
+        }
+        
+        Session create(String token, String userId, String role, String ipAddress) {
+            Session session = new Session(token, userId, role, ipAddress, absoluteTtlMillis);
+            synchronized (entries) {
+                entries.put(token, session);
+                Iterator<Session> it = entries.values().iterator();
+                while (entries.size() > maxSessions && it.hasNext()) {
+                    it.next().active = false;
+                    it.remove();
+                    evicted.increment();
+                }
+            }
+            created.increment();
+            return session;
+        }
+        
+        // Returns the live session for a token and refreshes its idle timer
+        Session get(String token) {
+            long now = System.currentTimeMillis();
+            synchronized (entries) {
+                Session session = entries.get(token);
+                if (session == null) {
+                    return null;
+                }
+                if (removeIfExpired(session, now)) {
+                    entries.remove(token);
+                    return null;
+                }
+                session.lastAccessedAt = now;
+                return session;
+            }
+        }
+        
+        void remove(String token) {
+            Session session;
+            synchronized (entries) {
+                session = entries.remove(token);
+            }
+            if (session != null) {
+                session.active = false;
+                loggedOut.increment();
+            }
+        }
+        
+        List<Session> snapshot() {
+            synchronized (entries) {
+                return new ArrayList<>(entries.values());
+            }
+        }
+        
+        int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+        
+        void sweep() {
+            long now = System.currentTimeMillis();
+            synchronized (entries) {
+                Iterator<Session> it = entries.values().iterator();
+                while (it.hasNext()) {
+                    if (removeIfExpired(it.next(), now)) {
+                        it.remove();
+                    }
+                }
+            }
+            sweeps.increment();
+        }
+        
+        void startSweeper(long intervalSeconds) {
+            ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mock-session-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, intervalSeconds);
+            sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.SECONDS);
+        }
+        
+        // Caller holds the lock; counts the expiry but leaves removal to the caller
+        private boolean removeIfExpired(Session session, long now) {
+            if (now >= session.expiresAt.getTime()) {
+                expiredAbsolute.increment();
+            } else if (now - session.lastAccessedAt >= idleTtlMillis) {
+                expiredIdle.increment();
+            } else {
+                return !session.active;
+            }
+            session.active = false;
+            return true;
+        }
+        
+        String toJson() {
+            return "{ \"active\": " + size() +
+                    ", \"max\": " + maxSessions +
+                    ", \"absoluteTtlMs\": " + absoluteTtlMillis +
+                    ", \"idleTtlMs\": " + idleTtlMillis +
+                    ", \"created\": " + created.sum() +
+                    ", \"loggedOut\": " + loggedOut.sum() +
+                    ", \"expiredAbsolute\": " + expiredAbsolute.sum() +
+                    ", \"expiredIdle\": " + expiredIdle.sum() +
+                    ", \"evicted\": " + evicted.sum() +
+                    ", \"sweeps\": " + sweeps.sum() + " }";
+        }
+        
+        @Override
+        public String toString() {
+            return "max=" + maxSessions + ", ttl=" + absoluteTtlMillis + "ms, idle=" + idleTtlMillis + "ms";
+        }
+    }
+    
     // User class to store user information
     static class User {
         String id;
@@ -206,11 +443,9 @@ public class EnhancedMock {
     private static String generateToken(String userId, String role, String ipAddress) {
         String token = UUID.randomUUID().toString() + "-" + userId;
         String encodedToken = Base64.getEncoder().encodeToString(token.getBytes(StandardCharsets.UTF_8));
-        activeTokens.put(encodedToken, userId);
         
         // Create and store session
-        Session session = new Session(encodedToken, userId, role, ipAddress);
-        activeSessions.put(encodedToken, session);
+        sessions.create(encodedToken, userId, role, ipAddress);
         
         return encodedToken;
     }
@@ -226,26 +461,15 @@ public class EnhancedMock {
             token = token.substring(7);
         }
         
-        // Check if token exists
-        String userId = activeTokens.get(token);
-        if (userId == null) {
-            return null;
-        }
-        
-        // Check if session is valid
-        Session session = activeSessions.get(token);
-        if (session == null || session.isExpired()) {
-            // Clean up expired sessions
-            if (session != null && session.isExpired()) {
-                activeTokens.remove(token);
-                activeSessions.remove(token);
-            }
+        // Check if session is valid (expired sessions are dropped by the store)
+        Session session = sessions.get(token);
+        if (session == null) {
             return null;
         }
         
         // Find user by ID
         for (User user : users.values()) {
-            if (user.id.equals(userId)) {
+            if (user.id.equals(session.userId)) {
                 return user;
             }
         }
@@ -298,7 +522,8 @@ public class EnhancedMock {
         }
         
         exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization, Cache-Control");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept, Authorization, Cache-Control, Idempotency-Key");
+        exchange.getResponseHeaders().set("Access-Control-Expose-Headers", "Idempotent-Replayed");
         exchange.getResponseHeaders().set("Access-Control-Max-Age", "3600");
         
         // Explicit setting for preflight requests
@@ -342,6 +567,253 @@ public class EnhancedMock {
         sendJsonResponse(exchange, response, 200);
     }
     
+    // Send a pre-encoded JSON body
+    private static void sendJsonBytes(HttpExchange exchange, byte[] body, int statusCode) throws IOException {
+        addCorsHeaders(exchange);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store, must-revalidate");
+        exchange.getResponseHeaders().set("Pragma", "no-cache");
+        exchange.getResponseHeaders().set("Expires", "0");
+        exchange.sendResponseHeaders(statusCode, body.length);
+        
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Encode a response body. Fixed bodies are encoded once into static fields, not on every request.
+     */
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    // Latency, jitter and error rate injected on a route
+    static class FaultProfile {
+        final long latencyMs;
+        final long jitterMs;
+        final double errorRate;
+        
+        FaultProfile(long latencyMs, long jitterMs, double errorRate) {
+            this.latencyMs = Math.max(0, latencyMs);
+            this.jitterMs = Math.max(0, jitterMs);
+            this.errorRate = Math.min(1.0, Math.max(0.0, errorRate));
+        }
+        
+        long nextDelayMs() {
+            if (jitterMs == 0) {
+                return latencyMs;
+            }
+            long delay = latencyMs + ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1);
+            return Math.max(0, delay);
+        }
+        
+        boolean shouldFail() {
+            return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        }
+        
+        @Override
+        public String toString() {
+            return "latency=" + latencyMs + "ms, jitter=" + jitterMs + "ms, errorRate=" + errorRate;
+        }
+    }
+    
+    // Request counters for one route
+    static class RouteStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder injectedErrors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        
+        void reset() {
+            requests.reset();
+            injectedErrors.reset();
+            failures.reset();
+            totalNanos.reset();
+            maxInFlight.set(inFlight.get());
+        }
+        
+        String toJson(String route) {
+            long count = requests.sum();
+            return "{ \"route\": \"" + route + "\", \"requests\": " + count +
+                    ", \"injectedErrors\": " + injectedErrors.sum() +
+                    ", \"failures\": " + failures.sum() +
+                    ", \"inFlight\": " + inFlight.get() +
+                    ", \"maxInFlight\": " + maxInFlight.get() +
+                    ", \"avgMs\": " + (count == 0 ? 0 : totalNanos.sum() / count / 1_000_000.0) + " }";
+        }
+    }
+    
+    // Wraps a route handler: counts requests, then applies the route's fault profile
+    static class InstrumentedHandler implements HttpHandler {
+        private final String route;
+        private final HttpHandler handler;
+        private final RouteStats stats;
+        
+        InstrumentedHandler(String route, HttpHandler handler, RouteStats stats) {
+            this.route = route;
+            this.handler = handler;
+            this.stats = stats;
+        }
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            stats.requests.increment();
+            int current = stats.inFlight.incrementAndGet();
+            stats.maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                FaultProfile profile = faultProfiles.get(route);
+                if (profile == null) {
+                    profile = faultProfiles.get("*");
+                }
+                if (profile != null && !"OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    long delay = profile.nextDelayMs();
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                    if (profile.shouldFail()) {
+                        stats.injectedErrors.increment();
+                        sendJsonBytes(exchange, INJECTED_ERROR_BODY, 503);
+                        return;
+                    }
+                }
+                handler.handle(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.close();
+            } catch (IOException | RuntimeException e) {
+                stats.failures.increment();
+                throw e;
+            } finally {
+                stats.inFlight.decrementAndGet();
+                stats.totalNanos.add(System.nanoTime() - start);
+            }
+        }
+    }
+    
+    // GET: per-route request counters, DELETE: reset them
+    static class MockStatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handlePreflight(exchange)) return;
+            
+            if ("DELETE".equals(exchange.getRequestMethod())) {
+                for (RouteStats stats : routeStats.values()) {
+                    stats.reset();
+                }
+            }
+            
+            long total = 0;
+            StringBuilder routes = new StringBuilder();
+            for (Map.Entry<String, RouteStats> entry : new TreeMap<>(routeStats).entrySet()) {
+                total += entry.getValue().requests.sum();
+                if (routes.length() > 0) {
+                    routes.append(",\n");
+                }
+                routes.append("    ").append(entry.getValue().toJson(entry.getKey()));
+            }
+            
+            String response = "{\n" +
+                    "  \"totalRequests\": " + total + ",\n" +
+                    "  \"sessions\": " + sessions.toJson() + ",\n" +
+                    "  \"idempotencyKeys\": " + saleSubmissions.size() + ",\n" +
+                    "  \"routes\": [\n" + routes + "\n  ]\n" +
+                    "}";
+            sendJsonResponse(exchange, response);
+        }
+    }
+    
+    // GET: session store counters, DELETE: run an expiry sweep first
+    static class MockSessionsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handlePreflight(exchange)) return;
+            
+            if ("DELETE".equals(exchange.getRequestMethod())) {
+                sessions.sweep();
+            }
+            sendJsonResponse(exchange, sessions.toJson());
+        }
+    }
+    
+    // GET: list fault profiles
+    // POST ?route=/api/clients&latencyMs=200&jitterMs=50&errorRate=0.1: set a profile
+    // DELETE ?route=/api/clients: remove it (no route clears every profile)
+    static class MockFaultsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handlePreflight(exchange)) return;
+            
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            String route = params.get("route");
+            
+            if ("POST".equals(exchange.getRequestMethod()) || "PUT".equals(exchange.getRequestMethod())) {
+                if (route == null || route.isEmpty()) {
+                    String response = "{\n" +
+                            "  \"error\": \"Invalid request\",\n" +
+                            "  \"message\": \"The route parameter is required\"\n" +
+                            "}";
+                    sendJsonResponse(exchange, response, 400);
+                    return;
+                }
+                try {
+                    FaultProfile profile = new FaultProfile(
+                            Long.parseLong(params.getOrDefault("latencyMs", "0")),
+                            Long.parseLong(params.getOrDefault("jitterMs", "0")),
+                            Double.parseDouble(params.getOrDefault("errorRate", "0")));
+                    faultProfiles.put(route, profile);
+                    System.out.println("Fault profile " + route + " -> " + profile);
+                } catch (NumberFormatException e) {
+                    String response = "{\n" +
+                            "  \"error\": \"Invalid request\",\n" +
+                            "  \"message\": \"latencyMs, jitterMs and errorRate must be numbers\"\n" +
+                            "}";
+                    sendJsonResponse(exchange, response, 400);
+                    return;
+                }
+            } else if ("DELETE".equals(exchange.getRequestMethod())) {
+                if (route == null) {
+                    faultProfiles.clear();
+                } else {
+                    faultProfiles.remove(route);
+                }
+            }
+            
+            StringBuilder profiles = new StringBuilder();
+            for (Map.Entry<String, FaultProfile> entry : new TreeMap<>(faultProfiles).entrySet()) {
+                FaultProfile profile = entry.getValue();
+                if (profiles.length() > 0) {
+                    profiles.append(",\n");
+                }
+                profiles.append("    { \"route\": \"").append(entry.getKey())
+                        .append("\", \"latencyMs\": ").append(profile.latencyMs)
+                        .append(", \"jitterMs\": ").append(profile.jitterMs)
+                        .append(", \"errorRate\": ").append(profile.errorRate).append(" }");
+            }
+            sendJsonResponse(exchange, "{\n  \"faults\": [\n" + profiles + "\n  ]\n}");
+        }
+    }
+    
+    // Parse a URL query string into a map
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            result.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return result;
+    }
+    
     // Wrapper for handlers that require a specific role
     static class RoleRestrictedHandler implements HttpHandler {
         private final HttpHandler handler;
@@ -362,11 +834,7 @@ public class EnhancedMock {
             
             if (user == null) {
                 // Unauthorized
-                String response = "{\n" +
-                        "  \"error\": \"Unauthorized\",\n" +
-                        "  \"message\": \"Valid authentication token is required\"\n" +
-                        "}";
-                sendJsonResponse(exchange, response, 401);
+                sendJsonBytes(exchange, UNAUTHORIZED_BODY, 401);
                 return;
             }
             
@@ -409,11 +877,7 @@ public class EnhancedMock {
             
             if (user == null) {
                 // Unauthorized
-                String response = "{\n" +
-                        "  \"error\": \"Unauthorized\",\n" +
-                        "  \"message\": \"Valid authentication token is required\"\n" +
-                        "}";
-                sendJsonResponse(exchange, response, 401);
+                sendJsonBytes(exchange, UNAUTHORIZED_BODY, 401);
                 return;
             }
             
@@ -447,17 +911,13 @@ public class EnhancedMock {
             
             if (user == null) {
                 // Unauthorized
-                String response = "{\n" +
-                        "  \"error\": \"Unauthorized\",\n" +
-                        "  \"message\": \"Valid authentication token is required\"\n" +
-                        "}";
-                sendJsonResponse(exchange, response, 401);
+                sendJsonBytes(exchange, UNAUTHORIZED_BODY, 401);
                 return;
             }
             
             // Get session info
             String token = authHeader.startsWith("Bearer ") ? authHeader.substring(7) : authHeader;
-            Session session = activeSessions.get(token);
+            Session session = sessions.get(token);
             
             // Create response with role information and permissions
             StringBuilder permissionsJson = new StringBuilder();
@@ -607,7 +1067,7 @@ public class EnhancedMock {
                     "  \"dashboard\": \"Admin Dashboard\",\n" +
                     "  \"metrics\": {\n" +
                     "    \"totalUsers\": " + users.size() + ",\n" +
-                    "    \"activeSessions\": " + activeSessions.size() + ",\n" +
+                    "    \"activeSessions\": " + sessions.size() + ",\n" +
                     "    \"systemStatus\": \"Healthy\"\n" +
                     "  },\n" +
                     "  \"actions\": [\n" +
@@ -624,50 +1084,50 @@ public class EnhancedMock {
     }
     
     static class PharmacistDashboardHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("{\n" +
+                "  \"dashboard\": \"Pharmacist Dashboard\",\n" +
+                "  \"metrics\": {\n" +
+                "    \"pendingPrescriptions\": 12,\n" +
+                "    \"productsLowStock\": 3,\n" +
+                "    \"clientsToday\": 8\n" +
+                "  },\n" +
+                "  \"actions\": [\n" +
+                "    \"Dispense Medication\",\n" +
+                "    \"Manage Inventory\",\n" +
+                "    \"Client Consultations\",\n" +
+                "    \"View Reports\"\n" +
+                "  ]\n" +
+                "}");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (handlePreflight(exchange)) return;
             
-            String response = "{\n" +
-                    "  \"dashboard\": \"Pharmacist Dashboard\",\n" +
-                    "  \"metrics\": {\n" +
-                    "    \"pendingPrescriptions\": 12,\n" +
-                    "    \"productsLowStock\": 3,\n" +
-                    "    \"clientsToday\": 8\n" +
-                    "  },\n" +
-                    "  \"actions\": [\n" +
-                    "    \"Dispense Medication\",\n" +
-                    "    \"Manage Inventory\",\n" +
-                    "    \"Client Consultations\",\n" +
-                    "    \"View Reports\"\n" +
-                    "  ]\n" +
-                    "}";
-            
-            sendJsonResponse(exchange, response);
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
     
     static class TechnicianDashboardHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("{\n" +
+                "  \"dashboard\": \"Technician Dashboard\",\n" +
+                "  \"metrics\": {\n" +
+                "    \"pendingOrders\": 5,\n" +
+                "    \"stockChecks\": 2,\n" +
+                "    \"upcomingDeliveries\": 3\n" +
+                "  },\n" +
+                "  \"actions\": [\n" +
+                "    \"Process Orders\",\n" +
+                "    \"Check Inventory\",\n" +
+                "    \"Receive Deliveries\",\n" +
+                "    \"Client Registration\"\n" +
+                "  ]\n" +
+                "}");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (handlePreflight(exchange)) return;
             
-            String response = "{\n" +
-                    "  \"dashboard\": \"Technician Dashboard\",\n" +
-                    "  \"metrics\": {\n" +
-                    "    \"pendingOrders\": 5,\n" +
-                    "    \"stockChecks\": 2,\n" +
-                    "    \"upcomingDeliveries\": 3\n" +
-                    "  },\n" +
-                    "  \"actions\": [\n" +
-                    "    \"Process Orders\",\n" +
-                    "    \"Check Inventory\",\n" +
-                    "    \"Receive Deliveries\",\n" +
-                    "    \"Client Registration\"\n" +
-                    "  ]\n" +
-                    "}";
-            
-            sendJsonResponse(exchange, response);
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
     
@@ -961,7 +1421,7 @@ public class EnhancedMock {
             
             if (authHeader != null && authHeader.startsWith("Bearer ")) {
                 String token = authHeader.substring(7);
-                activeTokens.remove(token);
+                sessions.remove(token);
             }
             
             String response = "{\n" +
@@ -974,165 +1434,165 @@ public class EnhancedMock {
     }
     
     static class ProductsHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("[\n" +
+                "  {\n" +
+                "    \"id\": 1,\n" +
+                "    \"name\": \"Paracétamol 500mg\",\n" +
+                "    \"description\": \"Analgésique et antipyrétique\",\n" +
+                "    \"price\": 8.50,\n" +
+                "    \"stock\": 250,\n" +
+                "    \"category\": \"Analgésiques\",\n" +
+                "    \"expiry\": \"2025-12-31\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 2,\n" +
+                "    \"name\": \"Ibuprofène 200mg\",\n" +
+                "    \"description\": \"Anti-inflammatoire non stéroïdien\",\n" +
+                "    \"price\": 10.20,\n" +
+                "    \"stock\": 180,\n" +
+                "    \"category\": \"Anti-inflammatoires\",\n" +
+                "    \"expiry\": \"2025-10-15\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 3,\n" +
+                "    \"name\": \"Amoxicilline 500mg\",\n" +
+                "    \"description\": \"Antibiotique de la famille des bêta-lactamines\",\n" +
+                "    \"price\": 15.75,\n" +
+                "    \"stock\": 120,\n" +
+                "    \"category\": \"Antibiotiques\",\n" +
+                "    \"expiry\": \"2024-08-20\"\n" +
+                "  }\n" +
+                "]");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (handlePreflight(exchange)) return;
             
-            String response = "[\n" +
-                    "  {\n" +
-                    "    \"id\": 1,\n" +
-                    "    \"name\": \"Paracétamol 500mg\",\n" +
-                    "    \"description\": \"Analgésique et antipyrétique\",\n" +
-                    "    \"price\": 8.50,\n" +
-                    "    \"stock\": 250,\n" +
-                    "    \"category\": \"Analgésiques\",\n" +
-                    "    \"expiry\": \"2025-12-31\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 2,\n" +
-                    "    \"name\": \"Ibuprofène 200mg\",\n" +
-                    "    \"description\": \"Anti-inflammatoire non stéroïdien\",\n" +
-                    "    \"price\": 10.20,\n" +
-                    "    \"stock\": 180,\n" +
-                    "    \"category\": \"Anti-inflammatoires\",\n" +
-                    "    \"expiry\": \"2025-10-15\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 3,\n" +
-                    "    \"name\": \"Amoxicilline 500mg\",\n" +
-                    "    \"description\": \"Antibiotique de la famille des bêta-lactamines\",\n" +
-                    "    \"price\": 15.75,\n" +
-                    "    \"stock\": 120,\n" +
-                    "    \"category\": \"Antibiotiques\",\n" +
-                    "    \"expiry\": \"2024-08-20\"\n" +
-                    "  }\n" +
-                    "]";
-            
-            sendJsonResponse(exchange, response);
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
     
     static class ClientsHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("[\n" +
+                "  {\n" +
+                "    \"id\": 1,\n" +
+                "    \"name\": \"Sophie Dubois\",\n" +
+                "    \"email\": \"sophie.dubois@example.com\",\n" +
+                "    \"phone\": \"0612345678\",\n" +
+                "    \"birthDate\": \"1985-06-15\",\n" +
+                "    \"lastVisit\": \"2023-04-10\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": true\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 2,\n" +
+                "    \"name\": \"Jean Martin\",\n" +
+                "    \"email\": \"jean.martin@example.com\",\n" +
+                "    \"phone\": \"0723456789\",\n" +
+                "    \"birthDate\": \"1972-03-22\",\n" +
+                "    \"lastVisit\": \"2023-03-28\",\n" +
+                "    \"status\": \"nouveau\",\n" +
+                "    \"hasPrescription\": false\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 3,\n" +
+                "    \"name\": \"Mohammed Alami\",\n" +
+                "    \"email\": \"m.alami@example.com\",\n" +
+                "    \"phone\": \"0661234567\",\n" +
+                "    \"birthDate\": \"1988-11-05\",\n" +
+                "    \"lastVisit\": \"2023-05-12\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": true\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 4,\n" +
+                "    \"name\": \"Fatima Benali\",\n" +
+                "    \"email\": \"f.benali@example.com\",\n" +
+                "    \"phone\": \"0754321987\",\n" +
+                "    \"birthDate\": \"1990-08-17\",\n" +
+                "    \"lastVisit\": \"2023-05-14\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": true\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 5,\n" +
+                "    \"name\": \"Ahmed Laroussi\",\n" +
+                "    \"email\": \"a.laroussi@example.com\",\n" +
+                "    \"phone\": \"0634567890\",\n" +
+                "    \"birthDate\": \"1965-02-28\",\n" +
+                "    \"lastVisit\": \"2023-05-01\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": true\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 6,\n" +
+                "    \"name\": \"Yasmine Kadiri\",\n" +
+                "    \"email\": \"y.kadiri@example.com\",\n" +
+                "    \"phone\": \"0698765432\",\n" +
+                "    \"birthDate\": \"1992-04-09\",\n" +
+                "    \"lastVisit\": \"2023-05-08\",\n" +
+                "    \"status\": \"nouveau\",\n" +
+                "    \"hasPrescription\": false\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 7,\n" +
+                "    \"name\": \"Karim Mansouri\",\n" +
+                "    \"email\": \"k.mansouri@example.com\",\n" +
+                "    \"phone\": \"0678901234\",\n" +
+                "    \"birthDate\": \"1979-12-15\",\n" +
+                "    \"lastVisit\": \"2023-05-11\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": true\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 8,\n" +
+                "    \"name\": \"Sara Benjelloun\",\n" +
+                "    \"email\": \"s.benjelloun@example.com\",\n" +
+                "    \"phone\": \"0712345678\",\n" +
+                "    \"birthDate\": \"1987-07-22\",\n" +
+                "    \"lastVisit\": \"2023-05-13\",\n" +
+                "    \"status\": \"régulier\",\n" +
+                "    \"hasPrescription\": false\n" +
+                "  }\n" +
+                "]");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (handlePreflight(exchange)) return;
             
-            String response = "[\n" +
-                    "  {\n" +
-                    "    \"id\": 1,\n" +
-                    "    \"name\": \"Sophie Dubois\",\n" +
-                    "    \"email\": \"sophie.dubois@example.com\",\n" +
-                    "    \"phone\": \"0612345678\",\n" +
-                    "    \"birthDate\": \"1985-06-15\",\n" +
-                    "    \"lastVisit\": \"2023-04-10\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": true\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 2,\n" +
-                    "    \"name\": \"Jean Martin\",\n" +
-                    "    \"email\": \"jean.martin@example.com\",\n" +
-                    "    \"phone\": \"0723456789\",\n" +
-                    "    \"birthDate\": \"1972-03-22\",\n" +
-                    "    \"lastVisit\": \"2023-03-28\",\n" +
-                    "    \"status\": \"nouveau\",\n" +
-                    "    \"hasPrescription\": false\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 3,\n" +
-                    "    \"name\": \"Mohammed Alami\",\n" +
-                    "    \"email\": \"m.alami@example.com\",\n" +
-                    "    \"phone\": \"0661234567\",\n" +
-                    "    \"birthDate\": \"1988-11-05\",\n" +
-                    "    \"lastVisit\": \"2023-05-12\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": true\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 4,\n" +
-                    "    \"name\": \"Fatima Benali\",\n" +
-                    "    \"email\": \"f.benali@example.com\",\n" +
-                    "    \"phone\": \"0754321987\",\n" +
-                    "    \"birthDate\": \"1990-08-17\",\n" +
-                    "    \"lastVisit\": \"2023-05-14\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": true\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 5,\n" +
-                    "    \"name\": \"Ahmed Laroussi\",\n" +
-                    "    \"email\": \"a.laroussi@example.com\",\n" +
-                    "    \"phone\": \"0634567890\",\n" +
-                    "    \"birthDate\": \"1965-02-28\",\n" +
-                    "    \"lastVisit\": \"2023-05-01\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": true\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 6,\n" +
-                    "    \"name\": \"Yasmine Kadiri\",\n" +
-                    "    \"email\": \"y.kadiri@example.com\",\n" +
-                    "    \"phone\": \"0698765432\",\n" +
-                    "    \"birthDate\": \"1992-04-09\",\n" +
-                    "    \"lastVisit\": \"2023-05-08\",\n" +
-                    "    \"status\": \"nouveau\",\n" +
-                    "    \"hasPrescription\": false\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 7,\n" +
-                    "    \"name\": \"Karim Mansouri\",\n" +
-                    "    \"email\": \"k.mansouri@example.com\",\n" +
-                    "    \"phone\": \"0678901234\",\n" +
-                    "    \"birthDate\": \"1979-12-15\",\n" +
-                    "    \"lastVisit\": \"2023-05-11\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": true\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 8,\n" +
-                    "    \"name\": \"Sara Benjelloun\",\n" +
-                    "    \"email\": \"s.benjelloun@example.com\",\n" +
-                    "    \"phone\": \"0712345678\",\n" +
-                    "    \"birthDate\": \"1987-07-22\",\n" +
-                    "    \"lastVisit\": \"2023-05-13\",\n" +
-                    "    \"status\": \"régulier\",\n" +
-                    "    \"hasPrescription\": false\n" +
-                    "  }\n" +
-                    "]";
-            
-            sendJsonResponse(exchange, response);
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
     
     static class PermissionsHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("[\n" +
+                "  {\n" +
+                "    \"id\": 1,\n" +
+                "    \"name\": \"VIEW_CLIENTS\",\n" +
+                "    \"description\": \"Voir la liste des clients\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 2,\n" +
+                "    \"name\": \"EDIT_CLIENTS\",\n" +
+                "    \"description\": \"Modifier les informations des clients\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 3,\n" +
+                "    \"name\": \"VIEW_INVENTORY\",\n" +
+                "    \"description\": \"Voir l'inventaire des produits\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 4,\n" +
+                "    \"name\": \"EDIT_INVENTORY\",\n" +
+                "    \"description\": \"Modifier l'inventaire des produits\"\n" +
+                "  }\n" +
+                "]");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (handlePreflight(exchange)) return;
             
-            String response = "[\n" +
-                    "  {\n" +
-                    "    \"id\": 1,\n" +
-                    "    \"name\": \"VIEW_CLIENTS\",\n" +
-                    "    \"description\": \"Voir la liste des clients\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 2,\n" +
-                    "    \"name\": \"EDIT_CLIENTS\",\n" +
-                    "    \"description\": \"Modifier les informations des clients\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 3,\n" +
-                    "    \"name\": \"VIEW_INVENTORY\",\n" +
-                    "    \"description\": \"Voir l'inventaire des produits\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 4,\n" +
-                    "    \"name\": \"EDIT_INVENTORY\",\n" +
-                    "    \"description\": \"Modifier l'inventaire des produits\"\n" +
-                    "  }\n" +
-                    "]";
-            
-            sendJsonResponse(exchange, response);
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
     
@@ -1294,7 +1754,7 @@ public class EnhancedMock {
                 htmlBuilder.append("<table>");
                 htmlBuilder.append("<tr><th>Session ID</th><th>User ID</th><th>Role</th><th>Created At</th><th>Expires At</th><th>IP Address</th><th>Active</th></tr>");
                 
-                for (Session session : activeSessions.values()) {
+                for (Session session : sessions.snapshot()) {
                     htmlBuilder.append("<tr>");
                     htmlBuilder.append("<td>").append(session.sessionId).append("</td>");
                     htmlBuilder.append("<td>").append(session.userId).append("</td>");
@@ -1470,8 +1930,129 @@ public class EnhancedMock {
         }
     }
     
+    /**
+     * Responses per idempotency key, bounded (LRU) and expiring. Concurrent duplicates
+     * wait for the first request's response instead of executing again.
+     */
+    static class IdempotencyCache {
+        private final int maxEntries;
+        private final long ttlMillis;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        
+        static class Entry {
+            final String requestBody;
+            final long createdAt = System.currentTimeMillis();
+            final CompletableFuture<byte[]> response = new CompletableFuture<>();
+            
+            Entry(String requestBody) {
+                this.requestBody = requestBody;
+            }
+        }
+        
+        static class Result {
+            final byte[] body;
+            final boolean replayed;
+            
+            Result(byte[] body, boolean replayed) {
+                this.body = body;
+                this.replayed = replayed;
+            }
+        }
+        
+        IdempotencyCache(int maxEntries, long ttlMillis) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.ttlMillis = ttlMillis;
+        }
+        
+        // Returns null when the key was already used with a different request body
+        Result execute(String key, String requestBody, Supplier<byte[]> action) {
+            Entry entry;
+            boolean owner = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null || System.currentTimeMillis() - entry.createdAt >= ttlMillis) {
+                    entry = new Entry(requestBody);
+                    entries.put(key, entry);
+                    owner = true;
+                    Iterator<Entry> it = entries.values().iterator();
+                    while (entries.size() > maxEntries && it.hasNext()) {
+                        it.next();
+                        it.remove();
+                    }
+                }
+            }
+            if (!entry.requestBody.equals(requestBody)) {
+                return null;
+            }
+            if (!owner) {
+                return new Result(entry.response.join(), true);
+            }
+            try {
+                byte[] body = action.get();
+                entry.response.complete(body);
+                return new Result(body, false);
+            } catch (RuntimeException e) {
+                synchronized (entries) {
+                    entries.remove(key, entry);
+                }
+                entry.response.completeExceptionally(e);
+                throw e;
+            }
+        }
+        
+        int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+    }
+    
     // Sales Handler for /api/sales endpoint
     static class SalesHandler implements HttpHandler {
+        // Simulate creating a new sale
+        private static byte[] createSale() {
+            return utf8("{\n" +
+                    "  \"success\": true,\n" +
+                    "  \"message\": \"Vente créée avec succès\",\n" +
+                    "  \"data\": { \"id\": " + UUID.randomUUID().toString().hashCode() + " }\n" +
+                    "}");
+        }
+        
+        private static final byte[] BODY = utf8("[\n" +
+                "  {\n" +
+                "    \"id\": 1,\n" +
+                "    \"clientId\": \"1\",\n" +
+                "    \"saleDate\": \"2023-05-01\",\n" +
+                "    \"items\": [\n" +
+                "      { \"productId\": \"1\", \"quantity\": 2, \"price\": 120 },\n" +
+                "      { \"productId\": \"2\", \"quantity\": 1, \"price\": 85 }\n" +
+                "    ],\n" +
+                "    \"paymentMethod\": \"CASH\",\n" +
+                "    \"notes\": \"\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 2,\n" +
+                "    \"clientId\": \"2\",\n" +
+                "    \"saleDate\": \"2023-05-02\",\n" +
+                "    \"items\": [\n" +
+                "      { \"productId\": \"3\", \"quantity\": 1, \"price\": 200 }\n" +
+                "    ],\n" +
+                "    \"paymentMethod\": \"CARD\",\n" +
+                "    \"notes\": \"\"\n" +
+                "  },\n" +
+                "  {\n" +
+                "    \"id\": 3,\n" +
+                "    \"clientId\": \"3\",\n" +
+                "    \"saleDate\": \"" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + "\",\n" +
+                "    \"items\": [\n" +
+                "      { \"productId\": \"1\", \"quantity\": 1, \"price\": 120 },\n" +
+                "      { \"productId\": \"4\", \"quantity\": 3, \"price\": 45 }\n" +
+                "    ],\n" +
+                "    \"paymentMethod\": \"CASH\",\n" +
+                "    \"notes\": \"\"\n" +
+                "  }\n" +
+                "]");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // Add CORS headers
@@ -1483,52 +2064,28 @@ public class EnhancedMock {
             }
             
             if ("GET".equals(exchange.getRequestMethod())) {
-                // Create sample sales data
-                String salesData = "[\n" +
-                    "  {\n" +
-                    "    \"id\": 1,\n" +
-                    "    \"clientId\": \"1\",\n" +
-                    "    \"saleDate\": \"2023-05-01\",\n" +
-                    "    \"items\": [\n" +
-                    "      { \"productId\": \"1\", \"quantity\": 2, \"price\": 120 },\n" +
-                    "      { \"productId\": \"2\", \"quantity\": 1, \"price\": 85 }\n" +
-                    "    ],\n" +
-                    "    \"paymentMethod\": \"CASH\",\n" +
-                    "    \"notes\": \"\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 2,\n" +
-                    "    \"clientId\": \"2\",\n" +
-                    "    \"saleDate\": \"2023-05-02\",\n" +
-                    "    \"items\": [\n" +
-                    "      { \"productId\": \"3\", \"quantity\": 1, \"price\": 200 }\n" +
-                    "    ],\n" +
-                    "    \"paymentMethod\": \"CARD\",\n" +
-                    "    \"notes\": \"\"\n" +
-                    "  },\n" +
-                    "  {\n" +
-                    "    \"id\": 3,\n" +
-                    "    \"clientId\": \"3\",\n" +
-                    "    \"saleDate\": \"" + new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + "\",\n" +
-                    "    \"items\": [\n" +
-                    "      { \"productId\": \"1\", \"quantity\": 1, \"price\": 120 },\n" +
-                    "      { \"productId\": \"4\", \"quantity\": 3, \"price\": 45 }\n" +
-                    "    ],\n" +
-                    "    \"paymentMethod\": \"CASH\",\n" +
-                    "    \"notes\": \"\"\n" +
-                    "  }\n" +
-                    "]";
-                
-                sendJsonResponse(exchange, salesData);
+                sendJsonBytes(exchange, BODY, 200);
             } else if ("POST".equals(exchange.getRequestMethod())) {
-                // Simulate creating a new sale
-                String responseData = "{\n" +
-                    "  \"success\": true,\n" +
-                    "  \"message\": \"Vente créée avec succès\",\n" +
-                    "  \"data\": { \"id\": " + UUID.randomUUID().toString().hashCode() + " }\n" +
-                    "}";
+                String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+                if (key == null || key.trim().isEmpty()) {
+                    sendJsonBytes(exchange, createSale(), 201);
+                    return;
+                }
                 
-                sendJsonResponse(exchange, responseData, 201);
+                // A retried checkout gets the first response back instead of a second sale
+                IdempotencyCache.Result result = saleSubmissions.execute(key.trim(), readRequestBody(exchange), SalesHandler::createSale);
+                if (result == null) {
+                    String response = "{\n" +
+                            "  \"success\": false,\n" +
+                            "  \"message\": \"Idempotency-Key was already used for a different request\"\n" +
+                            "}";
+                    sendJsonResponse(exchange, response, 422);
+                    return;
+                }
+                if (result.replayed) {
+                    exchange.getResponseHeaders().set("Idempotent-Replayed", "true");
+                }
+                sendJsonBytes(exchange, result.body, 201);
             } else {
                 // Method not allowed
                 exchange.sendResponseHeaders(405, 0);
@@ -1539,6 +2096,37 @@ public class EnhancedMock {
     
     // Sales Stats Handler for /api/sales/stats endpoint
     static class SalesStatsHandler implements HttpHandler {
+        private static final byte[] BODY = utf8("{\n" +
+                "  \"totalSales\": 34500,\n" +
+                "  \"salesCount\": 152,\n" +
+                "  \"todaySales\": 3850,\n" +
+                "  \"todaySalesCount\": 12,\n" +
+                "  \"averageSale\": 227,\n" +
+                "  \"mainPaymentMethod\": \"Espèces\",\n" +
+                "  \"mainPaymentMethodPercentage\": 68,\n" +
+                "  \"salesByPeriod\": [\n" +
+                "    { \"period\": \"Jan\", \"amount\": 4000 },\n" +
+                "    { \"period\": \"Fév\", \"amount\": 3000 },\n" +
+                "    { \"period\": \"Mar\", \"amount\": 5000 },\n" +
+                "    { \"period\": \"Avr\", \"amount\": 2780 },\n" +
+                "    { \"period\": \"Mai\", \"amount\": 3890 },\n" +
+                "    { \"period\": \"Jun\", \"amount\": 2390 }\n" +
+                "  ],\n" +
+                "  \"paymentMethods\": [\n" +
+                "    { \"name\": \"Espèces\", \"value\": 103 },\n" +
+                "    { \"name\": \"Carte\", \"value\": 32 },\n" +
+                "    { \"name\": \"Virement\", \"value\": 12 },\n" +
+                "    { \"name\": \"Mobile\", \"value\": 5 }\n" +
+                "  ],\n" +
+                "  \"topProducts\": [\n" +
+                "    { \"name\": \"Paracétamol 500mg\", \"quantity\": 245, \"total\": 29400, \"percentage\": 22 },\n" +
+                "    { \"name\": \"Oméprazole 20mg\", \"quantity\": 187, \"total\": 8415, \"percentage\": 16 },\n" +
+                "    { \"name\": \"Amoxicilline 1g\", \"quantity\": 145, \"total\": 12325, \"percentage\": 14 },\n" +
+                "    { \"name\": \"Ibuprofène 400mg\", \"quantity\": 98, \"total\": 19600, \"percentage\": 11 },\n" +
+                "    { \"name\": \"Doliprane 1000mg\", \"quantity\": 76, \"total\": 3990, \"percentage\": 8 }\n" +
+                "  ]\n" +
+                "}");
+        
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             // Add CORS headers
@@ -1550,39 +2138,7 @@ public class EnhancedMock {
             }
             
             if ("GET".equals(exchange.getRequestMethod())) {
-                // Create sample sales statistics data
-                String statsData = "{\n" +
-                    "  \"totalSales\": 34500,\n" +
-                    "  \"salesCount\": 152,\n" +
-                    "  \"todaySales\": 3850,\n" +
-                    "  \"todaySalesCount\": 12,\n" +
-                    "  \"averageSale\": 227,\n" +
-                    "  \"mainPaymentMethod\": \"Espèces\",\n" +
-                    "  \"mainPaymentMethodPercentage\": 68,\n" +
-                    "  \"salesByPeriod\": [\n" +
-                    "    { \"period\": \"Jan\", \"amount\": 4000 },\n" +
-                    "    { \"period\": \"Fév\", \"amount\": 3000 },\n" +
-                    "    { \"period\": \"Mar\", \"amount\": 5000 },\n" +
-                    "    { \"period\": \"Avr\", \"amount\": 2780 },\n" +
-                    "    { \"period\": \"Mai\", \"amount\": 3890 },\n" +
-                    "    { \"period\": \"Jun\", \"amount\": 2390 }\n" +
-                    "  ],\n" +
-                    "  \"paymentMethods\": [\n" +
-                    "    { \"name\": \"Espèces\", \"value\": 103 },\n" +
-                    "    { \"name\": \"Carte\", \"value\": 32 },\n" +
-                    "    { \"name\": \"Virement\", \"value\": 12 },\n" +
-                    "    { \"name\": \"Mobile\", \"value\": 5 }\n" +
-                    "  ],\n" +
-                    "  \"topProducts\": [\n" +
-                    "    { \"name\": \"Paracétamol 500mg\", \"quantity\": 245, \"total\": 29400, \"percentage\": 22 },\n" +
-                    "    { \"name\": \"Oméprazole 20mg\", \"quantity\": 187, \"total\": 8415, \"percentage\": 16 },\n" +
-                    "    { \"name\": \"Amoxicilline 1g\", \"quantity\": 145, \"total\": 12325, \"percentage\": 14 },\n" +
-                    "    { \"name\": \"Ibuprofène 400mg\", \"quantity\": 98, \"total\": 19600, \"percentage\": 11 },\n" +
-                    "    { \"name\": \"Doliprane 1000mg\", \"quantity\": 76, \"total\": 3990, \"percentage\": 8 }\n" +
-                    "  ]\n" +
-                    "}";
-                
-                sendJsonResponse(exchange, statsData);
+                sendJsonBytes(exchange, BODY, 200);
             } else {
                 // Method not allowed
                 exchange.sendResponseHeaders(405, 0);
@@ -1621,22 +2177,10 @@ public class EnhancedMock {
     
     // Dashboard Data Handler for /api/dashboard/data endpoint
     static class DashboardDataHandler implements HttpHandler {
-        @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            if (handlePreflight(exchange)) return;
-            
-            // Get the role from query parameters if available
-            String query = exchange.getRequestURI().getQuery();
-            String role = "admin"; // Default role
-            
-            if (query != null && query.contains("role=")) {
-                role = query.substring(query.indexOf("role=") + 5);
-                if (role.contains("&")) {
-                    role = role.substring(0, role.indexOf("&"));
-                }
-            }
-            
-            // Create dashboard data based on role
+        // The mock serves the same dashboard for every role, so it is encoded once
+        private static final byte[] BODY = utf8(buildDashboardData());
+        
+        private static String buildDashboardData() {
             StringBuilder responseJson = new StringBuilder();
             responseJson.append("{\n");
             responseJson.append("  \"stats\": {\n");
@@ -1682,8 +2226,14 @@ public class EnhancedMock {
             responseJson.append("    \"recent\": []\n");
             responseJson.append("  }\n");
             responseJson.append("}");
+            return responseJson.toString();
+        }
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (handlePreflight(exchange)) return;
             
-            sendJsonResponse(exchange, responseJson.toString());
+            sendJsonBytes(exchange, BODY, 200);
         }
     }
 } 
\ No newline at end of file
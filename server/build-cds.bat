@@ -0,0 +1,4 @@
+@echo off
+rem Build the class data sharing archive used by run-faststart.bat (JDK 13 or later).
+rem Needs a POSIX shell (Git Bash or WSL) to run the training script.
+sh build-cds.sh
@@ -0,0 +1,46 @@
+#!/bin/sh
+# Build a class data sharing archive for faster starts (JDK 13 or later).
+# Run after "mvn package"; start the server with run-faststart.sh afterwards.
+#
+# CDS only archives classes loaded from plain jars on the class path, so the Spring Boot jar is
+# unpacked into target/cds: the application classes as app.jar, the dependencies under lib/.
+# A training run starts the server, answers one request and exits, recording every class it
+# loaded into target/cds/pharmaflow.jsa.
+set -e
+cd "$(dirname "$0")"
+
+JAR=target/pharmaflow-server-0.0.1-SNAPSHOT.jar
+OUT=target/cds
+PORT=${CDS_TRAINING_PORT:-18181}
+
+[ -f "$JAR" ] || mvn -B -q package -DskipTests
+
+rm -rf "$OUT"
+mkdir -p "$OUT/exploded" "$OUT/lib"
+(cd "$OUT/exploded" && jar xf "../../../$JAR")
+cp "$OUT"/exploded/BOOT-INF/lib/*.jar "$OUT/lib/"
+jar cf "$OUT/app.jar" -C "$OUT/exploded/BOOT-INF/classes" .
+rm -rf "$OUT/exploded"
+
+# The archive is only used with the exact same class path, so it is written once to an argument file
+CP=app.jar
+for lib in $(cd "$OUT" && ls lib/*.jar | sort); do
+  CP="$CP:$lib"
+done
+printf -- '-cp %s\ncom.mzm.pharmaflow.PharmaFlowApplication\n' "$CP" > "$OUT/java.args"
+
+cd "$OUT"
+java -XX:ArchiveClassesAtExit=pharmaflow.jsa @java.args \
+  --server.port="$PORT" --spring.datasource.url=jdbc:h2:mem:cds-training \
+  --benchmark.startup.exit-after-first-request=true > training.log 2>&1 &
+PID=$!
+until curl -sf "http://localhost:$PORT/api/test/echo" > /dev/null; do
+  if ! kill -0 $PID 2>/dev/null; then
+    echo "Training run failed, see $OUT/training.log"
+    exit 1
+  fi
+  sleep 0.2
+done
+wait $PID || true
+[ -f pharmaflow.jsa ] || { echo "No archive written, see $OUT/training.log"; exit 1; }
+echo "Archive written: $OUT/pharmaflow.jsa ($(du -h pharmaflow.jsa | cut -f1))"
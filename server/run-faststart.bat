@@ -0,0 +1,8 @@
+@echo off
+echo Starting PharmaFlow backend server (fast start)...
+if exist target\cds\pharmaflow.jsa (
+    cd target\cds
+    java -XX:SharedArchiveFile=pharmaflow.jsa @java.args --spring.profiles.active=faststart --server.port=8081
+) else (
+    java -jar target/pharmaflow-server-0.0.1-SNAPSHOT.jar --spring.profiles.active=faststart --server.port=8081
+)
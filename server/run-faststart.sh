@@ -0,0 +1,9 @@
+#!/bin/sh
+# Start the server with the fast-start profile, using the class data sharing archive built by
+# build-cds.sh when present. Extra arguments are passed to the application.
+cd "$(dirname "$0")"
+if [ -f target/cds/pharmaflow.jsa ]; then
+  cd target/cds
+  exec java -XX:SharedArchiveFile=pharmaflow.jsa @java.args --spring.profiles.active=faststart "$@"
+fi
+exec java -jar target/pharmaflow-server-0.0.1-SNAPSHOT.jar --spring.profiles.active=faststart "$@"
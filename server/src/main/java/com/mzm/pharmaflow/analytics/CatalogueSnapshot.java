@@ -0,0 +1,251 @@
+package com.mzm.pharmaflow.analytics;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Immutable, column-oriented copy of one branch's catalogue.
+ *
+ * <p>Each product attribute used by analytics is a primitive array indexed by row, so a scan
+ * touches a few contiguous arrays instead of chasing one object graph per product, and no
+ * boxing or {@code BigDecimal} arithmetic happens per row. Prices are held in cents (see
+ * {@link com.mzm.pharmaflow.money.Money}), expiry dates as epoch days and categories as the
+ * {@link com.mzm.pharmaflow.model.ProductCategory} ordinal ({@link #NO_CATEGORY} when unset). About 40 bytes per product plus code and name.</p>
+ *
+ * <p>Besides the {@link com.mzm.pharmaflow.service.DataVersion} it was built at, a snapshot records
+ * the change log position it contains: every change up to {@link #getChangeSeq()} is in it, so a
+ * copy written to disk can be brought up to date from {@code change_log} after a restart.</p>
+ */
+public final class CatalogueSnapshot {
+
+    public static final short NO_CATEGORY = -1;
+    public static final int NO_EXPIRY = Integer.MAX_VALUE;
+
+    private final Long branchId;
+    private final long dataVersion;
+    private final long changeSeq;
+    private final long builtAt;
+    private final long buildMillis;
+    private final int size;
+
+    final long[] id;
+    final String[] code;
+    final String[] name;
+    final int[] quantity;
+    final int[] threshold;
+    final long[] priceCents;
+    final short[] category;
+    final int[] expiryEpochDay;
+    final boolean[] prescription;
+    final long[] rowVersion;
+
+    private CatalogueSnapshot(Builder builder, long buildMillis) {
+        // Trim to size so that scans never see unused slots
+        this(builder.branchId, builder.dataVersion, builder.changeSeq, buildMillis,
+                Arrays.copyOf(builder.id, builder.size), Arrays.copyOf(builder.code, builder.size),
+                Arrays.copyOf(builder.name, builder.size), Arrays.copyOf(builder.quantity, builder.size),
+                Arrays.copyOf(builder.threshold, builder.size), Arrays.copyOf(builder.priceCents, builder.size),
+                Arrays.copyOf(builder.category, builder.size), Arrays.copyOf(builder.expiryEpochDay, builder.size),
+                Arrays.copyOf(builder.prescription, builder.size), Arrays.copyOf(builder.rowVersion, builder.size));
+    }
+
+    /**
+     * Wrap columns of equal length, which the snapshot takes ownership of
+     */
+    CatalogueSnapshot(Long branchId, long dataVersion, long changeSeq, long buildMillis, long[] id, String[] code,
+                      String[] name, int[] quantity, int[] threshold, long[] priceCents, short[] category,
+                      int[] expiryEpochDay, boolean[] prescription, long[] rowVersion) {
+        this.branchId = branchId;
+        this.dataVersion = dataVersion;
+        this.changeSeq = changeSeq;
+        this.builtAt = System.currentTimeMillis();
+        this.buildMillis = buildMillis;
+        this.size = id.length;
+        this.id = id;
+        this.code = code;
+        this.name = name;
+        this.quantity = quantity;
+        this.threshold = threshold;
+        this.priceCents = priceCents;
+        this.category = category;
+        this.expiryEpochDay = expiryEpochDay;
+        this.prescription = prescription;
+        this.rowVersion = rowVersion;
+    }
+
+    public Long getBranchId() {
+        return branchId;
+    }
+
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    /**
+     * Get the change log position the snapshot contains
+     * @return sequence up to which every change is included
+     */
+    public long getChangeSeq() {
+        return changeSeq;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long id(int row) {
+        return id[row];
+    }
+
+    public String code(int row) {
+        return code[row];
+    }
+
+    public String name(int row) {
+        return name[row];
+    }
+
+    public int quantity(int row) {
+        return quantity[row];
+    }
+
+    public int threshold(int row) {
+        return threshold[row];
+    }
+
+    public long priceCents(int row) {
+        return priceCents[row];
+    }
+
+    public short category(int row) {
+        return category[row];
+    }
+
+    public int expiryEpochDay(int row) {
+        return expiryEpochDay[row];
+    }
+
+    public boolean needsPrescription(int row) {
+        return prescription[row];
+    }
+
+    public long version(int row) {
+        return rowVersion[row];
+    }
+
+    /**
+     * Approximate heap used by the primitive columns, excluding strings
+     */
+    public long columnBytes() {
+        return (long) size * (8 + 4 + 4 + 8 + 2 + 4 + 1 + 8);
+    }
+
+    public static Builder builder(Long branchId, long dataVersion, long changeSeq, int expectedSize) {
+        return new Builder(branchId, dataVersion, changeSeq, expectedSize);
+    }
+
+    /**
+     * Accumulates rows; not thread-safe.
+     */
+    public static final class Builder {
+        private final Long branchId;
+        private final long dataVersion;
+        private final long changeSeq;
+        private final long startedAt = System.nanoTime();
+        private int size;
+        private long[] id;
+        private String[] code;
+        private String[] name;
+        private int[] quantity;
+        private int[] threshold;
+        private long[] priceCents;
+        private short[] category;
+        private int[] expiryEpochDay;
+        private boolean[] prescription;
+        private long[] rowVersion;
+
+        private Builder(Long branchId, long dataVersion, long changeSeq, int expectedSize) {
+            this.branchId = branchId;
+            this.dataVersion = dataVersion;
+            this.changeSeq = changeSeq;
+            int capacity = Math.max(16, expectedSize);
+            id = new long[capacity];
+            code = new String[capacity];
+            name = new String[capacity];
+            quantity = new int[capacity];
+            threshold = new int[capacity];
+            priceCents = new long[capacity];
+            category = new short[capacity];
+            expiryEpochDay = new int[capacity];
+            prescription = new boolean[capacity];
+            rowVersion = new long[capacity];
+        }
+
+        public Builder add(long productId, String productCode, String productName, int productQuantity,
+                           int productThreshold, long productPriceCents, short productCategory, LocalDate expiry,
+                           boolean needsPrescription, long version) {
+            if (size == id.length) {
+                grow();
+            }
+            id[size] = productId;
+            code[size] = productCode;
+            name[size] = productName;
+            quantity[size] = productQuantity;
+            threshold[size] = productThreshold;
+            priceCents[size] = productPriceCents;
+            category[size] = productCategory;
+            expiryEpochDay[size] = expiry != null ? (int) expiry.toEpochDay() : NO_EXPIRY;
+            prescription[size] = needsPrescription;
+            rowVersion[size] = version;
+            size++;
+            return this;
+        }
+
+        /**
+         * Copy a row of another snapshot
+         */
+        public Builder add(CatalogueSnapshot from, int row) {
+            if (size == id.length) {
+                grow();
+            }
+            id[size] = from.id[row];
+            code[size] = from.code[row];
+            name[size] = from.name[row];
+            quantity[size] = from.quantity[row];
+            threshold[size] = from.threshold[row];
+            priceCents[size] = from.priceCents[row];
+            category[size] = from.category[row];
+            expiryEpochDay[size] = from.expiryEpochDay[row];
+            prescription[size] = from.prescription[row];
+            rowVersion[size] = from.rowVersion[row];
+            size++;
+            return this;
+        }
+
+        private void grow() {
+            int capacity = id.length + (id.length >> 1);
+            id = Arrays.copyOf(id, capacity);
+            code = Arrays.copyOf(code, capacity);
+            name = Arrays.copyOf(name, capacity);
+            quantity = Arrays.copyOf(quantity, capacity);
+            threshold = Arrays.copyOf(threshold, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+            category = Arrays.copyOf(category, capacity);
+            expiryEpochDay = Arrays.copyOf(expiryEpochDay, capacity);
+            prescription = Arrays.copyOf(prescription, capacity);
+            rowVersion = Arrays.copyOf(rowVersion, capacity);
+        }
+
+        public CatalogueSnapshot build() {
+            return new CatalogueSnapshot(this, (System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+}
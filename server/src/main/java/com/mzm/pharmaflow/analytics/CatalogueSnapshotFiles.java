@@ -0,0 +1,271 @@
+package com.mzm.pharmaflow.analytics;
+
+import com.mzm.pharmaflow.barcode.BarcodeService;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the catalogue snapshots on disk so that a restarted node serves analytics and barcode
+ * scans straight away instead of loading every product first.
+ *
+ * <p>With {@code analytics.snapshot.dir} set, each branch's snapshot is written to a
+ * {@link SnapshotFile} every {@code analytics.snapshot.write-interval-ms} and at shutdown. Once
+ * the application is ready, the files are mapped and installed, and the barcode index is seeded
+ * from them. A background thread then reads from {@code change_log} the products changed after
+ * each file's change position, reloads only those rows, and swaps the result in. A branch is
+ * loaded in full instead when its file is older than the sync horizon (deleted rows may have
+ * left the log), or when the caught-up snapshot does not hold as many products as the table.</p>
+ */
+@Component
+public class CatalogueSnapshotFiles implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueSnapshotFiles.class);
+
+    private static final String PREFIX = "catalogue-";
+    private static final String SUFFIX = ".snap";
+
+    // Range on (branch_id, seq) only: filtering the type in SQL makes the entity index look attractive
+    private static final String SELECT_CHANGES = "SELECT entity_type, entity_id FROM change_log"
+            + " WHERE branch_id = ? AND seq > ? AND seq <= ?";
+
+    @Autowired
+    private CatalogueSnapshotService snapshotService;
+
+    @Autowired
+    private BarcodeService barcodeService;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /** Empty to keep snapshots in memory only */
+    @Value("${analytics.snapshot.dir:}")
+    private String dir;
+
+    private Path directory;
+    private JdbcTemplate jdbcTemplate;
+
+    /** Last snapshot written or restored per branch, compared by identity */
+    private final Map<Long, CatalogueSnapshot> written = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong caughtUp = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private volatile long restoreMillis;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (dir == null || dir.trim().isEmpty()) {
+            return;
+        }
+        directory = Paths.get(dir.trim()).toAbsolutePath();
+        Files.createDirectories(directory);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // A snapshot is valid as of its change position even if stale, so whatever is held is worth keeping
+        writeAll();
+    }
+
+    /**
+     * Restore the snapshots written before the restart
+     */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (directory == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<CatalogueSnapshot> installed = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                CatalogueSnapshot snapshot = restore(file);
+                if (snapshot != null) {
+                    installed.add(snapshot);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not list catalogue snapshots in {}: {}", directory, e.getMessage());
+        }
+        restoreMillis = System.currentTimeMillis() - start;
+        if (installed.isEmpty()) {
+            return;
+        }
+        logger.info("Restored {} catalogue snapshots in {} ms", installed.size(), restoreMillis);
+        Thread catchUp = new Thread(() -> {
+            for (CatalogueSnapshot snapshot : installed) {
+                catchUp(snapshot);
+            }
+        }, "snapshot-catch-up");
+        catchUp.setDaemon(true);
+        catchUp.start();
+    }
+
+    /**
+     * Write the snapshots that changed since they were last written
+     */
+    @Scheduled(fixedDelayString = "${analytics.snapshot.write-interval-ms:300000}",
+            initialDelayString = "${analytics.snapshot.write-interval-ms:300000}")
+    public void writeAll() {
+        if (directory == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            for (CatalogueSnapshot snapshot : snapshotService.snapshots()) {
+                Long branchId = snapshot.getBranchId();
+                if (written.get(branchId) == snapshot) {
+                    continue;
+                }
+                try {
+                    long start = System.currentTimeMillis();
+                    long bytes = SnapshotFile.write(snapshot, fileFor(branchId));
+                    written.put(branchId, snapshot);
+                    writes.incrementAndGet();
+                    bytesWritten.addAndGet(bytes);
+                    logger.debug("Catalogue snapshot of branch {} written: {} products, {} bytes in {} ms",
+                            branchId, snapshot.size(), bytes, System.currentTimeMillis() - start);
+                } catch (IOException e) {
+                    logger.warn("Could not write catalogue snapshot of branch {}: {}", branchId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get snapshot file metrics
+     * @return directory, write and restore counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", directory != null);
+        if (directory != null) {
+            stats.put("dir", directory.toString());
+        }
+        stats.put("writes", writes.get());
+        stats.put("bytesWritten", bytesWritten.get());
+        stats.put("restored", restored.get());
+        stats.put("restoreMs", restoreMillis);
+        stats.put("caughtUp", caughtUp.get());
+        stats.put("discarded", discarded.get());
+        return stats;
+    }
+
+    private CatalogueSnapshot restore(Path file) {
+        String name = file.getFileName().toString();
+        Long branchId;
+        try {
+            branchId = Long.valueOf(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        try {
+            CatalogueSnapshot snapshot = SnapshotFile.read(file, dataVersion.current(branchId));
+            if (!branchId.equals(snapshot.getBranchId())) {
+                throw new IOException("File holds branch " + snapshot.getBranchId());
+            }
+            if (!snapshotService.install(snapshot)) {
+                // Loaded from the database by an early request
+                return null;
+            }
+            written.put(branchId, snapshot);
+            barcodeService.seed(snapshot);
+            restored.incrementAndGet();
+            logger.info("Catalogue snapshot of branch {} restored: {} products at change {}, {} ms",
+                    branchId, snapshot.size(), snapshot.getChangeSeq(), snapshot.getBuildMillis());
+            return snapshot;
+        } catch (IOException e) {
+            discarded.incrementAndGet();
+            logger.warn("Ignoring catalogue snapshot {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void catchUp(CatalogueSnapshot snapshot) {
+        Long branchId = snapshot.getBranchId();
+        long start = System.currentTimeMillis();
+        try {
+            long through = changeRecorder.safeUpperBound();
+            Set<Long> changed = TenantContext.callOnBranch(branchId, () -> {
+                List<Long> horizon = jdbcTemplate.queryForList(
+                        "SELECT purged_through FROM sync_horizons WHERE branch_id = ?", Long.class, branchId);
+                if (!horizon.isEmpty() && horizon.get(0) > snapshot.getChangeSeq()) {
+                    return null;
+                }
+                Set<Long> products = new LinkedHashSet<>();
+                jdbcTemplate.query(SELECT_CHANGES, rs -> {
+                    if (SyncEntityType.PRODUCT.name().equals(rs.getString("entity_type"))) {
+                        products.add(rs.getLong("entity_id"));
+                    }
+                }, branchId, snapshot.getChangeSeq(), through);
+                return products;
+            });
+            CatalogueSnapshot updated = changed != null ? snapshotService.catchUp(snapshot, changed, through) : null;
+            if (updated == null) {
+                discard(branchId, changed == null ? "older than the sync horizon" : "product count differs");
+                return;
+            }
+            barcodeService.catchUp(branchId, changed, through);
+            caughtUp.incrementAndGet();
+            logger.info("Catalogue snapshot of branch {} caught up: {} changed products in {} ms",
+                    branchId, changed.size(), System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            discard(branchId, e.getMessage());
+        }
+    }
+
+    /**
+     * Replace a restored snapshot and code index that cannot be caught up with full loads
+     */
+    private void discard(Long branchId, String reason) {
+        discarded.incrementAndGet();
+        logger.warn("Restored catalogue snapshot of branch {} discarded ({}), loading it again", branchId, reason);
+        try {
+            snapshotService.rebuild(branchId);
+            barcodeService.reload(branchId);
+        } catch (RuntimeException e) {
+            logger.warn("Could not reload catalogue of branch {}: {}", branchId, e.getMessage());
+        }
+    }
+
+    private Path fileFor(Long branchId) {
+        return directory.resolve(PREFIX + branchId + SUFFIX);
+    }
+}
@@ -0,0 +1,319 @@
+package com.mzm.pharmaflow.analytics;
+
+import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.money.Money;
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps one {@link CatalogueSnapshot} per branch.
+ *
+ * <p>A snapshot is tagged with the branch's {@link DataVersion}; a read that finds it behind
+ * rebuilds it first, and concurrent readers share that single rebuild. A scheduled refresh
+ * rebuilds stale snapshots ahead of readers, and also those older than
+ * {@code analytics.max-age-ms}, which picks up rows written outside the services.</p>
+ *
+ * <p>With {@code analytics.snapshot.dir} set, {@link CatalogueSnapshotFiles} restores the
+ * snapshots written before a restart through {@link #install} and brings them up to date with
+ * {@link #catchUp}, so the first reads after a restart do not wait for a full load.</p>
+ */
+@Service
+public class CatalogueSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueSnapshotService.class);
+
+    private static final String SELECT_CATALOGUE = "SELECT id, code, name, quantity, threshold, price, category,"
+            + " expiry_date, needs_prescription, version FROM products WHERE branch_id = ?";
+    private static final int IN_CHUNK = 500;
+
+    private static final ProductCategory[] CATEGORIES = ProductCategory.values();
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Value("${analytics.parallelism:0}")
+    private int parallelism;
+
+    @Value("${analytics.chunk-size:16384}")
+    private int chunkSize;
+
+    @Value("${analytics.max-age-ms:300000}")
+    private long maxAgeMs;
+
+    @Value("${analytics.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+    private ForkJoinPool pool;
+    private SnapshotAnalytics analytics;
+
+    private final Map<Long, CatalogueSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<CatalogueSnapshot>> builds = new ConcurrentHashMap<>();
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder sharedRebuilds = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        analytics = new SnapshotAnalytics(pool, chunkSize);
+        logger.info("Catalogue analytics started with parallelism {} and chunks of {} rows", threads, chunkSize);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdownNow();
+    }
+
+    public SnapshotAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Get the current branch's snapshot, rebuilding it if products changed since it was taken
+     * @return up-to-date snapshot
+     */
+    public CatalogueSnapshot current() {
+        Long branchId = TenantContext.getBranchId();
+        reads.increment();
+        CatalogueSnapshot snapshot = snapshots.get(branchId);
+        if (snapshot != null && snapshot.getDataVersion() == dataVersion.current(branchId)) {
+            return snapshot;
+        }
+        return rebuild(branchId);
+    }
+
+    /**
+     * Rebuild a branch's snapshot; callers arriving during a rebuild wait for it instead of starting another
+     * @param branchId branch ID
+     * @return new snapshot
+     */
+    public CatalogueSnapshot rebuild(Long branchId) {
+        CompletableFuture<CatalogueSnapshot> build = new CompletableFuture<>();
+        CompletableFuture<CatalogueSnapshot> running = builds.putIfAbsent(branchId, build);
+        if (running != null) {
+            sharedRebuilds.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            CatalogueSnapshot snapshot = TenantContext.callOnBranch(branchId, () -> load(branchId));
+            snapshots.put(branchId, snapshot);
+            rebuilds.increment();
+            build.complete(snapshot);
+            return snapshot;
+        } catch (RuntimeException e) {
+            build.completeExceptionally(e);
+            throw e;
+        } finally {
+            builds.remove(branchId, build);
+        }
+    }
+
+    private CatalogueSnapshot load(Long branchId) {
+        // Read the version first: a write committing during the load leaves the snapshot stale, never ahead
+        long version = dataVersion.current(branchId);
+        // Every change up to the bound is committed, so it is in what we read
+        long changeSeq = changeRecorder.safeUpperBound();
+        Integer expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE branch_id = ?",
+                Integer.class, branchId);
+        CatalogueSnapshot.Builder builder = CatalogueSnapshot.builder(branchId, version, changeSeq,
+                expected != null ? expected : 0);
+        Map<String, Short> categoryOrdinals = categoryOrdinals();
+        jdbcTemplate.query(SELECT_CATALOGUE + " ORDER BY id", rs -> {
+            addRow(builder, rs, categoryOrdinals);
+        }, branchId);
+        CatalogueSnapshot snapshot = builder.build();
+        logger.debug("Catalogue snapshot of branch {} rebuilt: {} products, version {}, {} ms",
+                branchId, snapshot.size(), version, snapshot.getBuildMillis());
+        return snapshot;
+    }
+
+    /**
+     * Serve a snapshot read back from disk until the branch's data changes
+     * @param snapshot restored snapshot
+     * @return false if the branch already has a snapshot, which is kept
+     */
+    boolean install(CatalogueSnapshot snapshot) {
+        return snapshots.putIfAbsent(snapshot.getBranchId(), snapshot) == null;
+    }
+
+    /**
+     * Apply the products changed since a restored snapshot was written: the rows of the changed
+     * products are read again and merged with the others, in ID order
+     * @param base installed snapshot
+     * @param productIds products with a change after {@code base.getChangeSeq()}
+     * @param changeSeq change log position the changed products were read up to
+     * @return updated snapshot, or null if it does not hold as many products as the table (rows
+     *         written without a change record) and must be rebuilt
+     */
+    CatalogueSnapshot catchUp(CatalogueSnapshot base, Collection<Long> productIds, long changeSeq) {
+        Long branchId = base.getBranchId();
+        return TenantContext.callOnBranch(branchId, () -> {
+            long version = dataVersion.current(branchId);
+            List<Long> ids = new ArrayList<>(new TreeSet<>(productIds));
+            CatalogueSnapshot.Builder changed = CatalogueSnapshot.builder(branchId, version, changeSeq, ids.size());
+            Map<String, Short> categoryOrdinals = categoryOrdinals();
+            for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+                List<Long> chunk = ids.subList(from, Math.min(from + IN_CHUNK, ids.size()));
+                Object[] params = new Object[chunk.size() + 1];
+                params[0] = branchId;
+                StringBuilder placeholders = new StringBuilder();
+                for (int i = 0; i < chunk.size(); i++) {
+                    params[i + 1] = chunk.get(i);
+                    placeholders.append(i > 0 ? ",?" : "?");
+                }
+                jdbcTemplate.query(SELECT_CATALOGUE + " AND id IN (" + placeholders + ") ORDER BY id", rs -> {
+                    addRow(changed, rs, categoryOrdinals);
+                }, params);
+            }
+            CatalogueSnapshot updates = changed.build();
+
+            CatalogueSnapshot snapshot = ids.isEmpty() ? base : merge(base, updates, new HashSet<>(ids));
+
+            Integer expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE branch_id = ?",
+                    Integer.class, branchId);
+            if (expected == null || expected != snapshot.size()) {
+                logger.info("Restored catalogue snapshot of branch {} has {} products, the table {}",
+                        branchId, snapshot.size(), expected);
+                return null;
+            }
+            // A rebuild that finished meanwhile is at least as recent
+            return snapshots.replace(branchId, base, snapshot) ? snapshot : snapshots.get(branchId);
+        });
+    }
+
+    private static CatalogueSnapshot merge(CatalogueSnapshot base, CatalogueSnapshot updates, Set<Long> replaced) {
+        CatalogueSnapshot.Builder merged = CatalogueSnapshot.builder(base.getBranchId(), updates.getDataVersion(),
+                updates.getChangeSeq(), base.size() + updates.size());
+        int next = 0;
+        for (int row = 0; row < base.size(); row++) {
+            long id = base.id(row);
+            while (next < updates.size() && updates.id(next) < id) {
+                merged.add(updates, next++);
+            }
+            if (!replaced.contains(id)) {
+                merged.add(base, row);
+            }
+        }
+        while (next < updates.size()) {
+            merged.add(updates, next++);
+        }
+        return merged.build();
+    }
+
+    /**
+     * Get the snapshots currently held
+     */
+    Collection<CatalogueSnapshot> snapshots() {
+        return snapshots.values();
+    }
+
+    private static Map<String, Short> categoryOrdinals() {
+        Map<String, Short> categoryOrdinals = new HashMap<>();
+        for (ProductCategory category : CATEGORIES) {
+            categoryOrdinals.put(category.name(), (short) category.ordinal());
+        }
+        return categoryOrdinals;
+    }
+
+    private static void addRow(CatalogueSnapshot.Builder builder, ResultSet rs, Map<String, Short> categoryOrdinals)
+            throws SQLException {
+        String category = rs.getString("category");
+        Date expiry = rs.getDate("expiry_date");
+        builder.add(rs.getLong("id"), rs.getString("code"), rs.getString("name"), rs.getInt("quantity"),
+                rs.getInt("threshold"), Money.toMinor(rs.getBigDecimal("price")),
+                category != null ? categoryOrdinals.getOrDefault(category, CatalogueSnapshot.NO_CATEGORY)
+                        : CatalogueSnapshot.NO_CATEGORY,
+                expiry != null ? expiry.toLocalDate() : null,
+                rs.getBoolean("needs_prescription"), rs.getLong("version"));
+    }
+
+    /**
+     * Rebuild snapshots that are behind their branch's data or older than the maximum age
+     */
+    @Scheduled(fixedDelayString = "${analytics.refresh-interval-ms:30000}")
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        for (CatalogueSnapshot snapshot : snapshots.values()) {
+            Long branchId = snapshot.getBranchId();
+            if (snapshot.getDataVersion() != dataVersion.current(branchId)
+                    || now - snapshot.getBuiltAt() > maxAgeMs) {
+                try {
+                    rebuild(branchId);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not refresh catalogue snapshot of branch {}: {}", branchId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get snapshot metrics
+     * @return snapshot sizes, ages and rebuild counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long now = System.currentTimeMillis();
+        Map<Long, Object> branches = new HashMap<>();
+        for (CatalogueSnapshot snapshot : snapshots.values()) {
+            Map<String, Object> branch = new HashMap<>();
+            branch.put("products", snapshot.size());
+            branch.put("dataVersion", snapshot.getDataVersion());
+            branch.put("changeSeq", snapshot.getChangeSeq());
+            branch.put("stale", snapshot.getDataVersion() != dataVersion.current(snapshot.getBranchId()));
+            branch.put("ageMs", now - snapshot.getBuiltAt());
+            branch.put("buildMs", snapshot.getBuildMillis());
+            branch.put("columnBytes", snapshot.columnBytes());
+            branches.put(snapshot.getBranchId(), branch);
+        }
+        stats.put("branches", branches);
+        stats.put("parallelism", analytics.getParallelism());
+        stats.put("chunkSize", chunkSize);
+        stats.put("reads", reads.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        stats.put("sharedRebuilds", sharedRebuilds.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,34 @@
+package com.mzm.pharmaflow.analytics;
+
+/**
+ * Ranking keys for top-k queries; higher ranks first.
+ */
+public enum RankMetric {
+    /** Stock value, quantity x price */
+    VALUE,
+    /** Units in stock */
+    QUANTITY,
+    /** Unit price */
+    PRICE,
+    /** Units missing to reach the threshold */
+    SHORTAGE,
+    /** Earliest expiry first */
+    EXPIRY;
+
+    long key(CatalogueSnapshot snapshot, int row) {
+        switch (this) {
+            case VALUE:
+                return snapshot.quantity[row] * snapshot.priceCents[row];
+            case QUANTITY:
+                return snapshot.quantity[row];
+            case PRICE:
+                return snapshot.priceCents[row];
+            case SHORTAGE:
+                return (long) snapshot.threshold[row] - snapshot.quantity[row];
+            case EXPIRY:
+                return -(long) snapshot.expiryEpochDay[row];
+            default:
+                throw new IllegalStateException("Unknown metric " + this);
+        }
+    }
+}
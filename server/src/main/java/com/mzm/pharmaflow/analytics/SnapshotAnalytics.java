@@ -0,0 +1,286 @@
+package com.mzm.pharmaflow.analytics;
+
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel scans over a {@link CatalogueSnapshot}.
+ *
+ * <p>The rows are cut into fixed chunks of {@code chunkSize}; a fork/join task splits the chunk
+ * range in halves until one chunk is left, which is scanned sequentially and writes its partial
+ * result into its own slot. Partials are combined once at the end, so the only allocations are
+ * one result object per chunk.</p>
+ */
+public class SnapshotAnalytics {
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public SnapshotAnalytics(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = Math.max(1024, chunkSize);
+    }
+
+    /**
+     * Aggregate the matching rows
+     * @param snapshot snapshot to scan
+     * @param filter rows to include
+     * @param today reference date for expiry counters
+     * @param soonDays products expiring within this many days count as expiring soon
+     * @return totals and per-category breakdown
+     */
+    public SnapshotSummary summarize(CatalogueSnapshot snapshot, SnapshotFilter filter, LocalDate today, int soonDays) {
+        int todayDay = (int) today.toEpochDay();
+        int soonDay = todayDay + soonDays;
+        boolean all = filter.isAll();
+        SnapshotSummary[] partials = new SnapshotSummary[chunkCount(snapshot)];
+        run(snapshot, partials.length, chunk -> {
+            SnapshotSummary summary = new SnapshotSummary();
+            int end = chunkEnd(snapshot, chunk);
+            int[] quantity = snapshot.quantity;
+            int[] threshold = snapshot.threshold;
+            long[] price = snapshot.priceCents;
+            short[] category = snapshot.category;
+            int[] expiry = snapshot.expiryEpochDay;
+            for (int row = chunk * chunkSize; row < end; row++) {
+                if (!all && !filter.matches(snapshot, row)) {
+                    continue;
+                }
+                int units = quantity[row];
+                long value = units * price[row];
+                summary.products++;
+                summary.units += units;
+                summary.valueCents += value;
+                if (units <= threshold[row]) {
+                    summary.lowStock++;
+                }
+                if (units <= 0) {
+                    summary.outOfStock++;
+                }
+                if (expiry[row] < todayDay) {
+                    summary.expired++;
+                } else if (expiry[row] < soonDay) {
+                    summary.expiringSoon++;
+                }
+                short c = category[row];
+                if (c >= 0) {
+                    summary.productsByCategory[c]++;
+                    summary.unitsByCategory[c] += units;
+                    summary.valueCentsByCategory[c] += value;
+                }
+            }
+            partials[chunk] = summary;
+        });
+        SnapshotSummary total = new SnapshotSummary();
+        for (SnapshotSummary partial : partials) {
+            total.merge(partial);
+        }
+        return total;
+    }
+
+    /**
+     * Find the matching rows
+     * @param snapshot snapshot to scan
+     * @param filter rows to include
+     * @return matching row numbers in snapshot order
+     */
+    public int[] filter(CatalogueSnapshot snapshot, SnapshotFilter filter) {
+        int[][] partials = new int[chunkCount(snapshot)][];
+        int[] counts = new int[partials.length];
+        run(snapshot, partials.length, chunk -> {
+            int start = chunk * chunkSize;
+            int end = chunkEnd(snapshot, chunk);
+            int[] rows = new int[end - start];
+            int count = 0;
+            for (int row = start; row < end; row++) {
+                if (filter.matches(snapshot, row)) {
+                    rows[count++] = row;
+                }
+            }
+            partials[chunk] = rows;
+            counts[chunk] = count;
+        });
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        int[] result = new int[total];
+        int offset = 0;
+        for (int chunk = 0; chunk < partials.length; chunk++) {
+            System.arraycopy(partials[chunk], 0, result, offset, counts[chunk]);
+            offset += counts[chunk];
+        }
+        return result;
+    }
+
+    /**
+     * Find the k best matching rows by a metric
+     * @param snapshot snapshot to scan
+     * @param filter rows to include
+     * @param metric ranking key, higher first
+     * @param k number of rows to return
+     * @return row numbers, best first; ties keep snapshot order
+     */
+    public int[] topK(CatalogueSnapshot snapshot, SnapshotFilter filter, RankMetric metric, int k) {
+        if (k <= 0) {
+            return new int[0];
+        }
+        TopKHeap[] partials = new TopKHeap[chunkCount(snapshot)];
+        boolean all = filter.isAll();
+        run(snapshot, partials.length, chunk -> {
+            TopKHeap heap = new TopKHeap(k);
+            int end = chunkEnd(snapshot, chunk);
+            for (int row = chunk * chunkSize; row < end; row++) {
+                if (all || filter.matches(snapshot, row)) {
+                    heap.offer(row, metric.key(snapshot, row));
+                }
+            }
+            partials[chunk] = heap;
+        });
+        TopKHeap merged = new TopKHeap(k);
+        for (TopKHeap partial : partials) {
+            for (int i = 0; i < partial.size; i++) {
+                merged.offer(partial.rows[i], partial.keys[i]);
+            }
+        }
+        return merged.sortedRows();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    private int chunkCount(CatalogueSnapshot snapshot) {
+        return (snapshot.size() + chunkSize - 1) / chunkSize;
+    }
+
+    private int chunkEnd(CatalogueSnapshot snapshot, int chunk) {
+        return (int) Math.min((long) (chunk + 1) * chunkSize, snapshot.size());
+    }
+
+    private void run(CatalogueSnapshot snapshot, int chunks, ChunkScan scan) {
+        if (chunks == 0) {
+            return;
+        }
+        if (chunks == 1) {
+            scan.scan(0);
+            return;
+        }
+        pool.invoke(new ChunkRange(scan, 0, chunks));
+    }
+
+    private interface ChunkScan {
+        void scan(int chunk);
+    }
+
+    private static final class ChunkRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ChunkScan scan;
+        private final int from;
+        private final int to;
+
+        private ChunkRange(ChunkScan scan, int from, int to) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                scan.scan(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkRange(scan, from, middle), new ChunkRange(scan, middle, to));
+        }
+    }
+
+    /**
+     * Bounded min-heap keeping the k highest keys; on equal keys the lower row wins.
+     */
+    private static final class TopKHeap {
+        private final int capacity;
+        private final int[] rows;
+        private final long[] keys;
+        private int size;
+
+        private TopKHeap(int capacity) {
+            this.capacity = capacity;
+            this.rows = new int[capacity];
+            this.keys = new long[capacity];
+        }
+
+        private void offer(int row, long key) {
+            if (size < capacity) {
+                rows[size] = row;
+                keys[size] = key;
+                siftUp(size++);
+            } else if (better(row, key, rows[0], keys[0])) {
+                rows[0] = row;
+                keys[0] = key;
+                siftDown(0);
+            }
+        }
+
+        private static boolean better(int row, long key, int otherRow, long otherKey) {
+            return key > otherKey || (key == otherKey && row < otherRow);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(rows[parent], keys[parent], rows[i], keys[i])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                int worst = left;
+                int right = left + 1;
+                if (right < size && better(rows[left], keys[left], rows[right], keys[right])) {
+                    worst = right;
+                }
+                if (!better(rows[i], keys[i], rows[worst], keys[worst])) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+        }
+
+        private int[] sortedRows() {
+            // Pop the worst repeatedly and fill from the back
+            int[] result = new int[size];
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = rows[0];
+                size--;
+                if (size > 0) {
+                    rows[0] = rows[size];
+                    keys[0] = keys[size];
+                    siftDown(0);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.mzm.pharmaflow.analytics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * On-disk form of a {@link CatalogueSnapshot}, read back through a memory mapping.
+ *
+ * <p>A 64-byte header (magic, format version, branch, change sequence, write time, row count,
+ * body length and a CRC32 of the body) is followed by the columns, widest first, each as one
+ * contiguous big-endian array, then every row's code and name as a length and UTF-8 bytes. The
+ * reader copies each column out of the mapping in a single bulk get. A file of another format
+ * version, truncated or failing its checksum is rejected, and the snapshot is built from the
+ * database as usual. Files are written beside their target and moved into place, so a reader
+ * never sees a partial file.</p>
+ */
+final class SnapshotFile {
+
+    /** "PFCS" */
+    private static final int MAGIC = 0x50464353;
+    /** Bumped whenever the layout changes; older files are ignored */
+    static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 64;
+    /** Columns plus the two string lengths */
+    private static final int MIN_ROW_BYTES = 3 * 8 + 3 * 4 + 2 + 1 + 2 * 4;
+    private static final int NULL_STRING = -1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Write a snapshot, replacing the file atomically
+     * @param snapshot snapshot to write
+     * @param target file to create or replace
+     * @return bytes written
+     */
+    static long write(CatalogueSnapshot snapshot, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        int rows = snapshot.size();
+        CRC32 crc = new CRC32();
+        long length;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_BYTES);
+            // Not closed: that would close the channel before the header is written
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(snapshot.id[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(snapshot.rowVersion[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeLong(snapshot.priceCents[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeInt(snapshot.quantity[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeInt(snapshot.threshold[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeInt(snapshot.expiryEpochDay[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeShort(snapshot.category[row]);
+            }
+            for (int row = 0; row < rows; row++) {
+                out.writeByte(snapshot.prescription[row] ? 1 : 0);
+            }
+            for (int row = 0; row < rows; row++) {
+                writeString(out, snapshot.code[row]);
+                writeString(out, snapshot.name[row]);
+            }
+            out.flush();
+            length = channel.position();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC)
+                    .putInt(FORMAT)
+                    .putLong(snapshot.getBranchId())
+                    .putLong(snapshot.getChangeSeq())
+                    .putLong(System.currentTimeMillis())
+                    .putInt(rows)
+                    .putInt((int) crc.getValue())
+                    .putLong(length - HEADER_BYTES);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return length;
+    }
+
+    /**
+     * Read a snapshot back
+     * @param file snapshot file
+     * @param dataVersion data version to give the snapshot
+     * @return snapshot as of the change sequence it was written with
+     * @throws IOException if the file cannot be read or is not a valid snapshot of this format
+     */
+    static CatalogueSnapshot read(Path file, long dataVersion) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected snapshot file size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a catalogue snapshot");
+            }
+            int format = buffer.getInt();
+            if (format != FORMAT) {
+                throw new IOException("Snapshot format " + format + " is not supported");
+            }
+            long branchId = buffer.getLong();
+            long changeSeq = buffer.getLong();
+            buffer.getLong(); // written at
+            int rows = buffer.getInt();
+            int checksum = buffer.getInt();
+            long bodyBytes = buffer.getLong();
+            if (rows < 0 || bodyBytes != size - HEADER_BYTES || (long) rows * MIN_ROW_BYTES > bodyBytes) {
+                throw new IOException("Truncated snapshot file");
+            }
+            buffer.position(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            long[] id = new long[rows];
+            long[] rowVersion = new long[rows];
+            long[] priceCents = new long[rows];
+            int[] quantity = new int[rows];
+            int[] threshold = new int[rows];
+            int[] expiryEpochDay = new int[rows];
+            short[] category = new short[rows];
+            boolean[] prescription = new boolean[rows];
+            String[] code = new String[rows];
+            String[] name = new String[rows];
+
+            buffer.asLongBuffer().get(id);
+            skip(buffer, rows * 8);
+            buffer.asLongBuffer().get(rowVersion);
+            skip(buffer, rows * 8);
+            buffer.asLongBuffer().get(priceCents);
+            skip(buffer, rows * 8);
+            buffer.asIntBuffer().get(quantity);
+            skip(buffer, rows * 4);
+            buffer.asIntBuffer().get(threshold);
+            skip(buffer, rows * 4);
+            buffer.asIntBuffer().get(expiryEpochDay);
+            skip(buffer, rows * 4);
+            buffer.asShortBuffer().get(category);
+            skip(buffer, rows * 2);
+            for (int row = 0; row < rows; row++) {
+                prescription[row] = buffer.get() != 0;
+            }
+            byte[] scratch = new byte[256];
+            for (int row = 0; row < rows; row++) {
+                scratch = ensure(scratch, buffer);
+                code[row] = readString(buffer, scratch);
+                scratch = ensure(scratch, buffer);
+                name[row] = readString(buffer, scratch);
+            }
+            return new CatalogueSnapshot(branchId, dataVersion, changeSeq, (System.nanoTime() - start) / 1_000_000,
+                    id, code, name, quantity, threshold, priceCents, category, expiryEpochDay, prescription,
+                    rowVersion);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException and friends: the body does not match its header
+            throw new IOException("Corrupt snapshot file: " + e, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Grow the scratch array to the length of the next string, without consuming it */
+    private static byte[] ensure(byte[] scratch, ByteBuffer buffer) {
+        int length = buffer.getInt(buffer.position());
+        return length > scratch.length ? new byte[length] : scratch;
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void skip(ByteBuffer buffer, int bytes) {
+        buffer.position(buffer.position() + bytes);
+    }
+}
@@ -0,0 +1,63 @@
+package com.mzm.pharmaflow.analytics;
+
+import com.mzm.pharmaflow.model.ProductCategory;
+
+import java.time.LocalDate;
+
+/**
+ * Row predicate over a {@link CatalogueSnapshot}, evaluated on primitive columns only.
+ */
+public final class SnapshotFilter {
+
+    public static final SnapshotFilter ALL = new SnapshotFilter();
+
+    private static final short ANY_CATEGORY = Short.MIN_VALUE;
+
+    private short category = ANY_CATEGORY;
+    private boolean lowStockOnly;
+    private int expiresBeforeDay = Integer.MAX_VALUE;
+    private int minQuantity = Integer.MIN_VALUE;
+    private int maxQuantity = Integer.MAX_VALUE;
+
+    public SnapshotFilter category(ProductCategory value) {
+        category = value != null ? (short) value.ordinal() : ANY_CATEGORY;
+        return this;
+    }
+
+    public SnapshotFilter lowStockOnly(boolean value) {
+        lowStockOnly = value;
+        return this;
+    }
+
+    /**
+     * Keep products expiring strictly before a date, already expired ones included
+     */
+    public SnapshotFilter expiresBefore(LocalDate date) {
+        expiresBeforeDay = date != null ? (int) date.toEpochDay() : Integer.MAX_VALUE;
+        return this;
+    }
+
+    public SnapshotFilter minQuantity(Integer value) {
+        minQuantity = value != null ? value : Integer.MIN_VALUE;
+        return this;
+    }
+
+    public SnapshotFilter maxQuantity(Integer value) {
+        maxQuantity = value != null ? value : Integer.MAX_VALUE;
+        return this;
+    }
+
+    boolean matches(CatalogueSnapshot snapshot, int row) {
+        int quantity = snapshot.quantity[row];
+        return (category == ANY_CATEGORY || snapshot.category[row] == category)
+                && (!lowStockOnly || quantity <= snapshot.threshold[row])
+                && snapshot.expiryEpochDay[row] < expiresBeforeDay
+                && quantity >= minQuantity
+                && quantity <= maxQuantity;
+    }
+
+    boolean isAll() {
+        return category == ANY_CATEGORY && !lowStockOnly && expiresBeforeDay == Integer.MAX_VALUE
+                && minQuantity == Integer.MIN_VALUE && maxQuantity == Integer.MAX_VALUE;
+    }
+}
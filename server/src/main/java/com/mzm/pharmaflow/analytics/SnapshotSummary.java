@@ -0,0 +1,78 @@
+package com.mzm.pharmaflow.analytics;
+
+import com.mzm.pharmaflow.model.ProductCategory;
+
+/**
+ * Aggregates over the rows of a snapshot that match a filter. Partial results of
+ * parallel chunks are combined with {@link #merge}.
+ */
+public final class SnapshotSummary {
+
+    private static final int CATEGORIES = ProductCategory.values().length;
+
+    long products;
+    long units;
+    long valueCents;
+    long lowStock;
+    long outOfStock;
+    long expired;
+    long expiringSoon;
+    final long[] productsByCategory = new long[CATEGORIES];
+    final long[] unitsByCategory = new long[CATEGORIES];
+    final long[] valueCentsByCategory = new long[CATEGORIES];
+
+    void merge(SnapshotSummary other) {
+        products += other.products;
+        units += other.units;
+        valueCents += other.valueCents;
+        lowStock += other.lowStock;
+        outOfStock += other.outOfStock;
+        expired += other.expired;
+        expiringSoon += other.expiringSoon;
+        for (int i = 0; i < CATEGORIES; i++) {
+            productsByCategory[i] += other.productsByCategory[i];
+            unitsByCategory[i] += other.unitsByCategory[i];
+            valueCentsByCategory[i] += other.valueCentsByCategory[i];
+        }
+    }
+
+    public long getProducts() {
+        return products;
+    }
+
+    public long getUnits() {
+        return units;
+    }
+
+    public long getValueCents() {
+        return valueCents;
+    }
+
+    public long getLowStock() {
+        return lowStock;
+    }
+
+    public long getOutOfStock() {
+        return outOfStock;
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public long getExpiringSoon() {
+        return expiringSoon;
+    }
+
+    public long getProducts(ProductCategory category) {
+        return productsByCategory[category.ordinal()];
+    }
+
+    public long getUnits(ProductCategory category) {
+        return unitsByCategory[category.ordinal()];
+    }
+
+    public long getValueCents(ProductCategory category) {
+        return valueCentsByCategory[category.ordinal()];
+    }
+}
@@ -0,0 +1,24 @@
+package com.mzm.pharmaflow.audit;
+
+/**
+ * Audited operations
+ */
+public enum AuditAction {
+    LOGIN,
+    LOGIN_FAILED,
+    LOGIN_THROTTLED,
+    TOKEN_REFRESH,
+    LOGOUT,
+    TOKENS_REVOKED,
+    CLIENT_LIST,
+    CLIENT_READ,
+    CLIENT_SEARCH,
+    CLIENT_CREATE,
+    CLIENT_UPDATE,
+    CLIENT_DELETE,
+    CLIENT_MERGE,
+    PRODUCT_CREATE,
+    PRODUCT_UPDATE,
+    PRODUCT_DELETE,
+    STOCK_RECONCILIATION
+}
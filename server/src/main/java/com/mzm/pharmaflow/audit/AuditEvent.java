@@ -0,0 +1,22 @@
+package com.mzm.pharmaflow.audit;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One audited operation, as captured on the request thread
+ */
+@Getter
+@AllArgsConstructor
+public class AuditEvent {
+
+    /** Epoch milliseconds */
+    private final long occurredAt;
+    private final AuditAction action;
+    private final String username;
+    private final Long branchId;
+    /** ID of the client or product concerned, if any */
+    private final String resourceId;
+    private final String detail;
+    private final String remoteAddress;
+}
@@ -0,0 +1,348 @@
+package com.mzm.pharmaflow.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mzm.pharmaflow.security.services.UserDetailsImpl;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Audit trail of client data access, stock changes and authentication.
+ *
+ * <p>{@link #record} only stores the event in an {@link AuditRingBuffer}, so the request pays
+ * for a CAS rather than an insert. One writer thread drains the buffer in batches of up to
+ * {@code audit.batch-size} into the configured sink: the {@code audit_events} table
+ * ({@code audit.sink=jdbc}) or append-only segment files ({@code audit.sink=file}, synced
+ * according to {@code audit.file.fsync}). A failed batch is retried until it is stored.</p>
+ *
+ * <p>When the buffer is full the event is dropped and counted, unless {@code audit.overflow=wait},
+ * in which case the caller waits up to {@code audit.offer-timeout-ms} for room first.</p>
+ */
+@Component
+public class AuditLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final int MAX_DETAIL = 500;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${audit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${audit.buffer-size:65536}")
+    private int bufferSize;
+
+    @Value("${audit.batch-size:500}")
+    private int batchSize;
+
+    @Value("${audit.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${audit.overflow:drop}")
+    private String overflow;
+
+    @Value("${audit.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${audit.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${audit.sink:jdbc}")
+    private String sinkType;
+
+    @Value("${audit.file.directory:audit}")
+    private String fileDirectory;
+
+    @Value("${audit.file.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${audit.file.fsync:batch}")
+    private String fsync;
+
+    @Value("${audit.file.fsync-interval-ms:1000}")
+    private long fsyncIntervalMs;
+
+    private AuditRingBuffer buffer;
+    private AuditSink sink;
+    private JdbcTemplate jdbcTemplate;
+    private boolean waitOnOverflow;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LongAdder captured = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private final AtomicLong writeMicros = new AtomicLong();
+    private final AtomicLong maxBatchMicros = new AtomicLong();
+    private volatile long eventsPerSecond;
+    private volatile String lastError;
+
+    @PostConstruct
+    public void start() throws Exception {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        if (!enabled) {
+            logger.info("Audit trail disabled");
+            return;
+        }
+        buffer = new AuditRingBuffer(bufferSize);
+        waitOnOverflow = "wait".equalsIgnoreCase(overflow);
+        if ("file".equalsIgnoreCase(sinkType)) {
+            sink = new FileAuditSink(Paths.get(fileDirectory), segmentBytes,
+                    FsyncPolicy.valueOf(fsync.toUpperCase(Locale.ROOT)), fsyncIntervalMs, objectMapper);
+        } else if ("jdbc".equalsIgnoreCase(sinkType)) {
+            sink = new JdbcAuditSink(jdbcTemplate);
+        } else {
+            throw new IllegalStateException("Unknown audit sink: " + sinkType);
+        }
+        running = true;
+        writer = new Thread(this::drain, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Audit trail started: {} sink, buffer of {} events, overflow {}", sinkType, bufferSize, overflow);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Audit an operation of the authenticated user of the current request
+     * @param action operation
+     * @param resourceId client or product concerned, or null
+     * @param detail free text, or null
+     */
+    public void record(AuditAction action, Object resourceId, String detail) {
+        if (!enabled) {
+            return;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication != null ? authentication.getName() : null;
+        Long branchId = null;
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl) {
+            branchId = ((UserDetailsImpl) authentication.getPrincipal()).getBranchId();
+        }
+        if (branchId == null && TenantContext.isSet()) {
+            branchId = TenantContext.getBranchId();
+        }
+        record(action, username, branchId, resourceId, detail, currentRemoteAddress());
+    }
+
+    /**
+     * Audit an operation on behalf of a given user, e.g. a login
+     * @param action operation
+     * @param username user concerned
+     * @param branchId branch, or null
+     * @param resourceId client or product concerned, or null
+     * @param detail free text, or null
+     * @param remoteAddress client address, or null
+     */
+    public void record(AuditAction action, String username, Long branchId, Object resourceId, String detail,
+                       String remoteAddress) {
+        if (!enabled) {
+            return;
+        }
+        if (detail != null && detail.length() > MAX_DETAIL) {
+            detail = detail.substring(0, MAX_DETAIL);
+        }
+        AuditEvent event = new AuditEvent(System.currentTimeMillis(), action, username, branchId,
+                resourceId != null ? String.valueOf(resourceId) : null, detail, remoteAddress);
+        captured.increment();
+        if (buffer.offer(event)) {
+            return;
+        }
+        if (waitOnOverflow) {
+            waits.increment();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+            do {
+                LockSupport.parkNanos(50_000);
+                if (buffer.offer(event)) {
+                    return;
+                }
+            } while (System.nanoTime() < deadline);
+        }
+        dropped.increment();
+    }
+
+    private static String currentRemoteAddress() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr();
+        }
+        return null;
+    }
+
+    private void drain() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        long windowStart = System.currentTimeMillis();
+        long windowWritten = 0;
+        while (true) {
+            boolean stopping = !running;
+            int count = buffer.drainTo(batch, batchSize);
+            if (count > 0) {
+                if (!write(batch, stopping)) {
+                    logger.error("Audit writer stopping with {} unwritten events", batch.size() + buffer.size());
+                    break;
+                }
+                batch.clear();
+            }
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 1000) {
+                long total = written.get();
+                eventsPerSecond = (total - windowWritten) * 1000 / (now - windowStart);
+                windowWritten = total;
+                windowStart = now;
+            }
+            if (count < batchSize) {
+                if (stopping) {
+                    break;
+                }
+                try {
+                    sink.idle();
+                } catch (Exception e) {
+                    lastError = e.getMessage();
+                }
+                // A full batch is written straight away; otherwise give the buffer time to fill
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(flushIntervalMs));
+            }
+        }
+        try {
+            sink.close();
+        } catch (Exception e) {
+            logger.warn("Could not close the audit sink: {}", e.getMessage());
+        }
+    }
+
+    private boolean write(List<AuditEvent> batch, boolean stopping) {
+        int attempts = 0;
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                sink.write(batch);
+                long micros = (System.nanoTime() - start) / 1000;
+                writeMicros.addAndGet(micros);
+                if (micros > maxBatchMicros.get()) {
+                    maxBatchMicros.set(micros);
+                }
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                return true;
+            } catch (Exception e) {
+                writeFailures.incrementAndGet();
+                lastError = e.getMessage();
+                attempts++;
+                if (attempts == 1) {
+                    logger.warn("Could not write {} audit events, retrying: {}", batch.size(), e.getMessage());
+                }
+                if (stopping && attempts >= 3) {
+                    return false;
+                }
+                // Events keep accumulating in the buffer meanwhile, and are dropped once it is full
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(retryBackoffMs));
+            }
+        }
+    }
+
+    /**
+     * Get the most recent audit events stored in the database
+     * @param username only events of this user, or null
+     * @param action only this operation, or null
+     * @param limit maximum number of events
+     * @return events, newest first
+     * @throws IllegalStateException if events are written to files
+     */
+    public List<AuditEvent> findRecent(String username, AuditAction action, int limit) {
+        if (!"jdbc".equalsIgnoreCase(sinkType)) {
+            throw new IllegalStateException("Audit events are written to files in " + fileDirectory);
+        }
+        StringBuilder sql = new StringBuilder("SELECT occurred_at, action, username, branch_id, resource_id, detail, "
+                + "remote_address FROM audit_events WHERE 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (username != null) {
+            sql.append(" AND username = ?");
+            params.add(username);
+        }
+        if (action != null) {
+            sql.append(" AND action = ?");
+            params.add(action.name());
+        }
+        sql.append(" ORDER BY occurred_at DESC, id DESC LIMIT ?");
+        params.add(limit);
+        return TenantContext.callOnDefaultStore(() -> jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Number branchId = (Number) rs.getObject("branch_id");
+            return new AuditEvent(rs.getTimestamp("occurred_at").getTime(), AuditAction.valueOf(rs.getString("action")),
+                    rs.getString("username"), branchId != null ? branchId.longValue() : null, rs.getString("resource_id"),
+                    rs.getString("detail"), rs.getString("remote_address"));
+        }, params.toArray()));
+    }
+
+    /**
+     * Get audit trail metrics
+     * @return buffer occupancy, drop counts and writer throughput
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        if (!enabled) {
+            return stats;
+        }
+        long batchCount = batches.get();
+        stats.put("sink", sinkType.toLowerCase(Locale.ROOT));
+        stats.put("bufferCapacity", buffer.capacity());
+        stats.put("buffered", buffer.size());
+        stats.put("captured", captured.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("overflowWaits", waits.sum());
+        stats.put("written", written.get());
+        stats.put("batches", batchCount);
+        stats.put("averageBatchSize", batchCount > 0 ? written.get() / batchCount : 0);
+        stats.put("averageBatchMicros", batchCount > 0 ? writeMicros.get() / batchCount : 0);
+        stats.put("maxBatchMicros", maxBatchMicros.get());
+        stats.put("eventsPerSecond", eventsPerSecond);
+        stats.put("writeFailures", writeFailures.get());
+        stats.put("lastError", lastError);
+        if (sink instanceof FileAuditSink) {
+            FileAuditSink file = (FileAuditSink) sink;
+            stats.put("segment", file.getSegment() != null ? file.getSegment().toString() : null);
+            stats.put("fsync", fsync.toLowerCase(Locale.ROOT));
+            stats.put("syncs", file.getSyncs());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mzm.pharmaflow.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ *
+ * <p>Each slot carries a sequence telling whose turn it is: a producer claims the next position
+ * with one CAS on the tail, stores its event and publishes it by advancing the slot's sequence;
+ * the consumer takes the event and hands the slot over to the producer one lap later. A full
+ * buffer is reported to the producer instead of making it wait.</p>
+ */
+final class AuditRingBuffer {
+
+    private final AuditEvent[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    /** Written by the consumer only; volatile for {@link #size()} */
+    private volatile long head;
+
+    AuditRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Audit buffer size must be a power of two: " + capacity);
+        }
+        events = new AuditEvent[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Add an event, from any thread
+     * @param event event to add
+     * @return false if the buffer is full
+     */
+    boolean offer(AuditEvent event) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[index] = event;
+                    // Publishes the event to the consumer
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // The slot still holds the event of the previous lap
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Move the published events to a list, from the consumer thread only
+     * @param target list to add to
+     * @param max maximum number of events
+     * @return number of events moved
+     */
+    int drainTo(List<AuditEvent> target, int max) {
+        long position = head;
+        int count = 0;
+        while (count < max) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            target.add(events[index]);
+            events[index] = null;
+            sequences.lazySet(index, position + events.length);
+            position++;
+            count++;
+        }
+        head = position;
+        return count;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return events.length;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mzm.pharmaflow.audit;
+
+import java.util.List;
+
+/**
+ * Destination of audit events, only ever called from the audit writer thread
+ */
+interface AuditSink {
+
+    /**
+     * Store a batch of events; on failure the same batch is written again
+     * @param events events, oldest first
+     * @throws Exception if the batch could not be stored
+     */
+    void write(List<AuditEvent> events) throws Exception;
+
+    /**
+     * Called when no event is waiting, e.g. to sync written data
+     * @throws Exception if pending data could not be flushed
+     */
+    default void idle() throws Exception {
+    }
+
+    /**
+     * Flush and release resources
+     * @throws Exception if pending data could not be flushed
+     */
+    default void close() throws Exception {
+    }
+}
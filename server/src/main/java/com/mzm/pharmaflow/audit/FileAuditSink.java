@@ -0,0 +1,109 @@
+package com.mzm.pharmaflow.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Appends audit events as JSON lines to segment files {@code audit-<start time>.log}. A new segment
+ * is started once the current one exceeds {@code audit.file.segment-bytes}; segments are never
+ * rewritten. Each batch is encoded in memory and appended with a single write.
+ */
+class FileAuditSink implements AuditSink {
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final ObjectMapper objectMapper;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+
+    private FileChannel channel;
+    private volatile Path segment;
+    private long segmentSize;
+    private boolean unsynced;
+    private long lastSync;
+    private volatile long syncs;
+
+    FileAuditSink(Path directory, long segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMs,
+                  ObjectMapper objectMapper) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void write(List<AuditEvent> events) throws IOException {
+        buffer.reset();
+        for (AuditEvent event : events) {
+            objectMapper.writeValue(buffer, event);
+            buffer.write('\n');
+        }
+        if (channel == null || segmentSize >= segmentBytes) {
+            roll();
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            segmentSize += channel.write(bytes);
+        }
+        unsynced = true;
+        if (fsyncPolicy == FsyncPolicy.BATCH
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && System.currentTimeMillis() - lastSync >= fsyncIntervalMs)) {
+            sync();
+        }
+    }
+
+    @Override
+    public void idle() throws IOException {
+        if (unsynced && fsyncPolicy == FsyncPolicy.INTERVAL) {
+            sync();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            if (unsynced && fsyncPolicy != FsyncPolicy.NONE) {
+                sync();
+            }
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        close();
+        String name = "audit-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + ".log";
+        segment = directory.resolve(name);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsynced = false;
+        lastSync = System.currentTimeMillis();
+        syncs++;
+    }
+
+    Path getSegment() {
+        return segment;
+    }
+
+    long getSyncs() {
+        return syncs;
+    }
+}
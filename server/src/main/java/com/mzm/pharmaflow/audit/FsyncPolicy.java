@@ -0,0 +1,13 @@
+package com.mzm.pharmaflow.audit;
+
+/**
+ * When the file sink forces written audit events to disk
+ */
+public enum FsyncPolicy {
+    /** After every batch: nothing acknowledged by the writer is lost on a crash */
+    BATCH,
+    /** At most every {@code audit.file.fsync-interval-ms}, and when the writer is idle */
+    INTERVAL,
+    /** Left to the operating system */
+    NONE
+}
@@ -0,0 +1,33 @@
+package com.mzm.pharmaflow.audit;
+
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes audit events to {@code audit_events} of the default database, one batched insert per batch
+ */
+class JdbcAuditSink implements AuditSink {
+
+    private static final String INSERT = "INSERT INTO audit_events (occurred_at, action, username, branch_id, "
+            + "resource_id, detail, remote_address) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    JdbcAuditSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void write(List<AuditEvent> events) {
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (AuditEvent event : events) {
+            rows.add(new Object[]{new Timestamp(event.getOccurredAt()), event.getAction().name(), event.getUsername(),
+                    event.getBranchId(), event.getResourceId(), event.getDetail(), event.getRemoteAddress()});
+        }
+        TenantContext.callOnDefaultStore(() -> jdbcTemplate.batchUpdate(INSERT, rows));
+    }
+}
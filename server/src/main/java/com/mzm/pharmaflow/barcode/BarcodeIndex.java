@@ -0,0 +1,309 @@
+package com.mzm.pharmaflow.barcode;
+
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * One branch's product codes, in an open-addressing hash table with linear probing: a lookup
+ * hashes the code once and walks a few adjacent slots of an {@code int[]} of hashes, only
+ * touching a record when the hash matches. The table is kept at most half full.
+ *
+ * <p>Lookups take no lock: they read optimistically and retry under the read lock only if a write
+ * happened meanwhile. Writes (a single writer per branch, serialised by the caller) update the
+ * table in place; removals shift the following entries back instead of leaving tombstones, so
+ * probe sequences stay short however many products are deleted. A second table maps product IDs
+ * to their code, so that a product whose code changed can be found again.</p>
+ */
+class BarcodeIndex implements BranchIndexes.Index {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final Long branchId;
+    private final StampedLock lock = new StampedLock();
+
+    /** Code table, replaced as a whole when it grows */
+    private Table table;
+    private int size;
+
+    // Writer-only: product ID -> code, same layout with long keys
+    private long[] idKeys;
+    private String[] idCodes;
+    private int idMask;
+
+    private volatile long appliedThrough;
+    private volatile long builtAt;
+    private volatile long buildMillis;
+
+    BarcodeIndex(Long branchId, long appliedThrough, int expectedSize) {
+        this.branchId = branchId;
+        this.appliedThrough = appliedThrough;
+        int capacity = capacityFor(expectedSize);
+        this.table = new Table(capacity);
+        this.idKeys = new long[capacity];
+        this.idCodes = new String[capacity];
+        this.idMask = capacity - 1;
+    }
+
+    /**
+     * Find a product by code
+     * @return product, or null if no product has this code
+     */
+    ScanRecord get(String code) {
+        int hash = hash(code);
+        long stamp = lock.tryOptimisticRead();
+        ScanRecord found = probe(table, code, hash);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = probe(table, code, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Add or replace a product, dropping its previous code if it changed
+     */
+    void put(ScanRecord record) {
+        long stamp = lock.writeLock();
+        try {
+            String previous = codeOf(record.getId());
+            if (previous != null && !previous.equals(record.getCode())) {
+                removeCode(previous);
+            }
+            ScanRecord replaced = putCode(record);
+            if (replaced != null && replaced.getId() != record.getId()) {
+                // The code moved to another product; the old holder keeps no code until its own change arrives
+                removeId(replaced.getId());
+            }
+            putId(record.getId(), record.getCode());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a product
+     */
+    void remove(long productId) {
+        long stamp = lock.writeLock();
+        try {
+            String code = codeOf(productId);
+            if (code != null) {
+                removeCode(code);
+                removeId(productId);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return table.records.length;
+    }
+
+    Long getBranchId() {
+        return branchId;
+    }
+
+    @Override
+    public long getAppliedThrough() {
+        return appliedThrough;
+    }
+
+    @Override
+    public void applied(long seq) {
+        appliedThrough = Math.max(appliedThrough, seq);
+    }
+
+    void built(long millis) {
+        builtAt = System.currentTimeMillis();
+        buildMillis = millis;
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    long getBuildMillis() {
+        return buildMillis;
+    }
+
+    private static ScanRecord probe(Table table, String code, int hash) {
+        int[] hashes = table.hashes;
+        ScanRecord[] records = table.records;
+        int mask = records.length - 1;
+        // Bounded, since a lookup racing with a write may see a half-shifted run
+        for (int i = 0, slot = hash & mask; i <= mask; i++, slot = (slot + 1) & mask) {
+            ScanRecord record = records[slot];
+            if (record == null) {
+                return null;
+            }
+            if (hashes[slot] == hash && record.getCode().equals(code)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    private ScanRecord putCode(ScanRecord record) {
+        if ((size + 1) * 2 > table.records.length) {
+            resize(table.records.length * 2);
+        }
+        int hash = hash(record.getCode());
+        int[] hashes = table.hashes;
+        ScanRecord[] records = table.records;
+        int mask = records.length - 1;
+        int slot = hash & mask;
+        while (records[slot] != null) {
+            if (hashes[slot] == hash && records[slot].getCode().equals(record.getCode())) {
+                ScanRecord replaced = records[slot];
+                records[slot] = record;
+                return replaced;
+            }
+            slot = (slot + 1) & mask;
+        }
+        hashes[slot] = hash;
+        records[slot] = record;
+        size++;
+        return null;
+    }
+
+    private void removeCode(String code) {
+        int hash = hash(code);
+        int[] hashes = table.hashes;
+        ScanRecord[] records = table.records;
+        int mask = records.length - 1;
+        int slot = hash & mask;
+        while (records[slot] != null) {
+            if (hashes[slot] == hash && records[slot].getCode().equals(code)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (records[slot] == null) {
+            return;
+        }
+        // Backward-shift deletion: move up every following entry whose home slot is not between the hole and it
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (records[next] != null) {
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                hashes[hole] = hashes[next];
+                records[hole] = records[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        records[hole] = null;
+        hashes[hole] = 0;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        Table grown = new Table(capacity);
+        int mask = capacity - 1;
+        ScanRecord[] records = table.records;
+        int[] hashes = table.hashes;
+        for (int i = 0; i < records.length; i++) {
+            if (records[i] != null) {
+                int slot = hashes[i] & mask;
+                while (grown.records[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                grown.hashes[slot] = hashes[i];
+                grown.records[slot] = records[i];
+            }
+        }
+        table = grown;
+
+        long[] oldKeys = idKeys;
+        String[] oldCodes = idCodes;
+        idKeys = new long[capacity];
+        idCodes = new String[capacity];
+        idMask = mask;
+        for (int i = 0; i < oldCodes.length; i++) {
+            if (oldCodes[i] != null) {
+                putId(oldKeys[i], oldCodes[i]);
+            }
+        }
+    }
+
+    private String codeOf(long id) {
+        for (int slot = idHash(id) & idMask; idCodes[slot] != null; slot = (slot + 1) & idMask) {
+            if (idKeys[slot] == id) {
+                return idCodes[slot];
+            }
+        }
+        return null;
+    }
+
+    private void putId(long id, String code) {
+        int slot = idHash(id) & idMask;
+        while (idCodes[slot] != null && idKeys[slot] != id) {
+            slot = (slot + 1) & idMask;
+        }
+        idKeys[slot] = id;
+        idCodes[slot] = code;
+    }
+
+    private void removeId(long id) {
+        int slot = idHash(id) & idMask;
+        while (idCodes[slot] != null && idKeys[slot] != id) {
+            slot = (slot + 1) & idMask;
+        }
+        if (idCodes[slot] == null) {
+            return;
+        }
+        int hole = slot;
+        int next = (hole + 1) & idMask;
+        while (idCodes[next] != null) {
+            int home = idHash(idKeys[next]) & idMask;
+            if (((next - home) & idMask) >= ((next - hole) & idMask)) {
+                idKeys[hole] = idKeys[next];
+                idCodes[hole] = idCodes[next];
+                hole = next;
+            }
+            next = (next + 1) & idMask;
+        }
+        idCodes[hole] = null;
+        idKeys[hole] = 0;
+    }
+
+    /** Spread String.hashCode over the low bits the mask keeps */
+    private static int hash(String code) {
+        int h = code.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int idHash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static final class Table {
+        private final int[] hashes;
+        private final ScanRecord[] records;
+
+        private Table(int capacity) {
+            this.hashes = new int[capacity];
+            this.records = new ScanRecord[capacity];
+        }
+    }
+}
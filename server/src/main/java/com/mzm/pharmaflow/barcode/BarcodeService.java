@@ -0,0 +1,357 @@
+package com.mzm.pharmaflow.barcode;
+
+import com.mzm.pharmaflow.analytics.CatalogueSnapshot;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.money.Money;
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+import com.mzm.pharmaflow.outbox.OutboxEvent;
+import com.mzm.pharmaflow.outbox.OutboxSubscriber;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resolves scanned product codes from memory. Each branch's codes are loaded into a
+ * {@link BarcodeIndex} on first scan; after that a scan does not reach the database.
+ *
+ * <p>The index follows product changes two ways. Writes through {@code ProductService} refresh
+ * the product as soon as they commit, so a product created at the counter can be scanned
+ * straight away. Every other write recorded in the change log (stock movements, reconciliations,
+ * generated data) arrives through the {@link com.mzm.pharmaflow.outbox.OutboxRelay}. Both read the
+ * row's current state under the branch's lock, so they may overlap without going back in time.
+ * The index is also rebuilt every {@code barcodes.rebuild-interval-ms} for rows written
+ * without a change record.</p>
+ *
+ * <p>After a restart the index can also be {@linkplain #seed seeded} from a catalogue snapshot
+ * read back from disk and then {@linkplain #catchUp caught up} with the changes made since.</p>
+ */
+@Service
+public class BarcodeService implements OutboxSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(BarcodeService.class);
+
+    private static final String SELECT_PRODUCTS = "SELECT id, code, name, price, quantity, threshold, expiry_date,"
+            + " needs_prescription, version FROM products WHERE branch_id = ?";
+    private static final int IN_CHUNK = 500;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Value("${barcodes.max-batch:10000}")
+    private int maxBatch;
+
+    @Value("${barcodes.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private BranchIndexes<BarcodeIndex> indexes;
+
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        indexes = new BranchIndexes<>(changeRecorder, EnumSet.of(SyncEntityType.PRODUCT), this::load, this::refresh);
+    }
+
+    /**
+     * Find the current branch's product with a code
+     * @param code scanned code
+     * @return product, or null if none has this code
+     */
+    public ScanRecord scan(String code) {
+        BarcodeIndex index = indexes.current();
+        long start = System.nanoTime();
+        ScanRecord found = lookup(index, code);
+        scans.increment();
+        if (found == null) {
+            misses.increment();
+        }
+        scanNanos.add(System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Resolve the codes scanned while receiving a delivery
+     * @param codes scanned codes, repeated once per unit
+     * @return distinct codes in first-scan order, with counts and products
+     * @throws IllegalArgumentException if there are more than {@code barcodes.max-batch} codes
+     */
+    public BatchScan scanAll(List<String> codes) {
+        if (codes.size() > maxBatch) {
+            throw new IllegalArgumentException("At most " + maxBatch + " codes can be scanned at once");
+        }
+        BarcodeIndex index = indexes.current();
+        long start = System.nanoTime();
+        Map<String, int[]> counts = new LinkedHashMap<>();
+        for (String code : codes) {
+            String normalized = normalize(code);
+            if (!normalized.isEmpty()) {
+                counts.computeIfAbsent(normalized, key -> new int[1])[0]++;
+            }
+        }
+        List<BatchScan.Line> lines = new ArrayList<>(counts.size());
+        List<String> unknown = new ArrayList<>();
+        int scanned = 0;
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            ScanRecord product = lookup(index, entry.getKey());
+            if (product == null) {
+                unknown.add(entry.getKey());
+            }
+            lines.add(new BatchScan.Line(entry.getKey(), entry.getValue()[0], product));
+            scanned += entry.getValue()[0];
+        }
+        long took = System.nanoTime() - start;
+        batches.increment();
+        scans.add(counts.size());
+        misses.add(unknown.size());
+        scanNanos.add(took);
+        return new BatchScan(lines, unknown, scanned, took / 1000);
+    }
+
+    /**
+     * Bring a product up to date in the index once the current transaction commits.
+     * Called by the product service after every write.
+     * @param branchId product's branch
+     * @param productId product created, changed or deleted
+     */
+    public void productChanged(Long branchId, Long productId) {
+        if (indexes.get(branchId) == null) {
+            // Loaded with the product when first scanned
+            return;
+        }
+        Runnable refresh = () -> {
+            try {
+                indexes.apply(branchId, SyncEntityType.PRODUCT, Collections.singleton(productId), -1);
+            } catch (RuntimeException e) {
+                // The outbox delivers the same change shortly
+                logger.warn("Could not refresh code of product {} in branch {}: {}", productId, branchId, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh.run();
+                }
+            });
+        } else {
+            refresh.run();
+        }
+    }
+
+    /**
+     * Rebuild the indexes in use, picking up rows written without a change record
+     */
+    @Scheduled(fixedDelayString = "${barcodes.rebuild-interval-ms:3600000}",
+            initialDelayString = "${barcodes.rebuild-interval-ms:3600000}")
+    public void rebuildAll() {
+        for (Long branchId : indexes.branchIds()) {
+            try {
+                indexes.rebuild(branchId);
+            } catch (RuntimeException e) {
+                logger.warn("Could not rebuild code index of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Load a branch's index from a catalogue snapshot instead of the products table, unless it is
+     * already loaded. The index is as of the snapshot's change position; changes after it must be
+     * applied with {@link #catchUp}, as the outbox may have delivered them before the restart.
+     * @param snapshot catalogue snapshot of the branch
+     * @return true if the index was seeded
+     */
+    public boolean seed(CatalogueSnapshot snapshot) {
+        Long branchId = snapshot.getBranchId();
+        return indexes.seed(branchId, () -> {
+            long start = System.currentTimeMillis();
+            BarcodeIndex index = new BarcodeIndex(branchId, snapshot.getChangeSeq(), snapshot.size());
+            for (int row = 0; row < snapshot.size(); row++) {
+                String code = snapshot.code(row);
+                if (code != null) {
+                    index.put(new ScanRecord(snapshot.id(row), code.trim(), snapshot.name(row),
+                            snapshot.priceCents(row), snapshot.quantity(row), snapshot.threshold(row),
+                            snapshot.expiryEpochDay(row), snapshot.needsPrescription(row), snapshot.version(row)));
+                }
+            }
+            index.built(System.currentTimeMillis() - start);
+            logger.info("Code index of branch {} seeded from snapshot: {} products in {} ms",
+                    branchId, index.size(), index.getBuildMillis());
+            return index;
+        });
+    }
+
+    /**
+     * Apply the products changed since a branch's index was seeded
+     * @param branchId branch ID
+     * @param productIds products with a change after the seed's position
+     * @param through change log position the changes were read up to
+     */
+    public void catchUp(Long branchId, Collection<Long> productIds, long through) {
+        indexes.apply(branchId, SyncEntityType.PRODUCT, productIds, through);
+    }
+
+    /**
+     * Rebuild a branch's index from the products table, if it is loaded
+     * @param branchId branch ID
+     */
+    public void reload(Long branchId) {
+        if (indexes.get(branchId) != null) {
+            indexes.rebuild(branchId);
+        }
+    }
+
+    @Override
+    public String getSubscriberName() {
+        return "barcodes";
+    }
+
+    @Override
+    public void onEvents(Long branchId, List<OutboxEvent> events) {
+        indexes.onEvents(branchId, events);
+    }
+
+    /**
+     * Get scan metrics
+     * @return per-branch index sizes, scan counts and average scan time
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<Long, Object> branches = new HashMap<>();
+        for (BarcodeIndex index : indexes.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("products", index.size());
+            entry.put("capacity", index.capacity());
+            entry.put("buildMs", index.getBuildMillis());
+            entry.put("ageMs", System.currentTimeMillis() - index.getBuiltAt());
+            entry.put("appliedThrough", index.getAppliedThrough());
+            branches.put(index.getBranchId(), entry);
+        }
+        long scanCount = scans.sum();
+        stats.put("branches", branches);
+        stats.put("scans", scanCount);
+        stats.put("misses", misses.sum());
+        stats.put("batches", batches.sum());
+        stats.put("avgScanMicros", scanCount > 0 ? scanNanos.sum() / 1000.0 / scanCount : 0.0);
+        stats.put("builds", indexes.getBuilds());
+        stats.put("refreshedProducts", indexes.getAppliedChanges());
+        return stats;
+    }
+
+    /**
+     * Look a code up as scanned, then as the other form of a UPC-A code: scanners configured for
+     * EAN-13 read a 12-digit UPC-A as the same digits behind a leading zero
+     */
+    private static ScanRecord lookup(BarcodeIndex index, String code) {
+        String normalized = normalize(code);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        ScanRecord found = index.get(normalized);
+        if (found == null && isDigits(normalized)) {
+            if (normalized.length() == 13 && normalized.charAt(0) == '0') {
+                found = index.get(normalized.substring(1));
+            } else if (normalized.length() == 12) {
+                found = index.get("0" + normalized);
+            }
+        }
+        return found;
+    }
+
+    /** Keyboard-wedge scanners end codes with a carriage return or tab */
+    private static String normalize(String code) {
+        return code == null ? "" : code.trim();
+    }
+
+    private static boolean isDigits(String code) {
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) < '0' || code.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BarcodeIndex load(Long branchId, long appliedThrough) {
+        long start = System.currentTimeMillis();
+        Integer expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE branch_id = ?",
+                Integer.class, branchId);
+        BarcodeIndex index = new BarcodeIndex(branchId, appliedThrough, expected != null ? expected : 0);
+        jdbcTemplate.query(SELECT_PRODUCTS, rs -> {
+            index.put(record(rs));
+        }, branchId);
+        index.built(System.currentTimeMillis() - start);
+        logger.info("Code index of branch {} built: {} products in {} ms", branchId, index.size(), index.getBuildMillis());
+        return index;
+    }
+
+    /**
+     * Apply the current state of some products; the rows are read under the branch's lock so that
+     * two refreshes of the same product cannot apply out of order
+     */
+    private void refresh(Long branchId, BarcodeIndex index, SyncEntityType entityType, Set<Long> productIds) {
+        List<Long> ids = new ArrayList<>(productIds);
+        Set<Long> found = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_CHUNK, ids.size()));
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = branchId;
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                params[i + 1] = chunk.get(i);
+                placeholders.append(i > 0 ? ",?" : "?");
+            }
+            jdbcTemplate.query(SELECT_PRODUCTS + " AND id IN (" + placeholders + ")", rs -> {
+                ScanRecord record = record(rs);
+                index.put(record);
+                found.add(record.getId());
+            }, params);
+        }
+        for (Long id : ids) {
+            if (!found.contains(id)) {
+                index.remove(id);
+            }
+        }
+    }
+
+    private static ScanRecord record(ResultSet rs) throws SQLException {
+        Date expiry = rs.getDate("expiry_date");
+        return new ScanRecord(rs.getLong("id"), rs.getString("code").trim(), rs.getString("name"),
+                Money.toMinor(rs.getBigDecimal("price")), rs.getInt("quantity"), rs.getInt("threshold"),
+                expiry != null ? (int) expiry.toLocalDate().toEpochDay() : Integer.MAX_VALUE,
+                rs.getBoolean("needs_prescription"), rs.getLong("version"));
+    }
+}
@@ -0,0 +1,29 @@
+package com.mzm.pharmaflow.barcode;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Result of scanning a delivery: each distinct code with the number of times it was scanned
+ */
+@Getter
+@AllArgsConstructor
+public class BatchScan {
+
+    private final List<Line> lines;
+    /** Codes matching no product, in scan order */
+    private final List<String> unknown;
+    private final int scans;
+    private final long tookMicros;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Line {
+        private final String code;
+        private final int count;
+        /** Null if the code matches no product */
+        private final ScanRecord product;
+    }
+}
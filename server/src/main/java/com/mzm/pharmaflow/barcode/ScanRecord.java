@@ -0,0 +1,86 @@
+package com.mzm.pharmaflow.barcode;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.mzm.pharmaflow.money.Money;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * What the counter needs to know about a scanned product, kept in memory by {@link BarcodeIndex}:
+ * primitives only besides the code and name. Records are immutable; a change replaces the record.
+ */
+public class ScanRecord {
+
+    private final long id;
+    private final String code;
+    private final String name;
+    private final long priceCents;
+    private final int quantity;
+    private final int threshold;
+    private final int expiryDay;
+    private final boolean needsPrescription;
+    private final long version;
+
+    ScanRecord(long id, String code, String name, long priceCents, int quantity, int threshold, int expiryDay,
+               boolean needsPrescription, long version) {
+        this.id = id;
+        this.code = code;
+        this.name = name;
+        this.priceCents = priceCents;
+        this.quantity = quantity;
+        this.threshold = threshold;
+        this.expiryDay = expiryDay;
+        this.needsPrescription = needsPrescription;
+        this.version = version;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public BigDecimal getPrice() {
+        return Money.toDecimal(priceCents);
+    }
+
+    @JsonIgnore
+    public long getPriceCents() {
+        return priceCents;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public LocalDate getExpiryDate() {
+        return LocalDate.ofEpochDay(expiryDay);
+    }
+
+    public boolean isNeedsPrescription() {
+        return needsPrescription;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isLowStock() {
+        return quantity <= threshold;
+    }
+
+    public boolean isExpired() {
+        return expiryDay < LocalDate.now().toEpochDay();
+    }
+}
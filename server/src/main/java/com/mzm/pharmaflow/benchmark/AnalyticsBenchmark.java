@@ -0,0 +1,101 @@
+package com.mzm.pharmaflow.benchmark;
+
+import com.mzm.pharmaflow.analytics.CatalogueSnapshot;
+import com.mzm.pharmaflow.analytics.RankMetric;
+import com.mzm.pharmaflow.analytics.SnapshotAnalytics;
+import com.mzm.pharmaflow.analytics.SnapshotFilter;
+import com.mzm.pharmaflow.model.ProductCategory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Times snapshot aggregations, filters and top-k over a synthetic catalogue, sequentially
+ * and on a fork/join pool. The catalogue is generated in memory, so the database is not involved.
+ *
+ * Enable with {@code --benchmark.analytics.enabled=true}; reports milliseconds per query and
+ * bytes allocated on the calling thread.
+ */
+@Component
+@ConditionalOnProperty(name = "benchmark.analytics.enabled", havingValue = "true")
+public class AnalyticsBenchmark implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsBenchmark.class);
+
+    @Value("${benchmark.analytics.rows:1000000}")
+    private int rows;
+
+    @Value("${benchmark.analytics.iterations:20}")
+    private int iterations;
+
+    @Value("${analytics.chunk-size:16384}")
+    private int chunkSize;
+
+    @Override
+    public void run(String... args) {
+        CatalogueSnapshot snapshot = generate(rows);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            logger.info("Analytics benchmark, {} products x {} iterations, {} MB of columns",
+                    snapshot.size(), iterations, snapshot.columnBytes() / (1024 * 1024));
+            report("sequential", new SnapshotAnalytics(single, chunkSize), snapshot);
+            report("parallel x" + parallel.getParallelism(), new SnapshotAnalytics(parallel, chunkSize), snapshot);
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    private void report(String label, SnapshotAnalytics analytics, CatalogueSnapshot snapshot) {
+        LocalDate today = LocalDate.now();
+        SnapshotFilter lowStock = new SnapshotFilter().lowStockOnly(true);
+        SnapshotFilter expiring = new SnapshotFilter().expiresBefore(today.plusDays(90));
+        Supplier<Object> summary = () -> analytics.summarize(snapshot, SnapshotFilter.ALL, today, 30);
+        Supplier<Object> filter = () -> analytics.filter(snapshot, lowStock);
+        Supplier<Object> topK = () -> analytics.topK(snapshot, expiring, RankMetric.VALUE, 20);
+
+        // Warm up before measuring
+        measure(summary);
+        measure(filter);
+        measure(topK);
+        logger.info("  {} summary : {}", label, measure(summary));
+        logger.info("  {} filter  : {}", label, measure(filter));
+        logger.info("  {} top-20  : {}", label, measure(topK));
+    }
+
+    private String measure(Supplier<Object> query) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.get();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        return String.format("%.2f ms/query, %d bytes/query", nanos / 1_000_000.0 / iterations, bytes / iterations);
+    }
+
+    private static CatalogueSnapshot generate(int rows) {
+        SplittableRandom random = new SplittableRandom(42);
+        ProductCategory[] categories = ProductCategory.values();
+        LocalDate today = LocalDate.now();
+        CatalogueSnapshot.Builder builder = CatalogueSnapshot.builder(0L, 0, 0, rows);
+        for (int i = 0; i < rows; i++) {
+            builder.add(i, "SKU-" + i, "Product " + i, random.nextInt(500), 20,
+                    100 + random.nextInt(20_000), (short) categories[random.nextInt(categories.length)].ordinal(),
+                    today.plusDays(random.nextInt(-60, 900)), false, 0);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,193 @@
+package com.mzm.pharmaflow.benchmark;
+
+import com.mzm.pharmaflow.dto.ProductDTO;
+import com.mzm.pharmaflow.model.Product;
+import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.repository.ProductRepository;
+import com.mzm.pharmaflow.service.ProductService;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares the product list read path before and after DTO projection:
+ * managed entities in a read-write transaction copied field by field, versus
+ * constructor-expression DTOs in a read-only transaction.
+ *
+ * Enable with {@code --benchmark.read-path.enabled=true}; reports time and bytes
+ * allocated per listed row on the calling thread. Both paths read the default branch
+ * ({@code tenant.default-branch-id}), and products added to reach
+ * {@code benchmark.read-path.rows} are deleted again once measured: they bypass the
+ * change log, so sync, the outbox and the in-memory indexes never learn about them.
+ */
+@Component
+@ConditionalOnProperty(name = "benchmark.read-path.enabled", havingValue = "true")
+public class ReadPathBenchmark implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadPathBenchmark.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${benchmark.read-path.rows:5000}")
+    private int rows;
+
+    @Value("${benchmark.read-path.iterations:50}")
+    private int iterations;
+
+    @Override
+    public void run(String... args) {
+        Long branchId = TenantContext.getDefaultBranchId();
+        TenantContext.callOnBranch(branchId, () -> {
+            String codePrefix = "BENCH-" + System.nanoTime() + "-";
+            int seeded = seed(branchId, codePrefix);
+            try {
+                compare(branchId);
+            } finally {
+                if (seeded > 0) {
+                    int removed = jdbcTemplate.update("DELETE FROM products WHERE branch_id = ? AND code LIKE ?",
+                            branchId, codePrefix + "%");
+                    logger.info("Removed {} products seeded for the read path benchmark", removed);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void compare(Long branchId) {
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+
+        Supplier<List<ProductDTO>> entityPath = () -> readWrite.execute(status -> {
+            List<ProductDTO> result = new ArrayList<>();
+            for (Product product : productRepository.findByBranchId(branchId)) {
+                result.add(copy(product));
+            }
+            return result;
+        });
+        Supplier<List<ProductDTO>> projectionPath = productService::findAll;
+
+        // Warm up both paths before measuring
+        measure(entityPath, iterations);
+        measure(projectionPath, iterations);
+
+        Result entity = measure(entityPath, iterations);
+        Result projection = measure(projectionPath, iterations);
+        logger.info("Read path benchmark, {} rows x {} iterations", entity.rowsPerCall, iterations);
+        logger.info("  entity + copy      : {} us/row, {} bytes/row", entity.microsPerRow(), entity.bytesPerRow());
+        logger.info("  DTO projection     : {} us/row, {} bytes/row", projection.microsPerRow(), projection.bytesPerRow());
+    }
+
+    /**
+     * Insert products until the branch has {@code rows}
+     * @param branchId branch to fill
+     * @param codePrefix prefix of the codes given to the inserted products
+     * @return number of products inserted
+     */
+    private int seed(Long branchId, String codePrefix) {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM products WHERE branch_id = ?",
+                Integer.class, branchId);
+        int missing = rows - (existing != null ? existing : 0);
+        if (missing <= 0) {
+            return 0;
+        }
+        List<Object[]> batch = new ArrayList<>(missing);
+        ProductCategory[] categories = ProductCategory.values();
+        Date today = Date.valueOf(LocalDate.now());
+        for (int i = 0; i < missing; i++) {
+            batch.add(new Object[]{
+                    branchId, "Benchmark product " + i, codePrefix + i,
+                    "Generated for the read path benchmark", categories[i % categories.length].name(),
+                    i % 200, 20, new BigDecimal("12.50"), Date.valueOf(LocalDate.now().plusDays(30 + i % 700)),
+                    "Benchmark Labs", false, "500mg", "Comprimé", today});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO products (branch_id, name, code, description, category, quantity, "
+                + "threshold, price, expiry_date, manufacturer, needs_prescription, dosage, formulation, created_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", batch);
+        logger.info("Seeded {} products for the read path benchmark", missing);
+        return missing;
+    }
+
+    private static Result measure(Supplier<List<ProductDTO>> path, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        int rowsPerCall = 0;
+        for (int i = 0; i < iterations; i++) {
+            rowsPerCall = path.get().size();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        return new Result(rowsPerCall, (long) rowsPerCall * iterations, nanos, bytes);
+    }
+
+    // Field-by-field copy, as the services did before projection queries
+    private static ProductDTO copy(Product product) {
+        ProductDTO dto = new ProductDTO();
+        dto.setId(product.getId());
+        dto.setName(product.getName());
+        dto.setCode(product.getCode());
+        dto.setDescription(product.getDescription());
+        dto.setCategory(product.getCategory().name());
+        dto.setQuantity(product.getQuantity());
+        dto.setThreshold(product.getThreshold());
+        dto.setPrice(product.getPrice());
+        dto.setExpiryDate(product.getExpiryDate());
+        dto.setManufacturer(product.getManufacturer());
+        dto.setImageUrl(product.getImageUrl());
+        dto.setNeedsPrescription(product.getNeedsPrescription());
+        dto.setDosage(product.getDosage());
+        dto.setFormulation(product.getFormulation());
+        dto.setActiveIngredient(product.getActiveIngredient());
+        dto.setCreatedAt(product.getCreatedAt());
+        dto.setUpdatedAt(product.getUpdatedAt());
+        return dto;
+    }
+
+    private static final class Result {
+        private final int rowsPerCall;
+        private final long totalRows;
+        private final long nanos;
+        private final long bytes;
+
+        private Result(int rowsPerCall, long totalRows, long nanos, long bytes) {
+            this.rowsPerCall = rowsPerCall;
+            this.totalRows = Math.max(1, totalRows);
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        private String microsPerRow() {
+            return String.format("%.2f", nanos / 1000.0 / totalRows);
+        }
+
+        private long bytesPerRow() {
+            return bytes / totalRows;
+        }
+    }
+}
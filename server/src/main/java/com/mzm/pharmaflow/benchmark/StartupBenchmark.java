@@ -0,0 +1,93 @@
+package com.mzm.pharmaflow.benchmark;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup timeline: milliseconds from JVM start until the application is ready and until the
+ * first request has been answered, logged once and served on {@code /api/test/startup}.
+ *
+ * <p>With {@code --benchmark.startup.exit-after-first-request=true} the application stops once
+ * the first response is sent. {@code build-cds.sh} uses it for the training run that records
+ * the class data sharing archive; {@code startup-benchmark.sh} compares start modes.</p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupBenchmark extends OncePerRequestFilter implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupBenchmark.class);
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Value("${benchmark.startup.exit-after-first-request:false}")
+    private boolean exitAfterFirstRequest;
+
+    private final long jvmStartedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private volatile long readyAt;
+    private volatile long firstRequestAt;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        readyAt = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (firstRequestAt == 0) {
+                firstRequest();
+            }
+        }
+    }
+
+    private synchronized void firstRequest() {
+        if (firstRequestAt != 0) {
+            return;
+        }
+        firstRequestAt = System.currentTimeMillis();
+        logger.info("Startup: ready after {} ms, first request answered after {} ms (JVM start to response), "
+                        + "class sharing {}", readyAt > 0 ? readyAt - jvmStartedAt : "-", firstRequestAt - jvmStartedAt,
+                ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+                        .anyMatch(arg -> arg.startsWith("-XX:SharedArchiveFile")) ? "on" : "default");
+        if (exitAfterFirstRequest) {
+            Thread exit = new Thread(() -> System.exit(SpringApplication.exit(context)), "startup-benchmark-exit");
+            exit.start();
+        }
+    }
+
+    /**
+     * Get the startup timeline
+     * @return JVM start time and milliseconds to readiness and to the first response
+     */
+    public Map<String, Object> getTimeline() {
+        Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("jvmStartedAt", jvmStartedAt);
+        timeline.put("readyMs", readyAt > 0 ? readyAt - jvmStartedAt : null);
+        timeline.put("firstRequestMs", firstRequestAt > 0 ? firstRequestAt - jvmStartedAt : null);
+        timeline.put("activeProfiles", context.getEnvironment().getActiveProfiles());
+        return timeline;
+    }
+}
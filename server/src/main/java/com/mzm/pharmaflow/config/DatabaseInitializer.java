@@ -5,6 +5,7 @@ import com.mzm.pharmaflow.model.Role;
 import com.mzm.pharmaflow.model.User;
 import com.mzm.pharmaflow.repository.RoleRepository;
 import com.mzm.pharmaflow.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,33 +17,47 @@ import java.util.Set;
 @Configuration
 public class DatabaseInitializer {
 
+    /** Seed on a background thread so that startup does not wait for it (fast-start profile) */
+    @Value("${startup.defer-seeding:false}")
+    private boolean deferSeeding;
+
     @Bean
     public CommandLineRunner initDatabase(RoleRepository roleRepository, 
                                           UserRepository userRepository,
                                           PasswordEncoder encoder) {
         return args -> {
-            // Create roles if not exist
-            if (roleRepository.count() == 0) {
-                roleRepository.save(new Role(ERole.ROLE_USER));
-                roleRepository.save(new Role(ERole.ROLE_PHARMACIST));
-                roleRepository.save(new Role(ERole.ROLE_ADMIN));
-                System.out.println("Roles initialized");
-            }
-
-            // Create admin user if not exist
-            if (!userRepository.existsByUsername("admin")) {
-                User admin = new User();
-                admin.setUsername("admin");
-                admin.setEmail("admin@pharmaflow.com");
-                admin.setPassword(encoder.encode("Admin123!"));
-                
-                Set<Role> roles = new HashSet<>();
-                roleRepository.findByName(ERole.ROLE_ADMIN).ifPresent(roles::add);
-                admin.setRoles(roles);
-                
-                userRepository.save(admin);
-                System.out.println("Admin user created");
+            if (deferSeeding) {
+                Thread seeding = new Thread(() -> seed(roleRepository, userRepository, encoder), "seed-defaults");
+                seeding.setDaemon(true);
+                seeding.start();
+            } else {
+                seed(roleRepository, userRepository, encoder);
             }
         };
     }
-} 
\ No newline at end of file
+
+    private void seed(RoleRepository roleRepository, UserRepository userRepository, PasswordEncoder encoder) {
+        // Create roles if not exist
+        if (roleRepository.count() == 0) {
+            roleRepository.save(new Role(ERole.ROLE_USER));
+            roleRepository.save(new Role(ERole.ROLE_PHARMACIST));
+            roleRepository.save(new Role(ERole.ROLE_ADMIN));
+            System.out.println("Roles initialized");
+        }
+
+        // Create admin user if not exist
+        if (!userRepository.existsByUsername("admin")) {
+            User admin = new User();
+            admin.setUsername("admin");
+            admin.setEmail("admin@pharmaflow.com");
+            admin.setPassword(encoder.encode("Admin123!"));
+            
+            Set<Role> roles = new HashSet<>();
+            roleRepository.findByName(ERole.ROLE_ADMIN).ifPresent(roles::add);
+            admin.setRoles(roles);
+            
+            userRepository.save(admin);
+            System.out.println("Admin user created");
+        }
+    }
+}
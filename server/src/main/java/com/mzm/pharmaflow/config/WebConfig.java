@@ -17,7 +17,7 @@ public class WebConfig implements WebMvcConfigurer {
                 )
                 .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")
                 .allowedHeaders("*")
-                .exposedHeaders("Authorization")
+                .exposedHeaders("Authorization", "Idempotent-Replayed")
                 .allowCredentials(true)
                 .maxAge(3600); // 1 hour cache for preflight requests
     }
@@ -0,0 +1,219 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.analytics.CatalogueSnapshot;
+import com.mzm.pharmaflow.analytics.CatalogueSnapshotFiles;
+import com.mzm.pharmaflow.analytics.CatalogueSnapshotService;
+import com.mzm.pharmaflow.analytics.RankMetric;
+import com.mzm.pharmaflow.analytics.SnapshotAnalytics;
+import com.mzm.pharmaflow.analytics.SnapshotFilter;
+import com.mzm.pharmaflow.analytics.SnapshotSummary;
+import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.money.Money;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/analytics")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class AnalyticsController {
+
+    private static final int MAX_ROWS = 1000;
+
+    @Autowired
+    private CatalogueSnapshotService snapshotService;
+
+    @Autowired
+    private CatalogueSnapshotFiles snapshotFiles;
+
+    /**
+     * Aggregate the catalogue
+     * @param soonDays window for the expiring-soon counter
+     * @return totals, expiry counters and per-category breakdown
+     */
+    @GetMapping("/summary")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> getSummary(
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "false") boolean lowStock,
+            @RequestParam(required = false) Integer expiringWithinDays,
+            @RequestParam(required = false) Integer minQuantity,
+            @RequestParam(required = false) Integer maxQuantity,
+            @RequestParam(defaultValue = "30") int soonDays) {
+        SnapshotFilter filter = buildFilter(category, lowStock, expiringWithinDays, minQuantity, maxQuantity);
+        CatalogueSnapshot snapshot = snapshotService.current();
+        long start = System.nanoTime();
+        SnapshotSummary summary = snapshotService.getAnalytics().summarize(snapshot, filter, LocalDate.now(), soonDays);
+        long tookMicros = (System.nanoTime() - start) / 1000;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("products", summary.getProducts());
+        result.put("units", summary.getUnits());
+        result.put("stockValue", Money.toDecimal(summary.getValueCents()));
+        result.put("lowStock", summary.getLowStock());
+        result.put("outOfStock", summary.getOutOfStock());
+        result.put("expired", summary.getExpired());
+        result.put("expiringSoon", summary.getExpiringSoon());
+        Map<ProductCategory, Object> categories = new LinkedHashMap<>();
+        for (ProductCategory value : ProductCategory.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("products", summary.getProducts(value));
+            entry.put("units", summary.getUnits(value));
+            entry.put("stockValue", Money.toDecimal(summary.getValueCents(value)));
+            categories.put(value, entry);
+        }
+        result.put("categories", categories);
+        result.put("snapshotVersion", snapshot.getDataVersion());
+        result.put("tookMicros", tookMicros);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * List products matching a filter, in catalogue order
+     * @param offset rows to skip
+     * @param limit page size, at most 1000
+     * @return total match count and the requested page
+     */
+    @GetMapping("/products")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> findProducts(
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "false") boolean lowStock,
+            @RequestParam(required = false) Integer expiringWithinDays,
+            @RequestParam(required = false) Integer minQuantity,
+            @RequestParam(required = false) Integer maxQuantity,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit) {
+        SnapshotFilter filter = buildFilter(category, lowStock, expiringWithinDays, minQuantity, maxQuantity);
+        CatalogueSnapshot snapshot = snapshotService.current();
+        long start = System.nanoTime();
+        int[] rows = snapshotService.getAnalytics().filter(snapshot, filter);
+        long tookMicros = (System.nanoTime() - start) / 1000;
+
+        int from = Math.min(Math.max(0, offset), rows.length);
+        int to = Math.min(rows.length, from + Math.min(Math.max(0, limit), MAX_ROWS));
+        List<Map<String, Object>> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            items.add(toRow(snapshot, rows[i]));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", rows.length);
+        result.put("offset", from);
+        result.put("items", items);
+        result.put("snapshotVersion", snapshot.getDataVersion());
+        result.put("tookMicros", tookMicros);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Rank products matching a filter
+     * @param metric value, quantity, price, shortage or expiry
+     * @param k number of products, at most 1000
+     * @return best k products
+     */
+    @GetMapping("/top")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> getTop(
+            @RequestParam(defaultValue = "value") String metric,
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "false") boolean lowStock,
+            @RequestParam(required = false) Integer expiringWithinDays,
+            @RequestParam(required = false) Integer minQuantity,
+            @RequestParam(required = false) Integer maxQuantity) {
+        RankMetric rankMetric;
+        try {
+            rankMetric = RankMetric.valueOf(metric.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid metric: " + metric, e);
+        }
+        SnapshotFilter filter = buildFilter(category, lowStock, expiringWithinDays, minQuantity, maxQuantity);
+        CatalogueSnapshot snapshot = snapshotService.current();
+        SnapshotAnalytics analytics = snapshotService.getAnalytics();
+        long start = System.nanoTime();
+        int[] rows = analytics.topK(snapshot, filter, rankMetric, Math.min(Math.max(0, k), MAX_ROWS));
+        long tookMicros = (System.nanoTime() - start) / 1000;
+
+        List<Map<String, Object>> items = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            items.add(toRow(snapshot, row));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("metric", rankMetric);
+        result.put("items", items);
+        result.put("snapshotVersion", snapshot.getDataVersion());
+        result.put("tookMicros", tookMicros);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Get snapshot statistics
+     * @return per-branch snapshot sizes, rebuild counters and snapshot file counters
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = snapshotService.getStats();
+        stats.put("files", snapshotFiles.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Rebuild the current branch's snapshot now
+     * @return new snapshot size and build time
+     */
+    @PostMapping("/refresh")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> refresh() {
+        CatalogueSnapshot snapshot = snapshotService.rebuild(TenantContext.getBranchId());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("products", snapshot.size());
+        result.put("dataVersion", snapshot.getDataVersion());
+        result.put("buildMs", snapshot.getBuildMillis());
+        return ResponseEntity.ok(result);
+    }
+
+    private static SnapshotFilter buildFilter(String category, boolean lowStock, Integer expiringWithinDays,
+                                              Integer minQuantity, Integer maxQuantity) {
+        SnapshotFilter filter = new SnapshotFilter()
+                .lowStockOnly(lowStock)
+                .minQuantity(minQuantity)
+                .maxQuantity(maxQuantity);
+        if (category != null && !category.isEmpty()) {
+            try {
+                filter.category(ProductCategory.valueOf(category.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid product category: " + category, e);
+            }
+        }
+        if (expiringWithinDays != null) {
+            filter.expiresBefore(LocalDate.now().plusDays(expiringWithinDays + 1L));
+        }
+        return filter;
+    }
+
+    private static Map<String, Object> toRow(CatalogueSnapshot snapshot, int row) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", snapshot.id(row));
+        item.put("code", snapshot.code(row));
+        item.put("name", snapshot.name(row));
+        item.put("quantity", snapshot.quantity(row));
+        item.put("threshold", snapshot.threshold(row));
+        item.put("price", Money.toDecimal(snapshot.priceCents(row)));
+        short category = snapshot.category(row);
+        item.put("category", category >= 0 ? ProductCategory.values()[category] : null);
+        int expiry = snapshot.expiryEpochDay(row);
+        item.put("expiryDate", expiry != CatalogueSnapshot.NO_EXPIRY ? LocalDate.ofEpochDay(expiry) : null);
+        return item;
+    }
+}
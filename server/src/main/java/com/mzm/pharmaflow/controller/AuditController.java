@@ -0,0 +1,54 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditEvent;
+import com.mzm.pharmaflow.audit.AuditLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/audit")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class AuditController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    /**
+     * Get the most recent audit events
+     * @param username only events of this user
+     * @param action only this operation
+     * @param limit maximum number of events
+     * @return events, newest first; 409 if events are written to files
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<AuditEvent>> getEvents(@RequestParam(required = false) String username,
+                                                      @RequestParam(required = false) AuditAction action,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseEntity.ok(auditLog.findRecent(username, action, Math.max(1, Math.min(limit, MAX_LIMIT))));
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get audit trail statistics
+     * @return buffer occupancy, drop counts and writer throughput
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(auditLog.getStats());
+    }
+}
@@ -1,29 +1,43 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditLog;
 import com.mzm.pharmaflow.dto.LoginRequest;
 import com.mzm.pharmaflow.dto.LoginResponse;
 import com.mzm.pharmaflow.dto.RegisterRequest;
 import com.mzm.pharmaflow.dto.ResponseDTO;
+import com.mzm.pharmaflow.dto.TokenRefreshRequest;
 import com.mzm.pharmaflow.model.ERole;
 import com.mzm.pharmaflow.model.Role;
 import com.mzm.pharmaflow.model.User;
 import com.mzm.pharmaflow.repository.RoleRepository;
 import com.mzm.pharmaflow.repository.UserRepository;
 import com.mzm.pharmaflow.security.jwt.JwtUtils;
+import com.mzm.pharmaflow.security.jwt.TokenRevocationList;
+import com.mzm.pharmaflow.security.services.AuthenticationExecutor;
+import com.mzm.pharmaflow.security.services.AuthenticationRejectedException;
+import com.mzm.pharmaflow.security.services.LoginThrottle;
 import com.mzm.pharmaflow.security.services.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -31,9 +45,6 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "${spring.web.cors.allowed-origins}")
 public class AuthController {
 
-    @Autowired
-    private AuthenticationManager authenticationManager;
-
     @Autowired
     private UserRepository userRepository;
 
@@ -46,25 +57,162 @@ public class AuthController {
     @Autowired
     private JwtUtils jwtUtils;
 
+    @Autowired
+    private AuthenticationExecutor authenticationExecutor;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private TokenRevocationList revocationList;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
+    @Autowired
+    private AuditLog auditLog;
+
     @PostMapping("/login")
-    public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
+    public CompletableFuture<ResponseEntity<?>> authenticateUser(@Valid @RequestBody LoginRequest loginRequest,
+                                                                 HttpServletRequest request) {
+        String remoteAddress = request.getRemoteAddr();
+        long retryAfter = loginThrottle.tryAcquire(loginRequest.getEmail(), remoteAddress);
+        if (retryAfter > 0) {
+            auditLog.record(AuditAction.LOGIN_THROTTLED, loginRequest.getEmail(), null, null, null, remoteAddress);
+            return CompletableFuture.completedFuture(tooManyRequests(
+                    "Error: Too many login attempts, please retry later", retryAfter));
+        }
+
+        CompletableFuture<Authentication> verification;
+        try {
+            // BCrypt runs on the authentication pool, the servlet thread is released meanwhile
+            verification = authenticationExecutor.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginRequest.getEmail(), loginRequest.getPassword()));
+        } catch (AuthenticationRejectedException e) {
+            auditLog.record(AuditAction.LOGIN_THROTTLED, loginRequest.getEmail(), null, null, e.getMessage(),
+                    remoteAddress);
+            return CompletableFuture.completedFuture(tooManyRequests(
+                    "Error: " + e.getMessage(), e.getRetryAfterSeconds()));
+        }
 
-        SecurityContextHolder.getContext().setAuthentication(authentication);
-        String jwt = jwtUtils.generateJwtToken(authentication);
+        verification.whenComplete((authentication, error) -> {
+            if (error != null) {
+                auditLog.record(AuditAction.LOGIN_FAILED, loginRequest.getEmail(), null, null, null, remoteAddress);
+            }
+        });
+        return verification.<ResponseEntity<?>>thenApply(authentication -> {
+            loginThrottle.reset(loginRequest.getEmail());
+            String jwt = jwtUtils.generateJwtToken(authentication);
+
+            UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+            auditLog.record(AuditAction.LOGIN, userDetails.getUsername(), userDetails.getBranchId(), null, null,
+                    remoteAddress);
+            List<String> roles = userDetails.getAuthorities().stream()
+                    .map(item -> item.getAuthority())
+                    .collect(Collectors.toList());
 
-        UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
+            LoginResponse response = new LoginResponse(
+                    jwt,
+                    userDetails.getId(),
+                    userDetails.getUsername(),
+                    userDetails.getEmail(),
+                    roles);
+            response.setRefreshToken(jwtUtils.generateRefreshToken(userDetails.getUsername()));
+            response.setExpiresIn(jwtUtils.getAccessTokenExpirationMs() / 1000);
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@Valid @RequestBody TokenRefreshRequest refreshRequest) {
+        Claims claims = jwtUtils.parseClaims(refreshRequest.getRefreshToken());
+        // Refresh tokens are single use: claim the token before anything is issued, so that of two
+        // concurrent refreshes with the same token only one succeeds
+        if (claims == null || !jwtUtils.isTokenType(claims, JwtUtils.TOKEN_TYPE_REFRESH)
+                || revocationList.isRevoked(claims.getId(), claims.getSubject(),
+                        claims.getIssuedAt().getTime(), claims.getExpiration().getTime())
+                || !revocationList.revokeIfAbsent(claims.getId(), claims.getExpiration().getTime())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ResponseDTO(false, "Error: Refresh token is invalid or expired"));
+        }
+
+        // Roles are re-read here, once per refresh, instead of on every request
+        UserDetailsImpl userDetails;
+        try {
+            userDetails = (UserDetailsImpl) userDetailsService.loadUserByUsername(claims.getSubject());
+        } catch (UsernameNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new ResponseDTO(false, "Error: User no longer exists"));
+        }
+
+        auditLog.record(AuditAction.TOKEN_REFRESH, userDetails.getUsername(), userDetails.getBranchId(), null, null,
+                null);
+
+        Authentication authentication = new UsernamePasswordAuthenticationToken(
+                userDetails, null, userDetails.getAuthorities());
         List<String> roles = userDetails.getAuthorities().stream()
                 .map(item -> item.getAuthority())
                 .collect(Collectors.toList());
 
-        return ResponseEntity.ok(new LoginResponse(
-                jwt,
+        LoginResponse response = new LoginResponse(
+                jwtUtils.generateJwtToken(authentication),
                 userDetails.getId(),
                 userDetails.getUsername(),
                 userDetails.getEmail(),
-                roles));
+                roles);
+        response.setRefreshToken(jwtUtils.generateRefreshToken(userDetails.getUsername()));
+        response.setExpiresIn(jwtUtils.getAccessTokenExpirationMs() / 1000);
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logoutUser(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+                                        @RequestBody(required = false) TokenRefreshRequest refreshRequest) {
+        if (authorization != null && authorization.startsWith("Bearer ")) {
+            revoke(authorization.substring(7));
+        }
+        if (refreshRequest != null && refreshRequest.getRefreshToken() != null) {
+            revoke(refreshRequest.getRefreshToken());
+        }
+        auditLog.record(AuditAction.LOGOUT, null, null);
+        return ResponseEntity.ok(new ResponseDTO(true, "Logged out successfully"));
+    }
+
+    /**
+     * Invalidate every token of a user, to be called when roles change or the account is disabled.
+     */
+    @PostMapping("/revoke/{username}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> revokeUserTokens(@PathVariable String username) {
+        revocationList.revokeAllForUser(username);
+        auditLog.record(AuditAction.TOKENS_REVOKED, username, null);
+        return ResponseEntity.ok(new ResponseDTO(true, "All tokens revoked for user " + username));
+    }
+
+    @GetMapping("/revocation-stats")
+    public ResponseEntity<Map<String, Object>> getRevocationStats() {
+        return ResponseEntity.ok(revocationList.getStats());
+    }
+
+    private void revoke(String token) {
+        Claims claims = jwtUtils.parseClaims(token);
+        if (claims != null) {
+            revocationList.revoke(claims.getId(), claims.getExpiration().getTime());
+        }
+    }
+
+    @GetMapping("/pool-stats")
+    public ResponseEntity<Map<String, Object>> getAuthenticationPoolStats() {
+        Map<String, Object> stats = authenticationExecutor.getStats();
+        stats.put("throttledUsernames", loginThrottle.trackedUsernames());
+        stats.put("throttledAddresses", loginThrottle.trackedAddresses());
+        return ResponseEntity.ok(stats);
+    }
+
+    private ResponseEntity<?> tooManyRequests(String message, long retryAfterSeconds) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ResponseDTO(false, message));
     }
 
     @PostMapping("/register")
@@ -1,14 +1,27 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditLog;
 import com.mzm.pharmaflow.dto.ClientDTO;
 import com.mzm.pharmaflow.dto.ResponseDTO;
 import com.mzm.pharmaflow.model.ClientStatus;
+import com.mzm.pharmaflow.service.ClientReclassificationService;
 import com.mzm.pharmaflow.service.ClientService;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import com.mzm.pharmaflow.visits.VisitBuffer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import javax.persistence.EntityNotFoundException;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +35,15 @@ public class ClientController {
     
     @Autowired
     private ClientService clientService;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private ClientReclassificationService reclassificationService;
+
+    @Autowired
+    private VisitBuffer visitBuffer;
     
     /**
      * Get all clients
@@ -30,6 +52,7 @@ public class ClientController {
     @GetMapping
     public ResponseEntity<List<ClientDTO>> getAllClients() {
         List<ClientDTO> clients = clientService.findAll();
+        auditLog.record(AuditAction.CLIENT_LIST, null, clients.size() + " clients");
         return ResponseEntity.ok(clients);
     }
     
@@ -41,6 +64,7 @@ public class ClientController {
     @GetMapping("/{id}")
     public ResponseEntity<ClientDTO> getClientById(@PathVariable Long id) {
         ClientDTO client = clientService.findById(id);
+        auditLog.record(AuditAction.CLIENT_READ, id, null);
         return ResponseEntity.ok(client);
     }
     
@@ -52,6 +76,7 @@ public class ClientController {
     @PostMapping
     public ResponseEntity<ClientDTO> createClient(@Valid @RequestBody ClientDTO clientDTO) {
         ClientDTO createdClient = clientService.save(clientDTO);
+        auditLog.record(AuditAction.CLIENT_CREATE, createdClient.getId(), null);
         return ResponseEntity.ok(createdClient);
     }
     
@@ -65,9 +90,36 @@ public class ClientController {
     public ResponseEntity<ClientDTO> updateClient(@PathVariable Long id, @Valid @RequestBody ClientDTO clientDTO) {
         clientDTO.setId(id);
         ClientDTO updatedClient = clientService.save(clientDTO);
+        auditLog.record(AuditAction.CLIENT_UPDATE, id, null);
         return ResponseEntity.ok(updatedClient);
     }
     
+    /**
+     * Partially update a client: only the supplied fields are written, in one statement.
+     * Send back the version read with the client to reject concurrent edits.
+     * @param id client ID
+     * @param changes fields to change, plus the expected version
+     * @return updated client, 400 without a version, 404 if it does not exist, 409 if it was modified
+     *         in the meantime or clashes with another client
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchClient(@PathVariable Long id, @RequestBody ClientDTO changes) {
+        try {
+            clientService.patch(id, changes);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, e.getMessage()));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, e.getMessage()));
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, "Client conflicts with existing data"));
+        } catch (IllegalArgumentException | ConstraintViolationException e) {
+            return ResponseEntity.badRequest().body(new ResponseDTO(false, e.getMessage()));
+        }
+        auditLog.record(AuditAction.CLIENT_UPDATE, id, "patch");
+        // Read back after the write transaction has committed
+        return ResponseEntity.ok(clientService.findById(id));
+    }
+    
     /**
      * Delete a client
      * @param id client ID
@@ -76,6 +128,7 @@ public class ClientController {
     @DeleteMapping("/{id}")
     public ResponseEntity<ResponseDTO> deleteClient(@PathVariable Long id) {
         clientService.deleteById(id);
+        auditLog.record(AuditAction.CLIENT_DELETE, id, null);
         return ResponseEntity.ok(new ResponseDTO(true, "Client deleted successfully"));
     }
     
@@ -87,6 +140,7 @@ public class ClientController {
     @GetMapping("/search")
     public ResponseEntity<List<ClientDTO>> searchClients(@RequestParam String name) {
         List<ClientDTO> clients = clientService.findByName(name);
+        auditLog.record(AuditAction.CLIENT_SEARCH, null, "name=" + name + ", " + clients.size() + " clients");
         return ResponseEntity.ok(clients);
     }
     
@@ -98,6 +152,7 @@ public class ClientController {
     @GetMapping("/status/{status}")
     public ResponseEntity<List<ClientDTO>> getClientsByStatus(@PathVariable String status) {
         List<ClientDTO> clients = clientService.findByStatus(status);
+        auditLog.record(AuditAction.CLIENT_LIST, null, "status=" + status + ", " + clients.size() + " clients");
         return ResponseEntity.ok(clients);
     }
     
@@ -108,6 +163,7 @@ public class ClientController {
     @GetMapping("/with-prescription")
     public ResponseEntity<List<ClientDTO>> getClientsWithPrescription() {
         List<ClientDTO> clients = clientService.findWithPrescription();
+        auditLog.record(AuditAction.CLIENT_LIST, null, "with prescription, " + clients.size() + " clients");
         return ResponseEntity.ok(clients);
     }
     
@@ -137,4 +193,47 @@ public class ClientController {
         Map<String, Object> stats = clientService.getStats();
         return ResponseEntity.ok(stats);
     }
-} 
\ No newline at end of file
+
+    /**
+     * Reclassify the current branch's clients from their last visit now, instead of waiting for the nightly run
+     * @return clients updated and counts per transition
+     */
+    @PostMapping("/reclassification")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reclassifyClients() {
+        return ResponseEntity.ok(reclassificationService.reclassifyCurrentBranch());
+    }
+
+    /**
+     * Get reclassification counters
+     * @return runs, clients reclassified and the last run's transitions
+     */
+    @GetMapping("/reclassification/stats")
+    public ResponseEntity<Map<String, Object>> getReclassificationStats() {
+        return ResponseEntity.ok(reclassificationService.getStats());
+    }
+
+    /**
+     * Record that a client came in. The visit is buffered and written with the next flush.
+     * @param id client ID
+     * @return 202 once buffered, 503 if the buffer is full
+     */
+    @PostMapping("/{id}/visits")
+    public ResponseEntity<ResponseDTO> recordVisit(@PathVariable Long id) {
+        if (!visitBuffer.record(TenantContext.getBranchId(), id, LocalDate.now())) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new ResponseDTO(false, "Too many visits waiting to be saved, retry shortly"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseDTO(true, "Visit recorded"));
+    }
+
+    /**
+     * Get visit buffer counters
+     * @return pending clients, coalesced visits, flush times and lag
+     */
+    @GetMapping("/visits/stats")
+    public ResponseEntity<Map<String, Object>> getVisitStats() {
+        return ResponseEntity.ok(visitBuffer.getStats());
+    }
+}
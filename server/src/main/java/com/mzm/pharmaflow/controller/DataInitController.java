@@ -1,5 +1,8 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.datagen.DatasetGenerator;
+import com.mzm.pharmaflow.datagen.DatasetReport;
+import com.mzm.pharmaflow.datagen.DatasetSpec;
 import com.mzm.pharmaflow.dto.ClientDTO;
 import com.mzm.pharmaflow.dto.ProductDTO;
 import com.mzm.pharmaflow.dto.ResponseDTO;
@@ -8,9 +11,13 @@ import com.mzm.pharmaflow.model.ProductCategory;
 import com.mzm.pharmaflow.service.ClientService;
 import com.mzm.pharmaflow.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -19,6 +26,7 @@ import java.util.List;
 import java.util.Random;
 
 @RestController
+@Lazy
 @RequestMapping("/data")
 @CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
 public class DataInitController {
@@ -26,13 +34,16 @@ public class DataInitController {
     private final ProductService productService;
     private final ClientService clientService;
     private final JdbcTemplate jdbcTemplate;
+    private final DatasetGenerator datasetGenerator;
     private final Random random = new Random();
 
     @Autowired
-    public DataInitController(ProductService productService, ClientService clientService, JdbcTemplate jdbcTemplate) {
+    public DataInitController(ProductService productService, ClientService clientService, JdbcTemplate jdbcTemplate,
+                              DatasetGenerator datasetGenerator) {
         this.productService = productService;
         this.clientService = clientService;
         this.jdbcTemplate = jdbcTemplate;
+        this.datasetGenerator = datasetGenerator;
     }
 
     @PostMapping("/init-products")
@@ -129,6 +140,23 @@ public class DataInitController {
         }
     }
 
+    /**
+     * Generate a synthetic dataset in the current branch for load testing
+     * @param spec sizes, seed and rates; defaults apply when omitted
+     * @return inserted rows and throughput
+     */
+    @PostMapping("/generate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<DatasetReport> generateDataset(@RequestBody(required = false) DatasetSpec spec) {
+        try {
+            return ResponseEntity.ok(datasetGenerator.generate(spec != null ? spec : new DatasetSpec()));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
     private List<ProductDTO> generateSampleProducts(int count) {
         List<ProductDTO> products = new ArrayList<>();
         
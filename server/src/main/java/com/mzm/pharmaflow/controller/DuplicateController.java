@@ -0,0 +1,108 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditLog;
+import com.mzm.pharmaflow.dedup.DuplicateCandidate;
+import com.mzm.pharmaflow.dedup.DuplicateService;
+import com.mzm.pharmaflow.dto.ClientMergeRequest;
+import com.mzm.pharmaflow.dto.ResponseDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/duplicates")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class DuplicateController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private DuplicateService duplicateService;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    /**
+     * Get the clients that are probably registered more than once
+     * @param minScore lowest similarity, between 0 and 1
+     * @param limit maximum number of pairs
+     * @return candidate pairs, most likely first
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<List<DuplicateCandidate>> getCandidates(@RequestParam(defaultValue = "0") double minScore,
+                                                                  @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(duplicateService.findCandidates(minScore, Math.max(1, Math.min(limit, MAX_LIMIT))));
+    }
+
+    /**
+     * Compare the whole branch again now
+     * @return index size, comparisons and candidates
+     */
+    @PostMapping("/scan")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> scan() {
+        return ResponseEntity.ok(duplicateService.scan());
+    }
+
+    /**
+     * Merge a duplicate into the client kept and delete it
+     * @param request client kept and duplicate
+     * @return confirmation
+     */
+    @PostMapping("/merge")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<ResponseDTO> merge(@Valid @RequestBody ClientMergeRequest request) {
+        try {
+            duplicateService.merge(request.getKeepId(), request.getDuplicateId());
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+        auditLog.record(AuditAction.CLIENT_MERGE, request.getKeepId(), "merged " + request.getDuplicateId());
+        return ResponseEntity.ok(new ResponseDTO(true, "Client " + request.getDuplicateId()
+                + " merged into " + request.getKeepId()));
+    }
+
+    /**
+     * Mark two clients as different people
+     * @param clientId one client
+     * @param otherClientId the other client
+     * @return confirmation
+     */
+    @PostMapping("/{clientId}/{otherClientId}/dismiss")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<ResponseDTO> dismiss(@PathVariable Long clientId, @PathVariable Long otherClientId,
+                                               Authentication authentication) {
+        try {
+            duplicateService.dismiss(clientId, otherClientId, authentication != null ? authentication.getName() : null);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return ResponseEntity.ok(new ResponseDTO(true, "Pair dismissed"));
+    }
+
+    /**
+     * Get deduplication statistics
+     * @return index sizes, comparisons, candidates, merges and dismissals
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(duplicateService.getStats());
+    }
+}
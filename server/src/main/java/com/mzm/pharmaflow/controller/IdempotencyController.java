@@ -0,0 +1,26 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.idempotency.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/idempotency")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class IdempotencyController {
+    
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+    
+    /**
+     * Get idempotency cache statistics
+     * @return cached responses, replays and collapsed duplicates
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(idempotencyStore.getStats());
+    }
+}
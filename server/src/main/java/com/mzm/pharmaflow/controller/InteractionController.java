@@ -0,0 +1,103 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.dto.InteractionCheckRequest;
+import com.mzm.pharmaflow.interaction.InteractionReport;
+import com.mzm.pharmaflow.interaction.InteractionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.Valid;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/interactions")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class InteractionController {
+
+    @Autowired
+    private InteractionService interactionService;
+
+    /**
+     * Check a basket for interactions, duplicated ingredients and the client's allergies
+     * @param request client and products
+     * @return alerts, most severe first
+     */
+    @PostMapping("/check")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST') or hasRole('USER')")
+    public ResponseEntity<InteractionReport> check(@Valid @RequestBody InteractionCheckRequest request) {
+        try {
+            return ResponseEntity.ok(interactionService.check(request.getClientId(), request.getProductIds()));
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get the allergies recognised in a client's medical history
+     * @param id client ID
+     * @return allergen names
+     */
+    @GetMapping("/clients/{id}/allergies")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> getAllergies(@PathVariable Long id) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clientId", id);
+        try {
+            result.put("allergies", interactionService.getAllergies(id));
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Get the ingredients a product is checked with
+     * @param id product ID
+     * @return ingredient and category names
+     */
+    @GetMapping("/products/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> getIngredients(@PathVariable Long id) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("productId", id);
+        try {
+            result.put("ingredients", interactionService.getIngredients(id));
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Reload the interaction knowledge file
+     * @return compiled graph dimensions
+     */
+    @PostMapping("/reload")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> reload() {
+        try {
+            return ResponseEntity.ok(interactionService.reloadKnowledge());
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    "Interaction knowledge rejected: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get interaction engine statistics
+     * @return graph dimensions, profiles and check timings
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(interactionService.getStats());
+    }
+}
@@ -1,15 +1,23 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditLog;
 import com.mzm.pharmaflow.dto.ProductDTO;
+import com.mzm.pharmaflow.dto.ReconciliationReportDTO;
 import com.mzm.pharmaflow.dto.ResponseDTO;
+import com.mzm.pharmaflow.dto.StockCountRequest;
 import com.mzm.pharmaflow.service.ProductService;
+import com.mzm.pharmaflow.service.StockReconciliationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.EntityNotFoundException;
 import javax.validation.Valid;
 import java.util.List;
 
@@ -19,10 +27,15 @@ import java.util.List;
 public class InventoryController {
 
     private final ProductService productService;
+    private final StockReconciliationService reconciliationService;
+    private final AuditLog auditLog;
     
     @Autowired
-    public InventoryController(ProductService productService) {
+    public InventoryController(ProductService productService, StockReconciliationService reconciliationService,
+                               AuditLog auditLog) {
         this.productService = productService;
+        this.reconciliationService = reconciliationService;
+        this.auditLog = auditLog;
     }
     
     @GetMapping("/products")
@@ -54,6 +67,7 @@ public class InventoryController {
     public ResponseEntity<ProductDTO> createProduct(@Valid @RequestBody ProductDTO productDTO) {
         try {
             ProductDTO createdProduct = productService.save(productDTO);
+            auditLog.record(AuditAction.PRODUCT_CREATE, createdProduct.getId(), "quantity=" + createdProduct.getQuantity());
             return ResponseEntity.status(HttpStatus.CREATED).body(createdProduct);
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
@@ -69,18 +83,41 @@ public class InventoryController {
         try {
             productDTO.setId(id);
             ProductDTO updatedProduct = productService.update(productDTO);
+            auditLog.record(AuditAction.PRODUCT_UPDATE, id, "quantity=" + updatedProduct.getQuantity());
             return ResponseEntity.ok(updatedProduct);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, 
                 "Error updating product: " + e.getMessage(), e);
         }
     }
 
+    @PatchMapping("/products/{id}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProductDTO> patchProduct(@PathVariable Long id, @RequestBody ProductDTO changes) {
+        try {
+            productService.patch(id, changes);
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (DataIntegrityViolationException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Product code already exists in this branch", e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        auditLog.record(AuditAction.PRODUCT_UPDATE, id,
+                changes.getQuantity() != null ? "patch, quantity=" + changes.getQuantity() : "patch");
+        return ResponseEntity.ok(productService.findById(id));
+    }
+
     @DeleteMapping("/products/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<ResponseDTO> deleteProduct(@PathVariable Long id) {
         try {
             productService.delete(id);
+            auditLog.record(AuditAction.PRODUCT_DELETE, id, null);
             return ResponseEntity.ok(new ResponseDTO(true, "Product deleted successfully"));
         } catch (Exception e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, 
@@ -123,4 +160,23 @@ public class InventoryController {
                 "Error fetching expiring products: " + e.getMessage(), e);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Apply a physical inventory count: counted quantities replace recorded stock
+     * in one transaction. With dryRun only the variance report is computed.
+     */
+    @PostMapping("/reconciliation")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<ReconciliationReportDTO> reconcileStock(@Valid @RequestBody StockCountRequest request) {
+        try {
+            ReconciliationReportDTO report = reconciliationService.reconcile(request);
+            if (!request.isDryRun()) {
+                auditLog.record(AuditAction.STOCK_RECONCILIATION, request.getReference(),
+                        request.getCounts().size() + " counted lines");
+            }
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.media.MediaSender;
+import com.mzm.pharmaflow.media.MediaStore;
+import com.mzm.pharmaflow.media.StoredMedia;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityNotFoundException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/media")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class MediaController {
+
+    @Autowired
+    private MediaStore mediaStore;
+
+    @Autowired
+    private MediaSender mediaSender;
+
+    @Value("${media.max-upload-bytes:5242880}")
+    private long maxUploadBytes;
+
+    /**
+     * Upload an image, sent as the raw request body. Set the returned URL as a product's
+     * imageUrl or a client's avatar.
+     * @return 201 with the stored image's URLs
+     */
+    @PostMapping(consumes = {"image/jpeg", "image/png", "image/gif", "image/webp"})
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<StoredMedia> upload(HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxUploadBytes) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Image is larger than " + maxUploadBytes + " bytes");
+        }
+        StoredMedia stored;
+        try {
+            stored = mediaStore.store(request.getInputStream());
+        } catch (MediaStore.UploadTooLargeException e) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        return ResponseEntity.created(URI.create(stored.getUrl())).body(stored);
+    }
+
+    /**
+     * Get an image. Images are public so that they load in img tags; their IDs are content hashes
+     * and cannot be guessed.
+     * @param id media ID
+     * @param width if set, a thumbnail at least this wide, rounded up to one of the configured sizes
+     */
+    @GetMapping("/{id:[0-9a-f]+\\.[a-z]+}")
+    public void get(@PathVariable String id, @RequestParam(value = "w", required = false) Integer width,
+                    HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            mediaSender.send(id, width, request, response);
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get media statistics
+     * @return uploads, thumbnail cache and response counters
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        Map<String, Object> stats = new HashMap<>(mediaStore.getStats());
+        stats.put("responses", mediaSender.getStats());
+        return ResponseEntity.ok(stats);
+    }
+}
@@ -0,0 +1,28 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.outbox.OutboxRelay;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/outbox")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class OutboxController {
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    /**
+     * Get outbox relay statistics
+     * @return subscriber positions, pending changes and delivery counters
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(outboxRelay.getStats());
+    }
+}
@@ -0,0 +1,148 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.dto.PrescriptionDTO;
+import com.mzm.pharmaflow.model.PrescriptionStatus;
+import com.mzm.pharmaflow.service.PrescriptionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityNotFoundException;
+import javax.validation.Valid;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@RestController
+@RequestMapping("/prescriptions")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class PrescriptionController {
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    /**
+     * Register a prescription in the pending queue
+     * @param prescription prescription with its items
+     * @return created prescription
+     */
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> create(@Valid @RequestBody PrescriptionDTO prescription) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(handle(() -> prescriptionService.create(prescription)));
+    }
+
+    /**
+     * List the branch's prescriptions, newest first
+     * @param status optional status filter
+     * @param limit maximum number of prescriptions
+     * @return prescriptions
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<List<PrescriptionDTO>> list(@RequestParam(required = false) String status,
+                                                      @RequestParam(defaultValue = "50") int limit) {
+        PrescriptionStatus filter = null;
+        if (status != null) {
+            try {
+                filter = PrescriptionStatus.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown status: " + status, e);
+            }
+        }
+        return ResponseEntity.ok(prescriptionService.findRecent(filter, limit));
+    }
+
+    /**
+     * Get a prescription
+     * @param id prescription ID
+     * @return prescription with its items
+     */
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> get(@PathVariable Long id) {
+        return ResponseEntity.ok(handle(() -> prescriptionService.findById(id)));
+    }
+
+    /**
+     * Claim the oldest pending prescription. Concurrent callers always get different ones.
+     * @return claimed prescription, or 204 if nothing is pending
+     */
+    @PostMapping("/claim")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> claim(Authentication authentication) {
+        Optional<PrescriptionDTO> claimed = prescriptionService.claimNext(authentication.getName());
+        return claimed.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    /**
+     * Mark a claimed prescription as delivered
+     * @param id prescription ID
+     * @return completed prescription
+     */
+    @PostMapping("/{id}/complete")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> complete(@PathVariable Long id, Authentication authentication) {
+        return ResponseEntity.ok(handle(() -> prescriptionService.complete(id, authentication.getName())));
+    }
+
+    /**
+     * Put a claimed prescription back in the queue; admins may release anyone's claim
+     * @param id prescription ID
+     * @return released prescription
+     */
+    @PostMapping("/{id}/release")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> release(@PathVariable Long id, Authentication authentication) {
+        String holder = isAdmin(authentication) ? null : authentication.getName();
+        return ResponseEntity.ok(handle(() -> prescriptionService.release(id, holder)));
+    }
+
+    /**
+     * Cancel a prescription that has not been delivered
+     * @param id prescription ID
+     * @return cancelled prescription
+     */
+    @PostMapping("/{id}/cancel")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<PrescriptionDTO> cancel(@PathVariable Long id) {
+        return ResponseEntity.ok(handle(() -> prescriptionService.cancel(id)));
+    }
+
+    /**
+     * Get queue statistics
+     * @return per-status counts and claim counters
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(prescriptionService.getStats());
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> T handle(Supplier<T> action) {
+        try {
+            return action.get();
+        } catch (EntityNotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+}
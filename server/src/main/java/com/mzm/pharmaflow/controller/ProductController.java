@@ -1,14 +1,25 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.audit.AuditAction;
+import com.mzm.pharmaflow.audit.AuditLog;
+import com.mzm.pharmaflow.barcode.BarcodeService;
+import com.mzm.pharmaflow.barcode.BatchScan;
+import com.mzm.pharmaflow.barcode.ScanRecord;
 import com.mzm.pharmaflow.dto.ProductDTO;
 import com.mzm.pharmaflow.dto.ResponseDTO;
+import com.mzm.pharmaflow.dto.ScanBatchRequest;
 import com.mzm.pharmaflow.model.Product;
 import com.mzm.pharmaflow.model.ProductCategory;
 import com.mzm.pharmaflow.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.persistence.EntityNotFoundException;
+import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -23,6 +34,12 @@ public class ProductController {
     
     @Autowired
     private ProductService productService;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private BarcodeService barcodeService;
     
     /**
      * Get all products
@@ -53,22 +70,61 @@ public class ProductController {
     @PostMapping
     public ResponseEntity<ProductDTO> createProduct(@Valid @RequestBody ProductDTO productDTO) {
         ProductDTO createdProduct = productService.save(productDTO);
+        auditLog.record(AuditAction.PRODUCT_CREATE, createdProduct.getId(), "quantity=" + createdProduct.getQuantity());
         return ResponseEntity.ok(createdProduct);
     }
     
     /**
      * Update an existing product
      * @param id product ID
-     * @param productDTO updated product data
-     * @return updated product
+     * @param productDTO updated product data; a version, if sent, must match the stored one
+     * @return updated product, 404 if it does not exist, 409 if it was modified in the meantime
+     *         or clashes with another product
      */
     @PutMapping("/{id}")
-    public ResponseEntity<ProductDTO> updateProduct(@PathVariable Long id, @Valid @RequestBody ProductDTO productDTO) {
+    public ResponseEntity<?> updateProduct(@PathVariable Long id, @Valid @RequestBody ProductDTO productDTO) {
         productDTO.setId(id);
-        ProductDTO updatedProduct = productService.save(productDTO);
+        ProductDTO updatedProduct;
+        try {
+            updatedProduct = productService.update(productDTO);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, e.getMessage()));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, e.getMessage()));
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, "Product code already exists in this branch"));
+        }
+        auditLog.record(AuditAction.PRODUCT_UPDATE, id, "quantity=" + updatedProduct.getQuantity());
         return ResponseEntity.ok(updatedProduct);
     }
     
+    /**
+     * Partially update a product: only the supplied fields are written, in one statement.
+     * Send back the version read with the product to reject concurrent edits.
+     * @param id product ID
+     * @param changes fields to change, plus the expected version
+     * @return updated product, 400 without a version, 404 if it does not exist, 409 if it was modified
+     *         in the meantime or clashes with another product
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patchProduct(@PathVariable Long id, @RequestBody ProductDTO changes) {
+        try {
+            productService.patch(id, changes);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, e.getMessage()));
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, e.getMessage()));
+        } catch (DataIntegrityViolationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseDTO(false, "Product code already exists in this branch"));
+        } catch (IllegalArgumentException | ConstraintViolationException e) {
+            return ResponseEntity.badRequest().body(new ResponseDTO(false, e.getMessage()));
+        }
+        auditLog.record(AuditAction.PRODUCT_UPDATE, id,
+                changes.getQuantity() != null ? "patch, quantity=" + changes.getQuantity() : "patch");
+        // Read back after the write transaction has committed
+        return ResponseEntity.ok(productService.findById(id));
+    }
+    
     /**
      * Delete a product
      * @param id product ID
@@ -77,6 +133,7 @@ public class ProductController {
     @DeleteMapping("/{id}")
     public ResponseEntity<ResponseDTO> deleteProduct(@PathVariable Long id) {
         productService.deleteById(id);
+        auditLog.record(AuditAction.PRODUCT_DELETE, id, null);
         return ResponseEntity.ok(new ResponseDTO(true, "Product deleted successfully"));
     }
     
@@ -91,6 +148,44 @@ public class ProductController {
         return ResponseEntity.ok(products);
     }
     
+    /**
+     * Find a product by scanned code, from memory
+     * @param code product code as read by the scanner
+     * @return product, 404 if no product has this code
+     */
+    @GetMapping("/scan")
+    public ResponseEntity<?> scan(@RequestParam String code) {
+        ScanRecord product = barcodeService.scan(code);
+        if (product == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, "No product with code " + code));
+        }
+        return ResponseEntity.ok(product);
+    }
+    
+    /**
+     * Resolve the codes scanned while receiving a delivery
+     * @param request scanned codes, one per unit
+     * @return distinct codes with counts and products, and the codes matching no product
+     */
+    @PostMapping("/scan")
+    public ResponseEntity<?> scanBatch(@Valid @RequestBody ScanBatchRequest request) {
+        try {
+            BatchScan result = barcodeService.scanAll(request.getCodes());
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ResponseDTO(false, e.getMessage()));
+        }
+    }
+    
+    /**
+     * Get scan statistics
+     * @return code index sizes, scan counts and average scan time
+     */
+    @GetMapping("/scan/stats")
+    public ResponseEntity<Map<String, Object>> getScanStats() {
+        return ResponseEntity.ok(barcodeService.getStats());
+    }
+    
     /**
      * Get products with low stock
      * @return list of products with low stock
@@ -0,0 +1,136 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.report.ReportJob;
+import com.mzm.pharmaflow.report.ReportService;
+import com.mzm.pharmaflow.report.ReportType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/reports")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class ReportController {
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    @Autowired
+    private ReportService reportService;
+
+    /**
+     * List available reports
+     * @return report keys and descriptions
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<List<Map<String, String>>> getReportTypes() {
+        List<Map<String, String>> types = new ArrayList<>();
+        for (ReportType type : ReportType.values()) {
+            Map<String, String> entry = new LinkedHashMap<>();
+            entry.put("report", type.getKey());
+            entry.put("description", type.getDescription());
+            types.add(entry);
+        }
+        return ResponseEntity.ok(types);
+    }
+
+    /**
+     * Request a report; returns at once with the job to poll
+     * @param report report key
+     * @param params report parameters
+     * @return 200 with the job if an up-to-date result is cached, 202 otherwise
+     */
+    @PostMapping("/{report}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReportJob> generate(@PathVariable String report,
+                                              @RequestParam Map<String, String> params) {
+        ReportJob job;
+        try {
+            job = reportService.submit(ReportType.fromKey(report), params);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Report queue is full, retry in " + reportService.retryAfterSeconds() + " s", e);
+        }
+        HttpStatus status = job.getStatus() == ReportJob.Status.DONE ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status)
+                .location(URI.create("/api/reports/jobs/" + job.getId()))
+                .body(job);
+    }
+
+    /**
+     * Get the current branch's report jobs
+     * @return jobs, newest first
+     */
+    @GetMapping("/jobs")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<List<ReportJob>> getJobs() {
+        return ResponseEntity.ok(reportService.listJobs());
+    }
+
+    /**
+     * Get a report job
+     * @param id job ID
+     * @return job status
+     */
+    @GetMapping("/jobs/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<ReportJob> getJob(@PathVariable String id) {
+        return ResponseEntity.ok(requireJob(id));
+    }
+
+    /**
+     * Download a generated report. Range requests are honoured, so large files can be resumed.
+     * @param id job ID
+     * @return CSV file
+     */
+    @GetMapping("/jobs/{id}/download")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST')")
+    public ResponseEntity<Resource> download(@PathVariable String id) {
+        ReportJob job = requireJob(id);
+        if (job.getStatus() != ReportJob.Status.DONE) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Report is " + job.getStatus());
+        }
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .eTag("\"" + job.getId() + "\"")
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(job.getFileName()).build().toString())
+                .body(new FileSystemResource(job.getFile()));
+    }
+
+    /**
+     * Get report engine statistics
+     * @return queue, cache and generation metrics
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(reportService.getStats());
+    }
+
+    private ReportJob requireJob(String id) {
+        ReportJob job = reportService.findJob(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Report job not found: " + id);
+        }
+        return job;
+    }
+}
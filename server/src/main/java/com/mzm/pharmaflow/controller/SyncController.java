@@ -0,0 +1,51 @@
+package com.mzm.pharmaflow.controller;
+
+import com.mzm.pharmaflow.sync.SyncResponse;
+import com.mzm.pharmaflow.sync.SyncService;
+import com.mzm.pharmaflow.sync.SyncTokenExpiredException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/sync")
+@CrossOrigin(origins = {"http://localhost:3000", "http://127.0.0.1:3000"})
+public class SyncController {
+
+    @Autowired
+    private SyncService syncService;
+
+    /**
+     * Get products and clients changed since a token
+     * @param since token returned by the previous call; omit for a full sync
+     * @param limit maximum number of changes in this page
+     * @return changed rows, deleted IDs and the next token; 410 if the token is too old
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN') or hasRole('PHARMACIST') or hasRole('USER')")
+    public ResponseEntity<SyncResponse> sync(@RequestParam(required = false) String since,
+                                             @RequestParam(required = false) Integer limit) {
+        try {
+            return ResponseEntity.ok(syncService.sync(since, limit));
+        } catch (SyncTokenExpiredException e) {
+            throw new ResponseStatusException(HttpStatus.GONE, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Get sync statistics
+     * @return change log size and call counters
+     */
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(syncService.getStats());
+    }
+}
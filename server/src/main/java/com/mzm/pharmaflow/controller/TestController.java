@@ -1,6 +1,8 @@
 package com.mzm.pharmaflow.controller;
 
+import com.mzm.pharmaflow.benchmark.StartupBenchmark;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -14,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 
 @RestController
+@Lazy
 @RequestMapping("/test")
 @CrossOrigin(origins = "*")
 public class TestController {
@@ -21,6 +24,9 @@ public class TestController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private StartupBenchmark startupBenchmark;
+
     @GetMapping
     public ResponseEntity<String> test() {
         return ResponseEntity.ok("PharmaFlow API is running!");
@@ -49,6 +55,15 @@ public class TestController {
         return ResponseEntity.ok(info);
     }
     
+    /**
+     * Get the startup timeline
+     * @return milliseconds from JVM start to readiness and to the first response
+     */
+    @GetMapping("/startup")
+    public ResponseEntity<Map<String, Object>> getStartup() {
+        return ResponseEntity.ok(startupBenchmark.getTimeline());
+    }
+
     @GetMapping("/check-db")
     public ResponseEntity<Map<String, Object>> checkDb() {
         Map<String, Object> response = new HashMap<>();
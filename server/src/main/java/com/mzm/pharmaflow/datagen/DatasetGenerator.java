@@ -0,0 +1,516 @@
+package com.mzm.pharmaflow.datagen;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.ClientStatus;
+import com.mzm.pharmaflow.model.PrescriptionStatus;
+import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.service.PrescriptionService;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates products (as lots), clients and prescriptions at load-test scale.
+ *
+ * <p>Each table is cut into chunks of {@code datagen.chunk-size} rows. A chunk draws its rows
+ * from its own {@link SplittableRandom}, seeded from the dataset seed, the table and the chunk
+ * number, so the data does not depend on which worker ran it. Workers insert their chunk with
+ * batched JDBC statements in one transaction, recording the rows in the change log like any
+ * other write so that sync, the outbox and cached data see them.</p>
+ *
+ * <p>Prescriptions pick their client uniformly and their products from the first
+ * {@code datagen.sale-products} products of the branch, skewed towards the lowest IDs so that
+ * a few products sell far more than the rest.</p>
+ */
+@Service
+public class DatasetGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    private static final String INSERT_PRODUCT = "INSERT INTO products (branch_id, name, code, description, category, "
+            + "quantity, threshold, price, expiry_date, manufacturer, needs_prescription, dosage, formulation, "
+            + "active_ingredient, created_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_CLIENT = "INSERT INTO clients (branch_id, first_name, last_name, email, phone, "
+            + "address, medical_history, status, birth_date, last_visit, has_prescription, created_at, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_PRESCRIPTION = "INSERT INTO prescriptions (branch_id, client_id, doctor_name, "
+            + "issued_at, status, claimed_by, claimed_at, completed_at, created_at, updated_at, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_ITEM = "INSERT INTO prescription_items (prescription_id, product_id, "
+            + "product_name, quantity, instructions) VALUES (?, ?, ?, ?, ?)";
+
+    /** Ingredient, category, dosages, form, base price in dirhams, prescription only */
+    private static final Object[][] DRUGS = {
+            {"paracetamol", ProductCategory.ANALGESIQUE, new String[]{"500 mg", "1 g"}, "comprimés", 15, false},
+            {"ibuprofene", ProductCategory.ANTIINFLAMMATOIRE, new String[]{"200 mg", "400 mg"}, "comprimés", 22, false},
+            {"aspirine", ProductCategory.ANALGESIQUE, new String[]{"100 mg", "500 mg"}, "comprimés", 18, false},
+            {"diclofenac", ProductCategory.ANTIINFLAMMATOIRE, new String[]{"50 mg", "75 mg"}, "comprimés", 30, true},
+            {"ketoprofene", ProductCategory.ANTIINFLAMMATOIRE, new String[]{"100 mg"}, "gélules", 35, true},
+            {"naproxene", ProductCategory.ANTIINFLAMMATOIRE, new String[]{"550 mg"}, "comprimés", 40, true},
+            {"tramadol", ProductCategory.ANALGESIQUE, new String[]{"50 mg", "100 mg"}, "gélules", 45, true},
+            {"codeine", ProductCategory.ANALGESIQUE, new String[]{"30 mg"}, "comprimés", 38, true},
+            {"amoxicilline", ProductCategory.ANTIBIOTIQUE, new String[]{"500 mg", "1 g"}, "gélules", 42, true},
+            {"azithromycine", ProductCategory.ANTIBIOTIQUE, new String[]{"250 mg", "500 mg"}, "comprimés", 65, true},
+            {"clarithromycine", ProductCategory.ANTIBIOTIQUE, new String[]{"500 mg"}, "comprimés", 80, true},
+            {"ciprofloxacine", ProductCategory.ANTIBIOTIQUE, new String[]{"500 mg"}, "comprimés", 55, true},
+            {"cefixime", ProductCategory.ANTIBIOTIQUE, new String[]{"200 mg"}, "comprimés", 90, true},
+            {"omeprazole", ProductCategory.ANTIACIDE, new String[]{"20 mg", "40 mg"}, "gélules", 48, true},
+            {"esomeprazole", ProductCategory.ANTIACIDE, new String[]{"20 mg", "40 mg"}, "comprimés", 70, true},
+            {"simvastatine", ProductCategory.CARDIOVASCULAIRE, new String[]{"20 mg", "40 mg"}, "comprimés", 85, true},
+            {"atorvastatine", ProductCategory.CARDIOVASCULAIRE, new String[]{"10 mg", "20 mg"}, "comprimés", 95, true},
+            {"ramipril", ProductCategory.CARDIOVASCULAIRE, new String[]{"5 mg", "10 mg"}, "comprimés", 60, true},
+            {"enalapril", ProductCategory.CARDIOVASCULAIRE, new String[]{"20 mg"}, "comprimés", 50, true},
+            {"clopidogrel", ProductCategory.CARDIOVASCULAIRE, new String[]{"75 mg"}, "comprimés", 120, true},
+            {"warfarine", ProductCategory.CARDIOVASCULAIRE, new String[]{"5 mg"}, "comprimés", 75, true},
+            {"amiodarone", ProductCategory.CARDIOVASCULAIRE, new String[]{"200 mg"}, "comprimés", 110, true},
+            {"spironolactone", ProductCategory.CARDIOVASCULAIRE, new String[]{"25 mg", "50 mg"}, "comprimés", 58, true},
+            {"metformine", ProductCategory.OTHER, new String[]{"500 mg", "850 mg", "1000 mg"}, "comprimés", 28, true},
+            {"salbutamol", ProductCategory.RESPIRATOIRE, new String[]{"100 µg/dose"}, "suspension pour inhalation", 45, true},
+            {"cetirizine", ProductCategory.ANTIALLERGIQUE, new String[]{"10 mg"}, "comprimés", 25, false},
+            {"loratadine", ProductCategory.ANTIALLERGIQUE, new String[]{"10 mg"}, "comprimés", 27, false},
+            {"sertraline", ProductCategory.OTHER, new String[]{"50 mg"}, "gélules", 130, true},
+            {"fluoxetine", ProductCategory.OTHER, new String[]{"20 mg"}, "gélules", 95, true},
+            {"fer", ProductCategory.VITAMINE, new String[]{"80 mg"}, "comprimés", 32, false},
+            {"vitamine c", ProductCategory.VITAMINE, new String[]{"500 mg", "1 g"}, "comprimés effervescents", 20, false},
+    };
+
+    private static final String[] MANUFACTURERS = {"Sothema", "Cooper Pharma", "Laprophan", "Pharma 5", "Galenica",
+            "Bottu", "Maphar", "Sanofi", "Pfizer", "Novartis", "GSK", "Zenith Pharma"};
+
+    private static final String[] FIRST_NAMES = {"Mohammed", "Ahmed", "Fatima", "Aisha", "Omar", "Youssef", "Amina",
+            "Sara", "Karim", "Nadia", "Rachid", "Latifa", "Meryem", "Hassan", "Samira", "Khadija", "Hamza", "Imane",
+            "Mehdi", "Salma", "Anas", "Zineb", "Ayoub", "Houda", "Yassine", "Ghita", "Ilyas", "Hind", "Adil", "Loubna"};
+
+    private static final String[] LAST_NAMES = {"Alami", "Benani", "Tazi", "Benjelloun", "Chraibi", "El Fassi",
+            "Idrissi", "Lahlou", "Mansouri", "Ouazzani", "Sebti", "Tahiri", "Chaoui", "Bennani", "Ziani", "Berrada",
+            "Kettani", "Naciri", "Amrani", "Filali", "Skalli", "Bouzidi", "Lamrani", "Squalli", "Hajji", "Kadiri"};
+
+    private static final String[] CITIES = {"Casablanca", "Rabat", "Marrakech", "Fès", "Tanger", "Agadir", "Meknès",
+            "Oujda", "Kénitra", "Tétouan"};
+
+    private static final String[] ALLERGIES = {"Allergie aux pénicillines.", "Allergie à l'aspirine.",
+            "Allergie aux sulfamides.", "Intolérance à la codéine.", "Allergie à l'ibuprofène."};
+
+    private static final String[] CONDITIONS = {"Tension artérielle élevée.", "Diabète de type 2.", "Asthme.",
+            "Hypercholestérolémie.", "Insuffisance rénale légère.", "Grossesse en cours.", "Migraines fréquentes."};
+
+    private static final String[] STREETS = {"Rue", "Avenue", "Boulevard", "Impasse"};
+
+    private static final int PRODUCTS = 1;
+    private static final int CLIENTS = 2;
+    private static final int PRESCRIPTIONS = 3;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Value("${datagen.threads:0}")
+    private int threads;
+
+    @Value("${datagen.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${datagen.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${datagen.max-rows:5000000}")
+    private int maxRows;
+
+    @Value("${datagen.sale-products:50000}")
+    private int saleProducts;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+
+    /**
+     * Generate a dataset in the current branch
+     * @param spec dataset size and shape
+     * @return inserted rows and timings
+     * @throws IllegalArgumentException if the spec is out of bounds
+     * @throws IllegalStateException if a generation is already running, or this seed was already generated in the branch
+     */
+    public DatasetReport generate(DatasetSpec spec) {
+        validate(spec);
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A dataset is already being generated");
+        }
+        Long branchId = TenantContext.getBranchId();
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "datagen-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            if (spec.getProducts() > 0 && alreadyGenerated(branchId, spec.getSeed())) {
+                throw new IllegalStateException("A dataset with seed " + spec.getSeed()
+                        + " was already generated in branch " + branchId + "; use another seed");
+            }
+            long start = System.currentTimeMillis();
+            LocalDate today = LocalDate.now();
+            Map<String, Long> rows = new LinkedHashMap<>();
+            rows.put("products", run(pool, branchId, PRODUCTS, spec.getSeed(), spec.getProducts(),
+                    (random, from, to) -> insertProducts(branchId, spec, random, from, to, today)));
+            rows.put("clients", run(pool, branchId, CLIENTS, spec.getSeed(), spec.getClients(),
+                    (random, from, to) -> insertClients(branchId, spec, random, from, to, today)));
+            if (spec.getPrescriptions() > 0) {
+                SaleCatalogue catalogue = TenantContext.callOnBranch(branchId, () -> loadCatalogue(branchId));
+                AtomicLong items = new AtomicLong();
+                rows.put("prescriptions", run(pool, branchId, PRESCRIPTIONS, spec.getSeed(), spec.getPrescriptions(),
+                        (random, from, to) -> {
+                            items.addAndGet(insertPrescriptions(branchId, catalogue, random, from, to, today));
+                            return to - from;
+                        }));
+                rows.put("prescriptionItems", items.get());
+                prescriptionService.resyncCounters();
+            }
+            long took = System.currentTimeMillis() - start;
+            long total = rows.values().stream().mapToLong(Long::longValue).sum();
+            DatasetReport report = new DatasetReport(branchId, spec.getSeed(), threads, rows, took,
+                    took > 0 ? total * 1000 / took : total);
+            logger.info("Generated dataset for branch {} with seed {}: {} in {} ms ({} rows/s)",
+                    branchId, spec.getSeed(), rows, took, report.getRowsPerSecond());
+            return report;
+        } finally {
+            pool.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private void validate(DatasetSpec spec) {
+        if (spec.getProducts() < 0 || spec.getClients() < 0 || spec.getPrescriptions() < 0) {
+            throw new IllegalArgumentException("Row counts cannot be negative");
+        }
+        if (spec.getProducts() > maxRows || spec.getClients() > maxRows || spec.getPrescriptions() > maxRows) {
+            throw new IllegalArgumentException("At most " + maxRows + " rows per table");
+        }
+        if (spec.getLotsPerProduct() < 1) {
+            throw new IllegalArgumentException("lotsPerProduct must be at least 1");
+        }
+        if (!isRate(spec.getLowStockRate()) || !isRate(spec.getExpiringRate()) || !isRate(spec.getAllergyRate())) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1");
+        }
+    }
+
+    private static boolean isRate(double rate) {
+        return rate >= 0 && rate <= 1;
+    }
+
+    private boolean alreadyGenerated(Long branchId, long seed) {
+        Integer count = TenantContext.callOnBranch(branchId, () -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM products WHERE branch_id = ? AND code = ?", Integer.class,
+                branchId, productCode(seed, 0)));
+        return count != null && count > 0;
+    }
+
+    private interface ChunkWriter {
+        long write(SplittableRandom random, int from, int to);
+    }
+
+    /**
+     * Cut a table into chunks and write them on the pool, each in its own transaction
+     */
+    private long run(ExecutorService pool, Long branchId, int table, long seed, int count, ChunkWriter writer) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        List<Future<Long>> chunks = new ArrayList<>();
+        for (int chunk = 0; chunk * (long) chunkSize < count; chunk++) {
+            int from = chunk * chunkSize;
+            int to = (int) Math.min(count, from + (long) chunkSize);
+            // One stream per chunk, so the rows do not depend on the thread that writes them. The seed is
+            // mixed: seeds a multiple of SplittableRandom's own gamma apart give the same stream shifted
+            long chunkSeed = mix(mix(seed ^ ((long) table << 48)) + chunk);
+            chunks.add(pool.submit(() -> TenantContext.callOnBranch(branchId, () -> template.execute(tx ->
+                    writer.write(new SplittableRandom(chunkSeed), from, to)))));
+        }
+        long total = 0;
+        try {
+            for (Future<Long> chunk : chunks) {
+                total += chunk.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Dataset generation interrupted", e);
+        } catch (ExecutionException e) {
+            chunks.forEach(chunk -> chunk.cancel(true));
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+        return total;
+    }
+
+    private long insertProducts(Long branchId, DatasetSpec spec, SplittableRandom random, int from, int to,
+                                LocalDate today) {
+        Timestamp createdAt = Timestamp.valueOf(today.atStartOfDay());
+        List<Long> ids = insertBatched(INSERT_PRODUCT, from, to, (statement, i) -> {
+            // Lots of the same product share the drug, so derive it from the product, not the chunk
+            long product = i / spec.getLotsPerProduct();
+            long hash = mix(spec.getSeed() ^ product);
+            Object[] drug = DRUGS[(int) Long.remainderUnsigned(hash, DRUGS.length)];
+            String[] dosages = (String[]) drug[2];
+            String dosage = dosages[(int) Long.remainderUnsigned(hash >>> 16, dosages.length)];
+            String manufacturer = MANUFACTURERS[(int) Long.remainderUnsigned(hash >>> 32, MANUFACTURERS.length)];
+            String ingredient = (String) drug[0];
+            int threshold = 10 + random.nextInt(41);
+            int quantity = random.nextDouble() < spec.getLowStockRate()
+                    ? random.nextInt(threshold + 1)
+                    : threshold + 1 + random.nextInt(500);
+            LocalDate expiry = random.nextDouble() < spec.getExpiringRate()
+                    ? today.plusDays(random.nextInt(61) - 30)
+                    : today.plusDays(60 + random.nextInt(940));
+            BigDecimal price = BigDecimal.valueOf((int) drug[4] * (80 + random.nextInt(71)), 2);
+
+            statement.setLong(1, branchId);
+            statement.setString(2, capitalize(ingredient) + " " + dosage + " " + manufacturer);
+            statement.setString(3, productCode(spec.getSeed(), i));
+            statement.setString(4, "Lot " + (i % spec.getLotsPerProduct() + 1) + " - " + drug[3]);
+            statement.setString(5, ((ProductCategory) drug[1]).name());
+            statement.setInt(6, quantity);
+            statement.setInt(7, threshold);
+            statement.setBigDecimal(8, price);
+            statement.setDate(9, Date.valueOf(expiry));
+            statement.setString(10, manufacturer);
+            statement.setBoolean(11, (Boolean) drug[5]);
+            statement.setString(12, dosage);
+            statement.setString(13, (String) drug[3]);
+            statement.setString(14, ingredient);
+            statement.setTimestamp(15, createdAt);
+        });
+        changeRecorder.recordAll(branchId, SyncEntityType.PRODUCT, ids, ChangeOperation.UPSERT);
+        dataVersion.markChanged(branchId);
+        return ids.size();
+    }
+
+    private long insertClients(Long branchId, DatasetSpec spec, SplittableRandom random, int from, int to,
+                               LocalDate today) {
+        Timestamp createdAt = Timestamp.valueOf(today.atStartOfDay());
+        List<Long> ids = insertBatched(INSERT_CLIENT, from, to, (statement, i) -> {
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            StringBuilder history = new StringBuilder();
+            if (random.nextDouble() < spec.getAllergyRate()) {
+                history.append(ALLERGIES[random.nextInt(ALLERGIES.length)]);
+            }
+            if (random.nextInt(10) < 3) {
+                history.append(history.length() > 0 ? " " : "").append(CONDITIONS[random.nextInt(CONDITIONS.length)]);
+            }
+            LocalDate lastVisit = random.nextInt(10) == 0 ? null : today.minusDays(random.nextInt(730));
+
+            statement.setLong(1, branchId);
+            statement.setString(2, firstName);
+            statement.setString(3, lastName);
+            statement.setString(4, (firstName + "." + lastName).toLowerCase().replace(" ", "")
+                    + "." + spec.getSeed() + "." + i + "@example.ma");
+            statement.setString(5, "+2126" + (10000000 + random.nextInt(90000000)));
+            statement.setString(6, (1 + random.nextInt(200)) + " " + STREETS[random.nextInt(STREETS.length)] + " "
+                    + LAST_NAMES[random.nextInt(LAST_NAMES.length)] + ", " + CITIES[random.nextInt(CITIES.length)]);
+            statement.setString(7, history.length() > 0 ? history.toString() : null);
+            statement.setString(8, statusFor(lastVisit, today).name());
+            statement.setDate(9, Date.valueOf(today.minusYears(18 + random.nextInt(72)).minusDays(random.nextInt(365))));
+            statement.setDate(10, lastVisit != null ? Date.valueOf(lastVisit) : null);
+            statement.setBoolean(11, random.nextInt(10) < 4);
+            statement.setTimestamp(12, createdAt);
+        });
+        changeRecorder.recordAll(branchId, SyncEntityType.CLIENT, ids, ChangeOperation.UPSERT);
+        dataVersion.markChanged(branchId);
+        return ids.size();
+    }
+
+    private long insertPrescriptions(Long branchId, SaleCatalogue catalogue, SplittableRandom random, int from, int to,
+                                     LocalDate today) {
+        List<Object[]> items = new ArrayList<>();
+        List<Integer> lineCounts = new ArrayList<>();
+        List<Long> ids = insertBatched(INSERT_PRESCRIPTION, from, to, (statement, i) -> {
+            LocalDateTime issuedAt = today.minusDays(random.nextInt(365)).atStartOfDay()
+                    .plusSeconds(8 * 3600 + random.nextInt(12 * 3600));
+            int roll = random.nextInt(100);
+            PrescriptionStatus status = roll < 85 ? PrescriptionStatus.COMPLETED
+                    : roll < 88 ? PrescriptionStatus.CANCELLED : PrescriptionStatus.PENDING;
+            LocalDateTime claimedAt = status == PrescriptionStatus.COMPLETED
+                    ? issuedAt.plusMinutes(5 + random.nextInt(120)) : null;
+            LocalDateTime completedAt = claimedAt != null ? claimedAt.plusMinutes(1 + random.nextInt(15)) : null;
+
+            statement.setLong(1, branchId);
+            statement.setLong(2, catalogue.clientIds[random.nextInt(catalogue.clientIds.length)]);
+            statement.setString(3, "Dr. " + LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+            statement.setDate(4, Date.valueOf(issuedAt.toLocalDate()));
+            statement.setString(5, status.name());
+            statement.setString(6, claimedAt != null ? "datagen" : null);
+            statement.setTimestamp(7, claimedAt != null ? Timestamp.valueOf(claimedAt) : null);
+            statement.setTimestamp(8, completedAt != null ? Timestamp.valueOf(completedAt) : null);
+            statement.setTimestamp(9, Timestamp.valueOf(issuedAt));
+            statement.setTimestamp(10, Timestamp.valueOf(completedAt != null ? completedAt : issuedAt));
+
+            int lines = 1 + random.nextInt(4);
+            for (int line = 0; line < lines; line++) {
+                // Cubing a uniform draw favours the first products: a few best sellers, a long tail
+                double skew = random.nextDouble();
+                int product = (int) (skew * skew * skew * catalogue.productIds.length);
+                // The prescription ID is only known after the batch, patched in below
+                items.add(new Object[]{null, catalogue.productIds[product], catalogue.productNames[product],
+                        1 + random.nextInt(3), random.nextInt(3) == 0 ? "1 comprimé matin et soir" : null});
+            }
+            lineCounts.add(lines);
+        });
+        int item = 0;
+        for (int row = 0; row < ids.size(); row++) {
+            for (int line = 0; line < lineCounts.get(row); line++) {
+                items.get(item++)[0] = ids.get(row);
+            }
+        }
+        for (int offset = 0; offset < items.size(); offset += batchSize) {
+            jdbcTemplate.batchUpdate(INSERT_ITEM, items.subList(offset, Math.min(items.size(), offset + batchSize)));
+        }
+        return items.size();
+    }
+
+    private interface RowBinder {
+        void bind(PreparedStatement statement, int index) throws SQLException;
+    }
+
+    /**
+     * Insert rows {@code from} to {@code to} in JDBC batches and return their generated IDs, in order
+     */
+    private List<Long> insertBatched(String sql, int from, int to, RowBinder binder) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            List<Long> ids = new ArrayList<>(to - from);
+            try (PreparedStatement statement = connection.prepareStatement(sql, new String[]{"id"})) {
+                for (int i = from; i < to; i++) {
+                    binder.bind(statement, i);
+                    statement.addBatch();
+                    if ((i - from + 1) % batchSize == 0 || i == to - 1) {
+                        statement.executeBatch();
+                        try (ResultSet keys = statement.getGeneratedKeys()) {
+                            while (keys.next()) {
+                                ids.add(keys.getLong(1));
+                            }
+                        }
+                    }
+                }
+            }
+            if (ids.size() != to - from) {
+                throw new IllegalStateException("Expected " + (to - from) + " generated keys, got " + ids.size());
+            }
+            return ids;
+        });
+    }
+
+    /** Clients and best-selling products prescriptions are drawn from */
+    private static final class SaleCatalogue {
+        private final long[] clientIds;
+        private final long[] productIds;
+        private final String[] productNames;
+
+        private SaleCatalogue(long[] clientIds, long[] productIds, String[] productNames) {
+            this.clientIds = clientIds;
+            this.productIds = productIds;
+            this.productNames = productNames;
+        }
+    }
+
+    private SaleCatalogue loadCatalogue(Long branchId) {
+        List<Long> clients = jdbcTemplate.queryForList(
+                "SELECT id FROM clients WHERE branch_id = ? ORDER BY id", Long.class, branchId);
+        List<Long> productIds = new ArrayList<>();
+        List<String> productNames = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id, name FROM products WHERE branch_id = ? ORDER BY id");
+            statement.setLong(1, branchId);
+            statement.setMaxRows(saleProducts);
+            return statement;
+        }, rs -> {
+            productIds.add(rs.getLong(1));
+            productNames.add(rs.getString(2));
+        });
+        if (clients.isEmpty() || productIds.isEmpty()) {
+            throw new IllegalArgumentException("Prescriptions need clients and products in branch " + branchId);
+        }
+        return new SaleCatalogue(clients.stream().mapToLong(Long::longValue).toArray(),
+                productIds.stream().mapToLong(Long::longValue).toArray(),
+                productNames.toArray(new String[0]));
+    }
+
+    private static String productCode(long seed, long index) {
+        return "S" + seed + "-" + index;
+    }
+
+    /** Same rule as {@link com.mzm.pharmaflow.model.Client#updateStatus()} */
+    private static ClientStatus statusFor(LocalDate lastVisit, LocalDate today) {
+        if (lastVisit == null) {
+            return ClientStatus.NOUVEAU;
+        }
+        if (lastVisit.isAfter(today.minusMonths(3))) {
+            return ClientStatus.REGULIER;
+        }
+        return lastVisit.isAfter(today.minusMonths(6)) ? ClientStatus.OCCASIONNEL : ClientStatus.INACTIF;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /** SplitMix64 finalizer: spreads consecutive numbers over the whole long range */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,80 @@
+package com.mzm.pharmaflow.datagen;
+
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates a dataset at startup, e.g. to prepare a file database before a load test:
+ * {@code --datagen.run=true --datagen.products=1000000 --datagen.clients=1000000 --datagen.exit=true}
+ */
+@Component
+@ConditionalOnProperty(name = "datagen.run", havingValue = "true")
+public class DatasetGeneratorRunner implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetGeneratorRunner.class);
+
+    @Autowired
+    private DatasetGenerator generator;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${datagen.branch-id:0}")
+    private long branchId;
+
+    @Value("${datagen.products:10000}")
+    private int products;
+
+    @Value("${datagen.lots-per-product:3}")
+    private int lotsPerProduct;
+
+    @Value("${datagen.clients:10000}")
+    private int clients;
+
+    @Value("${datagen.prescriptions:20000}")
+    private int prescriptions;
+
+    @Value("${datagen.seed:42}")
+    private long seed;
+
+    @Value("${datagen.low-stock-rate:0.05}")
+    private double lowStockRate;
+
+    @Value("${datagen.expiring-rate:0.05}")
+    private double expiringRate;
+
+    @Value("${datagen.allergy-rate:0.15}")
+    private double allergyRate;
+
+    @Value("${datagen.exit:false}")
+    private boolean exitWhenDone;
+
+    @Override
+    public void run(String... args) {
+        DatasetSpec spec = new DatasetSpec();
+        spec.setProducts(products);
+        spec.setLotsPerProduct(lotsPerProduct);
+        spec.setClients(clients);
+        spec.setPrescriptions(prescriptions);
+        spec.setSeed(seed);
+        spec.setLowStockRate(lowStockRate);
+        spec.setExpiringRate(expiringRate);
+        spec.setAllergyRate(allergyRate);
+
+        Long branch = branchId > 0 ? branchId : TenantContext.getDefaultBranchId();
+        DatasetReport report = TenantContext.callOnBranch(branch, () -> generator.generate(spec));
+        logger.info("Dataset ready: {} rows/s over {} ms, {}", report.getRowsPerSecond(), report.getTookMillis(),
+                report.getRows());
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context, () -> 0));
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.mzm.pharmaflow.datagen;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+/**
+ * Outcome of a dataset generation
+ */
+@Getter
+@AllArgsConstructor
+public class DatasetReport {
+
+    private final Long branchId;
+    private final long seed;
+    private final int threads;
+    /** Rows inserted per table */
+    private final Map<String, Long> rows;
+    private final long tookMillis;
+    private final long rowsPerSecond;
+}
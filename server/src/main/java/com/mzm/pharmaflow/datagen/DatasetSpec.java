@@ -0,0 +1,26 @@
+package com.mzm.pharmaflow.datagen;
+
+import lombok.Data;
+
+/**
+ * Size and shape of a synthetic dataset. The same seed against an empty branch always
+ * produces the same rows, whatever the number of worker threads.
+ */
+@Data
+public class DatasetSpec {
+
+    /** Product rows; each is one lot of a drug */
+    private int products = 10000;
+    /** Consecutive lots sharing a drug, with their own code, stock and expiry */
+    private int lotsPerProduct = 3;
+    private int clients = 10000;
+    /** Prescriptions, most of them delivered (the sales history) */
+    private int prescriptions = 20000;
+    private long seed = 42;
+    /** Share of lots at or below their alert threshold */
+    private double lowStockRate = 0.05;
+    /** Share of lots expired or expiring within 30 days */
+    private double expiringRate = 0.05;
+    /** Share of clients with a recorded allergy */
+    private double allergyRate = 0.15;
+}
@@ -0,0 +1,83 @@
+package com.mzm.pharmaflow.dedup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What deduplication keeps of a client: folded names, phone and mailbox, birth date
+ */
+final class ClientFingerprint {
+
+    private final long id;
+    private final String displayName;
+    private final String firstName;
+    private final String lastName;
+    private final String phone;
+    private final String email;
+    private final LocalDate birthDate;
+    private final List<String> keys;
+
+    ClientFingerprint(long id, String firstName, String lastName, String phone, String email, LocalDate birthDate) {
+        this.id = id;
+        this.displayName = ((firstName != null ? firstName : "") + " " + (lastName != null ? lastName : "")).trim();
+        this.firstName = NameKeys.transliterate(firstName);
+        this.lastName = NameKeys.transliterate(lastName);
+        this.phone = NameKeys.phone(phone);
+        this.email = NameKeys.emailLocalPart(email);
+        this.birthDate = birthDate;
+        this.keys = computeKeys();
+    }
+
+    /**
+     * Blocking keys: clients are only compared with clients sharing at least one.
+     * The name key ignores which of the two names was typed as first name.
+     */
+    List<String> blockingKeys() {
+        return keys;
+    }
+
+    private List<String> computeKeys() {
+        List<String> keys = new ArrayList<>(3);
+        if (!firstName.isEmpty() && !lastName.isEmpty()) {
+            String first = NameKeys.skeleton(firstName);
+            String last = NameKeys.skeleton(lastName);
+            keys.add(first.compareTo(last) <= 0 ? "N:" + first + ":" + last : "N:" + last + ":" + first);
+        }
+        if (phone != null) {
+            keys.add("P:" + phone);
+        }
+        if (email != null) {
+            keys.add("E:" + email);
+        }
+        return keys;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getDisplayName() {
+        return displayName;
+    }
+
+    String getFirstName() {
+        return firstName;
+    }
+
+    String getLastName() {
+        return lastName;
+    }
+
+    String getPhone() {
+        return phone;
+    }
+
+    String getEmail() {
+        return email;
+    }
+
+    LocalDate getBirthDate() {
+        return birthDate;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mzm.pharmaflow.dedup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Two clients that are probably the same person, lower ID first
+ */
+@Getter
+@AllArgsConstructor
+public class DuplicateCandidate {
+
+    private final long clientId;
+    private final String clientName;
+    private final long otherClientId;
+    private final String otherClientName;
+    private final double score;
+    /** What matched: name similarity, phone, email, birth date */
+    private final List<String> reasons;
+}
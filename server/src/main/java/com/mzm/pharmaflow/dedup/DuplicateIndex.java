@@ -0,0 +1,211 @@
+package com.mzm.pharmaflow.dedup;
+
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Blocking index and duplicate candidates of one branch. Changes are made under the service's
+ * branch lock; candidates and counters can be read at any time.
+ */
+final class DuplicateIndex implements BranchIndexes.Index {
+
+    private final long branchId;
+    private final double threshold;
+    private final int maxBlockSize;
+    private final Set<String> dismissed;
+
+    private final Map<Long, ClientFingerprint> clients = new HashMap<>();
+    private final Map<String, Set<Long>> blocks = new HashMap<>();
+    private final Map<String, DuplicateCandidate> candidates = new ConcurrentHashMap<>();
+
+    private final long builtAt = System.currentTimeMillis();
+    private volatile long appliedThrough;
+    private volatile long buildMillis;
+    private volatile long comparisons;
+    private volatile long skippedBlocks;
+    private volatile int clientCount;
+
+    DuplicateIndex(long branchId, long appliedThrough, double threshold, int maxBlockSize, Set<String> dismissed) {
+        this.branchId = branchId;
+        this.appliedThrough = appliedThrough;
+        this.threshold = threshold;
+        this.maxBlockSize = maxBlockSize;
+        this.dismissed = dismissed;
+    }
+
+    /**
+     * Add a client without comparing it, while bulk loading; {@link #compareAll()} follows
+     */
+    void load(ClientFingerprint client) {
+        clients.put(client.getId(), client);
+        for (String key : client.blockingKeys()) {
+            blocks.computeIfAbsent(key, k -> new HashSet<>(4)).add(client.getId());
+        }
+        clientCount = clients.size();
+    }
+
+    /**
+     * Compare every pair of clients sharing a block. A pair sharing several blocks is scored
+     * in the first one only.
+     */
+    void compareAll() {
+        for (Map.Entry<String, Set<Long>> block : blocks.entrySet()) {
+            int size = block.getValue().size();
+            if (size < 2) {
+                continue;
+            }
+            if (size > maxBlockSize) {
+                skippedBlocks++;
+                continue;
+            }
+            Long[] ids = block.getValue().toArray(new Long[0]);
+            for (int i = 0; i < ids.length; i++) {
+                ClientFingerprint a = clients.get(ids[i]);
+                List<String> keysOfA = a.blockingKeys();
+                for (int j = i + 1; j < ids.length; j++) {
+                    ClientFingerprint b = clients.get(ids[j]);
+                    if (firstSharedKey(keysOfA, b).equals(block.getKey())) {
+                        consider(a, b);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert or replace a client and compare it with the clients of its blocks
+     */
+    void put(ClientFingerprint client) {
+        remove(client.getId());
+        load(client);
+        Set<Long> seen = new HashSet<>();
+        for (String key : client.blockingKeys()) {
+            Set<Long> block = blocks.get(key);
+            if (block.size() > maxBlockSize) {
+                skippedBlocks++;
+                continue;
+            }
+            for (Long other : block) {
+                if (other != client.getId() && seen.add(other)) {
+                    consider(client, clients.get(other));
+                }
+            }
+        }
+    }
+
+    void remove(long id) {
+        ClientFingerprint previous = clients.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String key : previous.blockingKeys()) {
+            Set<Long> block = blocks.get(key);
+            if (block != null && block.remove(id) && block.isEmpty()) {
+                blocks.remove(key);
+            }
+        }
+        candidates.values().removeIf(candidate -> candidate.getClientId() == id || candidate.getOtherClientId() == id);
+        dismissed.removeIf(key -> key.startsWith(id + ":") || key.endsWith(":" + id));
+        clientCount = clients.size();
+    }
+
+    void dismiss(long clientId, long otherClientId) {
+        String key = pairKey(clientId, otherClientId);
+        dismissed.add(key);
+        candidates.remove(key);
+    }
+
+    /**
+     * Get candidates, most likely first
+     */
+    List<DuplicateCandidate> candidates(double minScore, int limit) {
+        return candidates.values().stream()
+                .filter(candidate -> candidate.getScore() >= minScore)
+                .sorted(Comparator.comparingDouble(DuplicateCandidate::getScore).reversed()
+                        .thenComparingLong(DuplicateCandidate::getClientId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    static String pairKey(long clientId, long otherClientId) {
+        return Math.min(clientId, otherClientId) + ":" + Math.max(clientId, otherClientId);
+    }
+
+    private void consider(ClientFingerprint a, ClientFingerprint b) {
+        comparisons++;
+        String key = pairKey(a.getId(), b.getId());
+        if (dismissed.contains(key)) {
+            return;
+        }
+        List<String> reasons = new ArrayList<>(4);
+        double score = Similarity.score(a, b, reasons);
+        if (score < threshold) {
+            return;
+        }
+        ClientFingerprint low = a.getId() < b.getId() ? a : b;
+        ClientFingerprint high = low == a ? b : a;
+        candidates.put(key, new DuplicateCandidate(low.getId(), low.getDisplayName(), high.getId(),
+                high.getDisplayName(), Math.round(score * 1000) / 1000.0, reasons));
+    }
+
+    private static String firstSharedKey(List<String> keys, ClientFingerprint other) {
+        List<String> otherKeys = other.blockingKeys();
+        for (String key : keys) {
+            if (otherKeys.contains(key)) {
+                return key;
+            }
+        }
+        return "";
+    }
+
+    @Override
+    public void applied(long seq) {
+        appliedThrough = seq;
+    }
+
+    void built(long millis) {
+        buildMillis = millis;
+    }
+
+    long getBranchId() {
+        return branchId;
+    }
+
+    @Override
+    public long getAppliedThrough() {
+        return appliedThrough;
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    long getBuildMillis() {
+        return buildMillis;
+    }
+
+    long getComparisons() {
+        return comparisons;
+    }
+
+    long getSkippedBlocks() {
+        return skippedBlocks;
+    }
+
+    int clientCount() {
+        return clientCount;
+    }
+
+    int candidateCount() {
+        return candidates.size();
+    }
+}
@@ -0,0 +1,319 @@
+package com.mzm.pharmaflow.dedup;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.Client;
+import com.mzm.pharmaflow.model.DismissedDuplicate;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+import com.mzm.pharmaflow.outbox.OutboxEvent;
+import com.mzm.pharmaflow.outbox.OutboxSubscriber;
+import com.mzm.pharmaflow.repository.ClientRepository;
+import com.mzm.pharmaflow.repository.DismissedDuplicateRepository;
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds clients registered more than once. Each client gets blocking keys (folded name skeletons,
+ * national phone number, mailbox) and is only compared with the clients sharing one, so the cost
+ * grows with the size of the blocks instead of the square of the branch. Pairs scoring at least
+ * {@code dedup.threshold} are kept as candidates until merged or dismissed.
+ *
+ * <p>A branch's index is built in bulk on first use and again every {@code dedup.rebuild-interval-ms};
+ * in between, clients created or changed are read back from the {@link com.mzm.pharmaflow.outbox.OutboxRelay}'s
+ * changes and compared with their blocks only. Blocks larger than {@code dedup.max-block-size}
+ * (a very common name) are not compared.</p>
+ */
+@Service
+public class DuplicateService implements OutboxSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateService.class);
+
+    private static final String SELECT_CLIENTS =
+            "SELECT id, first_name, last_name, phone, email, birth_date FROM clients WHERE branch_id = ?";
+    private static final int IN_CHUNK = 500;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private DismissedDuplicateRepository dismissedDuplicateRepository;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Value("${dedup.threshold:0.75}")
+    private double threshold;
+
+    @Value("${dedup.max-block-size:500}")
+    private int maxBlockSize;
+
+    @Value("${dedup.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private BranchIndexes<DuplicateIndex> indexes;
+
+    private final LongAdder merges = new LongAdder();
+    private final LongAdder dismissals = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        indexes = new BranchIndexes<>(changeRecorder, EnumSet.of(SyncEntityType.CLIENT), this::load, this::apply);
+    }
+
+    /**
+     * Get the current branch's duplicate candidates
+     * @param minScore lowest score to return
+     * @param limit maximum number of pairs
+     * @return candidate pairs, most likely first
+     */
+    public List<DuplicateCandidate> findCandidates(double minScore, int limit) {
+        return indexes.current().candidates(minScore, limit);
+    }
+
+    /**
+     * Rebuild the current branch's index and compare all its blocks now
+     * @return build statistics
+     */
+    public Map<String, Object> scan() {
+        Long branchId = TenantContext.getBranchId();
+        return describe(indexes.rebuild(branchId));
+    }
+
+    /**
+     * Rebuild the indexes in use, picking up anything missed in between
+     */
+    @Scheduled(fixedDelayString = "${dedup.rebuild-interval-ms:3600000}",
+            initialDelayString = "${dedup.rebuild-interval-ms:3600000}")
+    public void rebuildAll() {
+        for (Long branchId : indexes.branchIds()) {
+            try {
+                indexes.rebuild(branchId);
+            } catch (RuntimeException e) {
+                logger.warn("Could not rebuild duplicate index of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Merge a duplicate into the client kept: blank fields are filled from the duplicate,
+     * medical histories are combined, prescriptions are moved, then the duplicate and the pairs
+     * it was dismissed from are deleted
+     * @param keepId client kept
+     * @param duplicateId client merged and deleted
+     * @throws EntityNotFoundException if either client is not in the branch
+     * @throws IllegalArgumentException if both IDs are the same
+     */
+    @Transactional
+    public void merge(Long keepId, Long duplicateId) {
+        if (keepId.equals(duplicateId)) {
+            throw new IllegalArgumentException("Cannot merge a client into itself");
+        }
+        Long branchId = TenantContext.getBranchId();
+        Client keep = clientRepository.findByIdAndBranchId(keepId, branchId)
+                .orElseThrow(() -> new EntityNotFoundException("Client not found with ID: " + keepId));
+        Client duplicate = clientRepository.findByIdAndBranchId(duplicateId, branchId)
+                .orElseThrow(() -> new EntityNotFoundException("Client not found with ID: " + duplicateId));
+
+        if (isBlank(keep.getEmail())) {
+            keep.setEmail(duplicate.getEmail());
+        }
+        if (isBlank(keep.getPhone())) {
+            keep.setPhone(duplicate.getPhone());
+        }
+        if (isBlank(keep.getAddress())) {
+            keep.setAddress(duplicate.getAddress());
+        }
+        if (isBlank(keep.getMedicalNotes())) {
+            keep.setMedicalNotes(duplicate.getMedicalNotes());
+        }
+        if (isBlank(keep.getAvatar())) {
+            keep.setAvatar(duplicate.getAvatar());
+        }
+        if (keep.getBirthDate() == null) {
+            keep.setBirthDate(duplicate.getBirthDate());
+        }
+        if (!isBlank(duplicate.getMedicalHistory())
+                && (isBlank(keep.getMedicalHistory()) || !keep.getMedicalHistory().contains(duplicate.getMedicalHistory()))) {
+            keep.setMedicalHistory(isBlank(keep.getMedicalHistory()) ? duplicate.getMedicalHistory()
+                    : keep.getMedicalHistory() + " " + duplicate.getMedicalHistory());
+        }
+        if (duplicate.getLastVisit() != null
+                && (keep.getLastVisit() == null || duplicate.getLastVisit().isAfter(keep.getLastVisit()))) {
+            keep.setLastVisit(duplicate.getLastVisit());
+        }
+        keep.setHasPrescription(Boolean.TRUE.equals(keep.getHasPrescription())
+                || Boolean.TRUE.equals(duplicate.getHasPrescription()));
+        keep.updateStatus();
+        clientRepository.save(keep);
+
+        // A prescription already loaded elsewhere would write the deleted client back when saved; the
+        // version bump makes that save fail instead
+        jdbcTemplate.update("UPDATE prescriptions SET client_id = ?, updated_at = ?, version = version + 1 "
+                + "WHERE branch_id = ? AND client_id = ?", keepId, Timestamp.valueOf(LocalDateTime.now()), branchId,
+                duplicateId);
+        dismissedDuplicateRepository.deleteByClient(branchId, duplicateId);
+        clientRepository.deleteByIdReturningCount(branchId, duplicateId);
+
+        changeRecorder.record(branchId, SyncEntityType.CLIENT, keepId, ChangeOperation.UPSERT);
+        changeRecorder.record(branchId, SyncEntityType.CLIENT, duplicateId, ChangeOperation.DELETE);
+        dataVersion.markChanged(branchId);
+        merges.increment();
+    }
+
+    /**
+     * Record that two clients are different people, so the pair is no longer proposed
+     * @param clientId one client
+     * @param otherClientId the other client
+     * @param username who decided
+     */
+    @Transactional
+    public void dismiss(Long clientId, Long otherClientId, String username) {
+        if (clientId.equals(otherClientId)) {
+            throw new IllegalArgumentException("A client cannot be its own duplicate");
+        }
+        Long branchId = TenantContext.getBranchId();
+        long low = Math.min(clientId, otherClientId);
+        long high = Math.max(clientId, otherClientId);
+        if (!dismissedDuplicateRepository.existsByBranchIdAndClientIdAndOtherClientId(branchId, low, high)) {
+            dismissedDuplicateRepository.save(new DismissedDuplicate(null, branchId, low, high, username,
+                    System.currentTimeMillis()));
+        }
+        indexes.update(branchId, index -> index.dismiss(low, high));
+        dismissals.increment();
+    }
+
+    @Override
+    public String getSubscriberName() {
+        return "duplicates";
+    }
+
+    @Override
+    public void onEvents(Long branchId, List<OutboxEvent> events) {
+        indexes.onEvents(branchId, events);
+    }
+
+    /**
+     * Get deduplication metrics
+     * @return per-branch index sizes, candidates and comparisons; merges and dismissals
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<Long, Object> branches = new HashMap<>();
+        for (DuplicateIndex index : indexes.values()) {
+            branches.put(index.getBranchId(), describe(index));
+        }
+        stats.put("branches", branches);
+        stats.put("threshold", threshold);
+        stats.put("maxBlockSize", maxBlockSize);
+        stats.put("builds", indexes.getBuilds());
+        stats.put("appliedChanges", indexes.getAppliedChanges());
+        stats.put("merges", merges.sum());
+        stats.put("dismissals", dismissals.sum());
+        return stats;
+    }
+
+    private Map<String, Object> describe(DuplicateIndex index) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("clients", index.clientCount());
+        entry.put("candidates", index.candidateCount());
+        entry.put("comparisons", index.getComparisons());
+        entry.put("skippedBlocks", index.getSkippedBlocks());
+        entry.put("buildMs", index.getBuildMillis());
+        entry.put("ageMs", System.currentTimeMillis() - index.getBuiltAt());
+        entry.put("appliedThrough", index.getAppliedThrough());
+        return entry;
+    }
+
+    private DuplicateIndex load(Long branchId, long appliedThrough) {
+        long start = System.currentTimeMillis();
+        Set<String> dismissed = ConcurrentHashMap.newKeySet();
+        for (DismissedDuplicate pair : dismissedDuplicateRepository.findByBranchId(branchId)) {
+            dismissed.add(DuplicateIndex.pairKey(pair.getClientId(), pair.getOtherClientId()));
+        }
+        DuplicateIndex index = new DuplicateIndex(branchId, appliedThrough, threshold, maxBlockSize, dismissed);
+        jdbcTemplate.query(SELECT_CLIENTS, rs -> {
+            index.load(fingerprint(rs));
+        }, branchId);
+        index.compareAll();
+        index.built(System.currentTimeMillis() - start);
+        logger.debug("Duplicate index of branch {} built: {} clients, {} comparisons, {} candidates, {} ms",
+                branchId, index.clientCount(), index.getComparisons(), index.candidateCount(), index.getBuildMillis());
+        return index;
+    }
+
+    /**
+     * Re-read changed clients and compare them with their blocks
+     */
+    private void apply(Long branchId, DuplicateIndex index, SyncEntityType entityType, Set<Long> clientIds) {
+        List<Long> ids = new ArrayList<>(clientIds);
+        Set<Long> found = new HashSet<>();
+        for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_CHUNK, ids.size()));
+            Object[] params = new Object[chunk.size() + 1];
+            params[0] = branchId;
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                params[i + 1] = chunk.get(i);
+                placeholders.append(i > 0 ? ",?" : "?");
+            }
+            jdbcTemplate.query(SELECT_CLIENTS + " AND id IN (" + placeholders + ")", rs -> {
+                ClientFingerprint client = fingerprint(rs);
+                index.put(client);
+                found.add(client.getId());
+            }, params);
+        }
+        for (Long id : ids) {
+            if (!found.contains(id)) {
+                index.remove(id);
+            }
+        }
+    }
+
+    private static ClientFingerprint fingerprint(ResultSet rs) throws SQLException {
+        Date birthDate = rs.getDate("birth_date");
+        return new ClientFingerprint(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"),
+                rs.getString("phone"), rs.getString("email"), birthDate != null ? birthDate.toLocalDate() : null);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,139 @@
+package com.mzm.pharmaflow.dedup;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizations used to block and compare clients. Names are folded so that the usual French
+ * spellings of Arabic names meet: "Mohammed", "Mohamed" and "Muhammad", or "El Fassi" and "Fassi",
+ * give the same {@link #transliterate transliteration}, and their consonant
+ * {@link #skeleton skeleton} ("mhmd") is what blocking keys are made of.
+ */
+final class NameKeys {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z]+");
+    private static final Pattern NON_DIGITS = Pattern.compile("[^0-9]+");
+
+    /** Articles written as separate words, or not at all */
+    private static final String[] PARTICLES = {"el", "al", "le", "la", "de", "du"};
+
+    /** Spellings of the same sound, applied in order */
+    private static final String[][] REWRITES = {
+            {"ou", "u"}, {"oo", "u"}, {"ph", "f"}, {"kh", "k"}, {"gh", "g"}, {"sh", "s"}, {"ch", "s"},
+            {"dj", "j"}, {"th", "t"}, {"dh", "d"}, {"ck", "k"}, {"q", "k"}, {"x", "ks"}, {"z", "s"},
+            {"w", "u"}, {"y", "i"}, {"ee", "i"}, {"ei", "i"},
+    };
+
+    private static final int SKELETON_LENGTH = 6;
+
+    private NameKeys() {
+    }
+
+    /**
+     * Lower case letters and single spaces, no accents
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Fold a name to one spelling: articles dropped, words joined, equivalent letter groups rewritten
+     * and doubled letters collapsed. "El Fassi" and "Fassi" both give "fasi".
+     * @param name raw first or last name
+     * @return folded name, empty if there is none
+     */
+    static String transliterate(String name) {
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return "";
+        }
+        StringBuilder joined = new StringBuilder(normalized.length());
+        String[] words = normalized.split(" ");
+        for (String word : words) {
+            if (words.length == 1 || !isParticle(word)) {
+                joined.append(word);
+            }
+        }
+        String folded = joined.toString();
+        for (String[] rewrite : REWRITES) {
+            folded = folded.replace(rewrite[0], rewrite[1]);
+        }
+        // A soft c sounds like s, any other like k
+        StringBuilder out = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (c == 'c') {
+                char next = i + 1 < folded.length() ? folded.charAt(i + 1) : ' ';
+                c = next == 'e' || next == 'i' ? 's' : 'k';
+            }
+            if (out.length() == 0 || out.charAt(out.length() - 1) != c) {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Consonants of a transliterated name, which vary less than vowels between spellings
+     * @param transliterated output of {@link #transliterate}
+     * @return up to six consonants, or the name itself if it has none
+     */
+    static String skeleton(String transliterated) {
+        StringBuilder out = new StringBuilder(SKELETON_LENGTH);
+        for (int i = 0; i < transliterated.length() && out.length() < SKELETON_LENGTH; i++) {
+            char c = transliterated.charAt(i);
+            if ("aeiou".indexOf(c) < 0 && (out.length() == 0 || out.charAt(out.length() - 1) != c)) {
+                out.append(c);
+            }
+        }
+        return out.length() > 0 ? out.toString() : transliterated;
+    }
+
+    /**
+     * National form of a Moroccan phone number: "+212 6 12 34 56 78", "00212612345678" and
+     * "0612345678" all give "612345678"
+     * @param phone raw phone number
+     * @return last nine digits, or null if there are fewer
+     */
+    static String phone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        String digits = NON_DIGITS.matcher(phone).replaceAll("");
+        return digits.length() >= 9 ? digits.substring(digits.length() - 9) : null;
+    }
+
+    /**
+     * Mailbox of an email address without dots and "+tag", which providers ignore
+     * @param email raw email
+     * @return normalized local part, or null if too short to mean anything
+     */
+    static String emailLocalPart(String email) {
+        if (email == null) {
+            return null;
+        }
+        int at = email.indexOf('@');
+        String local = (at >= 0 ? email.substring(0, at) : email).toLowerCase(Locale.ROOT);
+        int plus = local.indexOf('+');
+        if (plus >= 0) {
+            local = local.substring(0, plus);
+        }
+        local = local.replace(".", "");
+        return local.length() >= 3 ? local : null;
+    }
+
+    private static boolean isParticle(String word) {
+        for (String particle : PARTICLES) {
+            if (particle.equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
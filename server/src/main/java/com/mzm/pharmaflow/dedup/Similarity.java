@@ -0,0 +1,105 @@
+package com.mzm.pharmaflow.dedup;
+
+import java.util.List;
+
+/**
+ * Scores a pair of clients between 0 and 1. Names weigh most (Jaro-Winkler on the folded names,
+ * in either order); a shared phone, mailbox or birth date adds evidence, a different birth date
+ * counts against. Two namesakes with nothing else in common stay below the default threshold.
+ */
+final class Similarity {
+
+    private static final double NAME_WEIGHT = 0.7;
+    private static final double PHONE_WEIGHT = 0.3;
+    private static final double EMAIL_WEIGHT = 0.3;
+    private static final double BIRTH_DATE_WEIGHT = 0.2;
+    private static final double BIRTH_DATE_PENALTY = 0.4;
+
+    private Similarity() {
+    }
+
+    /**
+     * Score a pair
+     * @param a first client
+     * @param b second client
+     * @param reasons receives what matched, for display
+     * @return similarity, 1 at most
+     */
+    static double score(ClientFingerprint a, ClientFingerprint b, List<String> reasons) {
+        String nameA = a.getFirstName() + " " + a.getLastName();
+        double name = Math.max(jaroWinkler(nameA, b.getFirstName() + " " + b.getLastName()),
+                jaroWinkler(nameA, b.getLastName() + " " + b.getFirstName()));
+        double score = NAME_WEIGHT * name;
+        reasons.add(String.format("name %.2f", name));
+        if (a.getPhone() != null && a.getPhone().equals(b.getPhone())) {
+            score += PHONE_WEIGHT;
+            reasons.add("same phone");
+        }
+        if (a.getEmail() != null && a.getEmail().equals(b.getEmail())) {
+            score += EMAIL_WEIGHT;
+            reasons.add("same email");
+        }
+        if (a.getBirthDate() != null && b.getBirthDate() != null) {
+            if (a.getBirthDate().equals(b.getBirthDate())) {
+                score += BIRTH_DATE_WEIGHT;
+                reasons.add("same birth date");
+            } else {
+                score -= BIRTH_DATE_PENALTY;
+                reasons.add("different birth date");
+            }
+        }
+        return Math.max(0, Math.min(1, score));
+    }
+
+    /**
+     * Jaro-Winkler similarity, 1 for identical strings
+     */
+    static double jaroWinkler(String s, String t) {
+        if (s.equals(t)) {
+            return 1;
+        }
+        if (s.isEmpty() || t.isEmpty()) {
+            return 0;
+        }
+        int window = Math.max(0, Math.max(s.length(), t.length()) / 2 - 1);
+        boolean[] sMatched = new boolean[s.length()];
+        boolean[] tMatched = new boolean[t.length()];
+        int matches = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(t.length() - 1, i + window);
+            for (int j = from; j <= to; j++) {
+                if (!tMatched[j] && s.charAt(i) == t.charAt(j)) {
+                    sMatched[i] = true;
+                    tMatched[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        int j = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (!sMatched[i]) {
+                continue;
+            }
+            while (!tMatched[j]) {
+                j++;
+            }
+            if (s.charAt(i) != t.charAt(j)) {
+                transpositions++;
+            }
+            j++;
+        }
+        double m = matches;
+        double jaro = (m / s.length() + m / t.length() + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(s.length(), t.length())) && s.charAt(prefix) == t.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+}
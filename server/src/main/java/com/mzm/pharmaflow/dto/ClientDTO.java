@@ -1,5 +1,7 @@
 package com.mzm.pharmaflow.dto;
 
+import com.mzm.pharmaflow.media.MediaUrls;
+import com.mzm.pharmaflow.model.ClientStatus;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -27,4 +29,40 @@ public class ClientDTO {
     private String avatar;
     private LocalDate createdAt;
     private LocalDate updatedAt;
-}
\ No newline at end of file
+    private Long version;
+    
+    /**
+     * Projection constructor used by JPQL constructor expressions,
+     * so read queries build DTOs without loading managed entities
+     */
+    public ClientDTO(Long id, String firstName, String lastName, String email, String phone,
+                     LocalDate birthDate, String address, ClientStatus status, LocalDate lastVisit,
+                     String medicalNotes, String medicalHistory, Boolean hasPrescription, String avatar,
+                     LocalDate createdAt, LocalDate updatedAt, Long version) {
+        this.id = id;
+        this.name = firstName + " " + lastName;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.phone = phone;
+        this.birthDate = birthDate;
+        this.address = address;
+        this.status = status != null ? status.name() : null;
+        this.lastVisit = lastVisit;
+        this.medicalNotes = medicalNotes;
+        this.medicalHistory = medicalHistory;
+        this.hasPrescription = hasPrescription;
+        this.avatar = avatar;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.version = version;
+    }
+    
+    /**
+     * Small version of the avatar for lists: a thumbnail for images of the media store,
+     * the avatar URL itself otherwise
+     */
+    public String getAvatarThumbnailUrl() {
+        return MediaUrls.thumbnail(avatar);
+    }
+}
@@ -0,0 +1,20 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Duplicate client to fold into the client kept
+ */
+@Data
+@NoArgsConstructor
+public class ClientMergeRequest {
+    @NotNull
+    private Long keepId;
+
+    /** Deleted once merged */
+    @NotNull
+    private Long duplicateId;
+}
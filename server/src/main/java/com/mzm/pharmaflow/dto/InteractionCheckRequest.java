@@ -0,0 +1,21 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Basket to check for drug interactions and, when a client is given, allergies.
+ */
+@Data
+@NoArgsConstructor
+public class InteractionCheckRequest {
+    /** Client receiving the basket; optional */
+    private Long clientId;
+    
+    @NotEmpty
+    private List<@NotNull Long> productIds;
+}
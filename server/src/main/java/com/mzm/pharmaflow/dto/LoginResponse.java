@@ -11,6 +11,8 @@ import java.util.List;
 @NoArgsConstructor
 public class LoginResponse {
     private String token;
+    private String refreshToken;
+    private long expiresIn;
     private Long id;
     private String username;
     private String email;
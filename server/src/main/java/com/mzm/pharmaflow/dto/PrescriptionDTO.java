@@ -0,0 +1,53 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionDTO {
+
+    private Long id;
+
+    @NotNull
+    private Long clientId;
+
+    private String clientName;
+
+    @NotBlank
+    @Size(max = 100)
+    private String doctorName;
+
+    private LocalDate issuedAt;
+
+    private String status;
+
+    private String claimedBy;
+
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime completedAt;
+
+    @Size(max = 1000)
+    private String notes;
+
+    @NotEmpty
+    @Valid
+    private List<PrescriptionItemDTO> items = new ArrayList<>();
+
+    private LocalDateTime createdAt;
+
+    private Long version;
+}
@@ -0,0 +1,28 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionItemDTO {
+
+    /** Catalogue product; its name is used when productName is empty */
+    private Long productId;
+
+    @Size(max = 255)
+    private String productName;
+
+    @NotNull
+    @Min(1)
+    private Integer quantity;
+
+    @Size(max = 200)
+    private String instructions;
+}
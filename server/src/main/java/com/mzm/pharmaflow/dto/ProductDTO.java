@@ -1,5 +1,7 @@
 package com.mzm.pharmaflow.dto;
 
+import com.mzm.pharmaflow.media.MediaUrls;
+import com.mzm.pharmaflow.model.ProductCategory;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -27,8 +29,47 @@ public class ProductDTO {
     private Boolean prescriptionRequired;
     private String dosage;
     private String formulation;
+    private String activeIngredient;
     private LocalDate createdAt;
     private LocalDate updatedAt;
+    private Long version;
+    
+    /**
+     * Projection constructor used by JPQL constructor expressions,
+     * so read queries build DTOs without loading managed entities
+     */
+    public ProductDTO(Long id, String name, String code, String description, ProductCategory category,
+                      Integer quantity, Integer threshold, BigDecimal price, LocalDate expiryDate,
+                      String manufacturer, String imageUrl, Boolean needsPrescription, String dosage,
+                      String formulation, String activeIngredient, LocalDate createdAt, LocalDate updatedAt,
+                      Long version) {
+        this.id = id;
+        this.name = name;
+        this.code = code;
+        this.description = description;
+        this.category = category != null ? category.name() : null;
+        this.quantity = quantity;
+        this.threshold = threshold;
+        this.price = price;
+        this.expiryDate = expiryDate;
+        this.manufacturer = manufacturer;
+        this.imageUrl = imageUrl;
+        this.needsPrescription = needsPrescription;
+        this.dosage = dosage;
+        this.formulation = formulation;
+        this.activeIngredient = activeIngredient;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.version = version;
+    }
+    
+    /**
+     * Small version of the image for lists: a thumbnail for images of the media store,
+     * the image URL itself otherwise
+     */
+    public String getImageThumbnailUrl() {
+        return MediaUrls.thumbnail(imageUrl);
+    }
     
     // Add getter and setter to keep both fields in sync
     public Boolean getPrescriptionRequired() {
@@ -0,0 +1,34 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a stock reconciliation
+ */
+@Data
+@NoArgsConstructor
+public class ReconciliationReportDTO {
+    private String reference;
+    private boolean dryRun;
+    private long reconciledAt;
+    /** Lines in the request, before duplicate codes are merged */
+    private int linesReceived;
+    /** Distinct known products counted */
+    private int productsCounted;
+    /** Products whose quantity was changed (0 for a dry run) */
+    private int productsUpdated;
+    private int productsUnchanged;
+    private long unitsMissing;
+    private long unitsSurplus;
+    private BigDecimal shrinkageValue = BigDecimal.ZERO;
+    private BigDecimal surplusValue = BigDecimal.ZERO;
+    /** Codes that match no product; they are reported, not applied */
+    private List<String> unknownCodes = new ArrayList<>();
+    /** Products with a non-zero variance, largest value impact first */
+    private List<StockVarianceDTO> variances = new ArrayList<>();
+}
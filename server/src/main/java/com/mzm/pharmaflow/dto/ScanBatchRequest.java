@@ -0,0 +1,18 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * Codes scanned while receiving a delivery
+ */
+@Data
+@NoArgsConstructor
+public class ScanBatchRequest {
+    /** One entry per unit scanned; repeated codes are counted */
+    @NotNull
+    private List<String> codes;
+}
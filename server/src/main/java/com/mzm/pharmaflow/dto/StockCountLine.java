@@ -0,0 +1,24 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/**
+ * One counted product of a physical inventory
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockCountLine {
+    @NotBlank
+    private String code;
+    
+    @NotNull
+    @Min(0)
+    private Integer countedQuantity;
+}
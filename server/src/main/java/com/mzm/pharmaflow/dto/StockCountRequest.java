@@ -0,0 +1,26 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+/**
+ * Physical inventory count to reconcile against stock.
+ * A code listed several times (counted on several shelves) is summed.
+ */
+@Data
+@NoArgsConstructor
+public class StockCountRequest {
+    /** Free label for the count, e.g. "Inventaire mensuel 2026-10" */
+    private String reference;
+    
+    /** Compute the variance report without changing stock */
+    private boolean dryRun;
+    
+    @NotEmpty
+    @Valid
+    private List<StockCountLine> counts;
+}
@@ -0,0 +1,25 @@
+package com.mzm.pharmaflow.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Difference between recorded and counted stock for one product
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockVarianceDTO {
+    private Long productId;
+    private String code;
+    private String name;
+    private int expectedQuantity;
+    private int countedQuantity;
+    /** counted - expected: negative is shrinkage, positive is surplus */
+    private int variance;
+    /** variance x unit price */
+    private BigDecimal valueImpact;
+}
@@ -0,0 +1,339 @@
+package com.mzm.pharmaflow.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mzm.pharmaflow.dto.ResponseDTO;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes POST, PUT, PATCH and DELETE requests carrying an {@code Idempotency-Key} header safe to retry.
+ *
+ * <p>The first request with a key executes and its response (anything below 500) is stored;
+ * retries get that response back with {@code Idempotent-Replayed: true} and never reach the
+ * controller. A retry arriving while the first request is still running waits for it. Keys are
+ * scoped to the authenticated user and branch, and reusing a key for a different request is rejected
+ * with 422. Anonymous requests may not carry a key, as they would all share one scope.</p>
+ *
+ * <p>The fingerprint covers the method, path, request parameters and body. Form parameters are
+ * parsed before the body is buffered, so controllers still see them. Bodies are buffered up to
+ * {@code idempotency.max-body-bytes} (413 beyond it), and multipart requests, which cannot be
+ * buffered and replayed cheaply, are refused with 415.</p>
+ *
+ * <p>Runs after the Spring Security chain so the caller is known. Authentication endpoints are
+ * skipped: login is processed asynchronously and is naturally repeatable.</p>
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 100)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyStore store;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${idempotency.wait-timeout-ms:30000}")
+    private long waitTimeoutMs;
+
+    @Value("${idempotency.max-body-bytes:5242880}")
+    private int maxBodyBytes;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        boolean mutating = "POST".equals(method) || "PUT".equals(method)
+                || "PATCH".equals(method) || "DELETE".equals(method);
+        return !mutating
+                || request.getHeader(KEY_HEADER) == null
+                || request.getServletPath().startsWith("/auth/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = request.getHeader(KEY_HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            sendError(response, HttpStatus.BAD_REQUEST,
+                    KEY_HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+
+        String caller = caller();
+        if (caller == null) {
+            sendError(response, HttpStatus.UNAUTHORIZED, KEY_HEADER + " requires an authenticated caller");
+            return;
+        }
+        if (isContentType(request, MediaType.MULTIPART_FORM_DATA) || isContentType(request, MediaType.MULTIPART_MIXED)) {
+            sendError(response, HttpStatus.UNSUPPORTED_MEDIA_TYPE, KEY_HEADER + " is not supported for multipart requests");
+            return;
+        }
+        if (request.getContentLengthLong() > maxBodyBytes) {
+            sendError(response, HttpStatus.PAYLOAD_TOO_LARGE, tooLarge());
+            return;
+        }
+
+        // Parsing form parameters consumes the body, so it must happen before the body is buffered
+        Map<String, String[]> parameters = request.getParameterMap();
+        HttpServletRequest forwarded = request;
+        byte[] body = new byte[0];
+        if (!isContentType(request, MediaType.APPLICATION_FORM_URLENCODED)) {
+            body = readBody(request.getInputStream(), maxBodyBytes);
+            if (body == null) {
+                sendError(response, HttpStatus.PAYLOAD_TOO_LARGE, tooLarge());
+                return;
+            }
+            forwarded = new CachedBodyRequest(request, body);
+        }
+        String fingerprint = fingerprint(request, parameters, body);
+        String scopedKey = caller + ":" + TenantContext.getBranchId() + ":" + key;
+
+        while (true) {
+            IdempotencyStore.Claim claim = store.claim(scopedKey);
+            if (claim.isOwner()) {
+                execute(forwarded, response, filterChain, scopedKey, claim, fingerprint);
+                return;
+            }
+
+            StoredResponse stored = claim.getCompleted();
+            if (stored == null) {
+                try {
+                    stored = claim.getFuture().get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    sendError(response, HttpStatus.CONFLICT,
+                            "A request with this " + KEY_HEADER + " is still being processed");
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    sendError(response, HttpStatus.SERVICE_UNAVAILABLE, "Interrupted while waiting for the original request");
+                    return;
+                } catch (ExecutionException e) {
+                    stored = null;
+                }
+                if (stored == null) {
+                    // The original request failed; claim the key again
+                    continue;
+                }
+            }
+
+            if (!stored.getFingerprint().equals(fingerprint)) {
+                store.recordMismatch();
+                sendError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                        KEY_HEADER + " was already used for a different request");
+                return;
+            }
+            store.recordReplay();
+            replay(stored, response);
+            return;
+        }
+    }
+
+    private void execute(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                         String scopedKey, IdempotencyStore.Claim claim, String fingerprint)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            filterChain.doFilter(request, wrapper);
+            if (wrapper.getStatus() < 500) {
+                store.complete(scopedKey, claim, new StoredResponse(fingerprint, wrapper.getStatus(),
+                        wrapper.getContentType(), wrapper.getContentAsByteArray(), store.expiryFromNow()));
+                stored = true;
+            }
+        } finally {
+            if (!stored) {
+                store.abandon(scopedKey, claim);
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    private void replay(StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.getStatus());
+        if (stored.getContentType() != null) {
+            response.setContentType(stored.getContentType());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        byte[] body = stored.getBody();
+        if (body != null && body.length > 0) {
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private void sendError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ResponseDTO(false, message));
+    }
+
+    private String tooLarge() {
+        return "Requests with an " + KEY_HEADER + " are limited to " + maxBodyBytes + " bytes";
+    }
+
+    /**
+     * @return authenticated user name, or null for an anonymous caller
+     */
+    private static String caller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken
+                || !authentication.isAuthenticated()) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private static boolean isContentType(HttpServletRequest request, MediaType type) {
+        String contentType = request.getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            return type.includes(MediaType.parseMediaType(contentType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read a body, stopping as soon as it exceeds the limit
+     * @return body, or null if it is larger than {@code maxBytes}
+     */
+    private static byte[] readBody(InputStream input, int maxBytes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxBytes) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private static String fingerprint(HttpServletRequest request, Map<String, String[]> parameters, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.getMethod().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+            digest.update(request.getRequestURI().getBytes(StandardCharsets.UTF_8));
+            // Query and form parameters, in name order so that reordering them is the same request
+            for (Map.Entry<String, String[]> parameter : new TreeMap<>(parameters).entrySet()) {
+                for (String value : parameter.getValue()) {
+                    digest.update((byte) '\n');
+                    digest.update(parameter.getKey().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) '=');
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            digest.update((byte) '\n');
+            digest.update((byte) '\n');
+            digest.update(body);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Request whose body has been read up front, so it can be fingerprinted and still parsed downstream
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    // The whole body is in memory: it is available at once and complete once read
+                    try {
+                        readListener.onDataAvailable();
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.mzm.pharmaflow.idempotency;
+
+import com.mzm.pharmaflow.model.IdempotencyRecord;
+import com.mzm.pharmaflow.repository.IdempotencyRecordRepository;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Responses stored per idempotency key.
+ *
+ * <p>Completed responses live in a bounded LRU cache for their TTL and are also written to
+ * the {@code idempotency_records} table, which answers after a restart or a cache eviction.
+ * A key that is being processed maps to an in-flight future, so concurrent duplicates wait
+ * for the first request instead of executing again.</p>
+ */
+@Component
+public class IdempotencyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    @Autowired
+    private IdempotencyRecordRepository repository;
+
+    @Value("${idempotency.ttl-ms:86400000}")
+    private long ttlMs;
+
+    @Value("${idempotency.cache-size:10000}")
+    private int cacheSize;
+
+    // Access-ordered: the eldest entry is the least recently used
+    private final LinkedHashMap<String, StoredResponse> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder durableHits = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    /**
+     * Claim a key before executing its request.
+     * @param key caller-scoped idempotency key
+     * @return the stored response, the in-flight request to wait for, or ownership of the key
+     */
+    public Claim claim(String key) {
+        StoredResponse cached = getCached(key);
+        if (cached != null) {
+            return Claim.completed(cached);
+        }
+
+        CompletableFuture<StoredResponse> owned = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(key, owned);
+        if (running != null) {
+            collapsed.increment();
+            return Claim.running(running);
+        }
+
+        // The previous owner may have completed between the cache check and putIfAbsent
+        StoredResponse stored = getCached(key);
+        if (stored == null) {
+            stored = loadDurable(key);
+        }
+        if (stored != null) {
+            inFlight.remove(key, owned);
+            owned.complete(stored);
+            return Claim.completed(stored);
+        }
+        return Claim.owner(owned);
+    }
+
+    /**
+     * Store the response of an executed request and release the requests waiting on it.
+     */
+    public void complete(String key, Claim claim, StoredResponse response) {
+        executed.increment();
+        synchronized (cache) {
+            cache.put(key, response);
+            evictOverflow();
+        }
+        try {
+            // Records are group-wide and live in the default store, like the purge job that reads them
+            TenantContext.callOnDefaultStore(() -> repository.save(new IdempotencyRecord(key, response.getFingerprint(),
+                    response.getStatus(), response.getContentType(), response.getBody(),
+                    System.currentTimeMillis(), response.getExpiresAt())));
+        } catch (RuntimeException e) {
+            // The in-memory copy still covers retries on this instance
+            logger.warn("Could not persist idempotency record {}: {}", key, e.getMessage());
+        }
+        inFlight.remove(key, claim.getFuture());
+        claim.getFuture().complete(response);
+    }
+
+    /**
+     * Release a key whose request failed without a storable response; waiting
+     * duplicates then claim it again and one of them executes.
+     */
+    public void abandon(String key, Claim claim) {
+        inFlight.remove(key, claim.getFuture());
+        claim.getFuture().complete(null);
+    }
+
+    public long expiryFromNow() {
+        return System.currentTimeMillis() + ttlMs;
+    }
+
+    void recordReplay() {
+        replayed.increment();
+    }
+
+    void recordMismatch() {
+        mismatches.increment();
+    }
+
+    /**
+     * Drop expired entries from the cache and the table
+     */
+    @Scheduled(fixedDelayString = "${idempotency.purge-interval-ms:600000}")
+    @Transactional
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Iterator<StoredResponse> it = cache.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired(now)) {
+                    it.remove();
+                }
+            }
+        }
+        int deleted = repository.deleteExpired(now);
+        if (deleted > 0) {
+            logger.debug("Purged {} expired idempotency records", deleted);
+        }
+    }
+
+    /**
+     * Get idempotency metrics
+     * @return cache size and replay counters
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("cachedResponses", cache.size());
+        }
+        stats.put("cacheSize", cacheSize);
+        stats.put("inFlight", inFlight.size());
+        stats.put("executed", executed.sum());
+        stats.put("replayed", replayed.sum());
+        stats.put("collapsedConcurrent", collapsed.sum());
+        stats.put("durableHits", durableHits.sum());
+        stats.put("keyReuseRejected", mismatches.sum());
+        stats.put("ttlMs", ttlMs);
+        return stats;
+    }
+
+    private StoredResponse getCached(String key) {
+        synchronized (cache) {
+            StoredResponse response = cache.get(key);
+            if (response != null && response.isExpired(System.currentTimeMillis())) {
+                cache.remove(key);
+                return null;
+            }
+            return response;
+        }
+    }
+
+    private StoredResponse loadDurable(String key) {
+        IdempotencyRecord record = TenantContext.callOnDefaultStore(() -> repository.findById(key).orElse(null));
+        if (record == null || record.getExpiresAt() <= System.currentTimeMillis()) {
+            return null;
+        }
+        durableHits.increment();
+        StoredResponse response = new StoredResponse(record.getFingerprint(), record.getStatus(),
+                record.getContentType(), record.getBody(), record.getExpiresAt());
+        synchronized (cache) {
+            cache.put(key, response);
+            evictOverflow();
+        }
+        return response;
+    }
+
+    // Caller holds the cache lock
+    private void evictOverflow() {
+        Iterator<StoredResponse> it = cache.values().iterator();
+        while (cache.size() > cacheSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Result of {@link #claim(String)}
+     */
+    public static final class Claim {
+        private final StoredResponse completed;
+        private final CompletableFuture<StoredResponse> future;
+        private final boolean owner;
+
+        private Claim(StoredResponse completed, CompletableFuture<StoredResponse> future, boolean owner) {
+            this.completed = completed;
+            this.future = future;
+            this.owner = owner;
+        }
+
+        static Claim completed(StoredResponse response) {
+            return new Claim(response, null, false);
+        }
+
+        static Claim running(CompletableFuture<StoredResponse> future) {
+            return new Claim(null, future, false);
+        }
+
+        static Claim owner(CompletableFuture<StoredResponse> future) {
+            return new Claim(null, future, true);
+        }
+
+        /** Stored response, if the key has already completed */
+        public StoredResponse getCompleted() {
+            return completed;
+        }
+
+        /** Future of the request executing under the key; owned by the caller when {@link #isOwner()} */
+        public CompletableFuture<StoredResponse> getFuture() {
+            return future;
+        }
+
+        public boolean isOwner() {
+            return owner;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mzm.pharmaflow.idempotency;
+
+/**
+ * Response captured for an idempotency key
+ */
+public final class StoredResponse {
+    private final String fingerprint;
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+    private final long expiresAt;
+
+    public StoredResponse(String fingerprint, int status, String contentType, byte[] body, long expiresAt) {
+        this.fingerprint = fingerprint;
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+}
@@ -0,0 +1,72 @@
+package com.mzm.pharmaflow.interaction;
+
+/**
+ * Helpers for fixed-size bitsets held in {@code long[]}.
+ */
+final class Bits {
+
+    private Bits() {
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    static void or(long[] into, long[] bits) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] |= bits[i];
+        }
+    }
+
+    static boolean intersects(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean intersects(long[] a, long[] b, long[] mask) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i] & mask[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isEmpty(long[] bits) {
+        for (long word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Next set bit at or after an index
+     * @return bit index, or -1 if there is none
+     */
+    static int next(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long current = bits[word] & (-1L << from);
+        while (true) {
+            if (current != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(current);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.mzm.pharmaflow.interaction;
+
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Interaction profiles of one branch's products and clients, computed against one graph.
+ * Built from the database once, then kept current by applying relayed changes row by row;
+ * readers see each row either before or after a change, never half-updated.
+ */
+final class BranchProfiles implements BranchIndexes.Index {
+
+    private final Long branchId;
+    /** Graph the bitsets were computed against */
+    private final InteractionGraph graph;
+    private final Map<Long, ProductProfile> products;
+    /** IDs of every client of the branch */
+    private final Set<Long> clientIds;
+    /** Allergy bitsets, only for clients with a recognised allergy */
+    private final Map<Long, long[]> allergies;
+    private final AtomicInteger unrecognizedProducts = new AtomicInteger();
+    /** Last change sequence reflected in the profiles */
+    private volatile long appliedThrough;
+    private volatile long updatedAt = System.currentTimeMillis();
+    private final long builtAt = System.currentTimeMillis();
+    private final long buildMillis;
+
+    BranchProfiles(Long branchId, long appliedThrough, InteractionGraph graph, Map<Long, ProductProfile> products,
+                   Set<Long> clientIds, Map<Long, long[]> allergies, long buildMillis) {
+        this.branchId = branchId;
+        this.appliedThrough = appliedThrough;
+        this.graph = graph;
+        this.products = products;
+        this.clientIds = clientIds;
+        this.allergies = allergies;
+        this.buildMillis = buildMillis;
+        for (ProductProfile product : products.values()) {
+            if (!graph.hasIngredient(product.getNodes())) {
+                unrecognizedProducts.incrementAndGet();
+            }
+        }
+    }
+
+    ProductProfile product(Long id) {
+        return products.get(id);
+    }
+
+    boolean hasClient(long id) {
+        return clientIds.contains(id);
+    }
+
+    long[] allergies(Long clientId) {
+        return allergies.get(clientId);
+    }
+
+    void putProduct(ProductProfile product) {
+        count(products.put(product.getId(), product), -1);
+        count(product, 1);
+    }
+
+    void removeProduct(Long id) {
+        count(products.remove(id), -1);
+    }
+
+    private void count(ProductProfile product, int delta) {
+        if (product != null && !graph.hasIngredient(product.getNodes())) {
+            unrecognizedProducts.addAndGet(delta);
+        }
+    }
+
+    void putClient(Long id, long[] clientAllergies) {
+        clientIds.add(id);
+        if (clientAllergies != null) {
+            allergies.put(id, clientAllergies);
+        } else {
+            allergies.remove(id);
+        }
+    }
+
+    void removeClient(Long id) {
+        clientIds.remove(id);
+        allergies.remove(id);
+    }
+
+    @Override
+    public void applied(long seq) {
+        appliedThrough = seq;
+        updatedAt = System.currentTimeMillis();
+    }
+
+    Long getBranchId() {
+        return branchId;
+    }
+
+    InteractionGraph getGraph() {
+        return graph;
+    }
+
+    @Override
+    public long getAppliedThrough() {
+        return appliedThrough;
+    }
+
+    int productCount() {
+        return products.size();
+    }
+
+    int clientCount() {
+        return clientIds.size();
+    }
+
+    int allergicClientCount() {
+        return allergies.size();
+    }
+
+    int getUnrecognizedProducts() {
+        return unrecognizedProducts.get();
+    }
+
+    long getBuiltAt() {
+        return builtAt;
+    }
+
+    long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    long getBuildMillis() {
+        return buildMillis;
+    }
+}
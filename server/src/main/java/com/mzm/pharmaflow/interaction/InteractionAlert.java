@@ -0,0 +1,45 @@
+package com.mzm.pharmaflow.interaction;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A problem found in a basket: an interaction between two products, the same ingredient
+ * dispensed twice, or a product the client is allergic to.
+ */
+@Getter
+public class InteractionAlert {
+
+    public enum Kind {
+        INTERACTION,
+        DUPLICATE,
+        ALLERGY
+    }
+
+    private final Kind kind;
+    private final Severity severity;
+    private final List<Long> productIds = new ArrayList<>(2);
+    private final List<String> products = new ArrayList<>(2);
+    /** Ingredients, groups or categories involved */
+    private final List<String> ingredients;
+    private final String message;
+
+    InteractionAlert(Kind kind, Severity severity, ProductProfile first, ProductProfile second,
+                     List<String> ingredients, String message) {
+        this.kind = kind;
+        this.severity = severity;
+        this.ingredients = ingredients;
+        this.message = message;
+        add(first);
+        if (second != null) {
+            add(second);
+        }
+    }
+
+    private void add(ProductProfile product) {
+        productIds.add(product.getId());
+        products.add(product.getName());
+    }
+}
@@ -0,0 +1,318 @@
+package com.mzm.pharmaflow.interaction;
+
+import com.mzm.pharmaflow.model.ProductCategory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Interaction knowledge compiled for checking baskets in memory.
+ *
+ * <p>Every ingredient and every product category is a node. A product is described by the bitset
+ * of its nodes, a client's allergies by the bitset of the nodes they must not receive, and each
+ * node has an adjacency bitset of the nodes it interacts with. Checking two products is then a
+ * handful of AND operations per ingredient; the rule behind a hit is only looked up when there
+ * is one. The graph is immutable once compiled.</p>
+ */
+public final class InteractionGraph {
+
+    private static final String CATEGORY_PREFIX = "category:";
+    private static final Pattern INGREDIENT_SEPARATORS = Pattern.compile("[+,;/]");
+    private static final ProductCategory[] CATEGORIES = ProductCategory.values();
+
+    private final String[] nodeNames;
+    private final int ingredientCount;
+    private final int words;
+    private final long[] ingredientMask;
+    private final long[][] adjacency;
+    private final Map<Long, Integer> pairRules;
+    private final Severity[] ruleSeverity;
+    private final String[] ruleMessage;
+    private final Terms productTerms;
+    private final Terms allergyTerms;
+    private final int groupCount;
+
+    private InteractionGraph(KnowledgeBase knowledge) {
+        ingredientCount = knowledge.getIngredients().size();
+        int nodes = ingredientCount + CATEGORIES.length;
+        words = (nodes + 63) >>> 6;
+        nodeNames = new String[nodes];
+        ingredientMask = new long[words];
+        Map<String, Integer> ingredientIds = new HashMap<>();
+        int id = 0;
+        for (String ingredient : knowledge.getIngredients().keySet()) {
+            ingredientIds.put(ingredient, id);
+            nodeNames[id] = ingredient;
+            Bits.set(ingredientMask, id);
+            id++;
+        }
+        for (ProductCategory category : CATEGORIES) {
+            nodeNames[ingredientCount + category.ordinal()] = CATEGORY_PREFIX + category.name();
+        }
+
+        Resolver resolver = new Resolver(knowledge, ingredientIds);
+        productTerms = new Terms();
+        allergyTerms = new Terms();
+        for (Map.Entry<String, List<String>> ingredient : knowledge.getIngredients().entrySet()) {
+            long[] node = resolver.resolve(ingredient.getKey());
+            productTerms.add(ingredient.getKey(), node);
+            allergyTerms.add(ingredient.getKey(), node);
+            for (String alias : ingredient.getValue()) {
+                productTerms.add(alias, node);
+                allergyTerms.add(alias, node);
+            }
+        }
+        // Groups only describe allergies ("allergie aux pénicillines"); product names carry ingredients
+        for (Map.Entry<String, KnowledgeBase.Group> group : knowledge.getGroups().entrySet()) {
+            long[] members = resolver.resolve(group.getKey());
+            allergyTerms.add(group.getKey(), members);
+            for (String alias : group.getValue().getAliases()) {
+                allergyTerms.add(alias, members);
+            }
+        }
+        groupCount = knowledge.getGroups().size();
+
+        adjacency = new long[nodes][words];
+        pairRules = new HashMap<>();
+        List<KnowledgeBase.Rule> rules = knowledge.getInteractions();
+        ruleSeverity = new Severity[rules.size()];
+        ruleMessage = new String[rules.size()];
+        for (int rule = 0; rule < rules.size(); rule++) {
+            KnowledgeBase.Rule definition = rules.get(rule);
+            if (definition.getBetween().size() != 2) {
+                throw new IllegalStateException("Interaction rule " + rule + " must name exactly two sides");
+            }
+            ruleSeverity[rule] = definition.getSeverity();
+            ruleMessage[rule] = definition.getMessage();
+            long[] left = resolver.resolve(definition.getBetween().get(0));
+            long[] right = resolver.resolve(definition.getBetween().get(1));
+            for (int a = Bits.next(left, 0); a >= 0; a = Bits.next(left, a + 1)) {
+                for (int b = Bits.next(right, 0); b >= 0; b = Bits.next(right, b + 1)) {
+                    if (a != b) {
+                        link(a, b, rule);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compile knowledge into a graph
+     * @param knowledge ingredients, groups and rules
+     * @return compiled graph
+     * @throws IllegalStateException if a rule or group names something unknown
+     */
+    public static InteractionGraph compile(KnowledgeBase knowledge) {
+        return new InteractionGraph(knowledge);
+    }
+
+    private void link(int a, int b, int rule) {
+        Bits.set(adjacency[a], b);
+        Bits.set(adjacency[b], a);
+        Long key = pairKey(a, b);
+        Integer existing = pairRules.get(key);
+        // Several rules may cover the same pair: keep the most severe
+        if (existing == null || ruleSeverity[rule].compareTo(ruleSeverity[existing]) > 0) {
+            pairRules.put(key, rule);
+        }
+    }
+
+    private static Long pairKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * Describe a product by its ingredients and category
+     * @param activeIngredient declared ingredients, several separated by '+', may be null
+     * @param name product name, searched for ingredient or brand names when nothing is declared
+     * @param category product category, may be null
+     * @return node bitset
+     */
+    public long[] profile(String activeIngredient, String name, ProductCategory category) {
+        long[] nodes = new long[words];
+        boolean declared = false;
+        if (activeIngredient != null) {
+            for (String part : INGREDIENT_SEPARATORS.split(activeIngredient)) {
+                declared |= productTerms.match(part, nodes);
+            }
+        }
+        if (!declared) {
+            productTerms.match(name, nodes);
+        }
+        if (category != null) {
+            Bits.set(nodes, ingredientCount + category.ordinal());
+        }
+        return nodes;
+    }
+
+    /**
+     * Extract allergies from a medical history
+     * @param medicalHistory free text such as "Allergie aux pénicillines."
+     * @return bitset of nodes the client must not receive, null if no allergy is recognised
+     */
+    public long[] allergies(String medicalHistory) {
+        if (medicalHistory == null) {
+            return null;
+        }
+        long[] nodes = new long[words];
+        boolean found = false;
+        for (String sentence : medicalHistory.split("[.;\\n]")) {
+            String normalized = Terms.normalize(sentence);
+            if (normalized.contains("allerg") || normalized.contains("intoleran")) {
+                found |= allergyTerms.match(normalized, nodes);
+            }
+        }
+        return found ? nodes : null;
+    }
+
+    /**
+     * Check a basket against the graph and, optionally, a client's allergies
+     * @param basket product profiles
+     * @param allergies client allergy bitset, or null
+     * @return alerts, most severe first
+     */
+    public List<InteractionAlert> check(List<ProductProfile> basket, long[] allergies) {
+        List<InteractionAlert> alerts = new ArrayList<>();
+        Set<Integer> pairHits = new HashSet<>();
+        for (int i = 0; i < basket.size(); i++) {
+            ProductProfile first = basket.get(i);
+            long[] a = first.getNodes();
+            if (allergies != null && Bits.intersects(a, allergies)) {
+                alerts.add(new InteractionAlert(InteractionAlert.Kind.ALLERGY, Severity.CONTRAINDICATED,
+                        first, null, names(a, allergies, null), "Allergie du patient"));
+            }
+            for (int j = i + 1; j < basket.size(); j++) {
+                ProductProfile second = basket.get(j);
+                long[] b = second.getNodes();
+                if (Bits.intersects(a, b, ingredientMask)) {
+                    alerts.add(new InteractionAlert(InteractionAlert.Kind.DUPLICATE, Severity.MODERATE,
+                            first, second, names(a, b, ingredientMask), "Même principe actif dans deux produits"));
+                }
+                pairHits.clear();
+                for (int node = Bits.next(a, 0); node >= 0; node = Bits.next(a, node + 1)) {
+                    long[] adjacent = adjacency[node];
+                    for (int w = 0; w < words; w++) {
+                        long hits = adjacent[w] & b[w];
+                        while (hits != 0) {
+                            int other = (w << 6) + Long.numberOfTrailingZeros(hits);
+                            hits &= hits - 1;
+                            int rule = pairRules.get(pairKey(node, other));
+                            // A group rule can match one pair through several nodes: report it once
+                            if (pairHits.add(rule)) {
+                                List<String> between = new ArrayList<>(2);
+                                between.add(nodeNames[node]);
+                                between.add(nodeNames[other]);
+                                alerts.add(new InteractionAlert(InteractionAlert.Kind.INTERACTION,
+                                        ruleSeverity[rule], first, second, between, ruleMessage[rule]));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        alerts.sort((x, y) -> y.getSeverity().compareTo(x.getSeverity()));
+        return alerts;
+    }
+
+    /**
+     * Get the names of the nodes set in both bitsets
+     * @param mask optional third bitset restricting the result
+     */
+    List<String> names(long[] a, long[] b, long[] mask) {
+        List<String> names = new ArrayList<>();
+        for (int node = Bits.next(a, 0); node >= 0; node = Bits.next(a, node + 1)) {
+            if (Bits.get(b, node) && (mask == null || Bits.get(mask, node))) {
+                names.add(nodeNames[node]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Get the names of the nodes in a bitset
+     */
+    public List<String> names(long[] nodes) {
+        return names(nodes, nodes, null);
+    }
+
+    /**
+     * Check whether a profile names at least one ingredient, not just a category
+     */
+    public boolean hasIngredient(long[] nodes) {
+        return Bits.intersects(nodes, nodes, ingredientMask);
+    }
+
+    /**
+     * Get graph dimensions
+     * @return node, term and rule counts
+     */
+    public Map<String, Object> getStats() {
+        long edges = 0;
+        for (long[] row : adjacency) {
+            for (long word : row) {
+                edges += Long.bitCount(word);
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ingredients", ingredientCount);
+        stats.put("groups", groupCount);
+        stats.put("nodes", nodeNames.length);
+        stats.put("rules", ruleSeverity.length);
+        stats.put("interactingPairs", edges / 2);
+        stats.put("productTerms", productTerms.size());
+        stats.put("allergyTerms", allergyTerms.size());
+        stats.put("adjacencyBytes", (long) adjacency.length * words * 8);
+        return stats;
+    }
+
+    /**
+     * Expands ingredient, group and category names to node bitsets
+     */
+    private final class Resolver {
+        private final KnowledgeBase knowledge;
+        private final Map<String, Integer> ingredientIds;
+        private final Map<String, long[]> resolved = new HashMap<>();
+        private final Set<String> resolving = new HashSet<>();
+
+        Resolver(KnowledgeBase knowledge, Map<String, Integer> ingredientIds) {
+            this.knowledge = knowledge;
+            this.ingredientIds = ingredientIds;
+        }
+
+        long[] resolve(String name) {
+            long[] nodes = resolved.get(name);
+            if (nodes != null) {
+                return nodes;
+            }
+            nodes = new long[words];
+            if (name.startsWith(CATEGORY_PREFIX)) {
+                try {
+                    Bits.set(nodes, ingredientCount
+                            + ProductCategory.valueOf(name.substring(CATEGORY_PREFIX.length())).ordinal());
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Unknown product category in interaction knowledge: " + name, e);
+                }
+            } else if (ingredientIds.containsKey(name)) {
+                Bits.set(nodes, ingredientIds.get(name));
+            } else if (knowledge.getGroups().containsKey(name)) {
+                if (!resolving.add(name)) {
+                    throw new IllegalStateException("Interaction group includes itself: " + name);
+                }
+                for (String member : knowledge.getGroups().get(name).getMembers()) {
+                    Bits.or(nodes, resolve(member));
+                }
+                resolving.remove(name);
+            } else {
+                throw new IllegalStateException("Unknown ingredient or group in interaction knowledge: " + name);
+            }
+            resolved.put(name, nodes);
+            return nodes;
+        }
+    }
+}
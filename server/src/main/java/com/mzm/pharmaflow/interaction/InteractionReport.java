@@ -0,0 +1,27 @@
+package com.mzm.pharmaflow.interaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Result of checking a basket.
+ */
+@Getter
+@AllArgsConstructor
+public class InteractionReport {
+
+    private final Long clientId;
+    private final int products;
+    /** True when no alert was raised */
+    private final boolean clear;
+    /** Most severe alert, null when clear */
+    private final Severity highestSeverity;
+    private final List<InteractionAlert> alerts;
+    /** Products whose ingredients could not be identified; only their category was checked */
+    private final List<Long> unrecognizedProductIds;
+    /** Last product or client change the check took into account */
+    private final long changeSequence;
+    private final long tookMicros;
+}
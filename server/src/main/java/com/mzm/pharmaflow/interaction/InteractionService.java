@@ -0,0 +1,335 @@
+package com.mzm.pharmaflow.interaction;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.outbox.BranchIndexes;
+import com.mzm.pharmaflow.outbox.OutboxEvent;
+import com.mzm.pharmaflow.outbox.OutboxRelay;
+import com.mzm.pharmaflow.outbox.OutboxSubscriber;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drug interaction and allergy checks for baskets.
+ *
+ * <p>The knowledge file is compiled once into an {@link InteractionGraph}. Each branch's products
+ * are then profiled against it and its clients' medical histories parsed into allergy bitsets, so
+ * a check runs entirely in memory. A branch's profiles are built by its first check; after that
+ * only the products and clients named by the {@link OutboxRelay}'s changes are read again.</p>
+ */
+@Service
+public class InteractionService implements OutboxSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(InteractionService.class);
+
+    private static final Map<String, ProductCategory> CATEGORIES_BY_NAME = new HashMap<>();
+    private static final int IN_CHUNK = 500;
+
+    static {
+        for (ProductCategory category : ProductCategory.values()) {
+            CATEGORIES_BY_NAME.put(category.name(), category);
+        }
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${interactions.knowledge:classpath:interactions/knowledge.json}")
+    private Resource knowledgeResource;
+
+    @Value("${interactions.max-basket:50}")
+    private int maxBasket;
+
+    @Value("${interactions.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+    private volatile InteractionGraph graph;
+
+    private BranchIndexes<BranchProfiles> profiles;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder checkMicros = new LongAdder();
+    private final LongAdder alertsRaised = new LongAdder();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+        profiles = new BranchIndexes<>(changeRecorder, EnumSet.of(SyncEntityType.PRODUCT, SyncEntityType.CLIENT),
+                this::load, this::apply);
+        reloadKnowledge();
+    }
+
+    /**
+     * Read and compile the knowledge file again; branch profiles are rebuilt on next use
+     * @return graph dimensions
+     */
+    public Map<String, Object> reloadKnowledge() {
+        KnowledgeBase knowledge;
+        try (InputStream in = knowledgeResource.getInputStream()) {
+            knowledge = objectMapper.readValue(in, KnowledgeBase.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read interaction knowledge " + knowledgeResource, e);
+        }
+        InteractionGraph compiled = InteractionGraph.compile(knowledge);
+        graph = compiled;
+        profiles.clear();
+        Map<String, Object> stats = compiled.getStats();
+        logger.info("Interaction knowledge compiled: {} ingredients, {} rules, {} interacting pairs",
+                stats.get("ingredients"), stats.get("rules"), stats.get("interactingPairs"));
+        return stats;
+    }
+
+    /**
+     * Check a basket for interactions, duplicated ingredients and, if a client is given, allergies
+     * @param clientId client ID, or null
+     * @param productIds products of the basket
+     * @return alerts, most severe first
+     */
+    public InteractionReport check(Long clientId, List<Long> productIds) {
+        if (productIds.size() > maxBasket) {
+            throw new IllegalArgumentException("A basket holds at most " + maxBasket + " products");
+        }
+        BranchProfiles branch = current();
+        long start = System.nanoTime();
+        List<ProductProfile> basket = new ArrayList<>(productIds.size());
+        List<Long> unrecognized = new ArrayList<>();
+        InteractionGraph compiled = branch.getGraph();
+        for (Long id : productIds) {
+            ProductProfile product = branch.product(id);
+            if (product == null) {
+                throw new IllegalArgumentException("Product not found with ID: " + id);
+            }
+            basket.add(product);
+            if (!compiled.hasIngredient(product.getNodes())) {
+                unrecognized.add(id);
+            }
+        }
+        long[] allergies = null;
+        if (clientId != null) {
+            if (!branch.hasClient(clientId)) {
+                throw new EntityNotFoundException("Client not found with ID: " + clientId);
+            }
+            allergies = branch.allergies(clientId);
+        }
+        List<InteractionAlert> alerts = compiled.check(basket, allergies);
+        long micros = (System.nanoTime() - start) / 1000;
+        checks.increment();
+        checkMicros.add(micros);
+        alertsRaised.add(alerts.size());
+        return new InteractionReport(clientId, basket.size(), alerts.isEmpty(),
+                alerts.isEmpty() ? null : alerts.get(0).getSeverity(), alerts, unrecognized,
+                branch.getAppliedThrough(), micros);
+    }
+
+    /**
+     * Get the allergies recognised in a client's medical history
+     * @param clientId client ID
+     * @return ingredient, group and category names
+     */
+    public List<String> getAllergies(Long clientId) {
+        BranchProfiles branch = current();
+        if (!branch.hasClient(clientId)) {
+            throw new EntityNotFoundException("Client not found with ID: " + clientId);
+        }
+        long[] allergies = branch.allergies(clientId);
+        return allergies != null ? branch.getGraph().names(allergies) : new ArrayList<>();
+    }
+
+    /**
+     * Get the ingredients and category a product was profiled with
+     * @param productId product ID
+     * @return node names
+     */
+    public List<String> getIngredients(Long productId) {
+        BranchProfiles branch = current();
+        ProductProfile product = branch.product(productId);
+        if (product == null) {
+            throw new EntityNotFoundException("Product not found with ID: " + productId);
+        }
+        return branch.getGraph().names(product.getNodes());
+    }
+
+    private BranchProfiles current() {
+        return profiles.current(branch -> branch.getGraph() == graph);
+    }
+
+    private BranchProfiles load(Long branchId, long appliedThrough) {
+        long start = System.currentTimeMillis();
+        InteractionGraph compiled = graph;
+        Map<Long, ProductProfile> products = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT id, name, category, active_ingredient FROM products WHERE branch_id = ?",
+                rs -> {
+                    ProductProfile product = profile(compiled, rs);
+                    products.put(product.getId(), product);
+                }, branchId);
+
+        Set<Long> clientIds = ConcurrentHashMap.newKeySet();
+        clientIds.addAll(jdbcTemplate.queryForList("SELECT id FROM clients WHERE branch_id = ?", Long.class, branchId));
+        Map<Long, long[]> allergies = new ConcurrentHashMap<>();
+        jdbcTemplate.query("SELECT id, medical_history FROM clients WHERE branch_id = ? "
+                + "AND (LOWER(medical_history) LIKE '%allerg%' OR LOWER(medical_history) LIKE '%intol%')", rs -> {
+            long[] nodes = compiled.allergies(rs.getString("medical_history"));
+            if (nodes != null) {
+                allergies.put(rs.getLong("id"), nodes);
+            }
+        }, branchId);
+
+        BranchProfiles branch = new BranchProfiles(branchId, appliedThrough, compiled, products, clientIds, allergies,
+                System.currentTimeMillis() - start);
+        logger.debug("Interaction profiles of branch {} built: {} products ({} unrecognised), {} allergic clients, {} ms",
+                branchId, products.size(), branch.getUnrecognizedProducts(), allergies.size(), branch.getBuildMillis());
+        return branch;
+    }
+
+    private static ProductProfile profile(InteractionGraph compiled, ResultSet rs) throws SQLException {
+        String category = rs.getString("category");
+        long[] nodes = compiled.profile(rs.getString("active_ingredient"), rs.getString("name"),
+                category != null ? CATEGORIES_BY_NAME.get(category) : null);
+        return new ProductProfile(rs.getLong("id"), rs.getString("name"), nodes);
+    }
+
+    @Override
+    public String getSubscriberName() {
+        return "interactions";
+    }
+
+    @Override
+    public void onEvents(Long branchId, List<OutboxEvent> events) {
+        profiles.onEvents(branchId, events);
+    }
+
+    /**
+     * Re-read changed products or clients and profile them against the branch's graph
+     */
+    private void apply(Long branchId, BranchProfiles branch, SyncEntityType entityType, Set<Long> ids) {
+        InteractionGraph compiled = branch.getGraph();
+        Set<Long> found = new HashSet<>();
+        if (entityType == SyncEntityType.PRODUCT) {
+            for (List<Long> chunk : chunks(ids)) {
+                jdbcTemplate.query("SELECT id, name, category, active_ingredient FROM products WHERE branch_id = ? "
+                        + "AND id IN (" + placeholders(chunk.size()) + ")", rs -> {
+                    ProductProfile product = profile(compiled, rs);
+                    branch.putProduct(product);
+                    found.add(product.getId());
+                }, params(branchId, chunk));
+            }
+            for (Long id : ids) {
+                if (!found.contains(id)) {
+                    branch.removeProduct(id);
+                }
+            }
+        } else {
+            for (List<Long> chunk : chunks(ids)) {
+                jdbcTemplate.query("SELECT id, medical_history FROM clients WHERE branch_id = ? "
+                        + "AND id IN (" + placeholders(chunk.size()) + ")", rs -> {
+                    long id = rs.getLong("id");
+                    branch.putClient(id, compiled.allergies(rs.getString("medical_history")));
+                    found.add(id);
+                }, params(branchId, chunk));
+            }
+            for (Long id : ids) {
+                if (!found.contains(id)) {
+                    branch.removeClient(id);
+                }
+            }
+        }
+    }
+
+    private static List<List<Long>> chunks(Set<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        List<Long> chunk = new ArrayList<>();
+        for (Long id : ids) {
+            chunk.add(id);
+            if (chunk.size() == IN_CHUNK) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+        return sb.toString();
+    }
+
+    private static Object[] params(Long branchId, List<Long> ids) {
+        Object[] params = new Object[ids.size() + 1];
+        params[0] = branchId;
+        for (int i = 0; i < ids.size(); i++) {
+            params[i + 1] = ids.get(i);
+        }
+        return params;
+    }
+
+    /**
+     * Get interaction engine metrics
+     * @return graph dimensions, per-branch profile counts and check timings
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("graph", graph.getStats());
+        Map<Long, Object> branches = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (BranchProfiles branch : profiles.values()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("products", branch.productCount());
+            entry.put("unrecognizedProducts", branch.getUnrecognizedProducts());
+            entry.put("clients", branch.clientCount());
+            entry.put("allergicClients", branch.allergicClientCount());
+            entry.put("appliedThrough", branch.getAppliedThrough());
+            entry.put("ageMs", now - branch.getBuiltAt());
+            entry.put("lastUpdateMs", now - branch.getUpdatedAt());
+            entry.put("buildMs", branch.getBuildMillis());
+            branches.put(branch.getBranchId(), entry);
+        }
+        stats.put("branches", branches);
+        long count = checks.sum();
+        stats.put("checks", count);
+        stats.put("alerts", alertsRaised.sum());
+        stats.put("averageCheckMicros", count > 0 ? checkMicros.sum() / count : 0);
+        stats.put("rebuilds", profiles.getBuilds());
+        stats.put("appliedChanges", profiles.getAppliedChanges());
+        return stats;
+    }
+}
@@ -0,0 +1,39 @@
+package com.mzm.pharmaflow.interaction;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interaction knowledge as read from {@code interactions.knowledge}: ingredients with the names
+ * they appear under (INN, brands), groups of ingredients (therapeutic classes, product categories
+ * as {@code category:NAME}) and interaction rules between ingredients or groups.
+ */
+@Data
+public class KnowledgeBase {
+
+    /** Ingredient name to the terms that identify it in product names and medical histories */
+    private Map<String, List<String>> ingredients = new LinkedHashMap<>();
+
+    private Map<String, Group> groups = new LinkedHashMap<>();
+
+    private List<Rule> interactions = new ArrayList<>();
+
+    @Data
+    public static class Group {
+        private List<String> aliases = new ArrayList<>();
+        /** Ingredients, other groups or {@code category:NAME} */
+        private List<String> members = new ArrayList<>();
+    }
+
+    @Data
+    public static class Rule {
+        /** The two sides of the interaction, each an ingredient, a group or a category */
+        private List<String> between = new ArrayList<>();
+        private Severity severity = Severity.MODERATE;
+        private String message;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mzm.pharmaflow.interaction;
+
+/**
+ * A product as seen by the interaction check: its ingredient and category nodes.
+ */
+public final class ProductProfile {
+
+    private final long id;
+    private final String name;
+    private final long[] nodes;
+
+    ProductProfile(long id, String name, long[] nodes) {
+        this.id = id;
+        this.name = name;
+        this.nodes = nodes;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    long[] getNodes() {
+        return nodes;
+    }
+}
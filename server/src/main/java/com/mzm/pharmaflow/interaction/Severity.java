@@ -0,0 +1,8 @@
+package com.mzm.pharmaflow.interaction;
+
+public enum Severity {
+    MINOR,            // Précaution d'emploi
+    MODERATE,         // Association à prendre en compte
+    MAJOR,            // Association déconseillée
+    CONTRAINDICATED   // Contre-indication
+}
@@ -0,0 +1,90 @@
+package com.mzm.pharmaflow.interaction;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Phrase dictionary matched against free text with accents, case and punctuation ignored.
+ * Matching is greedy on the longest phrase, so "penicilline v" wins over "penicilline".
+ */
+final class Terms {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    private final Map<String, long[]> phrases = new HashMap<>();
+    private int maxTokens = 1;
+
+    /**
+     * Normalize text for matching: no accents, lower case, single spaces between words
+     * @param text raw text
+     * @return normalized text, empty if there is nothing to match
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    void add(String phrase, long[] nodes) {
+        String key = normalize(phrase);
+        if (key.isEmpty()) {
+            return;
+        }
+        long[] existing = phrases.get(key);
+        if (existing == null) {
+            phrases.put(key, nodes.clone());
+        } else {
+            Bits.or(existing, nodes);
+        }
+        maxTokens = Math.max(maxTokens, key.split(" ").length);
+    }
+
+    /**
+     * Collect the nodes of every phrase found in a text
+     * @param text raw text
+     * @param into bitset receiving the nodes
+     * @return true if at least one phrase matched
+     */
+    boolean match(String text, long[] into) {
+        String normalized = normalize(text);
+        if (normalized.isEmpty()) {
+            return false;
+        }
+        String[] tokens = normalized.split(" ");
+        boolean matched = false;
+        int i = 0;
+        while (i < tokens.length) {
+            int span = 0;
+            StringBuilder phrase = new StringBuilder();
+            String longest = null;
+            for (int n = 1; n <= maxTokens && i + n <= tokens.length; n++) {
+                if (n > 1) {
+                    phrase.append(' ');
+                }
+                phrase.append(tokens[i + n - 1]);
+                if (phrases.containsKey(phrase.toString())) {
+                    longest = phrase.toString();
+                    span = n;
+                }
+            }
+            if (longest != null) {
+                Bits.or(into, phrases.get(longest));
+                matched = true;
+                i += span;
+            } else {
+                i++;
+            }
+        }
+        return matched;
+    }
+
+    int size() {
+        return phrases.size();
+    }
+}
@@ -0,0 +1,82 @@
+package com.mzm.pharmaflow.media;
+
+/**
+ * Image types accepted by the media store, recognized from their first bytes rather than
+ * from what the client claims
+ */
+enum ImageFormat {
+    JPEG("jpg", "image/jpeg", true),
+    PNG("png", "image/png", true),
+    GIF("gif", "image/gif", true),
+    // No ImageIO reader ships with the JDK, so WebP images are stored and served but not thumbnailed
+    WEBP("webp", "image/webp", false);
+
+    /** Bytes needed by {@link #sniff} */
+    static final int HEADER_BYTES = 12;
+
+    private final String extension;
+    private final String contentType;
+    private final boolean decodable;
+
+    ImageFormat(String extension, String contentType, boolean decodable) {
+        this.extension = extension;
+        this.contentType = contentType;
+        this.decodable = decodable;
+    }
+
+    String getExtension() {
+        return extension;
+    }
+
+    String getContentType() {
+        return contentType;
+    }
+
+    boolean isDecodable() {
+        return decodable;
+    }
+
+    /**
+     * Recognize an image from its magic number
+     * @param header first bytes of the file
+     * @param length number of bytes read
+     * @return image format, or null if the file is not a supported image
+     */
+    static ImageFormat sniff(byte[] header, int length) {
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return JPEG;
+        }
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && startsWith(header, 1, "PNG\r\n\u001A\n")) {
+            return PNG;
+        }
+        if (length >= 6 && (startsWith(header, 0, "GIF87a") || startsWith(header, 0, "GIF89a"))) {
+            return GIF;
+        }
+        if (length >= 12 && startsWith(header, 0, "RIFF") && startsWith(header, 8, "WEBP")) {
+            return WEBP;
+        }
+        return null;
+    }
+
+    /**
+     * Find a format by file extension
+     * @return image format, or null if none uses this extension
+     */
+    static ImageFormat fromExtension(String extension) {
+        for (ImageFormat format : values()) {
+            if (format.extension.equals(extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[offset + i] != (byte) ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mzm.pharmaflow.media;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * An image or thumbnail opened for sending. The channel is opened before the response is
+ * written, so a thumbnail evicted meanwhile is still read in full.
+ */
+public class MediaContent implements Closeable {
+
+    private final FileChannel channel;
+    private final Path file;
+    private final long length;
+    private final String contentType;
+    private final boolean original;
+
+    MediaContent(FileChannel channel, Path file, String contentType, boolean original) throws IOException {
+        this.channel = channel;
+        this.file = file;
+        this.length = channel.size();
+        this.contentType = contentType;
+        this.original = original;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return true for uploaded files, which are never deleted and can be handed to the container by path
+     */
+    public boolean isOriginal() {
+        return original;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,183 @@
+package com.mzm.pharmaflow.media;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes media responses. Content is immutable, so responses carry a strong entity tag and may be
+ * cached for a year; revalidations are answered with 304 before the disk is touched, and single
+ * byte ranges are honoured.
+ *
+ * <p>Large originals are handed to Tomcat's sendfile, which moves them from the page cache to the
+ * socket with {@code FileChannel.transferTo} without copying them into the JVM. Thumbnails and
+ * small files, for which setting up sendfile costs more than it saves, are streamed with
+ * {@code transferTo} into the response from a channel opened before the headers are written.</p>
+ */
+@Component
+public class MediaSender {
+
+    private static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
+
+    // Tomcat request attributes, see org.apache.catalina.Globals
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private MediaStore mediaStore;
+
+    @Value("${media.sendfile-min-bytes:49152}")
+    private long sendfileMinBytes;
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder partial = new LongAdder();
+    private final LongAdder unsatisfiable = new LongAdder();
+    private final LongAdder sendfile = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Answer a GET or HEAD request for an image
+     * @param id media ID
+     * @param width requested width, null for the original
+     */
+    public void send(String id, Integer width, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String etag = mediaStore.etag(id, width);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_FOREVER);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        responses.increment();
+        if (matchesAny(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            notModified.increment();
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        try (MediaContent content = mediaStore.open(id, width)) {
+            long length = content.getLength();
+            long start = 0;
+            long end = length;
+            HttpRange range = requestedRange(request, etag);
+            if (range != null) {
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length) + 1;
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                }
+                if (start >= length || start >= end) {
+                    unsatisfiable.increment();
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                partial.increment();
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+            response.setContentType(content.getContentType());
+            response.setContentLengthLong(end - start);
+            if ("HEAD".equals(request.getMethod()) || end == start) {
+                return;
+            }
+
+            if (content.isOriginal() && end - start >= sendfileMinBytes
+                    && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                // Tomcat opens the file itself once the response headers are out; originals are never deleted
+                request.setAttribute(SENDFILE_FILENAME, content.getFile().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end);
+                sendfile.increment();
+                bytesSent.add(end - start);
+                return;
+            }
+            bytesSent.add(transfer(content.getChannel(), start, end, Channels.newChannel(response.getOutputStream())));
+        }
+    }
+
+    /**
+     * Get response counters
+     * @return responses by kind and bytes sent
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("responses", responses.sum());
+        stats.put("notModified", notModified.sum());
+        stats.put("partial", partial.sum());
+        stats.put("unsatisfiable", unsatisfiable.sum());
+        stats.put("sendfile", sendfile.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        return stats;
+    }
+
+    private static long transfer(FileChannel channel, long start, long end, WritableByteChannel out) throws IOException {
+        long position = start;
+        while (position < end) {
+            long sent = channel.transferTo(position, end - position, out);
+            if (sent <= 0) {
+                // The file is shorter than it was when opened
+                break;
+            }
+            position += sent;
+        }
+        return position - start;
+    }
+
+    /**
+     * The single range asked for, if any. Multiple ranges and malformed headers are answered with the
+     * whole image, as are ranges conditioned on another version of it.
+     */
+    private static HttpRange requestedRange(HttpServletRequest request, String etag) {
+        String header = request.getHeader(HttpHeaders.RANGE);
+        if (header == null) {
+            return null;
+        }
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return ranges.size() == 1 ? ranges.get(0) : null;
+    }
+
+    /**
+     * Weak comparison of If-None-Match against the current tag
+     */
+    private static boolean matchesAny(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,469 @@
+package com.mzm.pharmaflow.media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.persistence.EntityNotFoundException;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local store for product images and client avatars.
+ *
+ * <p>Uploads are kept under {@code media.dir/originals}, named after a hash of their content, so
+ * the same image uploaded twice is stored once and a URL always designates the same bytes, which
+ * lets clients cache them for good. Smaller versions are made on first request, rounded up to one
+ * of {@code media.thumbnail-sizes}, and kept under {@code media.dir/thumbnails} in a
+ * {@link ThumbnailCache} bounded by {@code media.thumbnail-cache-bytes}.</p>
+ */
+@Service
+public class MediaStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaStore.class);
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    @Value("${media.dir:data/media}")
+    private String mediaDir;
+
+    @Value("${media.max-upload-bytes:5242880}")
+    private long maxUploadBytes;
+
+    @Value("${media.max-pixels:16000000}")
+    private long maxPixels;
+
+    @Value("${media.thumbnail-sizes:64,128,256,512}")
+    private int[] thumbnailSizes;
+
+    @Value("${media.thumbnail-cache-bytes:67108864}")
+    private long thumbnailCacheBytes;
+
+    @Value("${media.thumbnail-concurrency:2}")
+    private int thumbnailConcurrency;
+
+    private Path originals;
+    private Path thumbnails;
+    private Path temporary;
+    private ThumbnailCache cache;
+    private Semaphore renderPermits;
+
+    private final Map<String, CompletableFuture<Path>> rendering = new ConcurrentHashMap<>();
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder duplicateUploads = new LongAdder();
+    private final LongAdder rejectedUploads = new LongAdder();
+    private final LongAdder thumbnailHits = new LongAdder();
+    private final LongAdder thumbnailMisses = new LongAdder();
+    private final LongAdder thumbnailsRendered = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder servedAsOriginal = new LongAdder();
+
+    @PostConstruct
+    public void start() throws IOException {
+        Path root = Paths.get(mediaDir);
+        originals = Files.createDirectories(root.resolve("originals"));
+        thumbnails = Files.createDirectories(root.resolve("thumbnails"));
+        temporary = Files.createDirectories(root.resolve("tmp"));
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(temporary)) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+        thumbnailSizes = Arrays.stream(thumbnailSizes).filter(size -> size > 0).sorted().distinct().toArray();
+        if (thumbnailSizes.length == 0) {
+            throw new IllegalStateException("media.thumbnail-sizes must list at least one positive size");
+        }
+        // Decode and encode in memory rather than through ImageIO's temporary files
+        ImageIO.setUseCache(false);
+        renderPermits = new Semaphore(Math.max(1, thumbnailConcurrency));
+        cache = new ThumbnailCache(thumbnails, thumbnailCacheBytes);
+        int kept = cache.load();
+        logger.info("Media store in {}: {} cached thumbnails ({} of {} bytes), sizes {}",
+                root, kept, cache.getTotalBytes(), thumbnailCacheBytes, Arrays.toString(thumbnailSizes));
+    }
+
+    /**
+     * Store an uploaded image
+     * @param content image bytes
+     * @return stored image, with its URL
+     * @throws IllegalArgumentException if the upload is not a supported image, or is too large
+     */
+    public StoredMedia store(InputStream content) throws IOException {
+        Path upload = Files.createTempFile(temporary, "upload-", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            byte[] header = new byte[ImageFormat.HEADER_BYTES];
+            int headerLength = 0;
+            long size = 0;
+            byte[] buffer = new byte[16384];
+            try (OutputStream out = Files.newOutputStream(upload)) {
+                int read;
+                while ((read = content.read(buffer)) > 0) {
+                    size += read;
+                    if (size > maxUploadBytes) {
+                        throw new UploadTooLargeException(maxUploadBytes);
+                    }
+                    if (headerLength < header.length) {
+                        int copied = Math.min(read, header.length - headerLength);
+                        System.arraycopy(buffer, 0, header, headerLength, copied);
+                        headerLength += copied;
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            ImageFormat format = ImageFormat.sniff(header, headerLength);
+            if (format == null) {
+                throw new IllegalArgumentException("Only JPEG, PNG, GIF and WebP images are accepted");
+            }
+            int[] dimensions = null;
+            if (format.isDecodable()) {
+                dimensions = readDimensions(upload);
+                if (dimensions == null) {
+                    throw new IllegalArgumentException("Image is damaged or truncated");
+                }
+                if ((long) dimensions[0] * dimensions[1] > maxPixels) {
+                    throw new IllegalArgumentException("Image is " + dimensions[0] + "x" + dimensions[1]
+                            + ", larger than " + maxPixels + " pixels");
+                }
+            }
+
+            String id = hex(digest.digest(), 16) + "." + format.getExtension();
+            Path target = originals.resolve(id);
+            boolean existing = Files.exists(target);
+            if (!existing) {
+                // Two identical uploads racing here both rename over the same content, which is harmless
+                Files.move(upload, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            uploads.increment();
+            if (existing) {
+                duplicateUploads.increment();
+            }
+            String url = MediaUrls.original(id);
+            return new StoredMedia(id, url, MediaUrls.thumbnail(url), format.getContentType(), size,
+                    dimensions != null ? dimensions[0] : null, dimensions != null ? dimensions[1] : null, existing);
+        } catch (IllegalArgumentException e) {
+            rejectedUploads.increment();
+            throw e;
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    /**
+     * Entity tag of an image or thumbnail, known without reading the disk since content never changes
+     * @param id media ID
+     * @param width requested width, null for the original
+     * @return quoted strong entity tag
+     * @throws EntityNotFoundException if the ID is not a media ID
+     * @throws IllegalArgumentException if the width is not positive
+     */
+    public String etag(String id, Integer width) {
+        requireFormat(id);
+        return width == null ? "\"" + id + "\"" : "\"" + id + "-" + bucket(width) + "\"";
+    }
+
+    /**
+     * Open an image for sending, making its thumbnail first if needed. An image already within the
+     * requested size, or one that cannot be decoded, is sent as is.
+     * @param id media ID
+     * @param width requested width, null for the original
+     * @return opened content, to close once sent
+     * @throws EntityNotFoundException if there is no such image
+     */
+    public MediaContent open(String id, Integer width) throws IOException {
+        ImageFormat format = requireFormat(id);
+        Path original = originals.resolve(id);
+        if (width == null) {
+            return openOriginal(original, format);
+        }
+        String key = id.substring(0, id.indexOf('.')) + "-" + bucket(width);
+        for (int attempt = 0; ; attempt++) {
+            Path thumbnail = cache.get(key);
+            if (thumbnail != null) {
+                thumbnailHits.increment();
+            } else {
+                thumbnailMisses.increment();
+                thumbnail = render(key, original, format, bucket(width));
+            }
+            if (thumbnail.equals(original)) {
+                servedAsOriginal.increment();
+                return openOriginal(original, format);
+            }
+            try {
+                String contentType = thumbnail.toString().endsWith(".png") ? "image/png" : "image/jpeg";
+                return new MediaContent(FileChannel.open(thumbnail, StandardOpenOption.READ), thumbnail,
+                        contentType, false);
+            } catch (NoSuchFileException e) {
+                // Evicted between lookup and open
+                cache.remove(key);
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get upload and thumbnail cache counters
+     * @return uploads, cache occupancy, hit rate and rendering times
+     */
+    public Map<String, Object> getStats() {
+        long hits = thumbnailHits.sum();
+        long misses = thumbnailMisses.sum();
+        long rendered = thumbnailsRendered.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("uploads", uploads.sum());
+        stats.put("duplicateUploads", duplicateUploads.sum());
+        stats.put("rejectedUploads", rejectedUploads.sum());
+        stats.put("thumbnailSizes", thumbnailSizes);
+        stats.put("cachedThumbnails", cache.size());
+        stats.put("cacheBytes", cache.getTotalBytes());
+        stats.put("cacheMaxBytes", cache.getMaxBytes());
+        stats.put("cacheEvictions", cache.getEvictions());
+        stats.put("thumbnailHits", hits);
+        stats.put("thumbnailMisses", misses);
+        stats.put("thumbnailHitRate", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        stats.put("thumbnailsRendered", rendered);
+        stats.put("avgRenderMillis", rendered > 0 ? renderNanos.sum() / rendered / 1_000_000.0 : 0.0);
+        stats.put("servedAsOriginal", servedAsOriginal.sum());
+        stats.put("rendering", rendering.size());
+        return stats;
+    }
+
+    private MediaContent openOriginal(Path original, ImageFormat format) throws IOException {
+        try {
+            return new MediaContent(FileChannel.open(original, StandardOpenOption.READ), original,
+                    format.getContentType(), true);
+        } catch (NoSuchFileException e) {
+            throw new EntityNotFoundException("Image not found: " + original.getFileName());
+        }
+    }
+
+    /**
+     * Make a thumbnail once, however many requests ask for it at the same time
+     * @return thumbnail file, or the original if it needs no thumbnail
+     */
+    private Path render(String key, Path original, ImageFormat format, int size) throws IOException {
+        CompletableFuture<Path> own = new CompletableFuture<>();
+        CompletableFuture<Path> running = rendering.putIfAbsent(key, own);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            // Another request may have finished it between our lookup and claim
+            Path thumbnail = cache.get(key);
+            if (thumbnail == null) {
+                thumbnail = renderNow(key, original, format, size);
+            }
+            own.complete(thumbnail);
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(key, own);
+        }
+    }
+
+    private Path renderNow(String key, Path original, ImageFormat format, int size) throws IOException {
+        if (!Files.exists(original)) {
+            throw new EntityNotFoundException("Image not found: " + original.getFileName());
+        }
+        int[] dimensions = format.isDecodable() ? readDimensions(original) : null;
+        if (dimensions == null || (dimensions[0] <= size && dimensions[1] <= size)
+                || (long) dimensions[0] * dimensions[1] > maxPixels) {
+            return original;
+        }
+        try {
+            renderPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to render " + key, e);
+        }
+        long start = System.nanoTime();
+        try {
+            BufferedImage source;
+            try {
+                source = ImageIO.read(original.toFile());
+            } catch (IOException e) {
+                // Unsupported variants, such as CMYK JPEGs, are sent as uploaded
+                logger.debug("Cannot decode {}, serving it unscaled: {}", original.getFileName(), e.getMessage());
+                return original;
+            }
+            if (source == null) {
+                return original;
+            }
+            BufferedImage scaled = scale(source, size);
+            boolean alpha = scaled.getColorModel().hasAlpha();
+            Path written = Files.createTempFile(temporary, key + "-", ".tmp");
+            try {
+                if (alpha) {
+                    ImageIO.write(scaled, "png", written.toFile());
+                } else {
+                    writeJpeg(scaled, written);
+                }
+                Path thumbnail = thumbnails.resolve(key + (alpha ? ".png" : ".jpg"));
+                Files.move(written, thumbnail, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                cache.put(key, thumbnail, Files.size(thumbnail));
+                thumbnailsRendered.increment();
+                return thumbnail;
+            } finally {
+                Files.deleteIfExists(written);
+            }
+        } finally {
+            renderNanos.add(System.nanoTime() - start);
+            renderPermits.release();
+        }
+    }
+
+    /**
+     * Fit an image in a square box, halving its size in steps so that bilinear filtering still
+     * averages every source pixel on large reductions
+     */
+    private static BufferedImage scale(BufferedImage source, int box) {
+        double ratio = Math.min((double) box / source.getWidth(), (double) box / source.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Read an image's size from its header, without decoding it
+     * @return width and height, or null if the file is not a readable image
+     */
+    private static int[] readDimensions(Path file) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private int bucket(int width) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive");
+        }
+        for (int size : thumbnailSizes) {
+            if (size >= width) {
+                return size;
+            }
+        }
+        return thumbnailSizes[thumbnailSizes.length - 1];
+    }
+
+    private static ImageFormat requireFormat(String id) {
+        if (id == null || !MediaUrls.ID.matcher(id).matches()) {
+            throw new EntityNotFoundException("Image not found: " + id);
+        }
+        return ImageFormat.fromExtension(id.substring(id.indexOf('.') + 1));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes, int length) {
+        StringBuilder out = new StringBuilder(length * 2);
+        for (int i = 0; i < length; i++) {
+            out.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Upload over {@code media.max-upload-bytes}
+     */
+    public static class UploadTooLargeException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public UploadTooLargeException(long maxBytes) {
+            super("Image is larger than " + maxBytes + " bytes");
+        }
+    }
+}
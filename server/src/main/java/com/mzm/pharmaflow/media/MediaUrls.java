@@ -0,0 +1,47 @@
+package com.mzm.pharmaflow.media;
+
+import java.util.regex.Pattern;
+
+/**
+ * URLs of images held by the {@link MediaStore}. Product images and client avatars are plain URL
+ * strings; those pointing at the store can be asked for at a smaller size, other URLs are left as is.
+ */
+public final class MediaUrls {
+
+    /** Path images are served under */
+    public static final String PREFIX = "/api/media/";
+
+    /** Thumbnail width list views ask for; the store rounds it up to one of its sizes */
+    public static final int LIST_WIDTH = 128;
+
+    /** Media IDs: first 128 bits of the SHA-256 of the content, then the format's extension */
+    static final Pattern ID = Pattern.compile("[0-9a-f]{32}\\.(jpg|png|gif|webp)");
+
+    private MediaUrls() {
+    }
+
+    /**
+     * URL of a stored image
+     * @param id media ID
+     * @return URL relative to the server root
+     */
+    public static String original(String id) {
+        return PREFIX + id;
+    }
+
+    /**
+     * URL of the list-sized version of an image
+     * @param url image URL as stored on a product or client
+     * @return thumbnail URL for images of the media store, the URL itself for any other
+     */
+    public static String thumbnail(String url) {
+        if (url == null) {
+            return null;
+        }
+        int at = url.indexOf(PREFIX);
+        if (at < 0 || !ID.matcher(url.substring(at + PREFIX.length())).matches()) {
+            return url;
+        }
+        return url + "?w=" + LIST_WIDTH;
+    }
+}
@@ -0,0 +1,21 @@
+package com.mzm.pharmaflow.media;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Uploaded image as stored
+ */
+@Getter
+@AllArgsConstructor
+public class StoredMedia {
+    private final String id;
+    private final String url;
+    private final String thumbnailUrl;
+    private final String contentType;
+    private final long size;
+    private final Integer width;
+    private final Integer height;
+    /** True if the same image was already stored */
+    private final boolean existing;
+}
@@ -0,0 +1,167 @@
+package com.mzm.pharmaflow.media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the thumbnail files on disk, in least recently used order, holding at most
+ * {@code maxBytes} of files: adding a thumbnail deletes the least recently served ones beyond that.
+ * Keys are {@code <media id>-<size>}; the file name is the key plus the thumbnail's extension.
+ */
+class ThumbnailCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+    private long evictions;
+
+    ThumbnailCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Index the thumbnails left by a previous run, oldest first, and trim them to the size limit.
+     * Access order is not persisted, so file age stands in for it after a restart.
+     * @return number of thumbnails kept
+     */
+    int load() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        List<Entry> found = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            if (dot < 0 || !Files.isRegularFile(file)) {
+                continue;
+            }
+            found.add(new Entry(name.substring(0, dot), file, Files.size(file),
+                    Files.getLastModifiedTime(file).toMillis()));
+        }
+        found.sort((a, b) -> Long.compare(a.modified, b.modified));
+        List<Path> evicted;
+        synchronized (this) {
+            for (Entry entry : found) {
+                entries.put(entry.key, entry);
+                totalBytes += entry.bytes;
+            }
+            evicted = trim(null);
+        }
+        delete(evicted);
+        return found.size() - evicted.size();
+    }
+
+    /**
+     * Look up a thumbnail and mark it as recently used
+     * @return thumbnail file, or null if there is none
+     */
+    synchronized Path get(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.file : null;
+    }
+
+    /**
+     * Add a thumbnail just written, evicting older ones if the cache is over its size
+     */
+    void put(String key, Path file, long bytes) {
+        List<Path> evicted;
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(key, file, bytes, System.currentTimeMillis()));
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            evicted = trim(key);
+        }
+        delete(evicted);
+    }
+
+    /**
+     * Forget a thumbnail whose file has disappeared
+     */
+    synchronized void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Unlink the least recently used entries until the cache fits, keeping the one just added
+     * @return files to delete, outside the lock
+     */
+    private List<Path> trim(String keep) {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (entry.key.equals(keep)) {
+                continue;
+            }
+            eldest.remove();
+            totalBytes -= entry.bytes;
+            evictions++;
+            evicted.add(entry.file);
+        }
+        return evicted;
+    }
+
+    private static void delete(List<Path> files) {
+        // A thumbnail being sent keeps its open channel, so it is read in full even once unlinked
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete evicted thumbnail {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final Path file;
+        private final long bytes;
+        private final long modified;
+
+        private Entry(String key, Path file, long bytes, long modified) {
+            this.key = key;
+            this.file = file;
+            this.bytes = bytes;
+            this.modified = modified;
+        }
+    }
+}
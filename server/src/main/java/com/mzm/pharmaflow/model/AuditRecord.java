@@ -0,0 +1,45 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Stored audit event. Rows are inserted in batches by the audit writer and never updated.
+ */
+@Entity
+@Table(name = "audit_events", indexes = {
+        @Index(name = "idx_audit_events_time", columnList = "occurredAt"),
+        @Index(name = "idx_audit_events_user", columnList = "username, occurredAt")
+})
+@Data
+@NoArgsConstructor
+public class AuditRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDateTime occurredAt;
+
+    @Column(nullable = false, length = 30)
+    private String action;
+
+    @Column(length = 100)
+    private String username;
+
+    @Column(name = "branch_id")
+    private Long branchId;
+
+    @Column(length = 50)
+    private String resourceId;
+
+    @Column(length = 500)
+    private String detail;
+
+    @Column(length = 64)
+    private String remoteAddress;
+}
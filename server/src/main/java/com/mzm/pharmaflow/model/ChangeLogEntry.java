@@ -0,0 +1,44 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One committed change to a synchronised row, written in the same transaction as the change.
+ * Deletes are kept as tombstones so that devices can drop the row.
+ */
+@Entity
+@Table(name = "change_log", indexes = {
+        @Index(name = "idx_change_log_branch_seq", columnList = "branch_id, seq"),
+        @Index(name = "idx_change_log_entity", columnList = "branch_id, entityType, entityId")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeLogEntry {
+
+    /** Change sequence, increasing in allocation order */
+    @Id
+    private Long seq;
+
+    @Column(name = "branch_id", nullable = false)
+    private Long branchId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private SyncEntityType entityType;
+
+    @Column(nullable = false)
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private ChangeOperation operation;
+
+    @Column(nullable = false)
+    private LocalDateTime changedAt;
+}
@@ -0,0 +1,6 @@
+package com.mzm.pharmaflow.model;
+
+public enum ChangeOperation {
+    UPSERT,   // Créé ou modifié
+    DELETE    // Supprimé (tombstone)
+}
@@ -1,5 +1,6 @@
 package com.mzm.pharmaflow.model;
 
+import com.mzm.pharmaflow.tenant.TenantContext;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,7 +13,12 @@ import javax.validation.constraints.Size;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "clients")
+@Table(name = "clients", indexes = {
+        @Index(name = "idx_clients_branch_last_name", columnList = "branch_id, lastName"),
+        @Index(name = "idx_clients_branch_status", columnList = "branch_id, status"),
+        @Index(name = "idx_clients_branch_phone", columnList = "branch_id, phone"),
+        @Index(name = "idx_clients_branch_last_visit", columnList = "branch_id, lastVisit")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,6 +27,10 @@ public class Client {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** Owning branch */
+    @Column(name = "branch_id", nullable = false, columnDefinition = "bigint default 1")
+    private Long branchId;
+
     @NotBlank
     @Size(max = 50)
     private String firstName;
@@ -63,9 +73,16 @@ public class Client {
 
     private LocalDate updatedAt;
 
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDate.now();
+        if (branchId == null) {
+            branchId = TenantContext.getBranchId();
+        }
         if (status == null) {
             status = ClientStatus.NOUVEAU;
         }
@@ -0,0 +1,40 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Pair of clients flagged as possible duplicates that staff confirmed are different people
+ */
+@Entity
+@Table(name = "dismissed_duplicates",
+        uniqueConstraints = @UniqueConstraint(name = "uk_dismissed_duplicates_pair",
+                columnNames = {"branch_id", "client_id", "other_client_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DismissedDuplicate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "branch_id", nullable = false)
+    private Long branchId;
+
+    /** Lower client ID of the pair */
+    @Column(name = "client_id", nullable = false)
+    private Long clientId;
+
+    @Column(name = "other_client_id", nullable = false)
+    private Long otherClientId;
+
+    @Column(length = 50)
+    private String dismissedBy;
+
+    @Column(nullable = false)
+    private Long dismissedAt;
+}
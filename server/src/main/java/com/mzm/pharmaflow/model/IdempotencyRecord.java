@@ -0,0 +1,42 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Stored response of a request sent with an Idempotency-Key header,
+ * replayed when the same key is retried
+ */
+@Entity
+@Table(name = "idempotency_records", indexes = @Index(name = "idx_idempotency_expires_at", columnList = "expiresAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+    
+    /** Caller and client-supplied key */
+    @Id
+    @Column(length = 400)
+    private String scopedKey;
+    
+    /** SHA-256 of method, path and body: a reused key with another request is rejected */
+    @Column(nullable = false, length = 64)
+    private String fingerprint;
+    
+    @Column(nullable = false)
+    private Integer status;
+    
+    private String contentType;
+    
+    @Lob
+    private byte[] body;
+    
+    @Column(nullable = false)
+    private Long createdAt;
+    
+    @Column(nullable = false)
+    private Long expiresAt;
+}
@@ -0,0 +1,29 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Last change sequence an outbox subscriber has processed for a branch
+ */
+@Entity
+@Table(name = "outbox_cursors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxCursor {
+
+    /** Subscriber name and branch ID */
+    @Id
+    @Column(length = 150)
+    private String cursorKey;
+
+    @Column(nullable = false)
+    private Long position;
+
+    @Column(nullable = false)
+    private Long updatedAt;
+}
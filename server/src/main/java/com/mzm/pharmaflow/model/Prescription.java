@@ -0,0 +1,98 @@
+package com.mzm.pharmaflow.model;
+
+import com.mzm.pharmaflow.tenant.TenantContext;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "prescriptions", indexes = {
+        @Index(name = "idx_prescriptions_branch_status", columnList = "branch_id, status, id"),
+        @Index(name = "idx_prescriptions_claimed_at", columnList = "status, claimedAt")
+})
+@Data
+@NoArgsConstructor
+public class Prescription {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Owning branch */
+    @Column(name = "branch_id", nullable = false)
+    private Long branchId;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "client_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Client client;
+
+    @Column(nullable = false, length = 100)
+    private String doctorName;
+
+    @Column(nullable = false)
+    private LocalDate issuedAt;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private PrescriptionStatus status = PrescriptionStatus.PENDING;
+
+    /** Username of the pharmacist preparing it */
+    @Column(length = 50)
+    private String claimedBy;
+
+    private LocalDateTime claimedAt;
+
+    private LocalDateTime completedAt;
+
+    @Column(length = 1000)
+    private String notes;
+
+    @OneToMany(mappedBy = "prescription", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<PrescriptionItem> items = new ArrayList<>();
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (branchId == null) {
+            branchId = TenantContext.getBranchId();
+        }
+        if (status == null) {
+            status = PrescriptionStatus.PENDING;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * Attach a line to this prescription
+     * @param item line to add
+     */
+    public void addItem(PrescriptionItem item) {
+        item.setPrescription(this);
+        items.add(item);
+    }
+}
@@ -0,0 +1,38 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.*;
+
+@Entity
+@Table(name = "prescription_items", indexes = @Index(name = "idx_prescription_items_prescription",
+        columnList = "prescription_id"))
+@Data
+@NoArgsConstructor
+public class PrescriptionItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "prescription_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Prescription prescription;
+
+    /** Catalogue product, when the medication is stocked */
+    private Long productId;
+
+    @Column(nullable = false)
+    private String productName;
+
+    @Column(nullable = false)
+    private Integer quantity;
+
+    @Column(length = 200)
+    private String instructions;
+}
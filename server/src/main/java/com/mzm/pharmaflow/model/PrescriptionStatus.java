@@ -0,0 +1,8 @@
+package com.mzm.pharmaflow.model;
+
+public enum PrescriptionStatus {
+    PENDING,       // En attente de préparation
+    IN_PROGRESS,   // Prise en charge par un pharmacien
+    COMPLETED,     // Délivrée
+    CANCELLED      // Annulée
+}
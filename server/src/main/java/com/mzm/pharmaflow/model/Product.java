@@ -1,5 +1,6 @@
 package com.mzm.pharmaflow.model;
 
+import com.mzm.pharmaflow.tenant.TenantContext;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,7 +10,13 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products",
+        uniqueConstraints = @UniqueConstraint(name = "uk_products_branch_code", columnNames = {"branch_id", "code"}),
+        indexes = {
+                @Index(name = "idx_products_branch_name", columnList = "branch_id, name"),
+                @Index(name = "idx_products_branch_category", columnList = "branch_id, category"),
+                @Index(name = "idx_products_branch_expiry", columnList = "branch_id, expiryDate")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -19,10 +26,14 @@ public class Product {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    /** Owning branch; product codes are unique per branch */
+    @Column(name = "branch_id", nullable = false, columnDefinition = "bigint default 1")
+    private Long branchId;
+    
     @Column(nullable = false)
     private String name;
     
-    @Column(nullable = false, unique = true)
+    @Column(nullable = false)
     private String code;
     
     @Column(length = 1000)
@@ -53,14 +64,25 @@ public class Product {
     
     private String formulation;
     
+    /** Active ingredients (INN), several separated by '+' */
+    @Column(length = 200)
+    private String activeIngredient;
+    
     @Column(nullable = false)
     private LocalDate createdAt;
     
     private LocalDate updatedAt;
     
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDate.now();
+        if (branchId == null) {
+            branchId = TenantContext.getBranchId();
+        }
     }
     
     @PreUpdate
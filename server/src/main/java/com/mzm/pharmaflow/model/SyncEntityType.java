@@ -0,0 +1,6 @@
+package com.mzm.pharmaflow.model;
+
+public enum SyncEntityType {
+    PRODUCT,
+    CLIENT
+}
@@ -0,0 +1,25 @@
+package com.mzm.pharmaflow.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+/**
+ * Highest change sequence of a branch whose tombstones were purged:
+ * sync tokens below it can no longer be served incrementally
+ */
+@Entity
+@Table(name = "sync_horizons")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncHorizon {
+
+    @Id
+    private Long branchId;
+
+    @Column(nullable = false)
+    private Long purgedThrough;
+}
@@ -16,7 +16,8 @@ import java.util.Set;
         uniqueConstraints = {
                 @UniqueConstraint(columnNames = "username"),
                 @UniqueConstraint(columnNames = "email")
-        })
+        },
+        indexes = @Index(name = "idx_users_branch", columnList = "branch_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -38,6 +39,10 @@ public class User {
     @Size(max = 120)
     private String password;
 
+    /** Branch the user works at; null for group-wide accounts */
+    @Column(name = "branch_id")
+    private Long branchId;
+
     @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(name = "user_roles",
             joinColumns = @JoinColumn(name = "user_id"),
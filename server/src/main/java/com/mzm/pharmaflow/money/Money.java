@@ -0,0 +1,59 @@
+package com.mzm.pharmaflow.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Amounts as a {@code long} count of minor units (centimes), for totals computed in memory.
+ *
+ * <p>Prices are stored and returned as {@code BigDecimal}; code that sums or multiplies many of
+ * them converts each price once with {@link #toMinor}, works on plain longs, and converts the
+ * result back with {@link #toDecimal} when it leaves the service. Arithmetic is exact: an
+ * overflow throws {@link ArithmeticException} instead of wrapping.</p>
+ */
+public final class Money {
+
+    /** Decimal places of the currency; prices are stored with the same scale */
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    /**
+     * Convert an amount to minor units, rounding half up
+     * @param amount amount, may be null
+     * @return amount in minor units, 0 for null
+     * @throws ArithmeticException if the amount does not fit in a long
+     */
+    public static long toMinor(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convert minor units back to an amount
+     * @param minor amount in minor units
+     * @return amount with {@link #SCALE} decimals
+     */
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * Price of a quantity
+     * @param unitMinor unit price in minor units
+     * @param quantity number of units, negative for a deduction
+     * @return total in minor units
+     * @throws ArithmeticException on overflow
+     */
+    public static long times(long unitMinor, long quantity) {
+        return Math.multiplyExact(unitMinor, quantity);
+    }
+
+    /**
+     * Sum of two amounts
+     * @throws ArithmeticException on overflow
+     */
+    public static long plus(long a, long b) {
+        return Math.addExact(a, b);
+    }
+}
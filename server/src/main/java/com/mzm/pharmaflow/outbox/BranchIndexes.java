@@ -0,0 +1,308 @@
+package com.mzm.pharmaflow.outbox;
+
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * One in-memory index per branch, built from the database on first use and then kept current
+ * with the changes an {@link OutboxSubscriber} receives. The owner supplies how an index is
+ * {@linkplain Loader loaded} and how changed rows are {@linkplain Applier applied}; this class
+ * keeps the indexes, serialises a branch's build with the changes applied to it, and skips the
+ * changes an index already contains.
+ *
+ * <p>A build contains every change up to {@link ChangeRecorder#safeUpperBound()} taken before it
+ * reads, as those are committed; later ones are relayed after it. Changes at or below an index's
+ * {@link Index#getAppliedThrough() position}, because the build contains them or because they
+ * are delivered twice, are not applied again. The applier is given the IDs of the changed rows
+ * only, and applies their current state whatever the operation, so replays are harmless.</p>
+ *
+ * @param <I> index type
+ */
+public final class BranchIndexes<I extends BranchIndexes.Index> {
+
+    /**
+     * Position of an index in the change log
+     */
+    public interface Index {
+
+        /**
+         * Get the last change reflected in the index
+         * @return change sequence
+         */
+        long getAppliedThrough();
+
+        /**
+         * Record that the index reflects every change up to a position
+         * @param seq change sequence
+         */
+        void applied(long seq);
+    }
+
+    /**
+     * Reads a branch's index from the database
+     */
+    @FunctionalInterface
+    public interface Loader<I> {
+
+        /**
+         * Read a branch's index. Runs with the branch as the current tenant, under its lock.
+         * @param branchId branch ID
+         * @param appliedThrough change position the index is built as of
+         * @return index
+         */
+        I load(Long branchId, long appliedThrough);
+    }
+
+    /**
+     * Applies changed rows to a branch's index
+     */
+    @FunctionalInterface
+    public interface Applier<I> {
+
+        /**
+         * Re-read rows of one entity type and apply their current state, removing the rows that
+         * no longer exist. Runs with the branch as the current tenant, under its lock.
+         * @param branchId branch ID
+         * @param index branch's index
+         * @param entityType type of the changed rows
+         * @param ids changed row IDs
+         */
+        void apply(Long branchId, I index, SyncEntityType entityType, Set<Long> ids);
+    }
+
+    private final ChangeRecorder changeRecorder;
+    private final Set<SyncEntityType> entityTypes;
+    private final Loader<I> loader;
+    private final Applier<I> applier;
+
+    private final Map<Long, I> indexes = new ConcurrentHashMap<>();
+    private final Map<Long, Object> locks = new ConcurrentHashMap<>();
+
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder appliedChanges = new LongAdder();
+
+    /**
+     * @param changeRecorder source of the position builds are taken at
+     * @param entityTypes types of the changes the indexes follow; others are ignored
+     * @param loader reads an index
+     * @param applier applies changed rows
+     */
+    public BranchIndexes(ChangeRecorder changeRecorder, Set<SyncEntityType> entityTypes,
+                         Loader<I> loader, Applier<I> applier) {
+        this.changeRecorder = changeRecorder;
+        this.entityTypes = EnumSet.copyOf(entityTypes);
+        this.loader = loader;
+        this.applier = applier;
+    }
+
+    /**
+     * Get a branch's index if it is built
+     * @param branchId branch ID
+     * @return index, or null
+     */
+    public I get(Long branchId) {
+        return indexes.get(branchId);
+    }
+
+    /**
+     * Get the current branch's index, building it if needed
+     * @return index
+     */
+    public I current() {
+        return current(index -> true);
+    }
+
+    /**
+     * Get the current branch's index, building it if there is none or it is no longer usable
+     * @param usable whether a built index can still be used
+     * @return index
+     */
+    public I current(Predicate<? super I> usable) {
+        Long branchId = TenantContext.getBranchId();
+        I index = indexes.get(branchId);
+        if (index != null && usable.test(index)) {
+            return index;
+        }
+        synchronized (lockFor(branchId)) {
+            // Another caller may have built it while this one waited
+            index = indexes.get(branchId);
+            return index != null && usable.test(index) ? index : build(branchId);
+        }
+    }
+
+    /**
+     * Build a branch's index again from the database
+     * @param branchId branch ID
+     * @return new index
+     */
+    public I rebuild(Long branchId) {
+        synchronized (lockFor(branchId)) {
+            return build(branchId);
+        }
+    }
+
+    /**
+     * Install an index built some other way, unless the branch already has one. The index must
+     * be as of its {@linkplain Index#getAppliedThrough() position}.
+     * @param branchId branch ID
+     * @param seed builds the index
+     * @return true if the index was installed
+     */
+    public boolean seed(Long branchId, Supplier<I> seed) {
+        synchronized (lockFor(branchId)) {
+            if (indexes.containsKey(branchId)) {
+                return false;
+            }
+            indexes.put(branchId, seed.get());
+            return true;
+        }
+    }
+
+    /**
+     * Change a branch's index under its lock, if it is built
+     * @param branchId branch ID
+     * @param update change to make
+     */
+    public void update(Long branchId, Consumer<? super I> update) {
+        if (!indexes.containsKey(branchId)) {
+            return;
+        }
+        synchronized (lockFor(branchId)) {
+            I index = indexes.get(branchId);
+            if (index != null) {
+                update.accept(index);
+            }
+        }
+    }
+
+    /**
+     * Apply a batch of relayed changes to a branch's index, if it is built
+     * @param branchId branch the changes belong to
+     * @param events changes, oldest first
+     */
+    public void onEvents(Long branchId, List<OutboxEvent> events) {
+        if (!indexes.containsKey(branchId)) {
+            return;
+        }
+        synchronized (lockFor(branchId)) {
+            I index = indexes.get(branchId);
+            if (index == null) {
+                return;
+            }
+            Map<SyncEntityType, Set<Long>> changed = new EnumMap<>(SyncEntityType.class);
+            long last = index.getAppliedThrough();
+            for (OutboxEvent event : events) {
+                if (event.getSeq() <= index.getAppliedThrough() || !entityTypes.contains(event.getEntityType())) {
+                    continue;
+                }
+                changed.computeIfAbsent(event.getEntityType(), type -> new HashSet<>()).add(event.getEntityId());
+                last = event.getSeq();
+            }
+            for (Map.Entry<SyncEntityType, Set<Long>> entry : changed.entrySet()) {
+                apply(branchId, index, entry.getKey(), entry.getValue());
+            }
+            if (last > index.getAppliedThrough()) {
+                index.applied(last);
+            }
+        }
+    }
+
+    /**
+     * Apply rows changed outside the relay to a branch's index, if it is built
+     * @param branchId branch ID
+     * @param entityType type of the changed rows
+     * @param ids changed row IDs
+     * @param through change position the rows are known to be current to, or -1 if unknown
+     */
+    public void apply(Long branchId, SyncEntityType entityType, Collection<Long> ids, long through) {
+        if (!indexes.containsKey(branchId)) {
+            return;
+        }
+        synchronized (lockFor(branchId)) {
+            I index = indexes.get(branchId);
+            if (index == null) {
+                return;
+            }
+            if (!ids.isEmpty()) {
+                apply(branchId, index, entityType, new HashSet<>(ids));
+            }
+            if (through > index.getAppliedThrough()) {
+                index.applied(through);
+            }
+        }
+    }
+
+    /**
+     * Drop every index; each is built again on next use
+     */
+    public void clear() {
+        indexes.clear();
+    }
+
+    /**
+     * Get the branches with a built index
+     * @return branch IDs, a copy
+     */
+    public List<Long> branchIds() {
+        return new ArrayList<>(indexes.keySet());
+    }
+
+    /**
+     * Get the built indexes
+     * @return indexes, unmodifiable
+     */
+    public Collection<I> values() {
+        return Collections.unmodifiableCollection(indexes.values());
+    }
+
+    /**
+     * Get the number of indexes built from the database
+     * @return build count
+     */
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    /**
+     * Get the number of changed rows applied
+     * @return row count
+     */
+    public long getAppliedChanges() {
+        return appliedChanges.sum();
+    }
+
+    private Object lockFor(Long branchId) {
+        return locks.computeIfAbsent(branchId, id -> new Object());
+    }
+
+    private I build(Long branchId) {
+        I index = TenantContext.callOnBranch(branchId, () -> loader.load(branchId, changeRecorder.safeUpperBound()));
+        indexes.put(branchId, index);
+        builds.increment();
+        return index;
+    }
+
+    private void apply(Long branchId, I index, SyncEntityType entityType, Set<Long> ids) {
+        TenantContext.callOnBranch(branchId, () -> {
+            applier.apply(branchId, index, entityType, ids);
+            return null;
+        });
+        appliedChanges.add(ids.size());
+    }
+}
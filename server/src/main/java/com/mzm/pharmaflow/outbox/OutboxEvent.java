@@ -0,0 +1,26 @@
+package com.mzm.pharmaflow.outbox;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * A committed product or client change, as delivered to {@link OutboxSubscriber}s.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class OutboxEvent {
+
+    /** Change sequence: events of a branch are delivered in increasing order */
+    private final long seq;
+    private final Long branchId;
+    private final SyncEntityType entityType;
+    private final Long entityId;
+    private final ChangeOperation operation;
+    private final LocalDateTime occurredAt;
+}
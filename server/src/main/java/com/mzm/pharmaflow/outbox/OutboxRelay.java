@@ -0,0 +1,278 @@
+package com.mzm.pharmaflow.outbox;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.OutboxCursor;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.repository.OutboxCursorRepository;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes committed product and client changes to the {@link OutboxSubscriber} beans.
+ *
+ * <p>The outbox is {@code change_log}: {@link ChangeRecorder} writes it in the same transaction
+ * as the change. Every {@code outbox.poll-interval-ms} the relay reads each subscriber's next
+ * changes, per branch and in sequence order, up to {@link ChangeRecorder#safeUpperBound()} so a
+ * change committing late is never skipped, and hands them over in batches of
+ * {@code outbox.batch-size}. The subscriber's position is saved in {@code outbox_cursors} after
+ * each batch it accepted. A subscriber that throws is retried from the same change with an
+ * increasing delay; the others are not held up. Log compaction never removes a change that a
+ * subscriber has not received yet.</p>
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String SELECT_EVENTS = "SELECT seq, entity_type, entity_id, operation, changed_at "
+            + "FROM change_log WHERE branch_id = ? AND seq > ? AND seq <= ? ORDER BY seq LIMIT ?";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private OutboxCursorRepository cursorRepository;
+
+    @Autowired(required = false)
+    private List<OutboxSubscriber> subscribers = Collections.emptyList();
+
+    @Value("${outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${outbox.max-batches-per-poll:50}")
+    private int maxBatchesPerPoll;
+
+    @Value("${outbox.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${outbox.max-retry-backoff-ms:300000}")
+    private long maxRetryBackoffMs;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Delivery> deliveries = new LinkedHashMap<>();
+    private final Set<Long> branches = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+    private long startSequence;
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (OutboxSubscriber subscriber : subscribers) {
+            if (deliveries.put(subscriber.getSubscriberName(), new Delivery(subscriber)) != null) {
+                throw new IllegalStateException("Duplicate outbox subscriber name: " + subscriber.getSubscriberName());
+            }
+        }
+        logger.info("Outbox relay started with subscribers {}", deliveries.keySet());
+    }
+
+    // Deferred to first use as the tables only exist once the schema is built
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            // Subscribers without a saved position start with the changes of this run
+            startSequence = changeRecorder.startSequence();
+            TenantContext.callOnDefaultStore(() -> {
+                branches.addAll(jdbcTemplate.queryForList("SELECT DISTINCT branch_id FROM change_log", Long.class));
+                for (OutboxCursor cursor : cursorRepository.findAll()) {
+                    int separator = cursor.getCursorKey().lastIndexOf('@');
+                    Delivery delivery = deliveries.get(cursor.getCursorKey().substring(0, separator));
+                    if (delivery != null) {
+                        Long branchId = Long.valueOf(cursor.getCursorKey().substring(separator + 1));
+                        delivery.positions.put(branchId, cursor.getPosition());
+                        branches.add(branchId);
+                    }
+                }
+                return null;
+            });
+            loaded = true;
+        }
+    }
+
+    /**
+     * Deliver the changes committed since the last poll
+     */
+    @Scheduled(fixedDelayString = "${outbox.poll-interval-ms:500}")
+    public void poll() {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        ensureLoaded();
+        branches.addAll(changeRecorder.getBranches());
+        long upper = changeRecorder.safeUpperBound();
+        long now = System.currentTimeMillis();
+        for (Delivery delivery : deliveries.values()) {
+            if (now < delivery.retryAt) {
+                continue;
+            }
+            for (Long branchId : branches) {
+                if (!relay(delivery, branchId, upper)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean relay(Delivery delivery, Long branchId, long upper) {
+        long position = position(delivery, branchId);
+        for (int i = 0; i < maxBatchesPerPoll && position < upper; i++) {
+            long from = position;
+            List<OutboxEvent> events = TenantContext.callOnBranch(branchId, () ->
+                    jdbcTemplate.query(SELECT_EVENTS, eventMapper(branchId), branchId, from, upper, batchSize));
+            if (events.isEmpty()) {
+                // Nothing of the branch up to the bound; no need to read that range again
+                delivery.positions.put(branchId, upper);
+                break;
+            }
+            try {
+                TenantContext.callOnBranch(branchId, () -> {
+                    delivery.subscriber.onEvents(branchId, events);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                delivery.failed(e);
+                logger.warn("Outbox subscriber {} failed on branch {} from change {}, retrying in {} ms: {}",
+                        delivery.name, branchId, events.get(0).getSeq(), delivery.retryAt - System.currentTimeMillis(),
+                        e.getMessage());
+                return false;
+            }
+            position = events.get(events.size() - 1).getSeq();
+            delivery.delivered(events.size());
+            save(delivery, branchId, position);
+            if (events.size() < batchSize) {
+                position = upper;
+            }
+            delivery.positions.put(branchId, position);
+        }
+        return true;
+    }
+
+    private void save(Delivery delivery, Long branchId, long position) {
+        try {
+            TenantContext.callOnDefaultStore(() -> cursorRepository.save(
+                    new OutboxCursor(delivery.name + "@" + branchId, position, System.currentTimeMillis())));
+        } catch (RuntimeException e) {
+            // The saved position stays behind: at worst these changes are delivered again after a restart
+            logger.warn("Could not save outbox position of {} for branch {}: {}", delivery.name, branchId, e.getMessage());
+        }
+    }
+
+    private long position(Delivery delivery, Long branchId) {
+        Long position = delivery.positions.get(branchId);
+        return position != null ? position : startSequence;
+    }
+
+    private static RowMapper<OutboxEvent> eventMapper(Long branchId) {
+        return (rs, rowNum) -> new OutboxEvent(rs.getLong("seq"), branchId,
+                SyncEntityType.valueOf(rs.getString("entity_type")), rs.getLong("entity_id"),
+                ChangeOperation.valueOf(rs.getString("operation")), rs.getTimestamp("changed_at").toLocalDateTime());
+    }
+
+    /**
+     * Get the lowest change of a branch every subscriber has received
+     * @param branchId branch ID
+     * @return sequence up to which change log entries may be compacted
+     */
+    public long deliveredThrough(Long branchId) {
+        if (deliveries.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        ensureLoaded();
+        long min = Long.MAX_VALUE;
+        for (Delivery delivery : deliveries.values()) {
+            min = Math.min(min, position(delivery, branchId));
+        }
+        return min;
+    }
+
+    /**
+     * Get relay statistics for the current branch
+     * @return per-subscriber positions, pending changes and delivery counters
+     */
+    public Map<String, Object> getStats() {
+        Long branchId = TenantContext.getBranchId();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batchSize", batchSize);
+        stats.put("safeUpperBound", changeRecorder.safeUpperBound());
+        List<Map<String, Object>> entries = new ArrayList<>();
+        if (!deliveries.isEmpty()) {
+            ensureLoaded();
+        }
+        for (Delivery delivery : deliveries.values()) {
+            long position = position(delivery, branchId);
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("subscriber", delivery.name);
+            entry.put("position", position);
+            entry.put("pending", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_log "
+                    + "WHERE branch_id = ? AND seq > ?", Long.class, branchId, position));
+            entry.put("deliveredEvents", delivery.events.get());
+            entry.put("deliveredBatches", delivery.batches.get());
+            entry.put("failures", delivery.failures.get());
+            entry.put("lastError", delivery.lastError);
+            entry.put("retryAt", delivery.retryAt > 0 ? delivery.retryAt : null);
+            entries.add(entry);
+        }
+        stats.put("subscribers", entries);
+        return stats;
+    }
+
+    private final class Delivery {
+        private final OutboxSubscriber subscriber;
+        private final String name;
+        private final Map<Long, Long> positions = new ConcurrentHashMap<>();
+        private final AtomicLong events = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private int consecutiveFailures;
+        private volatile long retryAt;
+        private volatile String lastError;
+
+        private Delivery(OutboxSubscriber subscriber) {
+            this.subscriber = subscriber;
+            this.name = subscriber.getSubscriberName();
+        }
+
+        private void delivered(int count) {
+            events.addAndGet(count);
+            batches.incrementAndGet();
+            consecutiveFailures = 0;
+            retryAt = 0;
+        }
+
+        private void failed(RuntimeException e) {
+            failures.incrementAndGet();
+            consecutiveFailures++;
+            long backoff = retryBackoffMs << Math.min(consecutiveFailures - 1, 20);
+            retryAt = System.currentTimeMillis() + Math.min(backoff, maxRetryBackoffMs);
+            lastError = e.getMessage();
+        }
+    }
+}
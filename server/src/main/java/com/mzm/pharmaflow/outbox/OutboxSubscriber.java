@@ -0,0 +1,28 @@
+package com.mzm.pharmaflow.outbox;
+
+import java.util.List;
+
+/**
+ * In-process consumer of committed product and client changes. Every bean implementing this
+ * interface is fed by {@link OutboxRelay}.
+ *
+ * <p>Delivery is at least once: a batch is redelivered if the subscriber throws, or if the
+ * application stops before the subscriber's position is saved, so handlers must be idempotent.
+ * A subscriber receives the changes committed after it was first registered.</p>
+ */
+public interface OutboxSubscriber {
+
+    /**
+     * Get the subscriber's name, the key its delivery position is stored under
+     * @return stable name
+     */
+    String getSubscriberName();
+
+    /**
+     * Handle a batch of one branch's changes, in sequence order. Runs with the branch as the
+     * current tenant and outside any transaction.
+     * @param branchId branch the changes belong to
+     * @param events changes, oldest first
+     */
+    void onEvents(Long branchId, List<OutboxEvent> events);
+}
@@ -0,0 +1,146 @@
+package com.mzm.pharmaflow.report;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A report request and, once generated, its CSV file. Jobs double as cache entries:
+ * a job is shared by every request for the same report, parameters, branch and data version.
+ */
+public class ReportJob {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private final String id;
+    private final ReportType type;
+    private final Map<String, String> params;
+    private final Long branchId;
+    private final long dataVersion;
+    private final String cacheKey;
+    private final long submittedAt;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile long rows;
+    private volatile long sizeBytes;
+    private volatile String error;
+    private volatile Path file;
+    private volatile long lastAccessedAt;
+
+    ReportJob(String id, ReportType type, Map<String, String> params, Long branchId, long dataVersion,
+              String cacheKey) {
+        this.id = id;
+        this.type = type;
+        this.params = params;
+        this.branchId = branchId;
+        this.dataVersion = dataVersion;
+        this.cacheKey = cacheKey;
+        this.submittedAt = System.currentTimeMillis();
+        this.lastAccessedAt = submittedAt;
+    }
+
+    void markRunning() {
+        startedAt = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markDone(Path file, long rows, long sizeBytes) {
+        this.file = file;
+        this.rows = rows;
+        this.sizeBytes = sizeBytes;
+        finishedAt = System.currentTimeMillis();
+        status = Status.DONE;
+    }
+
+    void markFailed(String error) {
+        this.error = error;
+        finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    void touch() {
+        lastAccessedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getReport() {
+        return type.getKey();
+    }
+
+    @JsonIgnore
+    public ReportType getType() {
+        return type;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    public Long getBranchId() {
+        return branchId;
+    }
+
+    public long getDataVersion() {
+        return dataVersion;
+    }
+
+    @JsonIgnore
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Get the number of data rows, header excluded
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public Path getFile() {
+        return file;
+    }
+
+    @JsonIgnore
+    public long getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+    /**
+     * Get the file name offered on download
+     */
+    @JsonIgnore
+    public String getFileName() {
+        return type.getKey() + "-branch" + branchId + "-v" + dataVersion + ".csv";
+    }
+}
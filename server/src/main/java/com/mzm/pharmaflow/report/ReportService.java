@@ -0,0 +1,321 @@
+package com.mzm.pharmaflow.report;
+
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Generates reports off the request threads.
+ *
+ * <p>Jobs are queued on a small, bounded pool and write CSV files to local disk. A job is keyed
+ * by (report, normalized parameters, branch, data version): while the branch's data does not
+ * change, asking again for the same report returns the existing job, finished or still running,
+ * instead of querying again. Once a newer version of a report is generated the older file is
+ * deleted; remaining files expire after {@code report.retention-ms}.</p>
+ */
+@Service
+public class ReportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportService.class);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Value("${report.dir:${java.io.tmpdir}/pharmaflow-reports}")
+    private String reportDir;
+
+    @Value("${report.executor.pool-size:2}")
+    private int poolSize;
+
+    @Value("${report.executor.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${report.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${report.cache-size:200}")
+    private int cacheSize;
+
+    @Value("${report.retention-ms:86400000}")
+    private long retentionMs;
+
+    private Path directory;
+    private JdbcTemplate jdbcTemplate;
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, ReportJob> jobsByKey = new ConcurrentHashMap<>();
+    private final Map<String, ReportJob> jobsById = new ConcurrentHashMap<>();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder generationNanos = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    @PostConstruct
+    public void start() throws IOException {
+        directory = Paths.get(reportDir);
+        Files.createDirectories(directory);
+        // The job index lives in memory, so files left by a previous run can never be served
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*.{csv,tmp}")) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "report-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Report executor started with {} workers, queue capacity {}, files in {}",
+                poolSize, queueCapacity, directory);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Request a report for the current branch
+     * @param type report to generate
+     * @param params raw parameters
+     * @return the cached or running job for these parameters, or a newly queued one
+     * @throws IllegalArgumentException if a parameter is invalid
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public ReportJob submit(ReportType type, Map<String, String> params) {
+        Long branchId = TenantContext.getBranchId();
+        Map<String, String> normalized = type.normalize(params);
+        long version = dataVersion.current(branchId);
+        String cacheKey = type.getKey() + "|" + branchId + "|" + normalized + "|" + version;
+        submitted.increment();
+
+        while (true) {
+            ReportJob existing = jobsByKey.get(cacheKey);
+            if (existing != null && existing.getStatus() != ReportJob.Status.FAILED) {
+                cacheHits.increment();
+                existing.touch();
+                return existing;
+            }
+            ReportJob job = new ReportJob(UUID.randomUUID().toString(), type, normalized, branchId, version, cacheKey);
+            boolean claimed = existing == null
+                    ? jobsByKey.putIfAbsent(cacheKey, job) == null
+                    : jobsByKey.replace(cacheKey, existing, job);
+            if (!claimed) {
+                continue;
+            }
+            if (existing != null) {
+                jobsById.remove(existing.getId());
+            }
+            jobsById.put(job.getId(), job);
+            try {
+                executor.execute(() -> run(job));
+            } catch (RejectedExecutionException e) {
+                jobsByKey.remove(cacheKey, job);
+                jobsById.remove(job.getId());
+                rejected.increment();
+                throw e;
+            }
+            return job;
+        }
+    }
+
+    /**
+     * Get a job of the current branch
+     * @param id job ID
+     * @return the job, or null if unknown, expired or owned by another branch
+     */
+    public ReportJob findJob(String id) {
+        ReportJob job = jobsById.get(id);
+        if (job == null || !job.getBranchId().equals(TenantContext.getBranchId())) {
+            return null;
+        }
+        job.touch();
+        return job;
+    }
+
+    /**
+     * Get the current branch's jobs, newest first
+     */
+    public List<ReportJob> listJobs() {
+        Long branchId = TenantContext.getBranchId();
+        return jobsById.values().stream()
+                .filter(job -> job.getBranchId().equals(branchId))
+                .sorted(Comparator.comparingLong(ReportJob::getSubmittedAt).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Estimated seconds before a rejected request is worth retrying
+     */
+    public long retryAfterSeconds() {
+        long completed = generated.sum();
+        long averageNanos = completed > 0 ? generationNanos.sum() / completed : TimeUnit.SECONDS.toNanos(1);
+        long backlog = executor.getQueue().size() + executor.getActiveCount();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(backlog * averageNanos / Math.max(1, poolSize)) + 1);
+    }
+
+    private void run(ReportJob job) {
+        job.markRunning();
+        long startedAt = System.nanoTime();
+        Path target = directory.resolve(job.getId() + ".csv");
+        Path temporary = directory.resolve(job.getId() + ".tmp");
+        // Route the queries to the store holding the job's branch
+        TenantContext.setBranchId(job.getBranchId());
+        try {
+            long rows;
+            try (CsvWriter out = new CsvWriter(Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))) {
+                job.getType().write(jdbcTemplate, job, out);
+                rows = out.getRows() - 1;
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long size = Files.size(target);
+            job.markDone(target, rows, size);
+            generated.increment();
+            generationNanos.add(System.nanoTime() - startedAt);
+            bytesWritten.add(size);
+            logger.info("Report {} for branch {} generated: {} rows, {} bytes in {} ms", job.getReport(),
+                    job.getBranchId(), rows, size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+            dropSuperseded(job);
+            evictOverflow();
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            job.markFailed(e.getMessage());
+            deleteQuietly(temporary);
+            logger.warn("Report {} for branch {} failed: {}", job.getReport(), job.getBranchId(), e.getMessage());
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    /**
+     * Older versions of the same report can no longer be requested: the version in their key is behind.
+     */
+    private void dropSuperseded(ReportJob current) {
+        String prefix = current.getReport() + "|" + current.getBranchId() + "|" + current.getParams() + "|";
+        for (ReportJob job : jobsByKey.values()) {
+            if (job != current && job.getCacheKey().startsWith(prefix)
+                    && job.getDataVersion() < current.getDataVersion() && job.getStatus() != ReportJob.Status.RUNNING
+                    && job.getStatus() != ReportJob.Status.QUEUED) {
+                evict(job);
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        List<ReportJob> finished = new ArrayList<>();
+        for (ReportJob job : jobsByKey.values()) {
+            if (job.getStatus() == ReportJob.Status.DONE || job.getStatus() == ReportJob.Status.FAILED) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() <= cacheSize) {
+            return;
+        }
+        finished.sort(Comparator.comparingLong(ReportJob::getLastAccessedAt));
+        for (int i = 0; i < finished.size() - cacheSize; i++) {
+            evict(finished.get(i));
+        }
+    }
+
+    /**
+     * Delete report files that have not been requested within the retention period
+     */
+    @Scheduled(fixedDelayString = "${report.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        for (ReportJob job : jobsByKey.values()) {
+            if (job.getLastAccessedAt() < cutoff && job.getStatus() != ReportJob.Status.RUNNING
+                    && job.getStatus() != ReportJob.Status.QUEUED) {
+                evict(job);
+            }
+        }
+    }
+
+    private void evict(ReportJob job) {
+        if (jobsByKey.remove(job.getCacheKey(), job)) {
+            jobsById.remove(job.getId());
+            evicted.increment();
+            if (job.getFile() != null) {
+                deleteQuietly(job.getFile());
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete report file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Get report engine metrics
+     * @return queue depth, cache effectiveness and generation timings
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long completed = generated.sum();
+        stats.put("poolSize", poolSize);
+        stats.put("activeWorkers", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("cachedJobs", jobsByKey.size());
+        stats.put("submitted", submitted.sum());
+        stats.put("cacheHits", cacheHits.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("generated", completed);
+        stats.put("failed", failed.sum());
+        stats.put("evicted", evicted.sum());
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("avgGenerationMs", completed > 0 ? generationNanos.sum() / completed / 1_000_000.0 : 0.0);
+        return stats;
+    }
+}
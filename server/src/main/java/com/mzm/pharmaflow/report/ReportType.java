@@ -0,0 +1,190 @@
+package com.mzm.pharmaflow.report;
+
+import com.mzm.pharmaflow.model.ProductCategory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Available reports. Each one streams its rows from a single query into the CSV writer,
+ * so memory use does not depend on the size of the branch.
+ */
+public enum ReportType {
+
+    INVENTORY_VALUATION("inventory-valuation", "Stock value per product, highest first") {
+        @Override
+        Map<String, String> normalize(Map<String, String> params) {
+            Map<String, String> normalized = new TreeMap<>();
+            String category = params.get("category");
+            if (category != null && !category.isEmpty()) {
+                normalized.put("category", parseCategory(category).name());
+            }
+            return normalized;
+        }
+
+        @Override
+        void write(JdbcTemplate jdbcTemplate, ReportJob job, CsvWriter out) {
+            out.row("code", "name", "category", "quantity", "unit_price", "stock_value");
+            String category = job.getParams().get("category");
+            String sql = "SELECT code, name, category, quantity, price, quantity * price AS stock_value"
+                    + " FROM products WHERE branch_id = ?"
+                    + (category != null ? " AND category = ?" : "")
+                    + " ORDER BY stock_value DESC, code";
+            Object[] args = category != null
+                    ? new Object[]{job.getBranchId(), category}
+                    : new Object[]{job.getBranchId()};
+            jdbcTemplate.query(sql, rs -> {
+                out.row(rs.getString("code"), rs.getString("name"), rs.getString("category"),
+                        rs.getInt("quantity"), rs.getBigDecimal("price"), rs.getBigDecimal("stock_value"));
+            }, args);
+        }
+    },
+
+    EXPIRY_EXPOSURE("expiry-exposure", "Products expired or expiring within 'days' (default 90), with the value at risk") {
+        @Override
+        Map<String, String> normalize(Map<String, String> params) {
+            Map<String, String> normalized = new TreeMap<>();
+            normalized.put("days", String.valueOf(parseInt(params, "days", 90, 0, 3650)));
+            return normalized;
+        }
+
+        @Override
+        void write(JdbcTemplate jdbcTemplate, ReportJob job, CsvWriter out) {
+            out.row("code", "name", "expiry_date", "days_left", "quantity", "value_at_risk");
+            LocalDate today = LocalDate.now();
+            LocalDate horizon = today.plusDays(Integer.parseInt(job.getParams().get("days")));
+            jdbcTemplate.query("SELECT code, name, expiry_date, quantity, quantity * price AS value_at_risk"
+                    + " FROM products WHERE branch_id = ? AND expiry_date <= ?"
+                    + " ORDER BY expiry_date, code", rs -> {
+                LocalDate expiry = rs.getDate("expiry_date").toLocalDate();
+                out.row(rs.getString("code"), rs.getString("name"), expiry,
+                        ChronoUnit.DAYS.between(today, expiry), rs.getInt("quantity"),
+                        rs.getBigDecimal("value_at_risk"));
+            }, job.getBranchId(), Date.valueOf(horizon));
+        }
+    },
+
+    CATEGORY_MIX("category-mix", "Product count, units and stock value per category") {
+        @Override
+        void write(JdbcTemplate jdbcTemplate, ReportJob job, CsvWriter out) {
+            out.row("category", "products", "units", "stock_value");
+            jdbcTemplate.query("SELECT category, COUNT(*) AS products, SUM(quantity) AS units,"
+                    + " SUM(quantity * price) AS stock_value FROM products WHERE branch_id = ?"
+                    + " GROUP BY category ORDER BY stock_value DESC", rs -> {
+                BigDecimal value = rs.getBigDecimal("stock_value");
+                out.row(rs.getString("category"), rs.getLong("products"), rs.getLong("units"),
+                        value != null ? value : BigDecimal.ZERO);
+            }, job.getBranchId());
+        }
+    },
+
+    CLIENT_ACTIVITY("client-activity", "Clients by last visit; 'inactiveDays' keeps those not seen for that long") {
+        @Override
+        Map<String, String> normalize(Map<String, String> params) {
+            Map<String, String> normalized = new TreeMap<>();
+            if (params.containsKey("inactiveDays")) {
+                normalized.put("inactiveDays", String.valueOf(parseInt(params, "inactiveDays", 0, 0, 36500)));
+            }
+            return normalized;
+        }
+
+        @Override
+        void write(JdbcTemplate jdbcTemplate, ReportJob job, CsvWriter out) {
+            out.row("id", "first_name", "last_name", "phone", "status", "last_visit", "days_since_visit",
+                    "has_prescription");
+            LocalDate today = LocalDate.now();
+            String inactiveDays = job.getParams().get("inactiveDays");
+            String sql = "SELECT id, first_name, last_name, phone, status, last_visit, has_prescription"
+                    + " FROM clients WHERE branch_id = ?"
+                    + (inactiveDays != null ? " AND (last_visit IS NULL OR last_visit < ?)" : "")
+                    + " ORDER BY last_visit NULLS FIRST, id";
+            Object[] args = inactiveDays != null
+                    ? new Object[]{job.getBranchId(), Date.valueOf(today.minusDays(Integer.parseInt(inactiveDays)))}
+                    : new Object[]{job.getBranchId()};
+            jdbcTemplate.query(sql, rs -> {
+                Date lastVisit = rs.getDate("last_visit");
+                out.row(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name"),
+                        rs.getString("phone"), rs.getString("status"), lastVisit,
+                        lastVisit != null ? ChronoUnit.DAYS.between(lastVisit.toLocalDate(), today) : null,
+                        rs.getBoolean("has_prescription"));
+            }, args);
+        }
+    };
+
+    private final String key;
+    private final String description;
+
+    ReportType(String key, String description) {
+        this.key = key;
+        this.description = description;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Validate parameters and apply defaults. The result is sorted so that equivalent
+     * requests share a cache entry.
+     * @param params raw request parameters
+     * @return normalized parameters
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    Map<String, String> normalize(Map<String, String> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Stream the report, header first
+     */
+    abstract void write(JdbcTemplate jdbcTemplate, ReportJob job, CsvWriter out);
+
+    /**
+     * Find a report by its URL key
+     * @param key e.g. inventory-valuation
+     * @return report type
+     * @throws IllegalArgumentException if there is no such report
+     */
+    public static ReportType fromKey(String key) {
+        for (ReportType type : values()) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown report: " + key);
+    }
+
+    private static ProductCategory parseCategory(String category) {
+        try {
+            return ProductCategory.valueOf(category.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid product category: " + category);
+        }
+    }
+
+    private static int parseInt(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String raw = params.get(name);
+        if (raw == null || raw.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(raw.trim());
+            if (value < min || value > max) {
+                throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+}
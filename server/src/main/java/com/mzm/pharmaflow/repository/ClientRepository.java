@@ -1,22 +1,35 @@
 package com.mzm.pharmaflow.repository;
 
+import com.mzm.pharmaflow.dto.ClientDTO;
 import com.mzm.pharmaflow.model.Client;
+import com.mzm.pharmaflow.model.ClientStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface ClientRepository extends JpaRepository<Client, Long> {
+public interface ClientRepository extends JpaRepository<Client, Long>, ClientRepositoryCustom {
+    
+    /**
+     * Constructor expression selecting every {@link ClientDTO} column
+     */
+    String DTO_SELECT = "SELECT new com.mzm.pharmaflow.dto.ClientDTO(c.id, c.firstName, c.lastName, c.email, "
+            + "c.phone, c.birthDate, c.address, c.status, c.lastVisit, c.medicalNotes, c.medicalHistory, "
+            + "c.hasPrescription, c.avatar, c.createdAt, c.updatedAt, c.version) FROM Client c";
     
     /**
      * Find clients by status
      * @param status client status
      * @return list of clients with the specified status
      */
-    List<Client> findByStatus(String status);
+    List<Client> findByStatus(ClientStatus status);
     
     /**
      * Search clients by first name or last name
@@ -59,4 +72,114 @@ public interface ClientRepository extends JpaRepository<Client, Long> {
      * @return list of clients with prescription
      */
     List<Client> findByHasPrescriptionTrue();
-} 
\ No newline at end of file
+    
+    /**
+     * Find all clients as DTOs
+     * @param branchId branch ID
+     * @return list of all clients
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId")
+    List<ClientDTO> findAllDtos(@Param("branchId") Long branchId);
+    
+    /**
+     * Find client DTO by ID
+     * @param branchId branch ID
+     * @param id client ID
+     * @return client, if it exists
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId AND c.id = :id")
+    Optional<ClientDTO> findDtoById(@Param("branchId") Long branchId, @Param("id") Long id);
+    
+    /**
+     * Find client DTOs by ID
+     * @param branchId branch ID
+     * @param ids client IDs
+     * @return the clients that still exist
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId AND c.id IN :ids")
+    List<ClientDTO> findDtosByIdIn(@Param("branchId") Long branchId, @Param("ids") Collection<Long> ids);
+    
+    /**
+     * Search client DTOs by first name or last name
+     * @param branchId branch ID
+     * @param name name to search for
+     * @return list of matching clients
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId AND (LOWER(c.firstName) LIKE LOWER(CONCAT('%', :name, '%'))"
+            + " OR LOWER(c.lastName) LIKE LOWER(CONCAT('%', :name, '%')))")
+    List<ClientDTO> findDtosByName(@Param("branchId") Long branchId, @Param("name") String name);
+    
+    /**
+     * Find client DTOs by status
+     * @param branchId branch ID
+     * @param status client status
+     * @return list of clients with the specified status
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId AND c.status = :status")
+    List<ClientDTO> findDtosByStatus(@Param("branchId") Long branchId, @Param("status") ClientStatus status);
+    
+    /**
+     * Find client DTOs with prescription
+     * @param branchId branch ID
+     * @return list of clients with prescription
+     */
+    @Query(DTO_SELECT + " WHERE c.branchId = :branchId AND c.hasPrescription = true")
+    List<ClientDTO> findDtosWithPrescription(@Param("branchId") Long branchId);
+    
+    /**
+     * Count clients per status
+     * @param branchId branch ID
+     * @return rows of [status, count]
+     */
+    @Query("SELECT c.status, COUNT(c) FROM Client c WHERE c.branchId = :branchId GROUP BY c.status")
+    List<Object[]> countByStatus(@Param("branchId") Long branchId);
+    
+    /**
+     * Count clients with prescription
+     * @param branchId branch ID
+     * @return number of clients with prescription
+     */
+    long countByBranchIdAndHasPrescriptionTrue(Long branchId);
+    
+    /**
+     * Count clients created after a date
+     * @param branchId branch ID
+     * @param date exclusive lower bound
+     * @return number of clients
+     */
+    long countByBranchIdAndCreatedAtAfter(Long branchId, LocalDate date);
+    
+    /**
+     * Count clients of a branch
+     * @param branchId branch ID
+     * @return number of clients
+     */
+    long countByBranchId(Long branchId);
+    
+    /**
+     * Find a client of a branch
+     * @param id client ID
+     * @param branchId branch ID
+     * @return client, if it exists in the branch
+     */
+    Optional<Client> findByIdAndBranchId(Long id, Long branchId);
+    
+    /**
+     * Get the current version of a client, used to tell a missing row from a version conflict
+     * @param branchId branch ID
+     * @param id client ID
+     * @return current version, if the row exists
+     */
+    @Query("SELECT c.version FROM Client c WHERE c.branchId = :branchId AND c.id = :id")
+    Optional<Long> findVersionById(@Param("branchId") Long branchId, @Param("id") Long id);
+    
+    /**
+     * Delete a client in one statement
+     * @param branchId branch ID
+     * @param id client ID
+     * @return number of deleted rows
+     */
+    @Modifying
+    @Query("DELETE FROM Client c WHERE c.branchId = :branchId AND c.id = :id")
+    int deleteByIdReturningCount(@Param("branchId") Long branchId, @Param("id") Long id);
+}
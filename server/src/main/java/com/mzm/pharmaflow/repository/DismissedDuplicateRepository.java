@@ -0,0 +1,41 @@
+package com.mzm.pharmaflow.repository;
+
+import com.mzm.pharmaflow.model.DismissedDuplicate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DismissedDuplicateRepository extends JpaRepository<DismissedDuplicate, Long> {
+
+    /**
+     * Find the dismissed pairs of a branch
+     * @param branchId branch ID
+     * @return dismissed pairs
+     */
+    List<DismissedDuplicate> findByBranchId(Long branchId);
+
+    /**
+     * Check whether a pair was already dismissed
+     * @param branchId branch ID
+     * @param clientId lower client ID
+     * @param otherClientId higher client ID
+     * @return true if dismissed
+     */
+    boolean existsByBranchIdAndClientIdAndOtherClientId(Long branchId, Long clientId, Long otherClientId);
+
+    /**
+     * Delete the dismissed pairs a client is part of
+     * @param branchId branch ID
+     * @param clientId client ID, on either side of the pair
+     * @return number of deleted rows
+     */
+    @Modifying
+    @Query("DELETE FROM DismissedDuplicate d WHERE d.branchId = :branchId"
+            + " AND (d.clientId = :clientId OR d.otherClientId = :clientId)")
+    int deleteByClient(@Param("branchId") Long branchId, @Param("clientId") Long clientId);
+}
@@ -0,0 +1,49 @@
+package com.mzm.pharmaflow.repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Builds the single-statement UPDATE behind the PATCH endpoints.
+ */
+final class PartialUpdateSupport {
+
+    private PartialUpdateSupport() {
+    }
+
+    /**
+     * Update only the given fields and bump the version, in one statement.
+     * Bulk updates skip entity callbacks, so updatedAt is set here.
+     * @param entityManager entity manager
+     * @param entityName JPQL entity name
+     * @param branchId owning branch; rows of other branches are never touched
+     * @param id row ID
+     * @param expectedVersion version the caller read
+     * @param changes field name to new value; names must be validated by the caller
+     * @return number of updated rows (0 when missing, in another branch, or the version no longer matches)
+     */
+    static int update(EntityManager entityManager, String entityName, Long branchId, Long id, Long expectedVersion,
+                      Map<String, Object> changes) {
+        if (expectedVersion == null) {
+            throw new IllegalArgumentException("Expected version is required");
+        }
+        StringBuilder jpql = new StringBuilder("UPDATE ").append(entityName).append(" e SET ");
+        for (String field : changes.keySet()) {
+            jpql.append("e.").append(field).append(" = :").append(field).append(", ");
+        }
+        jpql.append("e.updatedAt = :updatedAt, e.version = e.version + 1"
+                + " WHERE e.branchId = :branchId AND e.id = :id AND e.version = :version");
+
+        Query query = entityManager.createQuery(jpql.toString());
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            query.setParameter(change.getKey(), change.getValue());
+        }
+        query.setParameter("updatedAt", LocalDate.now());
+        query.setParameter("branchId", branchId);
+        query.setParameter("id", id);
+        query.setParameter("version", expectedVersion);
+        return query.executeUpdate();
+    }
+}
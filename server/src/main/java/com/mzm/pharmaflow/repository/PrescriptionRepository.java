@@ -0,0 +1,164 @@
+package com.mzm.pharmaflow.repository;
+
+import com.mzm.pharmaflow.model.Prescription;
+import com.mzm.pharmaflow.model.PrescriptionStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
+
+    /**
+     * Find the oldest pending prescriptions, served by the (branch_id, status, id) index
+     * @param branchId branch ID
+     * @param pageable maximum number of IDs
+     * @return pending prescription IDs, oldest first
+     */
+    @Query("SELECT p.id FROM Prescription p WHERE p.branchId = :branchId AND p.status = "
+            + "com.mzm.pharmaflow.model.PrescriptionStatus.PENDING ORDER BY p.id")
+    List<Long> findPendingIds(@Param("branchId") Long branchId, Pageable pageable);
+
+    /**
+     * Find prescription IDs of a branch, newest first
+     * @param branchId branch ID
+     * @param pageable page to read
+     * @return prescription IDs
+     */
+    @Query("SELECT p.id FROM Prescription p WHERE p.branchId = :branchId ORDER BY p.id DESC")
+    List<Long> findIds(@Param("branchId") Long branchId, Pageable pageable);
+
+    /**
+     * Find prescription IDs of a branch with a status, newest first
+     * @param branchId branch ID
+     * @param status prescription status
+     * @param pageable page to read
+     * @return prescription IDs
+     */
+    @Query("SELECT p.id FROM Prescription p WHERE p.branchId = :branchId AND p.status = :status ORDER BY p.id DESC")
+    List<Long> findIdsByStatus(@Param("branchId") Long branchId, @Param("status") PrescriptionStatus status,
+                               Pageable pageable);
+
+    /**
+     * Load prescriptions with their client and items in one query
+     * @param ids prescription IDs
+     * @return prescriptions, newest first
+     */
+    @Query("SELECT DISTINCT p FROM Prescription p JOIN FETCH p.client LEFT JOIN FETCH p.items "
+            + "WHERE p.id IN :ids ORDER BY p.id DESC")
+    List<Prescription> findWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Get the status of a prescription
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @return status, empty if the prescription does not exist in the branch
+     */
+    @Query("SELECT p.status FROM Prescription p WHERE p.branchId = :branchId AND p.id = :id")
+    Optional<PrescriptionStatus> findStatus(@Param("branchId") Long branchId, @Param("id") Long id);
+
+    /**
+     * Count a branch's prescriptions per status
+     * @param branchId branch ID
+     * @return rows of [status, count]
+     */
+    @Query("SELECT p.status, COUNT(p) FROM Prescription p WHERE p.branchId = :branchId GROUP BY p.status")
+    List<Object[]> countByStatus(@Param("branchId") Long branchId);
+
+    /**
+     * Find claims older than a cutoff
+     * @param branchId branch ID
+     * @param cutoff claims taken before this time are stale
+     * @return stale prescription IDs
+     */
+    @Query("SELECT p.id FROM Prescription p WHERE p.branchId = :branchId AND p.status = "
+            + "com.mzm.pharmaflow.model.PrescriptionStatus.IN_PROGRESS AND p.claimedAt < :cutoff")
+    List<Long> findStaleClaimIds(@Param("branchId") Long branchId, @Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * Claim a prescription if it is still pending
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @param claimedBy pharmacist username
+     * @param now claim time
+     * @return 1 if claimed, 0 if it was taken or is no longer pending
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = com.mzm.pharmaflow.model.PrescriptionStatus.IN_PROGRESS, "
+            + "p.claimedBy = :claimedBy, p.claimedAt = :now, p.updatedAt = :now, p.version = p.version + 1 "
+            + "WHERE p.branchId = :branchId AND p.id = :id "
+            + "AND p.status = com.mzm.pharmaflow.model.PrescriptionStatus.PENDING")
+    int claim(@Param("branchId") Long branchId, @Param("id") Long id,
+              @Param("claimedBy") String claimedBy, @Param("now") LocalDateTime now);
+
+    /**
+     * Complete a prescription held by a pharmacist
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @param claimedBy pharmacist username
+     * @param now completion time
+     * @return 1 if completed, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = com.mzm.pharmaflow.model.PrescriptionStatus.COMPLETED, "
+            + "p.completedAt = :now, p.updatedAt = :now, p.version = p.version + 1 "
+            + "WHERE p.branchId = :branchId AND p.id = :id AND p.claimedBy = :claimedBy "
+            + "AND p.status = com.mzm.pharmaflow.model.PrescriptionStatus.IN_PROGRESS")
+    int complete(@Param("branchId") Long branchId, @Param("id") Long id,
+                 @Param("claimedBy") String claimedBy, @Param("now") LocalDateTime now);
+
+    /**
+     * Put a prescription claimed by a pharmacist back in the queue
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @param claimedBy pharmacist username
+     * @param now release time
+     * @return 1 if released, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = com.mzm.pharmaflow.model.PrescriptionStatus.PENDING, "
+            + "p.claimedBy = NULL, p.claimedAt = NULL, p.updatedAt = :now, p.version = p.version + 1 "
+            + "WHERE p.branchId = :branchId AND p.id = :id AND p.claimedBy = :claimedBy "
+            + "AND p.status = com.mzm.pharmaflow.model.PrescriptionStatus.IN_PROGRESS")
+    int release(@Param("branchId") Long branchId, @Param("id") Long id,
+                @Param("claimedBy") String claimedBy, @Param("now") LocalDateTime now);
+
+    /**
+     * Put a claimed prescription back in the queue, whoever holds it
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @param claimedBefore only release claims taken before this time
+     * @param now release time
+     * @return 1 if released, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = com.mzm.pharmaflow.model.PrescriptionStatus.PENDING, "
+            + "p.claimedBy = NULL, p.claimedAt = NULL, p.updatedAt = :now, p.version = p.version + 1 "
+            + "WHERE p.branchId = :branchId AND p.id = :id AND p.claimedAt < :claimedBefore "
+            + "AND p.status = com.mzm.pharmaflow.model.PrescriptionStatus.IN_PROGRESS")
+    int releaseClaimedBefore(@Param("branchId") Long branchId, @Param("id") Long id,
+                             @Param("claimedBefore") LocalDateTime claimedBefore, @Param("now") LocalDateTime now);
+
+    /**
+     * Cancel a prescription that has not been delivered
+     * @param branchId branch ID
+     * @param id prescription ID
+     * @param status status the prescription is expected to be in
+     * @param now cancellation time
+     * @return 1 if cancelled, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = com.mzm.pharmaflow.model.PrescriptionStatus.CANCELLED, "
+            + "p.updatedAt = :now, p.version = p.version + 1 "
+            + "WHERE p.branchId = :branchId AND p.id = :id AND p.status = :status")
+    int cancel(@Param("branchId") Long branchId, @Param("id") Long id,
+               @Param("status") PrescriptionStatus status, @Param("now") LocalDateTime now);
+}
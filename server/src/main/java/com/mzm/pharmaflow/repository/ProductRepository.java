@@ -1,21 +1,61 @@
 package com.mzm.pharmaflow.repository;
 
+import com.mzm.pharmaflow.dto.ProductDTO;
 import com.mzm.pharmaflow.model.Product;
+import com.mzm.pharmaflow.model.ProductCategory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+    
+    /**
+     * Constructor expression selecting every {@link ProductDTO} column
+     */
+    String DTO_SELECT = "SELECT new com.mzm.pharmaflow.dto.ProductDTO(p.id, p.name, p.code, p.description, "
+            + "p.category, p.quantity, p.threshold, p.price, p.expiryDate, p.manufacturer, p.imageUrl, "
+            + "p.needsPrescription, p.dosage, p.formulation, p.activeIngredient, p.createdAt, p.updatedAt, p.version) FROM Product p";
+    
+    List<Product> findByBranchId(Long branchId);
+    
     List<Product> findByNameContainingIgnoreCase(String name);
     
     List<Product> findByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCase(String name, String description);
     
     Boolean existsByCode(String code);
     
+    /**
+     * Check whether a branch already uses a product code
+     * @param branchId branch ID
+     * @param code product code
+     * @return true if the code is taken in the branch
+     */
+    boolean existsByBranchIdAndCode(Long branchId, String code);
+    
+    /**
+     * Find a product of a branch
+     * @param id product ID
+     * @param branchId branch ID
+     * @return product, if it exists in the branch
+     */
+    Optional<Product> findByIdAndBranchId(Long id, Long branchId);
+    
+    /**
+     * Count products of a branch
+     * @param branchId branch ID
+     * @return number of products
+     */
+    long countByBranchId(Long branchId);
+    
     /**
      * Find products with stock below threshold
      * @return list of products with low stock
@@ -35,5 +75,119 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      * @param category product category
      * @return list of products in the category
      */
-    List<Product> findByCategory(String category);
-} 
\ No newline at end of file
+    List<Product> findByCategory(ProductCategory category);
+    
+    /**
+     * Find all products as DTOs
+     * @param branchId branch ID
+     * @return list of all products
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId")
+    List<ProductDTO> findAllDtos(@Param("branchId") Long branchId);
+    
+    /**
+     * Find product DTO by ID
+     * @param branchId branch ID
+     * @param id product ID
+     * @return product, if it exists
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND p.id = :id")
+    Optional<ProductDTO> findDtoById(@Param("branchId") Long branchId, @Param("id") Long id);
+    
+    /**
+     * Find product DTOs by ID
+     * @param branchId branch ID
+     * @param ids product IDs
+     * @return the products that still exist
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND p.id IN :ids")
+    List<ProductDTO> findDtosByIdIn(@Param("branchId") Long branchId, @Param("ids") Collection<Long> ids);
+    
+    /**
+     * Find product DTOs by name
+     * @param branchId branch ID
+     * @param name name to search for
+     * @return list of matching products
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND LOWER(p.name) LIKE LOWER(CONCAT('%', :name, '%'))")
+    List<ProductDTO> findDtosByName(@Param("branchId") Long branchId, @Param("name") String name);
+    
+    /**
+     * Search product DTOs by name or description
+     * @param branchId branch ID
+     * @param query search query
+     * @return list of matching products
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND (LOWER(p.name) LIKE LOWER(CONCAT('%', :query, '%'))"
+            + " OR LOWER(p.description) LIKE LOWER(CONCAT('%', :query, '%')))")
+    List<ProductDTO> searchDtos(@Param("branchId") Long branchId, @Param("query") String query);
+    
+    /**
+     * Find product DTOs with stock below threshold
+     * @param branchId branch ID
+     * @return list of products with low stock
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND p.quantity <= p.threshold")
+    List<ProductDTO> findLowStockDtos(@Param("branchId") Long branchId);
+    
+    /**
+     * Find product DTOs expiring before a given date
+     * @param branchId branch ID
+     * @param date date to check expiry against
+     * @return list of products expiring before the date
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND p.expiryDate < :date")
+    List<ProductDTO> findDtosExpiringBefore(@Param("branchId") Long branchId, @Param("date") LocalDate date);
+    
+    /**
+     * Find product DTOs by category
+     * @param category product category
+     * @return list of products in the category
+     */
+    @Query(DTO_SELECT + " WHERE p.branchId = :branchId AND p.category = :category")
+    List<ProductDTO> findDtosByCategory(@Param("branchId") Long branchId,
+                                        @Param("category") ProductCategory category);
+    
+    /**
+     * Count products with stock below threshold
+     * @param branchId branch ID
+     * @return number of products with low stock
+     */
+    @Query("SELECT COUNT(p) FROM Product p WHERE p.branchId = :branchId AND p.quantity <= p.threshold")
+    long countLowStock(@Param("branchId") Long branchId);
+    
+    /**
+     * Count products per category
+     * @param branchId branch ID
+     * @return rows of [category, count]
+     */
+    @Query("SELECT p.category, COUNT(p) FROM Product p WHERE p.branchId = :branchId GROUP BY p.category")
+    List<Object[]> countByCategory(@Param("branchId") Long branchId);
+    
+    /**
+     * Total stock value (price x quantity)
+     * @param branchId branch ID
+     * @return sum over all products, null if there are none
+     */
+    @Query("SELECT SUM(p.price * p.quantity) FROM Product p WHERE p.branchId = :branchId")
+    BigDecimal sumStockValue(@Param("branchId") Long branchId);
+    
+    /**
+     * Get the current version of a product, used to tell a missing row from a version conflict
+     * @param branchId branch ID
+     * @param id product ID
+     * @return current version, if the row exists
+     */
+    @Query("SELECT p.version FROM Product p WHERE p.branchId = :branchId AND p.id = :id")
+    Optional<Long> findVersionById(@Param("branchId") Long branchId, @Param("id") Long id);
+    
+    /**
+     * Delete a product in one statement
+     * @param branchId branch ID
+     * @param id product ID
+     * @return number of deleted rows
+     */
+    @Modifying
+    @Query("DELETE FROM Product p WHERE p.branchId = :branchId AND p.id = :id")
+    int deleteByIdReturningCount(@Param("branchId") Long branchId, @Param("id") Long id);
+}
@@ -0,0 +1,16 @@
+package com.mzm.pharmaflow.repository;
+
+import java.util.Map;
+
+public interface ProductRepositoryCustom {
+    
+    /**
+     * Apply a partial update in a single UPDATE ... WHERE id = ? AND version = ?
+     * @param branchId branch ID
+     * @param id product ID
+     * @param expectedVersion version read by the caller
+     * @param changes field name to new value
+     * @return number of updated rows (0 if missing from the branch or modified concurrently)
+     */
+    int patch(Long branchId, Long id, Long expectedVersion, Map<String, Object> changes);
+}
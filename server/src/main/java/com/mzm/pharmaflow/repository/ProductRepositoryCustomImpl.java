@@ -0,0 +1,16 @@
+package com.mzm.pharmaflow.repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Map;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public int patch(Long branchId, Long id, Long expectedVersion, Map<String, Object> changes) {
+        return PartialUpdateSupport.update(entityManager, "Product", branchId, id, expectedVersion, changes);
+    }
+}
@@ -0,0 +1,9 @@
+package com.mzm.pharmaflow.repository;
+
+import com.mzm.pharmaflow.model.SyncHorizon;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SyncHorizonRepository extends JpaRepository<SyncHorizon, Long> {
+}
@@ -1,12 +1,12 @@
 package com.mzm.pharmaflow.security.jwt;
 
+import com.mzm.pharmaflow.security.services.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -22,7 +22,7 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private TokenRevocationList revocationList;
 
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
@@ -31,10 +31,11 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            Claims claims = jwt != null ? jwtUtils.parseClaims(jwt) : null;
+            if (claims != null && jwtUtils.isTokenType(claims, JwtUtils.TOKEN_TYPE_ACCESS)
+                    && !isRevoked(claims)) {
+                // The principal is rebuilt from the claims, no database round trip per request
+                UserDetailsImpl userDetails = jwtUtils.buildUserDetails(claims);
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
@@ -51,6 +52,18 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private boolean isRevoked(Claims claims) {
+        boolean revoked = revocationList.isRevoked(
+                claims.getId(),
+                claims.getSubject(),
+                claims.getIssuedAt().getTime(),
+                claims.getExpiration().getTime());
+        if (revoked) {
+            logger.warn("Rejected revoked JWT for user {}", claims.getSubject());
+        }
+        return revoked;
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String headerAuth = request.getHeader("Authorization");
 
@@ -60,4 +73,4 @@ public class AuthTokenFilter extends OncePerRequestFilter {
 
         return null;
     }
-} 
\ No newline at end of file
+}
@@ -1,55 +1,131 @@
 package com.mzm.pharmaflow.security.jwt;
 
+import com.mzm.pharmaflow.security.services.UserDetailsImpl;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Component
 public class JwtUtils {
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    public static final String TOKEN_TYPE_ACCESS = "access";
+    public static final String TOKEN_TYPE_REFRESH = "refresh";
+
+    private static final String CLAIM_TYPE = "typ";
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_EMAIL = "email";
+    private static final String CLAIM_ROLES = "roles";
+    private static final String CLAIM_BRANCH = "bid";
+
     @Value("${jwt.secret}")
     private String jwtSecret;
 
     @Value("${jwt.expiration}")
-    private int jwtExpirationMs;
+    private long jwtExpirationMs;
+
+    @Value("${jwt.refresh-expiration:604800000}")
+    private long jwtRefreshExpirationMs;
+
+    private volatile Key signingKey;
+    private volatile JwtParser parser;
 
     private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        Key key = signingKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+            signingKey = key;
+        }
+        return key;
     }
 
+    private JwtParser getParser() {
+        JwtParser jwtParser = parser;
+        if (jwtParser == null) {
+            jwtParser = Jwts.parserBuilder().setSigningKey(getSigningKey()).build();
+            parser = jwtParser;
+        }
+        return jwtParser;
+    }
+
+    /**
+     * Issue a short-lived access token. User id, email, branch and roles travel in the
+     * claims so that requests can be authenticated without a database lookup.
+     */
     public String generateJwtToken(Authentication authentication) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
-        
-        return Jwts.builder()
+        List<String> roles = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+        Date now = new Date();
+
+        JwtBuilder builder = Jwts.builder()
                 .setSubject(userPrincipal.getUsername())
-                .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
+                .setId(UUID.randomUUID().toString())
+                .claim(CLAIM_TYPE, TOKEN_TYPE_ACCESS)
+                .claim(CLAIM_ROLES, roles)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtExpirationMs));
+        if (userPrincipal instanceof UserDetailsImpl) {
+            UserDetailsImpl details = (UserDetailsImpl) userPrincipal;
+            builder.claim(CLAIM_USER_ID, details.getId())
+                    .claim(CLAIM_EMAIL, details.getEmail());
+            if (details.getBranchId() != null) {
+                builder.claim(CLAIM_BRANCH, details.getBranchId());
+            }
+        }
+        return builder.signWith(getSigningKey()).compact();
+    }
+
+    /**
+     * Issue a long-lived refresh token, only accepted by the refresh endpoint.
+     */
+    public String generateRefreshToken(String username) {
+        Date now = new Date();
+        return Jwts.builder()
+                .setSubject(username)
+                .setId(UUID.randomUUID().toString())
+                .claim(CLAIM_TYPE, TOKEN_TYPE_REFRESH)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtRefreshExpirationMs))
                 .signWith(getSigningKey())
                 .compact();
     }
 
     public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
+        return getParser()
                 .parseClaimsJws(token)
                 .getBody()
                 .getSubject();
     }
 
     public boolean validateJwtToken(String authToken) {
+        return parseClaims(authToken) != null;
+    }
+
+    /**
+     * Verify signature and expiry and return the claims.
+     * @param authToken compact JWT
+     * @return the token claims, or null if the token is invalid or expired
+     */
+    public Claims parseClaims(String authToken) {
         try {
-            Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(authToken);
-            return true;
+            return getParser().parseClaimsJws(authToken).getBody();
         } catch (SecurityException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -62,6 +138,40 @@ public class JwtUtils {
             logger.error("JWT claims string is empty: {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    public boolean isTokenType(Claims claims, String type) {
+        return type.equals(claims.get(CLAIM_TYPE, String.class));
+    }
+
+    /**
+     * Rebuild the principal carried by an access token.
+     */
+    public UserDetailsImpl buildUserDetails(Claims claims) {
+        Number userId = claims.get(CLAIM_USER_ID, Number.class);
+        Number branchId = claims.get(CLAIM_BRANCH, Number.class);
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        Object roles = claims.get(CLAIM_ROLES);
+        if (roles instanceof Collection) {
+            for (Object role : (Collection<?>) roles) {
+                authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+            }
+        }
+        return new UserDetailsImpl(
+                userId != null ? userId.longValue() : null,
+                claims.getSubject(),
+                claims.get(CLAIM_EMAIL, String.class),
+                branchId != null ? branchId.longValue() : null,
+                null,
+                authorities);
+    }
+
+    public long getAccessTokenExpirationMs() {
+        return jwtExpirationMs;
+    }
+
+    public long getRefreshTokenExpirationMs() {
+        return jwtRefreshExpirationMs;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,175 @@
+package com.mzm.pharmaflow.security.jwt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory revocation list for JWTs, consulted by {@link AuthTokenFilter} on every request.
+ *
+ * <p>Revoked token ids are stored in a ring of time partitions keyed by the token's
+ * <em>expiry</em>: once every token of a partition has expired anyway, the partition is
+ * recycled wholesale, so the list never grows past the tokens that could still be presented.
+ * A lookup touches exactly one partition, and user-wide revocations (role change, account
+ * disabled) are a single map lookup comparing the token's issue time.</p>
+ *
+ * <p>Memory: a revoked id is held as a {@link UUID} (32 bytes) in a concurrent hash set
+ * (about 40 bytes per node and table slot), so roughly 72 bytes per entry. Even if all
+ * 100k active sessions were revoked inside one refresh window, that is ~7 MB for refresh
+ * tokens plus the same for their access tokens; a user-wide revocation costs ~100 bytes
+ * per user. Nothing is kept for tokens that are still valid.</p>
+ */
+@Component
+public class TokenRevocationList {
+
+    @Value("${jwt.refresh-expiration:604800000}")
+    private long maxTokenLifetimeMs;
+
+    @Value("${jwt.revocation.partition-ms:3600000}")
+    private long partitionMs;
+
+    private Partition[] partitions;
+
+    private final Map<String, Long> userRevocations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int count = (int) (maxTokenLifetimeMs / partitionMs) + 2;
+        partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition();
+        }
+    }
+
+    /**
+     * Revoke a single token.
+     * @param tokenId the token's jti claim
+     * @param expiresAtMs the token's expiry, after which the entry can be forgotten
+     */
+    public void revoke(String tokenId, long expiresAtMs) {
+        UUID id = toUuid(tokenId);
+        if (id == null || expiresAtMs <= System.currentTimeMillis()) {
+            return;
+        }
+        partitionFor(expiresAtMs, true).ids.add(id);
+    }
+
+    /**
+     * Revoke a single token unless it already is, atomically: of several callers presenting the
+     * same single-use token, exactly one gets true.
+     * @param tokenId the token's jti claim
+     * @param expiresAtMs the token's expiry
+     * @return true if this call revoked the token; false if it was already revoked, has expired
+     *         or has no valid id
+     */
+    public boolean revokeIfAbsent(String tokenId, long expiresAtMs) {
+        UUID id = toUuid(tokenId);
+        if (id == null || expiresAtMs <= System.currentTimeMillis()) {
+            return false;
+        }
+        return partitionFor(expiresAtMs, true).ids.add(id);
+    }
+
+    /**
+     * Revoke every token issued to a user before now, e.g. after a role change or
+     * when the account is disabled.
+     * @param username token subject
+     */
+    public void revokeAllForUser(String username) {
+        long now = System.currentTimeMillis();
+        userRevocations.put(username, now);
+        purgeUserRevocations(now);
+    }
+
+    /**
+     * Check a token against the revocation list.
+     * @param tokenId jti claim
+     * @param username sub claim
+     * @param issuedAtMs iat claim
+     * @param expiresAtMs exp claim
+     * @return true if the token must be rejected
+     */
+    public boolean isRevoked(String tokenId, String username, long issuedAtMs, long expiresAtMs) {
+        Long revokedBefore = userRevocations.get(username);
+        if (revokedBefore != null && issuedAtMs <= revokedBefore) {
+            return true;
+        }
+        UUID id = toUuid(tokenId);
+        if (id == null) {
+            return false;
+        }
+        Partition partition = partitionFor(expiresAtMs, false);
+        return partition != null && partition.ids.contains(id);
+    }
+
+    /**
+     * Get revocation list size
+     * @return revoked token and user counts
+     */
+    public Map<String, Object> getStats() {
+        long tokens = 0;
+        long now = System.currentTimeMillis();
+        for (Partition partition : partitions) {
+            if (partition.slot * partitionMs + partitionMs > now) {
+                tokens += partition.ids.size();
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("revokedTokens", tokens);
+        stats.put("revokedUsers", userRevocations.size());
+        stats.put("partitions", partitions.length);
+        stats.put("partitionMs", partitionMs);
+        return stats;
+    }
+
+    private Partition partitionFor(long expiresAtMs, boolean forWrite) {
+        long slot = expiresAtMs / partitionMs;
+        Partition partition = partitions[(int) (slot % partitions.length)];
+        if (partition.slot == slot) {
+            return partition;
+        }
+        if (!forWrite) {
+            return null;
+        }
+        synchronized (partition) {
+            if (partition.slot != slot) {
+                // The previous occupant covered tokens that have all expired by now
+                partition.ids.clear();
+                partition.slot = slot;
+            }
+        }
+        return partition;
+    }
+
+    private void purgeUserRevocations(long now) {
+        Iterator<Long> it = userRevocations.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() + maxTokenLifetimeMs < now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static UUID toUuid(String tokenId) {
+        if (tokenId == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(tokenId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Partition {
+        private volatile long slot = -1;
+        private final Set<UUID> ids = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,146 @@
+package com.mzm.pharmaflow.security.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Dedicated, size-limited pool for password verification.
+ * BCrypt is deliberately slow, so running it on Tomcat's request threads lets a
+ * burst of logins starve every other endpoint. Work submitted here is queued up
+ * to a fixed depth; beyond that the caller gets an {@link AuthenticationRejectedException}
+ * carrying a Retry-After estimate.
+ */
+@Component
+public class AuthenticationExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationExecutor.class);
+
+    @Autowired
+    private AuthenticationManager authenticationManager;
+
+    @Value("${auth.executor.pool-size:4}")
+    private int poolSize;
+
+    @Value("${auth.executor.queue-capacity:64}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final AtomicLong maxVerificationNanos = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "auth-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        logger.info("Authentication executor started with {} workers and queue capacity {}", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * Verify credentials on the authentication pool.
+     * @param authenticationRequest unauthenticated token holding the credentials
+     * @return future completed with the authenticated principal, or exceptionally with
+     *         the {@link org.springframework.security.core.AuthenticationException} raised by the provider
+     * @throws AuthenticationRejectedException if the queue is full
+     */
+    public CompletableFuture<Authentication> authenticate(Authentication authenticationRequest) {
+        CompletableFuture<Authentication> result = new CompletableFuture<>();
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                queueWaitNanos.add(startedAt - enqueuedAt);
+                try {
+                    Authentication authentication = authenticationManager.authenticate(authenticationRequest);
+                    succeeded.increment();
+                    result.complete(authentication);
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    result.completeExceptionally(e);
+                } finally {
+                    recordVerification(System.nanoTime() - startedAt);
+                }
+            });
+            submitted.increment();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new AuthenticationRejectedException("Authentication service is busy", estimateRetryAfterSeconds());
+        }
+        return result;
+    }
+
+    /**
+     * Seconds a rejected caller should wait: the time the current backlog needs to drain.
+     */
+    private long estimateRetryAfterSeconds() {
+        long completed = succeeded.sum() + failed.sum();
+        long averageNanos = completed > 0 ? verificationNanos.sum() / completed : TimeUnit.MILLISECONDS.toNanos(100);
+        long backlog = executor.getQueue().size() + executor.getActiveCount();
+        long drainNanos = backlog * averageNanos / Math.max(1, poolSize);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(drainNanos) + 1);
+    }
+
+    private void recordVerification(long nanos) {
+        verificationNanos.add(nanos);
+        long max = maxVerificationNanos.get();
+        while (nanos > max && !maxVerificationNanos.compareAndSet(max, nanos)) {
+            max = maxVerificationNanos.get();
+        }
+    }
+
+    /**
+     * Get authentication pool metrics
+     * @return queue depth, throughput counters and verification timings
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long completed = succeeded.sum() + failed.sum();
+        stats.put("poolSize", poolSize);
+        stats.put("activeWorkers", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("succeeded", succeeded.sum());
+        stats.put("failed", failed.sum());
+        stats.put("avgVerificationMs", completed > 0 ? verificationNanos.sum() / completed / 1_000_000.0 : 0.0);
+        stats.put("maxVerificationMs", maxVerificationNanos.get() / 1_000_000.0);
+        stats.put("avgQueueWaitMs", completed > 0 ? queueWaitNanos.sum() / completed / 1_000_000.0 : 0.0);
+        return stats;
+    }
+}
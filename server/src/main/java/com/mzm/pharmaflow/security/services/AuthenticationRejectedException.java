@@ -0,0 +1,20 @@
+package com.mzm.pharmaflow.security.services;
+
+/**
+ * Raised when a login attempt is refused before reaching password verification,
+ * either because the caller is throttled or because the authentication pool is saturated.
+ */
+public class AuthenticationRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AuthenticationRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
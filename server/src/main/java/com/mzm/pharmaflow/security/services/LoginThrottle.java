@@ -0,0 +1,181 @@
+package com.mzm.pharmaflow.security.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket throttling of login attempts, keyed by username and by client IP.
+ * A bucket holds {@code capacity} attempts and refills continuously at
+ * {@code refillPerMinute}; an attempt is only accepted when both buckets have a token.
+ *
+ * <p>At most {@code MAX_TRACKED_KEYS} usernames and as many addresses are tracked. Buckets that
+ * have refilled completely are dropped by a sweep every {@code auth.throttle.sweep-interval-ms};
+ * while a map is at its cap, attempts for keys it does not hold yet are refused until the next
+ * sweep. Evicting tracked buckets instead would let a caller spraying new usernames reset the
+ * bucket of the account it is guessing.</p>
+ */
+@Component
+public class LoginThrottle {
+
+    private static final int MAX_TRACKED_KEYS = 50_000;
+
+    private final Map<String, TokenBucket> usernameBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+
+    @Value("${auth.throttle.username.capacity:5}")
+    private int usernameCapacity;
+
+    @Value("${auth.throttle.username.refill-per-minute:5}")
+    private int usernameRefillPerMinute;
+
+    @Value("${auth.throttle.ip.capacity:30}")
+    private int ipCapacity;
+
+    @Value("${auth.throttle.ip.refill-per-minute:60}")
+    private int ipRefillPerMinute;
+
+    @Value("${auth.throttle.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    /**
+     * Try to consume one attempt for the given username and IP address.
+     * @param username login identifier (email or username)
+     * @param ipAddress remote address of the caller
+     * @return 0 if the attempt is allowed, otherwise the number of seconds to wait
+     */
+    public long tryAcquire(String username, String ipAddress) {
+        long now = System.nanoTime();
+        TokenBucket ipBucket = bucket(ipBuckets, ipAddress, ipCapacity, ipRefillPerMinute, now);
+        if (ipBucket == null) {
+            return toSeconds(TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs));
+        }
+        long ipWait = ipBucket.tryConsume(now);
+        if (ipWait > 0) {
+            return toSeconds(ipWait);
+        }
+        if (username == null || username.isEmpty()) {
+            return 0;
+        }
+        TokenBucket userBucket = bucket(usernameBuckets, username.toLowerCase(),
+                usernameCapacity, usernameRefillPerMinute, now);
+        if (userBucket == null) {
+            ipBucket.refund();
+            return toSeconds(TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs));
+        }
+        long userWait = userBucket.tryConsume(now);
+        if (userWait > 0) {
+            // Give the IP token back, the attempt never reached the password check
+            ipBucket.refund();
+            return toSeconds(userWait);
+        }
+        return 0;
+    }
+
+    /**
+     * Forget the username bucket after a successful login so legitimate users
+     * are not penalised for earlier typos.
+     * @param username login identifier
+     */
+    public void reset(String username) {
+        if (username != null) {
+            usernameBuckets.remove(username.toLowerCase());
+        }
+    }
+
+    public int trackedUsernames() {
+        return usernameBuckets.size();
+    }
+
+    public int trackedAddresses() {
+        return ipBuckets.size();
+    }
+
+    /**
+     * Drop the buckets that have refilled completely: they carry no state worth keeping.
+     */
+    @Scheduled(fixedDelayString = "${auth.throttle.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        evictFullBuckets(usernameBuckets, now);
+        evictFullBuckets(ipBuckets, now);
+    }
+
+    /**
+     * @return the key's bucket, or null if the key is new and the map is at its cap
+     */
+    private TokenBucket bucket(Map<String, TokenBucket> buckets, String key, int capacity,
+                               int refillPerMinute, long now) {
+        String safeKey = key != null ? key : "unknown";
+        TokenBucket bucket = buckets.get(safeKey);
+        if (bucket == null) {
+            // Concurrent first attempts may overshoot the cap by at most one bucket per request thread
+            if (buckets.size() >= MAX_TRACKED_KEYS) {
+                return null;
+            }
+            bucket = buckets.computeIfAbsent(safeKey, k -> new TokenBucket(capacity, refillPerMinute, now));
+        }
+        return bucket;
+    }
+
+    private static void evictFullBuckets(Map<String, TokenBucket> buckets, long now) {
+        Iterator<TokenBucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isFull(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    static final class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, int refillPerMinute, long now) {
+            this.capacity = capacity;
+            this.tokensPerNano = refillPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * @return 0 if a token was consumed, otherwise nanoseconds until one is available
+         */
+        synchronized long tryConsume(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefill;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+                lastRefill = now;
+            }
+        }
+    }
+}
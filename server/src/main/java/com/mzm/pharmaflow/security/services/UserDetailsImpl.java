@@ -17,6 +17,7 @@ public class UserDetailsImpl implements UserDetails {
     private Long id;
     private String username;
     private String email;
+    private Long branchId;
 
     @JsonIgnore
     private String password;
@@ -32,6 +33,12 @@ public class UserDetailsImpl implements UserDetails {
         this.authorities = authorities;
     }
 
+    public UserDetailsImpl(Long id, String username, String email, Long branchId, String password,
+                          Collection<? extends GrantedAuthority> authorities) {
+        this(id, username, email, password, authorities);
+        this.branchId = branchId;
+    }
+
     public static UserDetailsImpl build(User user) {
         List<GrantedAuthority> authorities = user.getRoles().stream()
                 .map(role -> new SimpleGrantedAuthority(role.getName().name()))
@@ -41,6 +48,7 @@ public class UserDetailsImpl implements UserDetails {
                 user.getId(), 
                 user.getUsername(), 
                 user.getEmail(),
+                user.getBranchId(),
                 user.getPassword(), 
                 authorities);
     }
@@ -58,6 +66,10 @@ public class UserDetailsImpl implements UserDetails {
         return email;
     }
 
+    public Long getBranchId() {
+        return branchId;
+    }
+
     @Override
     public String getPassword() {
         return password;
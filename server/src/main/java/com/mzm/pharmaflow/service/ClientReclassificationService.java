@@ -0,0 +1,208 @@
+package com.mzm.pharmaflow.service;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.ClientStatus;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import com.mzm.pharmaflow.tenant.TenantRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps client statuses in line with {@link com.mzm.pharmaflow.model.Client#updateStatus()} without
+ * loading clients: every status is a range of {@code last_visit} dates, so each run selects, through the
+ * {@code (branch_id, last_visit)} index, only the clients of a range whose status differs from the
+ * range's, and rewrites them in chunked {@code UPDATE ... WHERE id IN (...)} statements. A nightly run
+ * therefore only touches the clients who crossed the 3 or 6 month mark since the previous one.
+ */
+@Service
+public class ClientReclassificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientReclassificationService.class);
+
+    private static final String SELECT_CANDIDATES = "SELECT id, status FROM clients WHERE branch_id = :branchId"
+            + " AND %s AND (status IS NULL OR status <> :target) ORDER BY id LIMIT :limit FOR UPDATE";
+
+    // Bump the version so a PATCH prepared while the client still showed its old status gets 409
+    private static final String UPDATE_STATUS = "UPDATE clients SET status = :target, updated_at = :today,"
+            + " version = version + 1 WHERE branch_id = :branchId AND id IN (:ids)";
+
+    private static final String IN_RANGE = "last_visit >= :from AND last_visit < :to";
+
+    // A client whose last visit was cleared is new again; ACTIVE clients without visits are left alone
+    private static final String NO_VISIT = "last_visit IS NULL AND status IN ('REGULIER', 'OCCASIONNEL', 'INACTIF')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Value("${clients.reclassification.chunk-size:1000}")
+    private int chunkSize;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong reclassified = new AtomicLong();
+    private volatile Map<String, Object> lastRun = new HashMap<>();
+
+    /**
+     * Reclassify the clients of every branch
+     */
+    @Scheduled(cron = "${clients.reclassification.cron:0 15 2 * * *}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reclassifyAll() {
+        long start = System.currentTimeMillis();
+        Map<String, Long> transitions = new LinkedHashMap<>();
+        List<Long> branches = knownBranches();
+        for (Long branchId : branches) {
+            try {
+                TenantContext.callOnBranch(branchId, () -> reclassify(branchId))
+                        .forEach((transition, count) -> transitions.merge(transition, count, Long::sum));
+            } catch (RuntimeException e) {
+                logger.warn("Could not reclassify clients of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+        long updated = record(branches.size(), transitions, System.currentTimeMillis() - start);
+        logger.info("Reclassified {} clients over {} branches in {} ms: {}",
+                updated, branches.size(), System.currentTimeMillis() - start, transitions);
+    }
+
+    /**
+     * Reclassify the clients of the current branch now
+     * @return run report: clients updated and counts per transition ("OCCASIONNEL->INACTIF")
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Object> reclassifyCurrentBranch() {
+        long start = System.currentTimeMillis();
+        Map<String, Long> transitions = reclassify(TenantContext.getBranchId());
+        record(1, transitions, System.currentTimeMillis() - start);
+        return lastRun;
+    }
+
+    /**
+     * Get reclassification counters
+     * @return run count, clients reclassified so far and the last run's report
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("runs", runs.get());
+        stats.put("reclassified", reclassified.get());
+        stats.put("lastRun", lastRun);
+        return stats;
+    }
+
+    private Map<String, Long> reclassify(Long branchId) {
+        LocalDate today = LocalDate.now();
+        // Same boundaries as Client.updateStatus(), as half-open ranges of last_visit
+        LocalDate regularFrom = today.minusMonths(3).plusDays(1);
+        LocalDate occasionalFrom = today.minusMonths(6).plusDays(1);
+
+        Map<String, Long> transitions = new LinkedHashMap<>();
+        moveRange(branchId, ClientStatus.REGULIER, regularFrom, LocalDate.of(9999, 12, 31), today, transitions);
+        moveRange(branchId, ClientStatus.OCCASIONNEL, occasionalFrom, regularFrom, today, transitions);
+        moveRange(branchId, ClientStatus.INACTIF, LocalDate.of(1, 1, 1), occasionalFrom, today, transitions);
+        move(branchId, ClientStatus.NOUVEAU, NO_VISIT, new MapSqlParameterSource(), today, transitions);
+        return transitions;
+    }
+
+    private void moveRange(Long branchId, ClientStatus target, LocalDate from, LocalDate to, LocalDate today,
+                           Map<String, Long> transitions) {
+        MapSqlParameterSource range = new MapSqlParameterSource("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+        move(branchId, target, IN_RANGE, range, today, transitions);
+    }
+
+    /**
+     * Move the clients matching a condition to a status, one chunk per transaction so that a large
+     * first run does not hold its locks until the end
+     */
+    private void move(Long branchId, ClientStatus target, String condition, MapSqlParameterSource params,
+                      LocalDate today, Map<String, Long> transitions) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        String select = String.format(SELECT_CANDIDATES, condition);
+        params.addValue("branchId", branchId)
+                .addValue("target", target.name())
+                .addValue("limit", chunkSize)
+                .addValue("today", Date.valueOf(today));
+        int moved;
+        do {
+            moved = template.execute(tx -> {
+                List<Long> ids = new ArrayList<>();
+                namedParameterJdbcTemplate.query(select, params, rs -> {
+                    ids.add(rs.getLong("id"));
+                    String from = rs.getString("status");
+                    transitions.merge((from != null ? from : "NONE") + "->" + target.name(), 1L, Long::sum);
+                });
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                namedParameterJdbcTemplate.update(UPDATE_STATUS, new MapSqlParameterSource(params.getValues())
+                        .addValue("ids", ids));
+                changeRecorder.recordAll(branchId, SyncEntityType.CLIENT, ids, ChangeOperation.UPSERT);
+                dataVersion.markChanged(branchId);
+                return ids.size();
+            });
+        } while (moved == chunkSize);
+    }
+
+    private long record(int branches, Map<String, Long> transitions, long tookMillis) {
+        long updated = transitions.values().stream().mapToLong(Long::longValue).sum();
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("finishedAt", System.currentTimeMillis());
+        report.put("branches", branches);
+        report.put("updated", updated);
+        report.put("transitions", transitions);
+        report.put("tookMillis", tookMillis);
+        lastRun = report;
+        runs.incrementAndGet();
+        reclassified.addAndGet(updated);
+        return updated;
+    }
+
+    private List<Long> knownBranches() {
+        TreeSet<Long> branches = new TreeSet<>();
+        if (dataSource instanceof TenantRoutingDataSource) {
+            // Branches moved to their own store have no rows in the default one
+            branches.addAll(((TenantRoutingDataSource) dataSource).getStoreByBranch().keySet());
+        }
+        branches.addAll(TenantContext.callOnDefaultStore(() -> jdbcTemplate.queryForList(
+                "SELECT DISTINCT branch_id FROM clients", Long.class)));
+        branches.add(TenantContext.getDefaultBranchId());
+        return new ArrayList<>(branches);
+    }
+}
@@ -27,6 +27,16 @@ public interface ClientService {
      */
     ClientDTO save(ClientDTO clientDTO);
     
+    /**
+     * Partially update a client in a single statement
+     * @param id client ID
+     * @param changes non-null fields are written; version is required and must match the stored one
+     * @throws IllegalArgumentException if version is missing or no field is set
+     * @throws javax.persistence.EntityNotFoundException if the client does not exist
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the version does not match
+     */
+    void patch(Long id, ClientDTO changes);
+    
     /**
      * Delete client by ID
      * @param id client ID
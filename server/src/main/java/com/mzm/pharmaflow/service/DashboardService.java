@@ -1,5 +1,8 @@
 package com.mzm.pharmaflow.service;
 
+import com.mzm.pharmaflow.dto.PrescriptionDTO;
+import com.mzm.pharmaflow.dto.PrescriptionItemDTO;
+import com.mzm.pharmaflow.model.PrescriptionStatus;
 import com.mzm.pharmaflow.repository.ClientRepository;
 import com.mzm.pharmaflow.repository.ProductRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +23,9 @@ public class DashboardService {
     
     @Autowired
     private ClientRepository clientRepository;
+    
+    @Autowired
+    private PrescriptionService prescriptionService;
 
     /**
      * Get dashboard statistics
@@ -362,38 +368,40 @@ public class DashboardService {
      * @return Map of prescriptions data
      */
     public Map<String, Object> getPrescriptionsData() {
+        // Counts are maintained by the prescription service, no COUNT query per view
+        Map<PrescriptionStatus, Long> counts = prescriptionService.getCounts();
+        long total = 0;
+        for (Long count : counts.values()) {
+            total += count;
+        }
         Map<String, Object> prescriptions = new HashMap<>();
-        prescriptions.put("total", 45);
-        prescriptions.put("pending", 12);
-        prescriptions.put("completed", 33);
+        prescriptions.put("total", total);
+        prescriptions.put("pending", counts.get(PrescriptionStatus.PENDING));
+        prescriptions.put("inProgress", counts.get(PrescriptionStatus.IN_PROGRESS));
+        prescriptions.put("completed", counts.get(PrescriptionStatus.COMPLETED));
+        prescriptions.put("cancelled", counts.get(PrescriptionStatus.CANCELLED));
         
         List<Map<String, Object>> recentPrescriptions = new ArrayList<>();
-        LocalDate now = LocalDate.now();
-        
-        for (int i = 0; i < 5; i++) {
+        for (PrescriptionDTO dto : prescriptionService.findRecent(null, 5)) {
             Map<String, Object> prescription = new HashMap<>();
-            prescription.put("id", "P" + (1000 + i));
+            prescription.put("id", dto.getId());
             
             Map<String, Object> patient = new HashMap<>();
-            patient.put("name", "Patient " + (i + 1));
+            patient.put("name", dto.getClientName());
             patient.put("avatar", null);
             prescription.put("patient", patient);
             
-            prescription.put("doctor", "Dr. Benjelloun");
-            prescription.put("date", now.minusDays(i).toString());
-            prescription.put("status", i % 3 == 0 ? "completed" : i % 3 == 1 ? "pending" : "cancelled");
+            prescription.put("doctor", dto.getDoctorName());
+            prescription.put("date", dto.getIssuedAt().toString());
+            prescription.put("status", dto.getStatus().toLowerCase());
             
             List<Map<String, Object>> medications = new ArrayList<>();
-            
-            Map<String, Object> med1 = new HashMap<>();
-            med1.put("name", "Paracétamol 500mg");
-            med1.put("quantity", 2);
-            medications.add(med1);
-            
-            Map<String, Object> med2 = new HashMap<>();
-            med2.put("name", "Amoxicilline 1g");
-            med2.put("quantity", 1);
-            medications.add(med2);
+            for (PrescriptionItemDTO item : dto.getItems()) {
+                Map<String, Object> medication = new HashMap<>();
+                medication.put("name", item.getProductName());
+                medication.put("quantity", item.getQuantity());
+                medications.add(medication);
+            }
             
             prescription.put("medications", medications);
             recentPrescriptions.add(prescription);
@@ -0,0 +1,52 @@
+package com.mzm.pharmaflow.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-branch counter of committed product and client changes.
+ * Anything derived from the data (cached reports, snapshots) is keyed by this version and
+ * becomes stale as soon as a write commits. The version is only bumped after commit, so a
+ * reader can never cache pre-commit data under the new version.
+ */
+@Component
+public class DataVersion {
+
+    private final Map<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Get the current data version of a branch
+     * @param branchId branch ID
+     * @return version, starting at 0
+     */
+    public long current(Long branchId) {
+        return counter(branchId).get();
+    }
+
+    /**
+     * Record a change to a branch's data, effective when the current transaction commits
+     * @param branchId branch ID
+     */
+    public void markChanged(Long branchId) {
+        AtomicLong counter = counter(branchId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    counter.incrementAndGet();
+                }
+            });
+        } else {
+            counter.incrementAndGet();
+        }
+    }
+
+    private AtomicLong counter(Long branchId) {
+        return versions.computeIfAbsent(branchId, id -> new AtomicLong());
+    }
+}
@@ -0,0 +1,110 @@
+package com.mzm.pharmaflow.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * In-memory work queue of pending prescription IDs, one per branch, backed by the database.
+ *
+ * <p>Claimers poll distinct IDs from a lock-free queue, so concurrent pharmacists never wait on
+ * each other or hit the same row. The database stays the source of truth: a polled ID is only
+ * handed out once the conditional {@code UPDATE ... WHERE status = 'PENDING'} succeeds, and an
+ * empty queue is refilled from the pending index by a single thread while the others return.
+ * IDs are offered only after their transaction commits.</p>
+ */
+class PrescriptionQueue {
+
+    private final Map<Long, BranchQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Take the next queued ID of a branch, refilling the queue when it is empty
+     * @param branchId branch ID
+     * @param loader reads up to the requested number of pending IDs, oldest first
+     * @param refillSize number of IDs to load on refill
+     * @return an ID, or null if nothing is pending
+     */
+    Long poll(Long branchId, Function<Integer, List<Long>> loader, int refillSize) {
+        BranchQueue queue = queue(branchId);
+        Long id = queue.poll();
+        if (id != null) {
+            return id;
+        }
+        synchronized (queue.refillLock) {
+            // Another claimer may have refilled while this one waited
+            id = queue.poll();
+            if (id == null) {
+                for (Long pending : loader.apply(refillSize)) {
+                    queue.offer(pending);
+                }
+                id = queue.poll();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Queue an ID once the current transaction commits
+     * @param branchId branch ID
+     * @param id pending prescription ID
+     */
+    void offerAfterCommit(Long branchId, Long id) {
+        BranchQueue queue = queue(branchId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.offer(id);
+                }
+            });
+        } else {
+            queue.offer(id);
+        }
+    }
+
+    /**
+     * Get the number of queued IDs of a branch
+     * @param branchId branch ID
+     * @return queue length
+     */
+    int size(Long branchId) {
+        BranchQueue queue = queues.get(branchId);
+        return queue != null ? queue.members.size() : 0;
+    }
+
+    Set<Long> branches() {
+        return queues.keySet();
+    }
+
+    private BranchQueue queue(Long branchId) {
+        return queues.computeIfAbsent(branchId, id -> new BranchQueue());
+    }
+
+    private static final class BranchQueue {
+        private final Queue<Long> ids = new ConcurrentLinkedQueue<>();
+        private final Set<Long> members = ConcurrentHashMap.newKeySet();
+        private final Object refillLock = new Object();
+
+        void offer(Long id) {
+            // A refill may read IDs that were also offered after commit; keep one copy
+            if (members.add(id)) {
+                ids.offer(id);
+            }
+        }
+
+        Long poll() {
+            Long id = ids.poll();
+            if (id != null) {
+                members.remove(id);
+            }
+            return id;
+        }
+    }
+}
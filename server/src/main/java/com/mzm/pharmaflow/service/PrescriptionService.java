@@ -0,0 +1,423 @@
+package com.mzm.pharmaflow.service;
+
+import com.mzm.pharmaflow.dto.PrescriptionDTO;
+import com.mzm.pharmaflow.dto.PrescriptionItemDTO;
+import com.mzm.pharmaflow.model.Client;
+import com.mzm.pharmaflow.model.Prescription;
+import com.mzm.pharmaflow.model.PrescriptionItem;
+import com.mzm.pharmaflow.model.PrescriptionStatus;
+import com.mzm.pharmaflow.model.Product;
+import com.mzm.pharmaflow.repository.ClientRepository;
+import com.mzm.pharmaflow.repository.PrescriptionRepository;
+import com.mzm.pharmaflow.repository.ProductRepository;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityNotFoundException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Prescription intake and the pharmacists' work queue.
+ *
+ * <p>Pending prescriptions are handed out by {@link #claimNext(String)}: each pharmacist polls
+ * a distinct ID from the branch's in-memory queue and takes it with a conditional update, so
+ * concurrent claims neither block each other nor return the same prescription. Claims not
+ * completed within {@code prescriptions.claim-timeout-ms} go back to the queue.</p>
+ *
+ * <p>Per-status counts are kept in memory, loaded once per branch with a grouped count and
+ * then adjusted when each transition commits; {@code prescriptions.counter-resync-ms}
+ * periodically reloads them to absorb changes made outside this service.</p>
+ */
+@Service
+@Transactional
+public class PrescriptionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrescriptionService.class);
+
+    private static final PrescriptionStatus[] STATUSES = PrescriptionStatus.values();
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${prescriptions.queue.refill-size:200}")
+    private int refillSize;
+
+    @Value("${prescriptions.claim-attempts:16}")
+    private int claimAttempts;
+
+    @Value("${prescriptions.claim-timeout-ms:1800000}")
+    private long claimTimeoutMs;
+
+    @Value("${prescriptions.list-max:500}")
+    private int listMax;
+
+    private final PrescriptionQueue queue = new PrescriptionQueue();
+
+    private final Map<Long, AtomicLongArray> counters = new ConcurrentHashMap<>();
+
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong claimMisses = new AtomicLong();
+    private final AtomicLong reclaimed = new AtomicLong();
+
+    /**
+     * Register a new prescription in the pending queue
+     * @param dto prescription to create
+     * @return created prescription
+     */
+    public PrescriptionDTO create(PrescriptionDTO dto) {
+        Long branchId = TenantContext.getBranchId();
+        Client client = clientRepository.findByIdAndBranchId(dto.getClientId(), branchId)
+                .orElseThrow(() -> new IllegalArgumentException("Client not found with ID: " + dto.getClientId()));
+
+        Prescription prescription = new Prescription();
+        prescription.setBranchId(branchId);
+        prescription.setClient(client);
+        prescription.setDoctorName(dto.getDoctorName());
+        prescription.setIssuedAt(dto.getIssuedAt() != null ? dto.getIssuedAt() : LocalDate.now());
+        prescription.setNotes(dto.getNotes());
+        prescription.setStatus(PrescriptionStatus.PENDING);
+        for (PrescriptionItemDTO itemDto : dto.getItems()) {
+            prescription.addItem(toItem(branchId, itemDto));
+        }
+
+        Prescription saved = prescriptionRepository.save(prescription);
+        adjustAfterCommit(branchId, null, PrescriptionStatus.PENDING);
+        queue.offerAfterCommit(branchId, saved.getId());
+        return convertToDto(saved);
+    }
+
+    /**
+     * Find a prescription of the current branch
+     * @param id prescription ID
+     * @return prescription with its items
+     */
+    @Transactional(readOnly = true)
+    public PrescriptionDTO findById(Long id) {
+        Long branchId = TenantContext.getBranchId();
+        for (Prescription prescription : prescriptionRepository.findWithItemsByIdIn(Collections.singleton(id))) {
+            if (branchId.equals(prescription.getBranchId())) {
+                return convertToDto(prescription);
+            }
+        }
+        throw new EntityNotFoundException("Prescription not found with ID: " + id);
+    }
+
+    /**
+     * List the current branch's prescriptions, newest first
+     * @param status status to filter on, or null for all
+     * @param limit maximum number of prescriptions
+     * @return prescriptions with their items
+     */
+    @Transactional(readOnly = true)
+    public List<PrescriptionDTO> findRecent(PrescriptionStatus status, int limit) {
+        Long branchId = TenantContext.getBranchId();
+        PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, listMax)));
+        // IDs first, then one fetch join: paging a collection fetch would happen in memory
+        List<Long> ids = status != null
+                ? prescriptionRepository.findIdsByStatus(branchId, status, page)
+                : prescriptionRepository.findIds(branchId, page);
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PrescriptionDTO> result = new ArrayList<>(ids.size());
+        for (Prescription prescription : prescriptionRepository.findWithItemsByIdIn(ids)) {
+            result.add(convertToDto(prescription));
+        }
+        return result;
+    }
+
+    /**
+     * Claim the oldest pending prescription for a pharmacist
+     * @param username pharmacist username
+     * @return claimed prescription, empty if nothing is pending
+     */
+    public Optional<PrescriptionDTO> claimNext(String username) {
+        Long branchId = TenantContext.getBranchId();
+        LocalDateTime now = LocalDateTime.now();
+        for (int attempt = 0; attempt < claimAttempts; attempt++) {
+            Long id = queue.poll(branchId,
+                    size -> prescriptionRepository.findPendingIds(branchId, PageRequest.of(0, size)), refillSize);
+            if (id == null) {
+                return Optional.empty();
+            }
+            if (prescriptionRepository.claim(branchId, id, username, now) == 1) {
+                claims.incrementAndGet();
+                adjustAfterCommit(branchId, PrescriptionStatus.PENDING, PrescriptionStatus.IN_PROGRESS);
+                return Optional.of(findById(id));
+            }
+            // Cancelled, or claimed through a duplicate queue entry: try the next one
+            claimMisses.incrementAndGet();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Mark a claimed prescription as delivered
+     * @param id prescription ID
+     * @param username pharmacist holding the claim
+     * @return completed prescription
+     */
+    public PrescriptionDTO complete(Long id, String username) {
+        Long branchId = TenantContext.getBranchId();
+        if (prescriptionRepository.complete(branchId, id, username, LocalDateTime.now()) == 0) {
+            throw transitionFailure(branchId, id, "complete");
+        }
+        adjustAfterCommit(branchId, PrescriptionStatus.IN_PROGRESS, PrescriptionStatus.COMPLETED);
+        return findById(id);
+    }
+
+    /**
+     * Put a claimed prescription back in the queue
+     * @param id prescription ID
+     * @param username pharmacist holding the claim, or null to release any claim
+     * @return released prescription
+     */
+    public PrescriptionDTO release(Long id, String username) {
+        Long branchId = TenantContext.getBranchId();
+        LocalDateTime now = LocalDateTime.now();
+        int released = username != null
+                ? prescriptionRepository.release(branchId, id, username, now)
+                : prescriptionRepository.releaseClaimedBefore(branchId, id, now.plusNanos(1000), now);
+        if (released == 0) {
+            throw transitionFailure(branchId, id, "release");
+        }
+        adjustAfterCommit(branchId, PrescriptionStatus.IN_PROGRESS, PrescriptionStatus.PENDING);
+        queue.offerAfterCommit(branchId, id);
+        return findById(id);
+    }
+
+    /**
+     * Cancel a prescription that has not been delivered
+     * @param id prescription ID
+     * @return cancelled prescription
+     */
+    public PrescriptionDTO cancel(Long id) {
+        Long branchId = TenantContext.getBranchId();
+        PrescriptionStatus status = prescriptionRepository.findStatus(branchId, id)
+                .orElseThrow(() -> new EntityNotFoundException("Prescription not found with ID: " + id));
+        if (status != PrescriptionStatus.PENDING && status != PrescriptionStatus.IN_PROGRESS) {
+            throw new IllegalStateException("Cannot cancel a prescription that is " + status);
+        }
+        if (prescriptionRepository.cancel(branchId, id, status, LocalDateTime.now()) == 0) {
+            throw new IllegalStateException("Prescription " + id + " was changed concurrently");
+        }
+        // A cancelled ID left in the queue is skipped by the conditional claim
+        adjustAfterCommit(branchId, status, PrescriptionStatus.CANCELLED);
+        return findById(id);
+    }
+
+    /**
+     * Get the current branch's prescription counts, without querying the database
+     * @return count per status
+     */
+    @Transactional(readOnly = true)
+    public Map<PrescriptionStatus, Long> getCounts() {
+        AtomicLongArray counts = counters(TenantContext.getBranchId());
+        Map<PrescriptionStatus, Long> result = new LinkedHashMap<>();
+        for (PrescriptionStatus status : STATUSES) {
+            result.put(status, Math.max(0, counts.get(status.ordinal())));
+        }
+        return result;
+    }
+
+    /**
+     * Get queue statistics
+     * @return counts of the current branch and claim counters
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<PrescriptionStatus, Long> entry : getCounts().entrySet()) {
+            stats.put(entry.getKey().name().toLowerCase(), entry.getValue());
+        }
+        stats.put("queued", queue.size(TenantContext.getBranchId()));
+        stats.put("claims", claims.get());
+        stats.put("claimMisses", claimMisses.get());
+        stats.put("reclaimed", reclaimed.get());
+        return stats;
+    }
+
+    /**
+     * Return claims older than the timeout to the queue
+     */
+    @Scheduled(fixedDelayString = "${prescriptions.reclaim-interval-ms:60000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reclaimStale() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        for (Long branchId : knownBranches()) {
+            try {
+                int count = TenantContext.callOnBranch(branchId, () -> template.execute(tx -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    LocalDateTime cutoff = now.minusNanos(claimTimeoutMs * 1_000_000L);
+                    int released = 0;
+                    for (Long id : prescriptionRepository.findStaleClaimIds(branchId, cutoff)) {
+                        if (prescriptionRepository.releaseClaimedBefore(branchId, id, cutoff, now) == 1) {
+                            adjustAfterCommit(branchId, PrescriptionStatus.IN_PROGRESS, PrescriptionStatus.PENDING);
+                            queue.offerAfterCommit(branchId, id);
+                            released++;
+                        }
+                    }
+                    return released;
+                }));
+                if (count > 0) {
+                    reclaimed.addAndGet(count);
+                    logger.info("Returned {} stale prescription claims of branch {} to the queue", count, branchId);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not reclaim prescriptions of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reload the in-memory counts from the database
+     */
+    @Scheduled(fixedDelayString = "${prescriptions.counter-resync-ms:600000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void resyncCounters() {
+        for (Long branchId : new ArrayList<>(counters.keySet())) {
+            try {
+                long[] loaded = TenantContext.callOnBranch(branchId, () -> loadCounts(branchId));
+                AtomicLongArray counts = counters.get(branchId);
+                for (int i = 0; i < loaded.length; i++) {
+                    counts.set(i, loaded[i]);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not resync prescription counts of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+    }
+
+    private Set<Long> knownBranches() {
+        Set<Long> branches = new HashSet<>(counters.keySet());
+        branches.addAll(queue.branches());
+        return branches;
+    }
+
+    private AtomicLongArray counters(Long branchId) {
+        AtomicLongArray counts = counters.get(branchId);
+        if (counts == null) {
+            AtomicLongArray loaded = new AtomicLongArray(loadCounts(branchId));
+            counts = counters.putIfAbsent(branchId, loaded);
+            if (counts == null) {
+                counts = loaded;
+            }
+        }
+        return counts;
+    }
+
+    private long[] loadCounts(Long branchId) {
+        long[] counts = new long[STATUSES.length];
+        for (Object[] row : prescriptionRepository.countByStatus(branchId)) {
+            counts[((PrescriptionStatus) row[0]).ordinal()] = ((Number) row[1]).longValue();
+        }
+        return counts;
+    }
+
+    private void adjustAfterCommit(Long branchId, PrescriptionStatus from, PrescriptionStatus to) {
+        AtomicLongArray counts = counters(branchId);
+        Runnable adjust = () -> {
+            if (from != null) {
+                counts.decrementAndGet(from.ordinal());
+            }
+            counts.incrementAndGet(to.ordinal());
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    adjust.run();
+                }
+            });
+        } else {
+            adjust.run();
+        }
+    }
+
+    private RuntimeException transitionFailure(Long branchId, Long id, String action) {
+        Optional<PrescriptionStatus> status = prescriptionRepository.findStatus(branchId, id);
+        if (!status.isPresent()) {
+            return new EntityNotFoundException("Prescription not found with ID: " + id);
+        }
+        if (status.get() == PrescriptionStatus.IN_PROGRESS) {
+            return new IllegalStateException("Prescription " + id + " is claimed by another pharmacist");
+        }
+        return new IllegalStateException("Cannot " + action + " a prescription that is " + status.get());
+    }
+
+    private PrescriptionItem toItem(Long branchId, PrescriptionItemDTO dto) {
+        PrescriptionItem item = new PrescriptionItem();
+        item.setProductId(dto.getProductId());
+        item.setProductName(dto.getProductName());
+        item.setQuantity(dto.getQuantity());
+        item.setInstructions(dto.getInstructions());
+        if (dto.getProductId() != null) {
+            Product product = productRepository.findByIdAndBranchId(dto.getProductId(), branchId)
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found with ID: " + dto.getProductId()));
+            if (!StringUtils.hasText(item.getProductName())) {
+                item.setProductName(product.getName());
+            }
+        } else if (!StringUtils.hasText(item.getProductName())) {
+            throw new IllegalArgumentException("Each item needs a productId or a productName");
+        }
+        return item;
+    }
+
+    private PrescriptionDTO convertToDto(Prescription prescription) {
+        PrescriptionDTO dto = new PrescriptionDTO();
+        dto.setId(prescription.getId());
+        Client client = prescription.getClient();
+        dto.setClientId(client.getId());
+        dto.setClientName(client.getFirstName() + " " + client.getLastName());
+        dto.setDoctorName(prescription.getDoctorName());
+        dto.setIssuedAt(prescription.getIssuedAt());
+        dto.setStatus(prescription.getStatus().name());
+        dto.setClaimedBy(prescription.getClaimedBy());
+        dto.setClaimedAt(prescription.getClaimedAt());
+        dto.setCompletedAt(prescription.getCompletedAt());
+        dto.setNotes(prescription.getNotes());
+        List<PrescriptionItemDTO> items = new ArrayList<>();
+        for (PrescriptionItem item : prescription.getItems()) {
+            items.add(new PrescriptionItemDTO(item.getProductId(), item.getProductName(),
+                    item.getQuantity(), item.getInstructions()));
+        }
+        dto.setItems(items);
+        dto.setCreatedAt(prescription.getCreatedAt());
+        dto.setVersion(prescription.getVersion());
+        return dto;
+    }
+}
@@ -34,6 +34,16 @@ public interface ProductService {
      */
     ProductDTO update(ProductDTO productDTO);
     
+    /**
+     * Partially update a product in a single statement
+     * @param id product ID
+     * @param changes non-null fields are written; version is required and must match the stored one
+     * @throws IllegalArgumentException if version is missing or no field is set
+     * @throws javax.persistence.EntityNotFoundException if the product does not exist
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the version does not match
+     */
+    void patch(Long id, ProductDTO changes);
+    
     /**
      * Delete product by ID
      * @param id product ID
@@ -0,0 +1,162 @@
+package com.mzm.pharmaflow.service;
+
+import com.mzm.pharmaflow.dto.ReconciliationReportDTO;
+import com.mzm.pharmaflow.dto.StockCountLine;
+import com.mzm.pharmaflow.dto.StockCountRequest;
+import com.mzm.pharmaflow.dto.StockVarianceDTO;
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.money.Money;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies a physical inventory count to stock in one transaction.
+ * Products are looked up by code in chunked IN queries and the counted quantities
+ * are written with JDBC batch updates, so a whole-shop count is a handful of
+ * statements instead of one load and save per product.
+ */
+@Service
+public class StockReconciliationService {
+
+    private static final String SELECT_BY_CODES =
+            "SELECT id, code, name, quantity, price FROM products"
+                    + " WHERE branch_id = :branchId AND code IN (:codes) FOR UPDATE";
+
+    // The count replaces the stored quantity; bumping the version makes an edit prepared from the
+    // quantity before the count fail with 409 instead of overwriting it
+    private static final String UPDATE_QUANTITY =
+            "UPDATE products SET quantity = ?, updated_at = ?, version = version + 1 WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Value("${inventory.reconciliation.batch-size:500}")
+    private int batchSize;
+
+    @Value("${inventory.reconciliation.max-lines:50000}")
+    private int maxLines;
+
+    /**
+     * Reconcile counted quantities with the current branch's recorded stock
+     * @param request counted lines; duplicate codes are summed
+     * @return variance report
+     * @throws IllegalArgumentException if the request has more lines than allowed
+     */
+    @Transactional
+    public ReconciliationReportDTO reconcile(StockCountRequest request) {
+        List<StockCountLine> lines = request.getCounts();
+        if (lines.size() > maxLines) {
+            throw new IllegalArgumentException("A reconciliation accepts at most " + maxLines + " lines");
+        }
+
+        Map<String, Integer> counted = new LinkedHashMap<>();
+        for (StockCountLine line : lines) {
+            counted.merge(line.getCode().trim(), line.getCountedQuantity(), Integer::sum);
+        }
+
+        ReconciliationReportDTO report = new ReconciliationReportDTO();
+        report.setReference(request.getReference());
+        report.setDryRun(request.isDryRun());
+        report.setReconciledAt(System.currentTimeMillis());
+        report.setLinesReceived(lines.size());
+
+        Map<String, Integer> unmatched = new LinkedHashMap<>(counted);
+        List<Object[]> updates = new ArrayList<>();
+        Date today = Date.valueOf(LocalDate.now());
+        List<String> codes = new ArrayList<>(counted.keySet());
+        Long branchId = TenantContext.getBranchId();
+        // Values are summed in minor units and only turned into BigDecimal for the report
+        List<Variance> variances = new ArrayList<>();
+        long[] totals = new long[2]; // shrinkage, surplus
+
+        for (int from = 0; from < codes.size(); from += batchSize) {
+            List<String> chunk = codes.subList(from, Math.min(from + batchSize, codes.size()));
+            MapSqlParameterSource params = new MapSqlParameterSource("codes", chunk).addValue("branchId", branchId);
+            namedParameterJdbcTemplate.query(SELECT_BY_CODES, params, rs -> {
+                String code = rs.getString("code");
+                int expected = rs.getInt("quantity");
+                int actual = unmatched.remove(code);
+                report.setProductsCounted(report.getProductsCounted() + 1);
+                if (actual == expected) {
+                    report.setProductsUnchanged(report.getProductsUnchanged() + 1);
+                    return;
+                }
+
+                long id = rs.getLong("id");
+                int variance = actual - expected;
+                long impact = Money.times(Money.toMinor(rs.getBigDecimal("price")), variance);
+                variances.add(new Variance(new StockVarianceDTO(id, code, rs.getString("name"),
+                        expected, actual, variance, null), impact));
+                if (variance < 0) {
+                    report.setUnitsMissing(report.getUnitsMissing() - variance);
+                    totals[0] = Money.plus(totals[0], -impact);
+                } else {
+                    report.setUnitsSurplus(report.getUnitsSurplus() + variance);
+                    totals[1] = Money.plus(totals[1], impact);
+                }
+                updates.add(new Object[]{actual, today, id});
+            });
+        }
+
+        if (!request.isDryRun()) {
+            for (int from = 0; from < updates.size(); from += batchSize) {
+                jdbcTemplate.batchUpdate(UPDATE_QUANTITY, updates.subList(from, Math.min(from + batchSize, updates.size())));
+            }
+            report.setProductsUpdated(updates.size());
+            if (!updates.isEmpty()) {
+                List<Long> updatedIds = new ArrayList<>(updates.size());
+                for (Object[] update : updates) {
+                    updatedIds.add((Long) update[2]);
+                }
+                changeRecorder.recordAll(branchId, SyncEntityType.PRODUCT, updatedIds, ChangeOperation.UPSERT);
+                dataVersion.markChanged(branchId);
+            }
+        }
+
+        report.getUnknownCodes().addAll(unmatched.keySet());
+        variances.sort(Comparator.comparingLong((Variance v) -> Math.abs(v.impact)).reversed());
+        for (Variance variance : variances) {
+            variance.dto.setValueImpact(Money.toDecimal(variance.impact));
+            report.getVariances().add(variance.dto);
+        }
+        report.setShrinkageValue(Money.toDecimal(totals[0]));
+        report.setSurplusValue(Money.toDecimal(totals[1]));
+        return report;
+    }
+
+    private static final class Variance {
+        private final StockVarianceDTO dto;
+        /** Value impact in minor units */
+        private final long impact;
+
+        private Variance(StockVarianceDTO dto, long impact) {
+            this.dto = dto;
+            this.impact = impact;
+        }
+    }
+}
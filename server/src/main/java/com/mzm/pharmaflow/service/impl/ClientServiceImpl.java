@@ -1,20 +1,32 @@
 package com.mzm.pharmaflow.service.impl;
 
 import com.mzm.pharmaflow.dto.ClientDTO;
+import com.mzm.pharmaflow.model.ChangeOperation;
 import com.mzm.pharmaflow.model.Client;
 import com.mzm.pharmaflow.model.ClientStatus;
+import com.mzm.pharmaflow.model.SyncEntityType;
 import com.mzm.pharmaflow.repository.ClientRepository;
+import com.mzm.pharmaflow.service.DataVersion;
 import com.mzm.pharmaflow.service.ClientService;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityNotFoundException;
-import javax.transaction.Transactional;
+import javax.validation.ConstraintViolation;
+import javax.validation.ConstraintViolationException;
+import javax.validation.Validator;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -23,6 +35,15 @@ public class ClientServiceImpl implements ClientService {
     @Autowired
     private ClientRepository clientRepository;
     
+    @Autowired
+    private DataVersion dataVersion;
+    
+    @Autowired
+    private ChangeRecorder changeRecorder;
+    
+    @Autowired
+    private Validator validator;
+    
     /**
      * Convert Client entity to ClientDTO
      * @param client entity to convert
@@ -46,6 +67,7 @@ public class ClientServiceImpl implements ClientService {
         dto.setAvatar(client.getAvatar());
         dto.setCreatedAt(client.getCreatedAt());
         dto.setUpdatedAt(client.getUpdatedAt());
+        dto.setVersion(client.getVersion());
         return dto;
     }
     
@@ -56,7 +78,7 @@ public class ClientServiceImpl implements ClientService {
      */
     private Client convertToEntity(ClientDTO dto) {
         Client client = dto.getId() != null
-                ? clientRepository.findById(dto.getId())
+                ? clientRepository.findByIdAndBranchId(dto.getId(), TenantContext.getBranchId())
                         .orElse(new Client())
                 : new Client();
         
@@ -87,43 +109,105 @@ public class ClientServiceImpl implements ClientService {
         return client;
     }
     
+    // Read paths project straight into DTOs: no managed entities, no dirty-checking snapshot, no flush.
+    // Every query is scoped to the current branch and served by a branch-led index.
+    
     @Override
+    @Transactional(readOnly = true)
     public List<ClientDTO> findAll() {
-        return clientRepository.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return clientRepository.findAllDtos(TenantContext.getBranchId());
     }
     
     @Override
+    @Transactional(readOnly = true)
     public ClientDTO findById(Long id) {
-        Client client = clientRepository.findById(id)
+        return clientRepository.findDtoById(TenantContext.getBranchId(), id)
                 .orElseThrow(() -> new EntityNotFoundException("Client not found with id: " + id));
-        return convertToDto(client);
     }
     
     @Override
     public ClientDTO save(ClientDTO clientDTO) {
         Client client = convertToEntity(clientDTO);
         Client savedClient = clientRepository.save(client);
+        changeRecorder.record(savedClient.getBranchId(), SyncEntityType.CLIENT, savedClient.getId(),
+                ChangeOperation.UPSERT);
+        dataVersion.markChanged(savedClient.getBranchId());
         return convertToDto(savedClient);
     }
     
+    @Override
+    public void patch(Long id, ClientDTO changes) {
+        if (changes.getVersion() == null) {
+            throw new IllegalArgumentException("Client version is required");
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        putIfPresent(fields, "firstName", changes.getFirstName());
+        putIfPresent(fields, "lastName", changes.getLastName());
+        putIfPresent(fields, "email", changes.getEmail());
+        putIfPresent(fields, "phone", changes.getPhone());
+        putIfPresent(fields, "birthDate", changes.getBirthDate());
+        putIfPresent(fields, "address", changes.getAddress());
+        putIfPresent(fields, "medicalHistory", changes.getMedicalHistory());
+        if (changes.getStatus() != null) {
+            try {
+                fields.put("status", ClientStatus.valueOf(changes.getStatus().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid client status: " + changes.getStatus());
+            }
+        }
+        putIfPresent(fields, "lastVisit", changes.getLastVisit());
+        putIfPresent(fields, "medicalNotes", changes.getMedicalNotes());
+        putIfPresent(fields, "hasPrescription", changes.getHasPrescription());
+        putIfPresent(fields, "avatar", changes.getAvatar());
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No client fields to update");
+        }
+        
+        // A bulk UPDATE bypasses entity validation, so check the supplied values against the entity constraints
+        Set<ConstraintViolation<Client>> violations = new HashSet<>();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            violations.addAll(validator.validateValue(Client.class, field.getKey(), field.getValue()));
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+        
+        if (clientRepository.patch(TenantContext.getBranchId(), id, changes.getVersion(), fields) == 0) {
+            // Only the failure path pays for a second query
+            Optional<Long> currentVersion = clientRepository.findVersionById(TenantContext.getBranchId(), id);
+            if (!currentVersion.isPresent()) {
+                throw new EntityNotFoundException("Client not found with id: " + id);
+            }
+            throw new OptimisticLockingFailureException("Client " + id
+                    + " was modified concurrently (current version " + currentVersion.get() + ")");
+        }
+        changeRecorder.record(TenantContext.getBranchId(), SyncEntityType.CLIENT, id, ChangeOperation.UPSERT);
+        dataVersion.markChanged(TenantContext.getBranchId());
+    }
+    
+    private static void putIfPresent(Map<String, Object> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value);
+        }
+    }
+    
     @Override
     public void deleteById(Long id) {
-        if (!clientRepository.existsById(id)) {
+        if (clientRepository.deleteByIdReturningCount(TenantContext.getBranchId(), id) == 0) {
             throw new EntityNotFoundException("Client not found with id: " + id);
         }
-        clientRepository.deleteById(id);
+        changeRecorder.record(TenantContext.getBranchId(), SyncEntityType.CLIENT, id, ChangeOperation.DELETE);
+        dataVersion.markChanged(TenantContext.getBranchId());
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ClientDTO> findByName(String name) {
-        return clientRepository.findByNameContainingIgnoreCase(name).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return clientRepository.findDtosByName(TenantContext.getBranchId(), name);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ClientDTO> findByStatus(String status) {
         ClientStatus clientStatus;
         try {
@@ -131,43 +215,44 @@ public class ClientServiceImpl implements ClientService {
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Invalid client status: " + status);
         }
-        return clientRepository.findByStatus(clientStatus.name()).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return clientRepository.findDtosByStatus(TenantContext.getBranchId(), clientStatus);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ClientDTO> findWithPrescription() {
-        return clientRepository.findByHasPrescriptionTrue().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return clientRepository.findDtosWithPrescription(TenantContext.getBranchId());
     }
     
     @Override
+    @Transactional(readOnly = true)
     public Map<String, Object> getStats() {
         Map<String, Object> stats = new HashMap<>();
+        Long branchId = TenantContext.getBranchId();
         
         // Get total count
-        long totalCount = clientRepository.count();
+        long totalCount = clientRepository.countByBranchId(branchId);
         stats.put("totalCount", totalCount);
         
         // Get status distribution
         Map<ClientStatus, Long> statusDistribution = new HashMap<>();
         for (ClientStatus status : ClientStatus.values()) {
-            long count = clientRepository.findByStatus(status.name()).size();
-            statusDistribution.put(status, count);
+            statusDistribution.put(status, 0L);
+        }
+        for (Object[] row : clientRepository.countByStatus(branchId)) {
+            if (row[0] != null) {
+                statusDistribution.put((ClientStatus) row[0], (Long) row[1]);
+            }
         }
         stats.put("statusDistribution", statusDistribution);
         
         // Get clients with prescription count
-        long withPrescriptionCount = clientRepository.findByHasPrescriptionTrue().size();
+        long withPrescriptionCount = clientRepository.countByBranchIdAndHasPrescriptionTrue(branchId);
         stats.put("withPrescriptionCount", withPrescriptionCount);
         
         // Get new clients in last 30 days
         LocalDate thirtyDaysAgo = LocalDate.now().minusDays(30);
-        long newClientsCount = clientRepository.findAll().stream()
-                .filter(client -> client.getCreatedAt() != null && client.getCreatedAt().isAfter(thirtyDaysAgo))
-                .count();
+        long newClientsCount = clientRepository.countByBranchIdAndCreatedAtAfter(branchId, thirtyDaysAgo);
         stats.put("newClientsCount", newClientsCount);
         
         return stats;
@@ -1,21 +1,33 @@
 package com.mzm.pharmaflow.service.impl;
 
+import com.mzm.pharmaflow.analytics.CatalogueSnapshot;
+import com.mzm.pharmaflow.analytics.CatalogueSnapshotService;
+import com.mzm.pharmaflow.analytics.SnapshotFilter;
+import com.mzm.pharmaflow.analytics.SnapshotSummary;
+import com.mzm.pharmaflow.barcode.BarcodeService;
 import com.mzm.pharmaflow.dto.ProductDTO;
+import com.mzm.pharmaflow.model.ChangeOperation;
 import com.mzm.pharmaflow.model.Product;
 import com.mzm.pharmaflow.model.ProductCategory;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.money.Money;
 import com.mzm.pharmaflow.repository.ProductRepository;
+import com.mzm.pharmaflow.service.DataVersion;
 import com.mzm.pharmaflow.service.ProductService;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityNotFoundException;
-import javax.transaction.Transactional;
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 @Transactional
@@ -24,6 +36,18 @@ public class ProductServiceImpl implements ProductService {
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private DataVersion dataVersion;
+    
+    @Autowired
+    private ChangeRecorder changeRecorder;
+    
+    @Autowired
+    private CatalogueSnapshotService snapshotService;
+    
+    @Autowired
+    private BarcodeService barcodeService;
+    
     /**
      * Convert Product entity to ProductDTO
      * @param product entity to convert
@@ -45,8 +69,10 @@ public class ProductServiceImpl implements ProductService {
         dto.setNeedsPrescription(product.getNeedsPrescription());
         dto.setDosage(product.getDosage());
         dto.setFormulation(product.getFormulation());
+        dto.setActiveIngredient(product.getActiveIngredient());
         dto.setCreatedAt(product.getCreatedAt());
         dto.setUpdatedAt(product.getUpdatedAt());
+        dto.setVersion(product.getVersion());
         return dto;
     }
     
@@ -57,10 +83,19 @@ public class ProductServiceImpl implements ProductService {
      */
     private Product convertToEntity(ProductDTO dto) {
         Product product = dto.getId() != null
-                ? productRepository.findById(dto.getId())
+                ? productRepository.findByIdAndBranchId(dto.getId(), TenantContext.getBranchId())
                         .orElse(new Product())
                 : new Product();
-        
+        copyToEntity(dto, product);
+        return product;
+    }
+    
+    /**
+     * Copy DTO fields onto an entity
+     * @param dto source DTO
+     * @param product target entity
+     */
+    private void copyToEntity(ProductDTO dto, Product product) {
         product.setName(dto.getName());
         product.setCode(dto.getCode());
         product.setDescription(dto.getDescription());
@@ -82,79 +117,145 @@ public class ProductServiceImpl implements ProductService {
         product.setNeedsPrescription(dto.getNeedsPrescription());
         product.setDosage(dto.getDosage());
         product.setFormulation(dto.getFormulation());
-        return product;
+        product.setActiveIngredient(dto.getActiveIngredient());
     }
     
+    // Read paths project straight into DTOs: no managed entities, no dirty-checking snapshot, no flush.
+    // Every query is scoped to the current branch and served by a branch-led index.
+    
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> findAll() {
-        return productRepository.findAll().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.findAllDtos(TenantContext.getBranchId());
     }
     
     @Override
+    @Transactional(readOnly = true)
     public ProductDTO findById(Long id) {
-        Product product = productRepository.findById(id)
+        return productRepository.findDtoById(TenantContext.getBranchId(), id)
                 .orElseThrow(() -> new EntityNotFoundException("Product not found with id: " + id));
-        return convertToDto(product);
     }
     
     @Override
     public ProductDTO save(ProductDTO productDTO) {
         Product product = convertToEntity(productDTO);
         Product savedProduct = productRepository.save(product);
+        changeRecorder.record(savedProduct.getBranchId(), SyncEntityType.PRODUCT, savedProduct.getId(),
+                ChangeOperation.UPSERT);
+        dataVersion.markChanged(savedProduct.getBranchId());
+        barcodeService.productChanged(savedProduct.getBranchId(), savedProduct.getId());
         return convertToDto(savedProduct);
     }
     
     @Override
     public ProductDTO update(ProductDTO productDTO) {
-        // First check if the product exists
-        if (productDTO.getId() == null || !productRepository.existsById(productDTO.getId())) {
+        if (productDTO.getId() == null) {
             throw new EntityNotFoundException("Product not found for update");
         }
-        // Then perform the update using the same save logic
-        return save(productDTO);
+        // One lookup: the loaded entity is both the existence check and the update target
+        Product product = productRepository.findByIdAndBranchId(productDTO.getId(), TenantContext.getBranchId())
+                .orElseThrow(() -> new EntityNotFoundException("Product not found for update"));
+        if (productDTO.getVersion() != null && !productDTO.getVersion().equals(product.getVersion())) {
+            throw new OptimisticLockingFailureException("Product " + product.getId()
+                    + " was modified concurrently (current version " + product.getVersion() + ")");
+        }
+        copyToEntity(productDTO, product);
+        Product savedProduct = productRepository.saveAndFlush(product);
+        changeRecorder.record(savedProduct.getBranchId(), SyncEntityType.PRODUCT, savedProduct.getId(),
+                ChangeOperation.UPSERT);
+        dataVersion.markChanged(savedProduct.getBranchId());
+        barcodeService.productChanged(savedProduct.getBranchId(), savedProduct.getId());
+        return convertToDto(savedProduct);
+    }
+    
+    @Override
+    public void patch(Long id, ProductDTO changes) {
+        if (changes.getVersion() == null) {
+            throw new IllegalArgumentException("Product version is required");
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        putIfPresent(fields, "name", changes.getName());
+        putIfPresent(fields, "code", changes.getCode());
+        putIfPresent(fields, "description", changes.getDescription());
+        if (changes.getCategory() != null) {
+            try {
+                fields.put("category", ProductCategory.valueOf(changes.getCategory().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid product category: " + changes.getCategory());
+            }
+        }
+        putIfPresent(fields, "quantity", changes.getQuantity());
+        putIfPresent(fields, "threshold", changes.getThreshold());
+        putIfPresent(fields, "price", changes.getPrice());
+        putIfPresent(fields, "expiryDate", changes.getExpiryDate());
+        putIfPresent(fields, "manufacturer", changes.getManufacturer());
+        putIfPresent(fields, "imageUrl", changes.getImageUrl());
+        putIfPresent(fields, "needsPrescription", changes.getNeedsPrescription());
+        putIfPresent(fields, "dosage", changes.getDosage());
+        putIfPresent(fields, "formulation", changes.getFormulation());
+        putIfPresent(fields, "activeIngredient", changes.getActiveIngredient());
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No product fields to update");
+        }
+        
+        if (productRepository.patch(TenantContext.getBranchId(), id, changes.getVersion(), fields) == 0) {
+            // Only the failure path pays for a second query
+            Optional<Long> currentVersion = productRepository.findVersionById(TenantContext.getBranchId(), id);
+            if (!currentVersion.isPresent()) {
+                throw new EntityNotFoundException("Product not found with id: " + id);
+            }
+            throw new OptimisticLockingFailureException("Product " + id
+                    + " was modified concurrently (current version " + currentVersion.get() + ")");
+        }
+        changeRecorder.record(TenantContext.getBranchId(), SyncEntityType.PRODUCT, id, ChangeOperation.UPSERT);
+        dataVersion.markChanged(TenantContext.getBranchId());
+        barcodeService.productChanged(TenantContext.getBranchId(), id);
+    }
+    
+    private static void putIfPresent(Map<String, Object> fields, String name, Object value) {
+        if (value != null) {
+            fields.put(name, value);
+        }
     }
     
     @Override
     public void deleteById(Long id) {
-        if (!productRepository.existsById(id)) {
+        if (productRepository.deleteByIdReturningCount(TenantContext.getBranchId(), id) == 0) {
             throw new EntityNotFoundException("Product not found with id: " + id);
         }
-        productRepository.deleteById(id);
+        changeRecorder.record(TenantContext.getBranchId(), SyncEntityType.PRODUCT, id, ChangeOperation.DELETE);
+        dataVersion.markChanged(TenantContext.getBranchId());
+        barcodeService.productChanged(TenantContext.getBranchId(), id);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> findByName(String name) {
-        return productRepository.findByNameContainingIgnoreCase(name).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.findDtosByName(TenantContext.getBranchId(), name);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> search(String query) {
         // Search by name or description
-        return productRepository.findByNameContainingIgnoreCaseOrDescriptionContainingIgnoreCase(query, query).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.searchDtos(TenantContext.getBranchId(), query);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> findLowStockProducts() {
-        return productRepository.findByQuantityLessThanEqualToThreshold().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.findLowStockDtos(TenantContext.getBranchId());
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> findExpiringSoon() {
         LocalDate threeMonthsFromNow = LocalDate.now().plusMonths(3);
-        return productRepository.findByExpiryDateBefore(threeMonthsFromNow).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.findDtosExpiringBefore(TenantContext.getBranchId(), threeMonthsFromNow);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public List<ProductDTO> findByCategory(String category) {
         ProductCategory productCategory;
         try {
@@ -162,39 +263,29 @@ public class ProductServiceImpl implements ProductService {
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Invalid product category: " + category);
         }
-        return productRepository.findByCategory(productCategory.name()).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return productRepository.findDtosByCategory(TenantContext.getBranchId(), productCategory);
     }
     
     @Override
+    @Transactional(readOnly = true)
     public Map<String, Object> getStats() {
-        Map<String, Object> stats = new HashMap<>();
+        // Served from the columnar snapshot: one parallel scan over primitive arrays instead of
+        // three aggregate queries
+        CatalogueSnapshot snapshot = snapshotService.current();
+        SnapshotSummary summary = snapshotService.getAnalytics()
+                .summarize(snapshot, SnapshotFilter.ALL, LocalDate.now(), 30);
         
-        // Get total count
-        long totalCount = productRepository.count();
-        stats.put("totalCount", totalCount);
-        
-        // Get low stock count
-        long lowStockCount = productRepository.findByQuantityLessThanEqualToThreshold().size();
-        stats.put("lowStockCount", lowStockCount);
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalCount", summary.getProducts());
+        stats.put("lowStockCount", summary.getLowStock());
         
-        // Get categories distribution
         Map<ProductCategory, Long> categoryDistribution = new HashMap<>();
         for (ProductCategory category : ProductCategory.values()) {
-            long count = productRepository.findByCategory(category.name()).size();
-            categoryDistribution.put(category, count);
+            categoryDistribution.put(category, summary.getProducts(category));
         }
         stats.put("categoryDistribution", categoryDistribution);
-        
-        // Get total value
-        BigDecimal totalValue = BigDecimal.ZERO;
-        for (Product product : productRepository.findAll()) {
-            BigDecimal itemValue = product.getPrice().multiply(BigDecimal.valueOf(product.getQuantity()));
-            totalValue = totalValue.add(itemValue);
-        }
-        stats.put("totalValue", totalValue);
+        stats.put("totalValue", Money.toDecimal(summary.getValueCents()));
         
         return stats;
     }
-} 
\ No newline at end of file
+}
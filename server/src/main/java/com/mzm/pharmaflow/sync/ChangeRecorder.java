@@ -0,0 +1,163 @@
+package com.mzm.pharmaflow.sync;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes {@code change_log} entries in the caller's transaction and hands out change sequences.
+ *
+ * <p>Sequences are allocated in memory, so a change's sequence is known before it commits. A
+ * transaction holding sequence 10 may commit after one holding 11: a reader that returned 11
+ * would then never see 10. Sequences of open transactions are therefore tracked until they
+ * complete, and {@link #safeUpperBound()} only exposes sequences below the oldest of them.</p>
+ *
+ * <p>The counter starts at the larger of the stored maximum and the clock in microseconds, so
+ * sequences keep increasing across restarts even for branches stored in another database.</p>
+ */
+@Component
+public class ChangeRecorder {
+
+    private static final String INSERT = "INSERT INTO change_log (seq, branch_id, entity_type, entity_id, "
+            + "operation, changed_at) VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final Object lock = new Object();
+    private long lastAllocated;
+    private long startSequence;
+    private final NavigableSet<Long> inFlight = new TreeSet<>();
+    private long recorded;
+    private final Set<Long> branches = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    // Called under the lock; deferred to first use as the table only exists once the schema is built
+    private void initialize() {
+        if (lastAllocated == 0) {
+            Long stored = TenantContext.callOnDefaultStore(() ->
+                    jdbcTemplate.queryForObject("SELECT COALESCE(MAX(seq), 0) FROM change_log", Long.class));
+            lastAllocated = Math.max(stored != null ? stored : 0, System.currentTimeMillis() * 1000);
+            startSequence = lastAllocated;
+        }
+    }
+
+    /**
+     * Record a change to a row, effective when the current transaction commits
+     * @param branchId branch owning the row
+     * @param type row type
+     * @param id row ID
+     * @param operation upsert or delete
+     */
+    public void record(Long branchId, SyncEntityType type, Long id, ChangeOperation operation) {
+        recordAll(branchId, type, Collections.singletonList(id), operation);
+    }
+
+    /**
+     * Record changes to several rows of the same type, effective when the current transaction commits
+     * @param branchId branch owning the rows
+     * @param type row type
+     * @param ids row IDs
+     * @param operation upsert or delete
+     */
+    public void recordAll(Long branchId, SyncEntityType type, Collection<Long> ids, ChangeOperation operation) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Changes must be recorded inside a transaction");
+        }
+        branches.add(branchId);
+        long first;
+        synchronized (lock) {
+            initialize();
+            first = lastAllocated + 1;
+            lastAllocated += ids.size();
+            for (long seq = first; seq <= lastAllocated; seq++) {
+                inFlight.add(seq);
+            }
+            recorded += ids.size();
+        }
+        long last = first + ids.size() - 1;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (lock) {
+                    inFlight.subSet(first, true, last, true).clear();
+                }
+            }
+        });
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(ids.size());
+        long seq = first;
+        for (Long id : ids) {
+            rows.add(new Object[]{seq++, branchId, type.name(), id, operation.name(), now});
+        }
+        jdbcTemplate.batchUpdate(INSERT, rows);
+    }
+
+    /**
+     * Get the highest sequence below which every change is either committed or rolled back
+     * @return sequence that readers may safely advance to
+     */
+    public long safeUpperBound() {
+        synchronized (lock) {
+            initialize();
+            return inFlight.isEmpty() ? lastAllocated : inFlight.first() - 1;
+        }
+    }
+
+    /**
+     * Get the sequence the counter started from: every change of this run is numbered above it
+     * @return starting sequence
+     */
+    public long startSequence() {
+        synchronized (lock) {
+            initialize();
+            return startSequence;
+        }
+    }
+
+    /**
+     * Get the branches that recorded changes since startup
+     * @return branch IDs
+     */
+    public Set<Long> getBranches() {
+        return branches;
+    }
+
+    /**
+     * Get the number of open transactions' changes and changes recorded since startup
+     * @return in-flight and recorded counts
+     */
+    public long[] getCounts() {
+        synchronized (lock) {
+            return new long[]{inFlight.size(), recorded};
+        }
+    }
+}
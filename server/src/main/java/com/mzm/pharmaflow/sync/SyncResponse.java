@@ -0,0 +1,31 @@
+package com.mzm.pharmaflow.sync;
+
+import com.mzm.pharmaflow.dto.ClientDTO;
+import com.mzm.pharmaflow.dto.ProductDTO;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows changed since a sync token, and the token to send next time.
+ */
+@Data
+@NoArgsConstructor
+public class SyncResponse {
+
+    /** Token to pass as {@code since} on the next call */
+    private String token;
+
+    /** True when this is a full snapshot: the device replaces its data instead of merging */
+    private boolean full;
+
+    /** True when more changes are waiting: call again with the new token */
+    private boolean hasMore;
+
+    private List<ProductDTO> products = new ArrayList<>();
+    private List<ClientDTO> clients = new ArrayList<>();
+    private List<Long> deletedProductIds = new ArrayList<>();
+    private List<Long> deletedClientIds = new ArrayList<>();
+}
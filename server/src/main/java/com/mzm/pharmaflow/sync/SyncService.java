@@ -0,0 +1,259 @@
+package com.mzm.pharmaflow.sync;
+
+import com.mzm.pharmaflow.dto.ClientDTO;
+import com.mzm.pharmaflow.dto.ProductDTO;
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.model.SyncHorizon;
+import com.mzm.pharmaflow.outbox.OutboxRelay;
+import com.mzm.pharmaflow.repository.ClientRepository;
+import com.mzm.pharmaflow.repository.ProductRepository;
+import com.mzm.pharmaflow.repository.SyncHorizonRepository;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Incremental sync of products and clients for devices.
+ *
+ * <p>A device first calls without a token and receives the branch's full data with a token.
+ * Later calls return only the rows changed after that token, read from {@code change_log}:
+ * several changes to one row collapse to its current state, and deleted rows come back as IDs.
+ * Superseded log entries are compacted away; tombstones are kept for
+ * {@code sync.tombstone-retention-ms}, after which older tokens require a full resync.</p>
+ */
+@Service
+@Transactional(readOnly = true)
+public class SyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncService.class);
+
+    private static final String SELECT_CHANGES = "SELECT seq, entity_type, entity_id, operation FROM change_log "
+            + "WHERE branch_id = ? AND seq > ? AND seq <= ? ORDER BY seq LIMIT ?";
+
+    private static final String DELETE_SUPERSEDED = "DELETE FROM change_log c WHERE c.branch_id = ? AND EXISTS ("
+            + "SELECT 1 FROM change_log n WHERE n.branch_id = c.branch_id AND n.entity_type = c.entity_type "
+            + "AND n.entity_id = c.entity_id AND n.seq > c.seq) AND c.seq <= ?";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ClientRepository clientRepository;
+
+    @Autowired
+    private SyncHorizonRepository horizonRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${sync.page-size:500}")
+    private int defaultPageSize;
+
+    @Value("${sync.max-page-size:5000}")
+    private int maxPageSize;
+
+    @Value("${sync.tombstone-retention-ms:2592000000}")
+    private long tombstoneRetentionMs;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final AtomicLong fullSyncs = new AtomicLong();
+    private final AtomicLong deltaSyncs = new AtomicLong();
+    private final AtomicLong expiredTokens = new AtomicLong();
+    private final AtomicLong compactedEntries = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Get the current branch's changes after a token
+     * @param since token from the previous call, or null for a full sync
+     * @param limit maximum number of changes, or null for the default
+     * @return changed rows, deleted IDs and the next token
+     * @throws SyncTokenExpiredException if tombstones after the token were purged
+     */
+    public SyncResponse sync(String since, Integer limit) {
+        Long branchId = TenantContext.getBranchId();
+        // Taken before reading: rows committed meanwhile are sent again next time, never skipped
+        long upper = changeRecorder.safeUpperBound();
+        SyncResponse response = new SyncResponse();
+        if (since == null || since.trim().isEmpty()) {
+            response.setFull(true);
+            response.setProducts(productRepository.findAllDtos(branchId));
+            response.setClients(clientRepository.findAllDtos(branchId));
+            response.setToken(Long.toString(upper));
+            fullSyncs.incrementAndGet();
+            return response;
+        }
+
+        long from = parseToken(since);
+        long horizon = horizonRepository.findById(branchId).map(SyncHorizon::getPurgedThrough).orElse(0L);
+        if (from < horizon) {
+            expiredTokens.incrementAndGet();
+            throw new SyncTokenExpiredException("Sync token is older than the retained changes, resync without a token");
+        }
+        int pageSize = Math.max(1, Math.min(limit != null ? limit : defaultPageSize, maxPageSize));
+
+        // Last change per row wins; insertion order keeps the response stable
+        Map<Long, ChangeOperation> products = new LinkedHashMap<>();
+        Map<Long, ChangeOperation> clients = new LinkedHashMap<>();
+        long[] last = {from};
+        int[] read = {0};
+        jdbcTemplate.query(SELECT_CHANGES, rs -> {
+            Map<Long, ChangeOperation> target = SyncEntityType.valueOf(rs.getString("entity_type"))
+                    == SyncEntityType.PRODUCT ? products : clients;
+            long id = rs.getLong("entity_id");
+            target.remove(id);
+            target.put(id, ChangeOperation.valueOf(rs.getString("operation")));
+            last[0] = rs.getLong("seq");
+            read[0]++;
+        }, branchId, from, upper, pageSize);
+
+        boolean hasMore = read[0] == pageSize;
+        response.setHasMore(hasMore);
+        response.setToken(Long.toString(hasMore ? last[0] : Math.max(from, upper)));
+
+        List<Long> upserts = idsWith(products, ChangeOperation.UPSERT, response.getDeletedProductIds());
+        if (!upserts.isEmpty()) {
+            response.setProducts(productRepository.findDtosByIdIn(branchId, upserts));
+            addMissing(upserts, response.getProducts(), ProductDTO::getId, response.getDeletedProductIds());
+        }
+        upserts = idsWith(clients, ChangeOperation.UPSERT, response.getDeletedClientIds());
+        if (!upserts.isEmpty()) {
+            response.setClients(clientRepository.findDtosByIdIn(branchId, upserts));
+            addMissing(upserts, response.getClients(), ClientDTO::getId, response.getDeletedClientIds());
+        }
+        deltaSyncs.incrementAndGet();
+        return response;
+    }
+
+    private static List<Long> idsWith(Map<Long, ChangeOperation> changes, ChangeOperation wanted, List<Long> others) {
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<Long, ChangeOperation> change : changes.entrySet()) {
+            if (change.getValue() == wanted) {
+                ids.add(change.getKey());
+            } else {
+                others.add(change.getKey());
+            }
+        }
+        return ids;
+    }
+
+    // A row deleted after the last change of this page is already gone: report it as deleted
+    private static <T> void addMissing(List<Long> requested, List<T> found, Function<T, Long> id, List<Long> deleted) {
+        Set<Long> present = new HashSet<>();
+        for (T row : found) {
+            present.add(id.apply(row));
+        }
+        for (Long candidate : requested) {
+            if (!present.contains(candidate)) {
+                deleted.add(candidate);
+            }
+        }
+    }
+
+    private static long parseToken(String token) {
+        try {
+            long value = Long.parseLong(token.trim());
+            if (value < 0) {
+                throw new NumberFormatException();
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid sync token: " + token);
+        }
+    }
+
+    /**
+     * Drop log entries superseded by a later change to the same row, and tombstones past retention
+     */
+    @Scheduled(fixedDelayString = "${sync.compact-interval-ms:3600000}")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void compact() {
+        List<Long> branches = jdbcTemplate.queryForList("SELECT DISTINCT branch_id FROM change_log", Long.class);
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusNanos(tombstoneRetentionMs * 1_000_000L));
+        for (Long branchId : branches) {
+            try {
+                // Entries not yet relayed to every outbox subscriber are kept
+                long delivered = outboxRelay.deliveredThrough(branchId);
+                int removed = TenantContext.callOnBranch(branchId, () -> template.execute(tx -> {
+                    int superseded = jdbcTemplate.update(DELETE_SUPERSEDED, branchId, delivered);
+                    Long purgedThrough = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM change_log "
+                            + "WHERE branch_id = ? AND operation = 'DELETE' AND changed_at < ? AND seq <= ?", Long.class,
+                            branchId, cutoff, delivered);
+                    int tombstones = 0;
+                    if (purgedThrough != null) {
+                        // Record the horizon before the tombstones go, in the same transaction
+                        horizonRepository.save(new SyncHorizon(branchId, purgedThrough));
+                        tombstones = jdbcTemplate.update("DELETE FROM change_log WHERE branch_id = ? "
+                                + "AND operation = 'DELETE' AND seq <= ?", branchId, purgedThrough);
+                    }
+                    return superseded + tombstones;
+                }));
+                if (removed > 0) {
+                    compactedEntries.addAndGet(removed);
+                    logger.info("Compacted {} change log entries of branch {}", removed, branchId);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not compact the change log of branch {}: {}", branchId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get sync statistics
+     * @return log size, in-flight changes and call counters
+     */
+    public Map<String, Object> getStats() {
+        Long branchId = TenantContext.getBranchId();
+        long[] counts = changeRecorder.getCounts();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("logEntries", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_log WHERE branch_id = ?",
+                Long.class, branchId));
+        stats.put("horizon", horizonRepository.findById(branchId).map(SyncHorizon::getPurgedThrough).orElse(0L));
+        stats.put("safeUpperBound", changeRecorder.safeUpperBound());
+        stats.put("inFlightChanges", counts[0]);
+        stats.put("recordedChanges", counts[1]);
+        stats.put("fullSyncs", fullSyncs.get());
+        stats.put("deltaSyncs", deltaSyncs.get());
+        stats.put("expiredTokens", expiredTokens.get());
+        stats.put("compactedEntries", compactedEntries.get());
+        return stats;
+    }
+}
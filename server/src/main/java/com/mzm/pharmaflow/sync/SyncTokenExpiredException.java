@@ -0,0 +1,12 @@
+package com.mzm.pharmaflow.sync;
+
+/**
+ * Raised when a sync token is older than the purged tombstones: the device must resync in full.
+ */
+public class SyncTokenExpiredException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public SyncTokenExpiredException(String message) {
+        super(message);
+    }
+}
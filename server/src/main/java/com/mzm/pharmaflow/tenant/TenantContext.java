@@ -0,0 +1,89 @@
+package com.mzm.pharmaflow.tenant;
+
+import java.util.function.Supplier;
+
+/**
+ * Branch (pharmacy) the current request works on.
+ * Set by {@link TenantFilter} for the duration of a request; code running outside a
+ * request (startup, scheduled jobs) sees the default branch and, when routing is
+ * enabled, the default store.
+ */
+public final class TenantContext {
+
+    private static final ThreadLocal<Long> CURRENT_BRANCH = new ThreadLocal<>();
+
+    private static volatile long defaultBranchId = 1L;
+
+    private TenantContext() {
+    }
+
+    /**
+     * Get the current branch
+     * @return branch set for this thread, or the default branch
+     */
+    public static Long getBranchId() {
+        Long branchId = CURRENT_BRANCH.get();
+        return branchId != null ? branchId : defaultBranchId;
+    }
+
+    /**
+     * Whether a branch was explicitly selected for this thread
+     */
+    public static boolean isSet() {
+        return CURRENT_BRANCH.get() != null;
+    }
+
+    public static void setBranchId(Long branchId) {
+        CURRENT_BRANCH.set(branchId);
+    }
+
+    public static void clear() {
+        CURRENT_BRANCH.remove();
+    }
+
+    /**
+     * Run work on behalf of a branch, e.g. from a worker or scheduled thread, then restore the caller's branch
+     * @param branchId branch to work on
+     * @param work work to run
+     * @return result of the work
+     */
+    public static <T> T callOnBranch(Long branchId, Supplier<T> work) {
+        Long previous = CURRENT_BRANCH.get();
+        CURRENT_BRANCH.set(branchId);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT_BRANCH.set(previous);
+            } else {
+                CURRENT_BRANCH.remove();
+            }
+        }
+    }
+
+    /**
+     * Run work against the default store, e.g. for group-wide tables such as users or
+     * idempotency records, then restore the caller's branch
+     * @param work work to run
+     * @return result of the work
+     */
+    public static <T> T callOnDefaultStore(Supplier<T> work) {
+        Long previous = CURRENT_BRANCH.get();
+        CURRENT_BRANCH.remove();
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT_BRANCH.set(previous);
+            }
+        }
+    }
+
+    public static long getDefaultBranchId() {
+        return defaultBranchId;
+    }
+
+    static void setDefaultBranchId(long branchId) {
+        defaultBranchId = branchId;
+    }
+}
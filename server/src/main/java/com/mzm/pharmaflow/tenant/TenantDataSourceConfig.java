@@ -0,0 +1,110 @@
+package com.mzm.pharmaflow.tenant;
+
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional routing of branches to separate databases, so that a large branch can be moved
+ * to its own store. Enabled with {@code tenant.routing.enabled=true}; stores are declared as
+ * {@code tenant.routing.stores.<name>.url} (plus username/password) and branches are assigned
+ * with {@code tenant.routing.branches.<branchId>=<name>}.
+ *
+ * <p>Hibernate only manages the schema of the default store. Empty H2 stores receive a copy of
+ * it at startup; other databases must be provisioned beforehand.</p>
+ */
+@Configuration
+@ConditionalOnProperty(name = "tenant.routing.enabled", havingValue = "true")
+public class TenantDataSourceConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantDataSourceConfig.class);
+
+    @Bean
+    @Primary
+    public TenantRoutingDataSource dataSource(DataSourceProperties properties, Environment environment) {
+        Binder binder = Binder.get(environment);
+        Map<String, StoreProperties> stores = binder.bind("tenant.routing.stores",
+                Bindable.mapOf(String.class, StoreProperties.class)).orElse(Collections.emptyMap());
+        Map<Long, String> branches = binder.bind("tenant.routing.branches",
+                Bindable.mapOf(Long.class, String.class)).orElse(Collections.emptyMap());
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (Map.Entry<String, StoreProperties> store : stores.entrySet()) {
+            StoreProperties config = store.getValue();
+            targets.put(store.getKey(), DataSourceBuilder.create()
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(config.getUrl())
+                    .username(config.getUsername() != null ? config.getUsername() : properties.determineUsername())
+                    .password(config.getPassword() != null ? config.getPassword() : properties.determinePassword())
+                    .build());
+        }
+        for (Map.Entry<Long, String> branch : branches.entrySet()) {
+            if (!targets.containsKey(branch.getValue())) {
+                throw new IllegalStateException("Branch " + branch.getKey() + " is routed to unknown store "
+                        + branch.getValue());
+            }
+        }
+
+        TenantRoutingDataSource dataSource = new TenantRoutingDataSource(new LinkedHashMap<>(branches));
+        dataSource.setDefaultTargetDataSource(properties.initializeDataSourceBuilder().build());
+        dataSource.setTargetDataSources(targets);
+        // An unmapped branch falls back to the default store
+        dataSource.setLenientFallback(true);
+        logger.info("Tenant routing enabled: stores {}, branches {}", stores.keySet(), branches);
+        return dataSource;
+    }
+
+    /**
+     * Copy the default store's schema into H2 stores that do not have it yet,
+     * once Hibernate has created or updated it.
+     */
+    @Bean
+    public SmartInitializingSingleton tenantSchemaReplicator(TenantRoutingDataSource dataSource) {
+        return () -> {
+            JdbcTemplate source = new JdbcTemplate(dataSource.getResolvedDefaultDataSource());
+            List<String> script = null;
+            for (Map.Entry<Object, DataSource> store : dataSource.getResolvedDataSources().entrySet()) {
+                JdbcTemplate target = new JdbcTemplate(store.getValue());
+                Integer tables = target.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES"
+                        + " WHERE UPPER(TABLE_NAME) = 'PRODUCTS'", Integer.class);
+                if (tables != null && tables > 0) {
+                    continue;
+                }
+                if (script == null) {
+                    script = source.queryForList("SCRIPT NODATA", String.class);
+                }
+                for (String statement : script) {
+                    if (!statement.startsWith("CREATE USER")) {
+                        target.execute(statement);
+                    }
+                }
+                logger.info("Initialized schema of tenant store {}", store.getKey());
+            }
+        };
+    }
+
+    @Data
+    public static class StoreProperties {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
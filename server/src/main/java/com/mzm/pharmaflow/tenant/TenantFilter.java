@@ -0,0 +1,119 @@
+package com.mzm.pharmaflow.tenant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mzm.pharmaflow.dto.ResponseDTO;
+import com.mzm.pharmaflow.security.services.UserDetailsImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Selects the branch for the request.
+ *
+ * <p>Only admins may pick a branch with the {@code X-Branch-Id} header. Users attached to a
+ * branch always work on it; other callers, anonymous ones included, work on the default
+ * branch. A header naming any other branch is refused with 403. Authentication endpoints
+ * are left on the default store, where users live.</p>
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 200)
+public class TenantFilter extends OncePerRequestFilter {
+
+    public static final String BRANCH_HEADER = "X-Branch-Id";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${tenant.default-branch-id:1}")
+    private long defaultBranchId;
+
+    @PostConstruct
+    public void init() {
+        TenantContext.setDefaultBranchId(defaultBranchId);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getServletPath().startsWith("/auth/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Long requested;
+        try {
+            requested = parseBranch(request.getHeader(BRANCH_HEADER));
+        } catch (IllegalArgumentException e) {
+            sendError(response, HttpStatus.BAD_REQUEST, BRANCH_HEADER + " must be a positive number");
+            return;
+        }
+
+        Long userBranch = null;
+        boolean admin = false;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl) {
+            userBranch = ((UserDetailsImpl) authentication.getPrincipal()).getBranchId();
+            admin = isAdmin(authentication);
+        }
+
+        Long branchId;
+        if (admin) {
+            branchId = requested != null ? requested : userBranch;
+        } else {
+            long allowed = userBranch != null ? userBranch : defaultBranchId;
+            if (requested != null && requested != allowed) {
+                sendError(response, HttpStatus.FORBIDDEN, "Access to branch " + requested + " is not allowed");
+                return;
+            }
+            branchId = userBranch;
+        }
+
+        TenantContext.setBranchId(branchId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    private static Long parseBranch(String header) {
+        if (header == null || header.trim().isEmpty()) {
+            return null;
+        }
+        long branchId = Long.parseLong(header.trim());
+        if (branchId <= 0) {
+            throw new IllegalArgumentException("Branch id must be positive");
+        }
+        return branchId;
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sendError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ResponseDTO(false, message));
+    }
+}
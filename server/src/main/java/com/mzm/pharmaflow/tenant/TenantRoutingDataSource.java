@@ -0,0 +1,35 @@
+package com.mzm.pharmaflow.tenant;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Routes each connection to the store that holds the current branch.
+ * Branches without a dedicated store, and work running outside a request, use the default store.
+ */
+public class TenantRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final Map<Long, String> storeByBranch;
+
+    public TenantRoutingDataSource(Map<Long, String> storeByBranch) {
+        this.storeByBranch = Collections.unmodifiableMap(storeByBranch);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TenantContext.isSet()) {
+            return null;
+        }
+        return storeByBranch.get(TenantContext.getBranchId());
+    }
+
+    /**
+     * Get the branch to store mapping
+     * @return store name per branch
+     */
+    public Map<Long, String> getStoreByBranch() {
+        return storeByBranch;
+    }
+}
@@ -0,0 +1,327 @@
+package com.mzm.pharmaflow.visits;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import com.mzm.pharmaflow.service.DataVersion;
+import com.mzm.pharmaflow.sync.ChangeRecorder;
+import com.mzm.pharmaflow.tenant.TenantContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer for client visits. Recording a visit only keeps the latest visit day per
+ * client in memory (and appends it to the local {@link VisitJournal}); every
+ * {@code visits.flush-interval-ms} the buffer is swapped out and written with batched
+ * {@code UPDATE}s that only touch clients whose last visit actually moves forward, so a client
+ * seen ten times between two flushes costs one row update.
+ *
+ * <p>At most {@code visits.max-pending} clients wait in memory; visits for further clients are
+ * refused until the next flush. A flush that fails is merged back and retried. Visits for clients
+ * that no longer exist are dropped when flushed.</p>
+ */
+@Component
+public class VisitBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VisitBuffer.class);
+
+    // Bump the version so a PATCH prepared before this visit cannot move lastVisit or status back
+    private static final String UPDATE_LAST_VISIT = "UPDATE clients SET last_visit = ?,"
+            + " status = CASE WHEN ? THEN 'REGULIER' ELSE status END, updated_at = ?, version = version + 1"
+            + " WHERE branch_id = ? AND id = ? AND (last_visit IS NULL OR last_visit < ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeRecorder changeRecorder;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Value("${visits.max-pending:100000}")
+    private int maxPending;
+
+    @Value("${visits.batch-size:500}")
+    private int batchSize;
+
+    @Value("${visits.journal.enabled:true}")
+    private boolean journalEnabled;
+
+    @Value("${visits.journal.directory:data/visits}")
+    private String journalDirectory;
+
+    @Value("${visits.journal.fsync:false}")
+    private boolean journalFsync;
+
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<VisitKey, Integer> pending = new ConcurrentHashMap<>();
+    private final AtomicLong oldestPendingAt = new AtomicLong();
+    private VisitJournal journal;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong journalErrors = new AtomicLong();
+    private volatile long replayed;
+    private volatile long flushes;
+    private volatile long failedFlushes;
+    private volatile long flushedVisits;
+    private volatile long updatedClients;
+    private volatile long lastFlushMillis;
+    private volatile long lastFlushLagMs;
+    private volatile long maxFlushLagMs;
+
+    @PostConstruct
+    public void start() {
+        if (!journalEnabled) {
+            return;
+        }
+        try {
+            journal = new VisitJournal(Paths.get(journalDirectory), journalFsync);
+            replayed = journal.replay((branchId, clientId, epochDay) ->
+                    pending.merge(new VisitKey(branchId, clientId), epochDay, Math::max));
+            if (replayed > 0) {
+                oldestPendingAt.set(System.currentTimeMillis());
+                logger.info("Replayed {} unflushed visits ({} clients) from {}", replayed, pending.size(),
+                        journalDirectory);
+            }
+        } catch (IOException e) {
+            logger.error("Visit journal unavailable in {}, visits are only kept in memory until flushed: {}",
+                    journalDirectory, e.getMessage());
+            journal = null;
+        }
+    }
+
+    /**
+     * Record that a client came in
+     * @param branchId client's branch
+     * @param clientId client ID
+     * @param day visit day
+     * @return false if the buffer is full and the visit was not recorded
+     */
+    public boolean record(Long branchId, Long clientId, LocalDate day) {
+        VisitKey key = new VisitKey(branchId, clientId);
+        int epochDay = (int) day.toEpochDay();
+        swapLock.readLock().lock();
+        try {
+            ConcurrentHashMap<VisitKey, Integer> visits = pending;
+            if (visits.size() >= maxPending && !visits.containsKey(key)) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (journal != null) {
+                try {
+                    journal.append(branchId, clientId, epochDay);
+                } catch (IOException e) {
+                    journalErrors.incrementAndGet();
+                    logger.warn("Could not journal visit of client {}: {}", clientId, e.getMessage());
+                }
+            }
+            Integer previous = visits.putIfAbsent(key, epochDay);
+            if (previous == null) {
+                oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+            } else {
+                coalesced.incrementAndGet();
+                if (previous < epochDay) {
+                    visits.merge(key, epochDay, Math::max);
+                }
+            }
+            recorded.incrementAndGet();
+            return true;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the buffered visits to the database
+     */
+    @Scheduled(fixedDelayString = "${visits.flush-interval-ms:2000}")
+    public synchronized void flush() {
+        ConcurrentHashMap<VisitKey, Integer> snapshot;
+        long since;
+        long sealed = -1;
+        swapLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            snapshot = pending;
+            pending = new ConcurrentHashMap<>();
+            since = oldestPendingAt.getAndSet(0);
+            if (journal != null) {
+                try {
+                    sealed = journal.rotate();
+                } catch (IOException e) {
+                    journalErrors.incrementAndGet();
+                    logger.warn("Could not rotate visit journal: {}", e.getMessage());
+                }
+            }
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Long, List<Object[]>> byBranch = new HashMap<>();
+        LocalDate today = LocalDate.now();
+        int regularAfter = (int) today.minusMonths(3).toEpochDay();
+        Date updatedAt = Date.valueOf(today);
+        snapshot.forEach((key, epochDay) -> {
+            Date day = Date.valueOf(LocalDate.ofEpochDay(epochDay));
+            byBranch.computeIfAbsent(key.branchId, branch -> new ArrayList<>())
+                    .add(new Object[]{day, epochDay > regularAfter, updatedAt, key.branchId, key.clientId, day});
+        });
+
+        boolean failed = false;
+        long updated = 0;
+        for (Map.Entry<Long, List<Object[]>> branch : byBranch.entrySet()) {
+            try {
+                updated += TenantContext.callOnBranch(branch.getKey(), () -> write(branch.getKey(), branch.getValue()));
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.warn("Could not flush {} visits of branch {}, will retry: {}",
+                        branch.getValue().size(), branch.getKey(), e.getMessage());
+                restore(branch.getKey(), snapshot, since);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        flushes++;
+        flushedVisits += snapshot.size();
+        updatedClients += updated;
+        lastFlushMillis = now - start;
+        lastFlushLagMs = now - since;
+        maxFlushLagMs = Math.max(maxFlushLagMs, lastFlushLagMs);
+        if (failed) {
+            failedFlushes++;
+        } else if (sealed >= 0) {
+            try {
+                journal.deleteThrough(sealed);
+            } catch (IOException e) {
+                journalErrors.incrementAndGet();
+                logger.warn("Could not delete flushed visit journal segments: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        flush();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Get buffer and flush counters
+     * @return pending clients, coalesced and refused visits, flush times and lag
+     */
+    public Map<String, Object> getStats() {
+        long oldest = oldestPendingAt.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pendingClients", pending.size());
+        stats.put("maxPending", maxPending);
+        stats.put("oldestPendingAgeMs", oldest > 0 ? System.currentTimeMillis() - oldest : 0);
+        stats.put("recorded", recorded.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("rejected", rejected.get());
+        stats.put("flushes", flushes);
+        stats.put("failedFlushes", failedFlushes);
+        stats.put("flushedVisits", flushedVisits);
+        stats.put("updatedClients", updatedClients);
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("lastFlushLagMs", lastFlushLagMs);
+        stats.put("maxFlushLagMs", maxFlushLagMs);
+        stats.put("journal", journal != null ? "segment " + journal.currentSegment() : "disabled");
+        stats.put("journalErrors", journalErrors.get());
+        stats.put("replayed", replayed);
+        return stats;
+    }
+
+    private long write(Long branchId, List<Object[]> rows) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        return template.execute(tx -> {
+            List<Long> ids = new ArrayList<>();
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                List<Object[]> batch = rows.subList(from, Math.min(from + batchSize, rows.size()));
+                int[] counts = jdbcTemplate.batchUpdate(UPDATE_LAST_VISIT, batch);
+                for (int i = 0; i < counts.length; i++) {
+                    // Clients already seen later, or deleted, are not touched
+                    if (counts[i] != 0) {
+                        ids.add((Long) batch.get(i)[4]);
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                changeRecorder.recordAll(branchId, SyncEntityType.CLIENT, ids, ChangeOperation.UPSERT);
+                dataVersion.markChanged(branchId);
+            }
+            return (long) ids.size();
+        });
+    }
+
+    /**
+     * Put a branch's visits back in the buffer after a failed flush; their journal segments are kept
+     */
+    private void restore(Long branchId, Map<VisitKey, Integer> snapshot, long since) {
+        swapLock.readLock().lock();
+        try {
+            snapshot.forEach((key, epochDay) -> {
+                if (key.branchId == branchId) {
+                    pending.merge(key, epochDay, Math::max);
+                }
+            });
+            oldestPendingAt.updateAndGet(current -> current == 0 ? since : Math.min(current, since));
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static final class VisitKey {
+        private final long branchId;
+        private final long clientId;
+
+        private VisitKey(long branchId, long clientId) {
+            this.branchId = branchId;
+            this.clientId = clientId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof VisitKey)) {
+                return false;
+            }
+            VisitKey other = (VisitKey) o;
+            return branchId == other.branchId && clientId == other.clientId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(clientId * 31 + branchId);
+        }
+    }
+}
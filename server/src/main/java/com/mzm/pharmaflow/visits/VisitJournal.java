@@ -0,0 +1,147 @@
+package com.mzm.pharmaflow.visits;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Local journal of visits not yet written to the database, in segment files
+ * {@code visits-<n>.journal} of fixed 20-byte records (branch, client, epoch day).
+ * The buffer starts a new segment whenever it takes a snapshot to flush, and deletes the
+ * segments covered by a snapshot once it is committed; whatever is left at startup is replayed.
+ */
+class VisitJournal {
+
+    private static final int RECORD_BYTES = 20;
+    private static final String PREFIX = "visits-";
+    private static final String SUFFIX = ".journal";
+
+    interface Replay {
+        void visit(long branchId, long clientId, int epochDay);
+    }
+
+    private final Path directory;
+    private final boolean fsync;
+
+    private volatile FileChannel channel;
+    private volatile long segment;
+
+    VisitJournal(Path directory, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Read the segments left by a previous run, then start a new segment after them
+     * @return number of visits replayed
+     */
+    long replay(Replay consumer) throws IOException {
+        long replayed = 0;
+        long last = -1;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        for (long number : segments()) {
+            try (FileChannel in = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+                record.clear();
+                while (in.read(record) > 0) {
+                    if (record.hasRemaining()) {
+                        continue;
+                    }
+                    record.flip();
+                    consumer.visit(record.getLong(), record.getLong(), record.getInt());
+                    record.clear();
+                    replayed++;
+                }
+                // A record cut short by a crash is left in the buffer and ignored
+            }
+            last = number;
+        }
+        segment = last + 1;
+        channel = open(segment);
+        return replayed;
+    }
+
+    /**
+     * Append a visit to the current segment. Safe to call from several threads, but not
+     * concurrently with {@link #rotate()}.
+     */
+    void append(long branchId, long clientId, int epochDay) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.putLong(branchId).putLong(clientId).putInt(epochDay).flip();
+        FileChannel current = channel;
+        while (record.hasRemaining()) {
+            current.write(record);
+        }
+        if (fsync) {
+            current.force(false);
+        }
+    }
+
+    /**
+     * Close the current segment and start the next one
+     * @return number of the closed segment
+     */
+    long rotate() throws IOException {
+        long sealed = segment;
+        FileChannel next = open(sealed + 1);
+        FileChannel previous = channel;
+        channel = next;
+        segment = sealed + 1;
+        previous.close();
+        return sealed;
+    }
+
+    /**
+     * Delete closed segments whose visits are in the database
+     * @param number last segment to delete
+     */
+    void deleteThrough(long number) throws IOException {
+        for (long existing : segments()) {
+            if (existing <= number) {
+                Files.deleteIfExists(segmentPath(existing));
+            }
+        }
+    }
+
+    long currentSegment() {
+        return segment;
+    }
+
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private FileChannel open(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(PREFIX + number + SUFFIX);
+    }
+
+    private List<Long> segments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
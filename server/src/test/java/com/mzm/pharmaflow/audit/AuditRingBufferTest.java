@@ -0,0 +1,118 @@
+package com.mzm.pharmaflow.audit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditRingBufferTest {
+
+    @Test
+    void rejectsCapacityThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new AuditRingBuffer(6));
+        assertThrows(IllegalArgumentException.class, () -> new AuditRingBuffer(1));
+    }
+
+    @Test
+    void fullBufferRefusesOffersUntilDrained() {
+        AuditRingBuffer buffer = new AuditRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(event(i)));
+        }
+        assertFalse(buffer.offer(event(4)));
+        assertEquals(4, buffer.size());
+
+        List<AuditEvent> drained = new ArrayList<>();
+        assertEquals(1, buffer.drainTo(drained, 1));
+        assertEquals(0, drained.get(0).getOccurredAt());
+        assertTrue(buffer.offer(event(5)));
+        assertFalse(buffer.offer(event(6)));
+
+        drained.clear();
+        assertEquals(4, buffer.drainTo(drained, 10));
+        assertEquals(1, drained.get(0).getOccurredAt());
+        assertEquals(5, drained.get(3).getOccurredAt());
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drainTo(drained, 10));
+    }
+
+    @Test
+    void keepsOrderAcrossManyLaps() {
+        AuditRingBuffer buffer = new AuditRingBuffer(8);
+        List<AuditEvent> drained = new ArrayList<>();
+        long next = 0;
+        long expected = 0;
+        for (int round = 0; round < 1000; round++) {
+            // Offers and drains of different sizes move the head and tail across the end of the array
+            int offers = 1 + round % 7;
+            for (int i = 0; i < offers; i++) {
+                if (buffer.offer(event(next))) {
+                    next++;
+                }
+            }
+            drained.clear();
+            buffer.drainTo(drained, 1 + round % 5);
+            for (AuditEvent event : drained) {
+                assertEquals(expected++, event.getOccurredAt());
+            }
+        }
+        drained.clear();
+        buffer.drainTo(drained, Integer.MAX_VALUE);
+        for (AuditEvent event : drained) {
+            assertEquals(expected++, event.getOccurredAt());
+        }
+        assertEquals(next, expected);
+        assertTrue(next > 1000);
+    }
+
+    @Test
+    void concurrentProducersLoseNothingThatWasAccepted() {
+        int producers = 4;
+        int perProducer = 50_000;
+        AuditRingBuffer buffer = new AuditRingBuffer(256);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    // The producer is encoded in the resource ID and its own counter in the timestamp
+                    if (buffer.offer(new AuditEvent(i, AuditAction.PRODUCT_UPDATE, "user", 1L,
+                            String.valueOf(producer), null, null))) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+            thread.start();
+        }
+
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        List<AuditEvent> drained = new ArrayList<>();
+        int total = 0;
+        while (done.getCount() > 0 || buffer.size() > 0) {
+            drained.clear();
+            total += buffer.drainTo(drained, 64);
+            for (AuditEvent event : drained) {
+                int producer = Integer.parseInt(event.getResourceId());
+                assertTrue(event.getOccurredAt() > lastSeen[producer], "events of one producer stay in order");
+                lastSeen[producer] = event.getOccurredAt();
+            }
+        }
+        assertEquals(accepted.get(), total);
+        assertEquals(0, buffer.size());
+    }
+
+    private static AuditEvent event(long marker) {
+        return new AuditEvent(marker, AuditAction.PRODUCT_UPDATE, "user", 1L, null, null, null);
+    }
+}
@@ -0,0 +1,188 @@
+package com.mzm.pharmaflow.barcode;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarcodeIndexTest {
+
+    /** Codes with the same String hash, so they share a home slot and form one probe run */
+    private static final String[] COLLIDING = {"AaAa", "AaBB", "BBAa", "BBBB"};
+
+    @Test
+    void removalInsideAProbeRunKeepsTheFollowingCodesReachable() {
+        BarcodeIndex index = new BarcodeIndex(1L, 0, 0);
+        for (int i = 0; i < COLLIDING.length; i++) {
+            index.put(record(i + 1, COLLIDING[i]));
+        }
+
+        index.remove(2);
+        assertNull(index.get("AaBB"));
+        assertEquals(1, index.get("AaAa").getId());
+        assertEquals(3, index.get("BBAa").getId());
+        assertEquals(4, index.get("BBBB").getId());
+        assertEquals(3, index.size());
+
+        index.put(record(2, "AaBB"));
+        index.remove(1);
+        assertNull(index.get("AaAa"));
+        for (int i = 1; i < COLLIDING.length; i++) {
+            assertEquals(i + 1, index.get(COLLIDING[i]).getId());
+        }
+
+        // The ID table was shifted too: every remaining product can still be removed by ID
+        for (long id = 2; id <= 4; id++) {
+            index.remove(id);
+        }
+        assertEquals(0, index.size());
+        for (String code : COLLIDING) {
+            assertNull(index.get(code));
+        }
+    }
+
+    @Test
+    void changedCodeReplacesThePreviousOne() {
+        BarcodeIndex index = new BarcodeIndex(1L, 0, 0);
+        index.put(record(1, "3400930000011"));
+        index.put(record(1, "3400930000028"));
+
+        assertNull(index.get("3400930000011"));
+        assertEquals(1, index.get("3400930000028").getId());
+        assertEquals(1, index.size());
+
+        index.remove(1);
+        assertNull(index.get("3400930000028"));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void codeTakenByAnotherProductLeavesTheOldHolderWithoutCode() {
+        BarcodeIndex index = new BarcodeIndex(1L, 0, 0);
+        index.put(record(1, "CODE-A"));
+        index.put(record(2, "CODE-B"));
+
+        index.put(record(2, "CODE-A"));
+        assertEquals(2, index.get("CODE-A").getId());
+        assertNull(index.get("CODE-B"));
+        assertEquals(1, index.size());
+
+        // Product 1 no longer owns the code, so removing it must not drop product 2
+        index.remove(1);
+        assertEquals(2, index.get("CODE-A").getId());
+
+        index.put(record(1, "CODE-C"));
+        assertEquals(1, index.get("CODE-C").getId());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void growsAndKeepsBothTablesConsistent() {
+        BarcodeIndex index = new BarcodeIndex(1L, 0, 0);
+        assertEquals(16, index.capacity());
+        int count = 2000;
+        for (int id = 1; id <= count; id++) {
+            index.put(record(id, "P" + id));
+        }
+        assertEquals(count, index.size());
+        assertTrue(index.capacity() >= count * 2);
+
+        for (int id = 2; id <= count; id += 2) {
+            index.remove(id);
+        }
+        for (int id = 1; id <= count; id++) {
+            ScanRecord found = index.get("P" + id);
+            if (id % 2 == 0) {
+                assertNull(found);
+            } else {
+                assertNotNull(found);
+                assertEquals(id, found.getId());
+            }
+        }
+
+        // Codes changed after the resize are found through the rebuilt ID table
+        for (int id = 1; id <= count; id += 2) {
+            index.put(record(id, "Q" + id));
+        }
+        assertEquals(count / 2, index.size());
+        for (int id = 1; id <= count; id += 2) {
+            assertNull(index.get("P" + id));
+            assertEquals(id, index.get("Q" + id).getId());
+        }
+    }
+
+    @Test
+    void matchesAMapUnderRandomPutsAndRemoves() {
+        List<String> codes = new ArrayList<>();
+        // Two families of equal String hashes, plus ordinary codes
+        for (String a : new String[]{"Aa", "BB"}) {
+            for (String b : new String[]{"Aa", "BB"}) {
+                for (String c : new String[]{"Aa", "BB"}) {
+                    codes.add(a + b + c);
+                    codes.add("X" + a + b + c);
+                }
+            }
+        }
+        for (int i = 0; i < 200; i++) {
+            codes.add("34009" + (1_000_000 + i * 7919));
+        }
+
+        BarcodeIndex index = new BarcodeIndex(1L, 0, 0);
+        Map<Long, String> codeById = new HashMap<>();
+        Map<String, Long> idByCode = new HashMap<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 50_000; step++) {
+            long id = 1 + random.nextInt(150);
+            if (random.nextInt(3) == 0) {
+                index.remove(id);
+                String code = codeById.remove(id);
+                if (code != null) {
+                    idByCode.remove(code);
+                }
+            } else {
+                String code = codes.get(random.nextInt(codes.size()));
+                index.put(record(id, code));
+                String previous = codeById.get(id);
+                if (previous != null && !previous.equals(code)) {
+                    idByCode.remove(previous);
+                }
+                Long holder = idByCode.put(code, id);
+                if (holder != null && holder != id) {
+                    codeById.remove(holder);
+                }
+                codeById.put(id, code);
+            }
+
+            if (step % 500 == 0) {
+                assertMatches(idByCode, codes, index);
+            }
+        }
+        assertMatches(idByCode, codes, index);
+    }
+
+    private static void assertMatches(Map<String, Long> expected, List<String> codes, BarcodeIndex index) {
+        assertEquals(expected.size(), index.size());
+        for (String code : codes) {
+            ScanRecord found = index.get(code);
+            Long id = expected.get(code);
+            if (id == null) {
+                assertNull(found, code);
+            } else {
+                assertNotNull(found, code);
+                assertEquals(id.longValue(), found.getId(), code);
+            }
+        }
+    }
+
+    private static ScanRecord record(long id, String code) {
+        return new ScanRecord(id, code, "Product " + id, 250, 10, 2, 20000, false, 1);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mzm.pharmaflow.sync;
+
+import com.mzm.pharmaflow.model.ChangeOperation;
+import com.mzm.pharmaflow.model.SyncEntityType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeRecorderTest {
+
+    private ChangeRecorder recorder;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:change-recorder-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setDriverClassName("org.h2.Driver");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE change_log (seq BIGINT PRIMARY KEY, branch_id BIGINT,"
+                + " entity_type VARCHAR(20), entity_id BIGINT, operation VARCHAR(10), changed_at TIMESTAMP)");
+        recorder = new ChangeRecorder();
+        ReflectionTestUtils.setField(recorder, "dataSource", dataSource);
+        recorder.start();
+    }
+
+    @Test
+    void laterCommitDoesNotExposeAnEarlierOpenSequence() {
+        long before = recorder.safeUpperBound();
+        List<TransactionSynchronization> first = recordInOpenTransaction(1L);
+        List<TransactionSynchronization> second = recordInOpenTransaction(2L);
+        long firstSeq = seqOf(1L);
+        assertTrue(seqOf(2L) > firstSeq);
+
+        complete(second, TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(before, recorder.safeUpperBound());
+        assertTrue(recorder.safeUpperBound() < firstSeq);
+
+        complete(first, TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(seqOf(2L), recorder.safeUpperBound());
+    }
+
+    @Test
+    void boundStopsBelowTheOldestOpenTransaction() {
+        List<TransactionSynchronization> first = recordInOpenTransaction(1L);
+        List<TransactionSynchronization> second = recordInOpenTransaction(2L, 3L, 4L);
+        List<TransactionSynchronization> third = recordInOpenTransaction(5L);
+
+        complete(first, TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(seqOf(1L), recorder.safeUpperBound());
+
+        complete(third, TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(seqOf(1L), recorder.safeUpperBound());
+
+        // A rollback releases its sequences as well
+        complete(second, TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertEquals(seqOf(5L), recorder.safeUpperBound());
+        assertEquals(0, recorder.getCounts()[0]);
+    }
+
+    @Test
+    void recordingOutsideATransactionIsRefused() {
+        assertThrows(IllegalStateException.class,
+                () -> recorder.record(1L, SyncEntityType.PRODUCT, 1L, ChangeOperation.UPSERT));
+    }
+
+    /**
+     * Record product changes as a transaction would, leaving it open
+     * @return synchronizations to complete the transaction with
+     */
+    private List<TransactionSynchronization> recordInOpenTransaction(Long... productIds) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            recorder.recordAll(1L, SyncEntityType.PRODUCT, Arrays.asList(productIds), ChangeOperation.UPSERT);
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void complete(List<TransactionSynchronization> transaction, int status) {
+        for (TransactionSynchronization synchronization : transaction) {
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    private long seqOf(Long productId) {
+        return jdbcTemplate.queryForObject("SELECT seq FROM change_log WHERE entity_id = ?", Long.class, productId);
+    }
+}
@@ -0,0 +1,61 @@
+#!/bin/sh
+# Time to first request: launch the server repeatedly and measure, from the launch until the
+# first successful GET /api/test/echo, the plain jar with the default profile, the jar with the
+# fast-start profile and, if build-cds.sh was run, the fast-start profile with the CDS archive.
+# Usage: startup-benchmark.sh [runs]
+set -e
+cd "$(dirname "$0")"
+RUNS=${1:-5}
+PORT=${BENCHMARK_PORT:-18182}
+JAR=target/pharmaflow-server-0.0.1-SNAPSHOT.jar
+DB=$(pwd)/target/startup-benchmark/pharmaflow
+export FASTSTART_DATASOURCE_URL="jdbc:h2:file:$DB"
+
+now_ms() {
+  date +%s%3N
+}
+
+# Prints the milliseconds from launch to the first answered request
+measure() {
+  start=$(now_ms)
+  "$@" --server.port="$PORT" > target/startup-benchmark/run.log 2>&1 &
+  pid=$!
+  until curl -sf "http://localhost:$PORT/api/test/echo" > /dev/null 2>&1; do
+    kill -0 $pid 2>/dev/null || { echo "start failed, see target/startup-benchmark/run.log" >&2; exit 1; }
+    sleep 0.01
+  done
+  echo $(( $(now_ms) - start ))
+  kill $pid
+  wait $pid 2>/dev/null || true
+}
+
+report() {
+  label=$1
+  shift
+  times=""
+  i=0
+  while [ $i -lt "$RUNS" ]; do
+    times="$times $(measure "$@")"
+    i=$((i + 1))
+  done
+  echo "$times" | tr ' ' '\n' | grep . | sort -n | awk -v label="$label" \
+    '{ t[NR] = $1 } END { printf "%-22s min %6d ms   median %6d ms   max %6d ms\n", label, t[1], t[int((NR + 1) / 2)], t[NR] }'
+}
+
+[ -f "$JAR" ] || mvn -B -q package -DskipTests
+rm -rf target/startup-benchmark
+mkdir -p target/startup-benchmark
+
+# The fast-start profile validates an existing schema: create it once
+java -jar "$JAR" --spring.datasource.url="$FASTSTART_DATASOURCE_URL" --spring.jpa.hibernate.ddl-auto=update \
+  --benchmark.startup.exit-after-first-request=true --server.port="$PORT" > target/startup-benchmark/schema.log 2>&1 &
+until curl -sf "http://localhost:$PORT/api/test/echo" > /dev/null 2>&1; do sleep 0.2; done
+wait || true
+
+echo "Time to first request over $RUNS runs"
+report "jar, default profile" java -jar "$JAR"
+report "jar, faststart" java -jar "$JAR" --spring.profiles.active=faststart
+if [ -f target/cds/pharmaflow.jsa ]; then
+  report "cds, faststart" sh -c 'cd target/cds && exec java -XX:SharedArchiveFile=pharmaflow.jsa @java.args "$@"' \
+    sh --spring.profiles.active=faststart
+fi